@@ -111,6 +111,7 @@ export default function App() {
   const [tab, setTab] = useState("rider");
   const [riderForm, setRiderForm] = useState(defaultRider);
   const [riderResult, setRiderResult] = useState(null);
+  const [riderBooked, setRiderBooked] = useState(false);
   const [riderError, setRiderError] = useState("");
   const [riderGeoStatus, setRiderGeoStatus] = useState("");
   const [riderGeoError, setRiderGeoError] = useState("");
@@ -262,17 +263,40 @@ export default function App() {
     event.preventDefault();
     setRiderError("");
     setRiderResult(null);
+    setRiderBooked(false);
     try {
-      const response = await fetch(`${API_BASE}/rider/book`, {
+      const response = await fetch(`${API_BASE}/rider/quote`, {
         method: "POST",
         headers: { "Content-Type": "application/json" },
         body: JSON.stringify(riderForm)
       });
+      if (!response.ok) {
+        throw new Error(`Quote failed (${response.status})`);
+      }
+      const payload = await response.json();
+      setRiderResult(payload);
+    } catch (error) {
+      setRiderError(error.message);
+    }
+  }
+
+  async function handleConfirmQuote() {
+    if (!riderResult?.quoteId) return;
+    setRiderError("");
+    try {
+      const response = await fetch(
+        `${API_BASE}/rider/quote/${encodeURIComponent(riderResult.quoteId)}/confirm`,
+        { method: "POST" }
+      );
+      if (response.status === 410) {
+        throw new Error("Quote expired, please get a new price.");
+      }
       if (!response.ok) {
         throw new Error(`Booking failed (${response.status})`);
       }
       const payload = await response.json();
       setRiderResult(payload);
+      setRiderBooked(true);
     } catch (error) {
       setRiderError(error.message);
     }
@@ -450,7 +474,7 @@ export default function App() {
             </label>
             <div className="full">
               <button type="submit" className="primary">
-                Book Ride
+                Get Price
               </button>
             </div>
           </form>
@@ -504,7 +528,7 @@ export default function App() {
 
           {riderResult && (
             <div className="result">
-              <h3>Pricing Result</h3>
+              <h3>{riderBooked ? "Booking Confirmed" : "Price Quote"}</h3>
               <div className="result-grid">
                 <div>
                   <span>Distance</span>
@@ -531,6 +555,13 @@ export default function App() {
                   <strong>{formatNumber(riderResult.ratio)}</strong>
                 </div>
               </div>
+              {riderBooked ? (
+                <p className="status">Ride booked at the quoted price.</p>
+              ) : (
+                <button type="button" className="primary" onClick={handleConfirmQuote}>
+                  Confirm Booking
+                </button>
+              )}
               <div className="map-block">
                 <p>
                   Route: {riderForm.pickupName} → {riderForm.dropName}
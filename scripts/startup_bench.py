@@ -0,0 +1,170 @@
+import argparse
+import asyncio
+import os
+import shlex
+import signal
+import statistics
+import subprocess
+import time
+from typing import List, Optional, Tuple
+
+import aiohttp
+
+
+DEFAULT_BASE_URL = "http://localhost:8081"
+DEFAULT_CMD = "java -jar target/surge-pricing-1.0.0.jar"
+FAST_CMD = (
+    "java -XX:SharedArchiveFile=surge.jsa -Dspring.aot.enabled=true "
+    "-cp classes:lib/* com.wecode.surgeprice.SurgePriceApplication"
+)
+
+
+def percentile(values: List[float], q: float) -> float:
+    ordered = sorted(values)
+    return ordered[int(q * (len(ordered) - 1))]
+
+
+async def wait_ready(base_url: str, launched_at: float, timeout: float) -> Optional[float]:
+    url = f"{base_url}/actuator/health/readiness"
+    async with aiohttp.ClientSession() as session:
+        while time.perf_counter() - launched_at < timeout:
+            try:
+                async with session.get(url, timeout=aiohttp.ClientTimeout(total=1)) as response:
+                    if response.status == 200:
+                        return time.perf_counter() - launched_at
+            except Exception:
+                pass
+            await asyncio.sleep(0.05)
+    return None
+
+
+async def quote_worker(
+    session: aiohttp.ClientSession,
+    url: str,
+    payload: dict,
+    rps: float,
+    samples: List[Tuple[float, float]],
+    stop_at: float,
+) -> None:
+    interval = 1.0 / rps
+    while time.perf_counter() < stop_at:
+        start = time.perf_counter()
+        try:
+            async with session.post(url, json=payload, timeout=aiohttp.ClientTimeout(total=2)) as response:
+                await response.read()
+        except Exception:
+            pass
+        latency_ms = (time.perf_counter() - start) * 1000.0
+        samples.append((start, latency_ms))
+        sleep_for = interval - latency_ms / 1000.0
+        if sleep_for > 0:
+            await asyncio.sleep(sleep_for)
+
+
+async def drive_load(args: argparse.Namespace) -> List[Tuple[float, float]]:
+    url = f"{args.base_url}/rider/quote"
+    payload = {
+        "riderId": "startup_bench",
+        "pickupLat": args.lat,
+        "pickupLng": args.lng,
+        "dropLat": args.lat + 0.03,
+        "dropLng": args.lng - 0.05,
+    }
+    samples: List[Tuple[float, float]] = []
+    stop_at = time.perf_counter() + args.duration
+    connector = aiohttp.TCPConnector(limit=args.concurrency * 2)
+    async with aiohttp.ClientSession(connector=connector) as session:
+        tasks = [
+            asyncio.create_task(
+                quote_worker(session, url, payload, args.rps / args.concurrency, samples, stop_at)
+            )
+            for _ in range(args.concurrency)
+        ]
+        await asyncio.gather(*tasks)
+    return samples
+
+
+def window_p99s(samples: List[Tuple[float, float]], origin: float, window: float) -> List[Tuple[float, float]]:
+    buckets = {}
+    for started, latency_ms in samples:
+        buckets.setdefault(int((started - origin) / window), []).append(latency_ms)
+    return [(index * window, percentile(buckets[index], 0.99)) for index in sorted(buckets)]
+
+
+def time_to_steady(windows: List[Tuple[float, float]], tolerance: float) -> Tuple[float, Optional[float]]:
+    """Steady p99 is the median of the last third of windows; steady from the
+    first window after which no window exceeds it by more than tolerance."""
+    tail = [p99 for _, p99 in windows[-max(1, len(windows) // 3):]]
+    steady = statistics.median(tail)
+    limit = steady * (1.0 + tolerance)
+    steady_at = None
+    for offset, p99 in reversed(windows):
+        if p99 > limit:
+            break
+        steady_at = offset
+    return steady, steady_at
+
+
+async def run(args: argparse.Namespace) -> None:
+    command = args.cmd or (FAST_CMD if args.fast else DEFAULT_CMD)
+    cwd = args.cwd or ("target/app" if args.fast else ".")
+    env = dict(os.environ)
+    if args.jit_warmup:
+        env["SURGE_JIT_WARMUP"] = "true"
+
+    print(f"Launching: {command} (cwd={cwd})")
+    launched_at = time.perf_counter()
+    process = subprocess.Popen(
+        shlex.split(command), cwd=cwd, env=env,
+        stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL, start_new_session=True,
+    )
+    try:
+        ready_after = await wait_ready(args.base_url, launched_at, args.ready_timeout)
+        if ready_after is None:
+            print(f"Not ready after {args.ready_timeout}s")
+            return
+        print(f"time_to_ready={ready_after:.2f}s")
+
+        load_start = time.perf_counter()
+        samples = await drive_load(args)
+        windows = window_p99s(samples, load_start, args.window)
+        for offset, p99 in windows:
+            print(f"  t+{offset:5.1f}s p99={p99:.1f}ms")
+        steady, steady_at = time_to_steady(windows, args.tolerance)
+        if steady_at is None:
+            print(f"p99 did not settle (steady estimate {steady:.1f}ms)")
+        else:
+            print(
+                f"steady_p99={steady:.1f}ms time_to_steady_p99={ready_after + steady_at:.2f}s "
+                f"(ready+{steady_at:.1f}s)"
+            )
+    finally:
+        os.killpg(process.pid, signal.SIGTERM)
+        process.wait(timeout=30)
+
+
+def build_parser() -> argparse.ArgumentParser:
+    parser = argparse.ArgumentParser(description="Time-to-ready and time-to-steady-p99 for one app start")
+    parser.add_argument("--base-url", default=DEFAULT_BASE_URL)
+    parser.add_argument("--cmd", help="launch command; defaults to the plain jar, or the fast-startup app with --fast")
+    parser.add_argument("--cwd")
+    parser.add_argument("--fast", action="store_true", help="run target/app from ./mvnw -Pfast-startup package")
+    parser.add_argument("--jit-warmup", action="store_true", help="set SURGE_JIT_WARMUP=true")
+    parser.add_argument("--ready-timeout", type=float, default=120)
+    parser.add_argument("--rps", type=float, default=2000)
+    parser.add_argument("--duration", type=float, default=60)
+    parser.add_argument("--concurrency", type=int, default=50)
+    parser.add_argument("--window", type=float, default=1.0, help="p99 window, seconds")
+    parser.add_argument("--tolerance", type=float, default=0.2, help="allowed excess over steady p99")
+    parser.add_argument("--lat", type=float, default=37.7749)
+    parser.add_argument("--lng", type=float, default=-122.4194)
+    return parser
+
+
+def main() -> None:
+    args = build_parser().parse_args()
+    asyncio.run(run(args))
+
+
+if __name__ == "__main__":
+    main()
@@ -0,0 +1,81 @@
+package com.wecode.surgeprice.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit that follows latency, after the gradient algorithm of
+ * Netflix's concurrency-limits. A short-term latency average is compared with
+ * a long-term one; while short stays within {@code tolerance} of long the
+ * limit grows by about sqrt(limit) per sample, and as it rises above that the
+ * limit shrinks in proportion. A failed request counts as the worst gradient.
+ */
+public class AdaptiveLimiter {
+
+    private static final double SHORT_ALPHA = 0.1;          // ~10 samples
+    private static final double LONG_ALPHA = 2.0 / (600 + 1); // ~600 samples
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private double shortRtt; // nanos, guarded by this
+    private double longRtt;
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases a permit taken by {@link #tryAcquire} and feeds its latency into the limit.
+     */
+    public void release(long rttNanos, boolean failed) {
+        int inFlightAtEnd = inFlight.getAndDecrement();
+        update(rttNanos, inFlightAtEnd, failed);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(long rttNanos, int inFlightAtEnd, boolean failed) {
+        shortRtt = shortRtt == 0 ? rttNanos : shortRtt * (1 - SHORT_ALPHA) + rttNanos * SHORT_ALPHA;
+        longRtt = longRtt == 0 ? rttNanos : longRtt * (1 - LONG_ALPHA) + rttNanos * LONG_ALPHA;
+        if (longRtt > shortRtt * 2) {
+            // Latency improved a lot; let the baseline catch up instead of over-growing
+            longRtt *= 0.95;
+        }
+        double current = limit;
+        if (!failed && inFlightAtEnd < current / 2) {
+            // Far below the limit says nothing about whether it is too high
+            return;
+        }
+        double gradient = failed
+                ? MIN_GRADIENT
+                : Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double target = current * gradient + Math.sqrt(current);
+        double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
@@ -0,0 +1,113 @@
+package com.wecode.surgeprice.admission;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control for the rider pricing endpoints ({@code surge.admission-paths}).
+ * Each path has its own {@link AdaptiveLimiter}, and all of them together
+ * stay under {@code admission-max-total} so Tomcat always has threads left
+ * for driver ingest. Requests over the limit get an immediate 503 with
+ * Retry-After, before the body is read.
+ */
+@Component
+public class AdmissionFilter extends OncePerRequestFilter implements MeterBinder {
+
+    private final SurgePricingProperties properties;
+    private final Map<String, AdaptiveLimiter> limiters = new HashMap<>();
+    private final Map<String, AtomicLong> rejected = new HashMap<>();
+    private final AtomicInteger totalInFlight = new AtomicInteger();
+
+    public AdmissionFilter(SurgePricingProperties properties) {
+        this.properties = properties;
+        for (String path : properties.getAdmissionPaths()) {
+            limiters.put(path, new AdaptiveLimiter(properties.getAdmissionInitialLimit(),
+                    properties.getAdmissionMinLimit(), properties.getAdmissionMaxLimit(),
+                    properties.getAdmissionRttTolerance()));
+            rejected.put(path, new AtomicLong());
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isAdmissionEnabled() || !limiters.containsKey(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String path = request.getRequestURI();
+        AdaptiveLimiter limiter = limiters.get(path);
+        if (!acquireTotal()) {
+            reject(path, response);
+            return;
+        }
+        if (!limiter.tryAcquire()) {
+            totalInFlight.decrementAndGet();
+            reject(path, response);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = response.getStatus() >= 500;
+        } finally {
+            limiter.release(System.nanoTime() - start, failed);
+            totalInFlight.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Map.Entry<String, AdaptiveLimiter> entry : limiters.entrySet()) {
+            Gauge.builder("surge.admission.limit", entry.getValue(), AdaptiveLimiter::getLimit)
+                    .description("Current concurrency limit")
+                    .tag("path", entry.getKey())
+                    .register(registry);
+            Gauge.builder("surge.admission.inflight", entry.getValue(), AdaptiveLimiter::getInFlight)
+                    .description("Requests being served")
+                    .tag("path", entry.getKey())
+                    .register(registry);
+            FunctionCounter.builder("surge.admission.rejected", rejected.get(entry.getKey()), AtomicLong::get)
+                    .description("Requests shed with 503")
+                    .tag("path", entry.getKey())
+                    .register(registry);
+        }
+    }
+
+    private boolean acquireTotal() {
+        while (true) {
+            int current = totalInFlight.get();
+            if (current >= properties.getAdmissionMaxTotal()) {
+                return false;
+            }
+            if (totalInFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void reject(String path, HttpServletResponse response) {
+        rejected.get(path).incrementAndGet();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(properties.getAdmissionRetryAfterSeconds()));
+    }
+}
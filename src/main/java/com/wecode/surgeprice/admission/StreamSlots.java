@@ -0,0 +1,233 @@
+package com.wecode.surgeprice.admission;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps open SSE price streams at {@code stream-max-slots}. The last
+ * {@code stream-priority-slots} of them only go to priority streams (riders
+ * in the booking flow); when every slot is taken a priority stream preempts
+ * the oldest normal one, which is told to reconnect later.
+ *
+ * Streams are scheduled from a small scheduler instead of holding a thread
+ * each. The push itself runs on a bounded send pool, one at a time per
+ * stream; a push that outlives {@code stream-push-deadline-millis} (a stuck
+ * client or a slow Redis) ends its stream, so it cannot hold up the others.
+ */
+@Component
+public class StreamSlots implements MeterBinder, DisposableBean {
+
+    /**
+     * One push to the client; an exception ends the stream.
+     */
+    public interface Push {
+        void send(SseEmitter emitter) throws Exception;
+    }
+
+    private final SurgePricingProperties properties;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor sender;
+    private final Deque<Stream> normalStreams = new ArrayDeque<>(); // oldest first, guarded by this
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong rejectedNormal = new AtomicLong();
+    private final AtomicLong rejectedPriority = new AtomicLong();
+    private final AtomicLong preempted = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public StreamSlots(SurgePricingProperties properties) {
+        this.properties = properties;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(properties.getStreamPushThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "sse-push-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger senderCount = new AtomicInteger();
+        int senders = properties.getStreamSendThreads();
+        // Each stream has at most one push queued or running, so the queue stays below stream-max-slots
+        this.sender = new ThreadPoolExecutor(senders, senders, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sse-send-" + senderCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.sender.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Opens a stream that runs {@code push} every {@code stream-push-millis}
+     * until the client goes away, or returns null when no slot is free.
+     */
+    public SseEmitter open(boolean priority, Push push) {
+        SseEmitter emitter = new SseEmitter(0L);
+        Stream stream = new Stream(emitter, priority);
+        Stream victim = null;
+        synchronized (this) {
+            int max = properties.getStreamMaxSlots();
+            int normalMax = max - properties.getStreamPrioritySlots();
+            if (active.get() < (priority ? max : normalMax)) {
+                active.incrementAndGet();
+            } else if (priority && !normalStreams.isEmpty()) {
+                // Hand the oldest normal stream's slot over
+                victim = normalStreams.pollFirst();
+                victim.released.set(true);
+            } else {
+                (priority ? rejectedPriority : rejectedNormal).incrementAndGet();
+                return null;
+            }
+            if (!priority) {
+                normalStreams.addLast(stream);
+            }
+        }
+        if (victim != null) {
+            preempted.incrementAndGet();
+            victim.preempt();
+        }
+
+        emitter.onCompletion(() -> close(stream));
+        emitter.onTimeout(() -> close(stream));
+        emitter.onError(e -> close(stream));
+        stream.future = scheduler.scheduleWithFixedDelay(() -> schedulePush(stream, push),
+                0, properties.getStreamPushMillis(), TimeUnit.MILLISECONDS);
+        return emitter;
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("surge.stream.active", active, AtomicInteger::get)
+                .description("Open SSE price streams")
+                .register(registry);
+        FunctionCounter.builder("surge.stream.rejected", rejectedNormal, AtomicLong::get)
+                .description("Price streams refused for lack of a slot")
+                .tag("priority", "normal")
+                .register(registry);
+        FunctionCounter.builder("surge.stream.rejected", rejectedPriority, AtomicLong::get)
+                .description("Price streams refused for lack of a slot")
+                .tag("priority", "high")
+                .register(registry);
+        FunctionCounter.builder("surge.stream.preempted", preempted, AtomicLong::get)
+                .description("Normal streams closed to make room for priority streams")
+                .register(registry);
+        FunctionCounter.builder("surge.stream.push.timeouts", timedOut, AtomicLong::get)
+                .description("Streams ended because a push ran past stream-push-deadline-millis")
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    // Runs on the scheduler, so it never waits on Redis or a client
+    private void schedulePush(Stream stream, Push push) {
+        Future<?> previous = stream.pushing;
+        if (previous != null && !previous.isDone()) {
+            return; // still queued or within its deadline; skip this round
+        }
+        stream.pushing = sender.submit(() -> {
+            if (stream.released.get()) {
+                return;
+            }
+            Future<?> deadline = scheduler.schedule(() -> expire(stream),
+                    properties.getStreamPushDeadlineMillis(), TimeUnit.MILLISECONDS);
+            try {
+                push.send(stream.emitter);
+                if (stream.expired) {
+                    // Finished after all, but its slot is gone
+                    stream.emitter.completeWithError(new TimeoutException("SSE push ran past "
+                            + properties.getStreamPushDeadlineMillis() + "ms"));
+                }
+            } catch (Exception e) {
+                close(stream);
+                stream.emitter.completeWithError(e);
+            } finally {
+                deadline.cancel(false);
+            }
+        });
+    }
+
+    // Frees the slot without touching the emitter, whose lock the stuck send may hold
+    private void expire(Stream stream) {
+        Future<?> pushing = stream.pushing;
+        if (pushing == null || pushing.isDone()) {
+            return;
+        }
+        timedOut.incrementAndGet();
+        stream.expired = true;
+        close(stream);
+        if (pushing.isDone()) {
+            stream.emitter.completeWithError(new TimeoutException("SSE push ran past "
+                    + properties.getStreamPushDeadlineMillis() + "ms"));
+        } else {
+            pushing.cancel(true); // the interrupted send fails and completes the emitter
+        }
+    }
+
+    private void close(Stream stream) {
+        if (stream.future != null) {
+            stream.future.cancel(false);
+        }
+        if (stream.released.compareAndSet(false, true)) {
+            synchronized (this) {
+                if (!stream.priority) {
+                    normalStreams.remove(stream);
+                }
+            }
+            active.decrementAndGet();
+        }
+    }
+
+    private final class Stream {
+        private final SseEmitter emitter;
+        private final boolean priority;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile ScheduledFuture<?> future;
+        private volatile Future<?> pushing;
+        private volatile boolean expired;
+
+        private Stream(SseEmitter emitter, boolean priority) {
+            this.emitter = emitter;
+            this.priority = priority;
+        }
+
+        // Its slot already belongs to someone else; only stop pushing and tell the client
+        private void preempt() {
+            if (future != null) {
+                future.cancel(false);
+            }
+            try {
+                emitter.send(SseEmitter.event().name("reconnect")
+                        .reconnectTime(properties.getAdmissionRetryAfterSeconds() * 1000L)
+                        .data("preempted"));
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
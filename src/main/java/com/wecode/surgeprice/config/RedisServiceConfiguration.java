@@ -0,0 +1,50 @@
+package com.wecode.surgeprice.config;
+
+import com.wecode.surgeprice.partitioning.RegionSupplyState;
+import com.wecode.surgeprice.service.CellRollupService;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.impl.CoalescingRedisService;
+import com.wecode.surgeprice.service.impl.ReadCoalescer;
+import com.wecode.surgeprice.service.impl.RedisResilience;
+import com.wecode.surgeprice.service.impl.RegionLocalRedisService;
+import com.wecode.surgeprice.service.impl.ResilientRedisService;
+import com.wecode.surgeprice.service.impl.RollupRedisService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Assembles the {@link RedisService} seen by controllers, the consumer and the
+ * worker: the storage implementation wrapped in whichever optional layers are enabled.
+ */
+@Configuration
+public class RedisServiceConfiguration {
+
+    @Bean
+    @Primary
+    public RedisService redisService(@Qualifier("redisStorage") RedisService storage,
+                                     CellRollupService rollupService,
+                                     RegionSupplyState regionSupply,
+                                     GeofenceService geofenceService,
+                                     RedisResilience redisResilience,
+                                     ReadCoalescer readCoalescer,
+                                     SurgePricingProperties properties) {
+        RedisService service = storage;
+        if (properties.isHierarchicalRollup()) {
+            service = new RollupRedisService(service, rollupService, properties);
+        }
+        if (properties.isCellAffinePartitioning()) {
+            service = new RegionLocalRedisService(service, regionSupply, geofenceService, properties);
+        }
+        if (properties.isRedisResilienceEnabled()) {
+            service = new ResilientRedisService(service, redisResilience);
+        }
+        if (properties.isReadCoalescingEnabled()) {
+            // Outermost, so local answers are shared too
+            service = new CoalescingRedisService(service, readCoalescer);
+        }
+        return service;
+    }
+}
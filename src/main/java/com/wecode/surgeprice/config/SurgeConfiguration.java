@@ -2,31 +2,44 @@ package com.wecode.surgeprice.config;
 
 
 import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.partitioning.CellAffinePartitioner;
+import com.wecode.surgeprice.partitioning.RegionRebalanceListener;
 import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
 import io.lettuce.core.resource.ClientResources;
 import io.lettuce.core.resource.DefaultClientResources;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisConfiguration;
 import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.RedisStaticMasterReplicaConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.connection.lettuce.LettucePoolingClientConfiguration;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.kafka.annotation.EnableKafka;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.core.*;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.time.Duration;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
 
 @Configuration
 @EnableKafka
@@ -41,32 +54,137 @@ public class SurgeConfiguration {
     @Value("${spring.redis.port:6379}")
     private int redisPort;
 
+    @Value("${spring.redis.cluster.nodes:}")
+    private String redisClusterNodes;
+
+    @Value("${spring.redis.replica.nodes:}")
+    private String redisReplicaNodes;
+
+    @Value("${spring.redis.lettuce.pool.max-active:20}")
+    private int writePoolMaxActive;
+
+    @Value("${spring.redis.lettuce.pool.max-idle:10}")
+    private int writePoolMaxIdle;
+
+    @Value("${spring.redis.lettuce.pool.min-idle:5}")
+    private int writePoolMinIdle;
+
+    @Value("${spring.redis.lettuce.read-pool.max-active:64}")
+    private int readPoolMaxActive;
+
+    @Value("${spring.redis.lettuce.read-pool.max-idle:32}")
+    private int readPoolMaxIdle;
+
+    @Value("${spring.redis.lettuce.read-pool.min-idle:8}")
+    private int readPoolMinIdle;
+
     @Bean
     public H3Core h3Core() throws IOException {
         return H3Core.newInstance();
     }
 
+    @Bean
+    public Clock clock() {
+        return Clock.systemUTC();
+    }
+
     @Bean(destroyMethod = "shutdown")
     public ClientResources clientResources() {
         return DefaultClientResources.create();
     }
 
+    /**
+     * Write path: always the primary. Also used for reads that must be exact.
+     */
     @Bean
+    @Primary
     public LettuceConnectionFactory redisConnectionFactory(ClientResources clientResources) {
-        LettuceClientConfiguration clientConfig = LettuceClientConfiguration.builder()
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                serverConfiguration(false),
+                clientConfiguration(clientResources, ReadFrom.UPSTREAM,
+                        poolConfig(writePoolMaxActive, writePoolMaxIdle, writePoolMinIdle)));
+        // Borrow a dedicated connection per operation so the pool limits actually apply
+        factory.setShareNativeConnection(false);
+        return factory;
+    }
+
+    /**
+     * Read path for staleness-tolerant lookups (counts, surge, availability),
+     * served by a replica when one is configured.
+     */
+    @Bean
+    public LettuceConnectionFactory redisReadConnectionFactory(ClientResources clientResources) {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                serverConfiguration(true),
+                clientConfiguration(clientResources, ReadFrom.REPLICA_PREFERRED,
+                        poolConfig(readPoolMaxActive, readPoolMaxIdle, readPoolMinIdle)));
+        factory.setShareNativeConnection(false);
+        return factory;
+    }
+
+    @Bean
+    @Primary
+    public RedisTemplate<String, String> redisTemplate(
+            @Qualifier("redisConnectionFactory") LettuceConnectionFactory connectionFactory) {
+        return stringTemplate(connectionFactory);
+    }
+
+    @Bean
+    public RedisTemplate<String, String> redisReadTemplate(
+            @Qualifier("redisReadConnectionFactory") LettuceConnectionFactory connectionFactory) {
+        return stringTemplate(connectionFactory);
+    }
+
+    private RedisConfiguration serverConfiguration(boolean readPath) {
+        List<String> clusterNodes = splitNodes(redisClusterNodes);
+        if (!clusterNodes.isEmpty()) {
+            return new RedisClusterConfiguration(clusterNodes);
+        }
+        List<String> replicaNodes = splitNodes(redisReplicaNodes);
+        if (readPath && !replicaNodes.isEmpty()) {
+            RedisStaticMasterReplicaConfiguration config = new RedisStaticMasterReplicaConfiguration(redisHost, redisPort);
+            for (String node : replicaNodes) {
+                int separator = node.lastIndexOf(':');
+                config.addNode(node.substring(0, separator), Integer.parseInt(node.substring(separator + 1)));
+            }
+            return config;
+        }
+        return new RedisStandaloneConfiguration(redisHost, redisPort);
+    }
+
+    private LettuceClientConfiguration clientConfiguration(ClientResources clientResources,
+                                                           ReadFrom readFrom,
+                                                           GenericObjectPoolConfig<?> poolConfig) {
+        ClientOptions clientOptions = splitNodes(redisClusterNodes).isEmpty()
+                ? ClientOptions.builder()
+                        .autoReconnect(true)
+                        .build()
+                : ClusterClientOptions.builder()
+                        .autoReconnect(true)
+                        .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                                .enableAllAdaptiveRefreshTriggers()
+                                .enablePeriodicRefresh(Duration.ofSeconds(30))
+                                .build())
+                        .build();
+        return LettucePoolingClientConfiguration.builder()
                 .clientResources(clientResources)
                 .commandTimeout(Duration.ofMillis(100))
-                .clientOptions(ClientOptions.builder()
-                        .autoReconnect(true)
-                        .build())
+                .clientOptions(clientOptions)
+                .readFrom(readFrom)
+                .poolConfig(poolConfig)
                 .build();
+    }
 
-        RedisStandaloneConfiguration serverConfig = new RedisStandaloneConfiguration(redisHost, redisPort);
-        return new LettuceConnectionFactory(serverConfig, clientConfig);
+    private GenericObjectPoolConfig<?> poolConfig(int maxActive, int maxIdle, int minIdle) {
+        GenericObjectPoolConfig<?> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(maxActive);
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setMaxWait(Duration.ofMillis(100));
+        return poolConfig;
     }
 
-    @Bean
-    public RedisTemplate<String, String> redisTemplate(LettuceConnectionFactory connectionFactory) {
+    private RedisTemplate<String, String> stringTemplate(LettuceConnectionFactory connectionFactory) {
         RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
         template.setKeySerializer(new StringRedisSerializer());
@@ -77,8 +195,15 @@ public class SurgeConfiguration {
         return template;
     }
 
+    private static List<String> splitNodes(String nodes) {
+        return Arrays.stream(nodes.split(","))
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .toList();
+    }
+
     @Bean
-    public ProducerFactory<String, String> producerFactory() {
+    public ProducerFactory<String, String> producerFactory(SurgePricingProperties properties) {
         Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
@@ -88,6 +213,12 @@ public class SurgeConfiguration {
         config.put(ProducerConfig.BATCH_SIZE_CONFIG, "32768");
         config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "snappy");
         config.put(ProducerConfig.MAX_IN_FLIGHT_REQUESTS_PER_CONNECTION, "5");
+        if (properties.isCellAffinePartitioning()) {
+            // Partition by coarse region instead of driver id
+            config.put(ProducerConfig.PARTITIONER_CLASS_CONFIG, CellAffinePartitioner.class);
+            config.put(CellAffinePartitioner.RESOLUTION_CONFIG, properties.getPartitionH3Resolution());
+            config.put(CellAffinePartitioner.LEAF_RESOLUTION_CONFIG, properties.getMaxH3Resolution());
+        }
         return new DefaultKafkaProducerFactory<>(config);
     }
 
@@ -97,13 +228,14 @@ public class SurgeConfiguration {
     }
 
     @Bean
-    public ConsumerFactory<String, String> consumerFactory() {
+    public ConsumerFactory<String, String> consumerFactory(SurgePricingProperties properties) {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "surge-pricing-group");
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
-        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "500");
+        // Starting point; AdaptiveConsumerTuner resizes polls from observed lag
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(properties.getConsumerPollRecords()));
         config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, "1024");
         config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, "100");
         config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true);
@@ -113,25 +245,14 @@ public class SurgeConfiguration {
 
     @Bean
     public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory(
-            ConsumerFactory<String, String> consumerFactory) {
+            ConsumerFactory<String, String> consumerFactory,
+            RegionRebalanceListener rebalanceListener) {
         ConcurrentKafkaListenerContainerFactory<String, String> factory =
                 new ConcurrentKafkaListenerContainerFactory<>();
         factory.setConsumerFactory(consumerFactory);
+        factory.getContainerProperties().setConsumerRebalanceListener(rebalanceListener);
         factory.setConcurrency(4); // 4 concurrent consumers
         factory.setBatchListener(true);
         return factory;
     }
-
-    @Bean(name = "asyncExecutor")
-    public Executor asyncExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(10);
-        executor.setMaxPoolSize(50);
-        executor.setQueueCapacity(10000);
-        executor.setThreadNamePrefix("async-");
-        executor.setWaitForTasksToCompleteOnShutdown(true);
-        executor.setAwaitTerminationSeconds(60);
-        executor.initialize();
-        return executor;
-    }
 }
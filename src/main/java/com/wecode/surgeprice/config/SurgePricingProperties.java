@@ -3,6 +3,11 @@ package com.wecode.surgeprice.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Configuration
 @ConfigurationProperties(prefix = "surge")
 public class SurgePricingProperties {
@@ -22,6 +27,89 @@ public class SurgePricingProperties {
     private double baseFare = 10.0;
     private double pricePerKm = 20.0;
     private double surgeDropThreshold = 0.5; // 50% drop triggers surge
+    private String supplyStore = "zset"; // zset (exact) or hll (approximate)
+    private int hllBucketSeconds = 5;
+    private boolean hierarchicalRollup = true; // store at maxH3Resolution, derive coarser cells
+    private long rollupRefreshMillis = 2000;
+    private boolean stripingEnabled = false;
+    private int stripeCount = 8;
+    private List<String> hotCells = new ArrayList<>(); // "<resolution>:<geofenceId>"
+    private long hotCellWritesPerSecond = 1000;
+    private int hotCellHoldSeconds = 300;
+    private String redisKeySchema = "legacy"; // legacy, tagged or binary
+    private String redisDualWriteSchema = ""; // also written during a schema migration
+    private String store = "redis"; // redis or memory (single-node load testing)
+    private long inMemoryLatencyMicros = 0;
+    private long inMemoryJitterMicros = 0;
+    private boolean decisionLogEnabled = false;
+    private String decisionLogDir = ""; // absolute path, required when enabled
+    private long decisionLogSegmentBytes = 64L * 1024 * 1024;
+    private int decisionLogMaxSegments = 64; // oldest deleted beyond this, 4 GB at the default segment size
+    private int decisionLogMaxAgeHours = 168; // 0 keeps segments until the count limit
+    private int decisionLogQueueCapacity = 65536; // rounded up to a power of two
+    private int quoteTtlSeconds = 120;
+    private int quoteCacheSize = 100_000; // quotes kept in memory per instance
+    private int batchQuoteMaxPairs = 1000;
+    private int consumerPollRecords = 500; // initial max.poll.records
+    private boolean consumerAdaptiveEnabled = true;
+    private long consumerCatchUpLagRecords = 50_000;
+    private int consumerMinPollRecords = 100;
+    private int consumerMaxPollRecords = 10_000;
+    private long consumerTargetPollMillis = 200;
+    private long consumerCatchUpPollMillis = 1000;
+    private int consumerMinRestartSeconds = 60;
+    private long consumerTuneMillis = 5000;
+    private boolean cellAffinePartitioning = false; // partition driver-locations by coarse H3 region
+    private int partitionH3Resolution = 5;
+    private boolean presenceBootstrapEnabled = true; // rebuild presence from driver-locations before ready
+    private int presenceBootstrapTimeoutSeconds = 30;
+    private int presenceBootstrapBatchSize = 5000; // positions per pipelined write
+    private boolean driverRegistryEnabled = true; // in-process latest position per driver
+    private int driverRegistryCapacity = 262144;
+    private int driverRegistryH3Resolution = 9;
+    private int nearestDriversMaxK = 50;
+    private int nearestDriversMaxRings = 20;
+    private List<String> serviceArea = new ArrayList<>(); // polygons, "lat,lng;lat,lng;..."
+    private boolean jitWarmupEnabled = false; // exercise hot paths before readiness
+    private int jitWarmupIterations = 20000;
+    private int jitWarmupMaxSeconds = 10;
+    private boolean admissionEnabled = true; // adaptive concurrency limits on rider pricing endpoints
+    private List<String> admissionPaths = new ArrayList<>(List.of("/rider/book", "/rider/quote", "/rider/quote/batch"));
+    private int admissionInitialLimit = 40;
+    private int admissionMinLimit = 4;
+    private int admissionMaxLimit = 150; // per path
+    private int admissionMaxTotal = 150; // all paths together; below Tomcat's 200 threads
+    private double admissionRttTolerance = 1.5;
+    private int admissionRetryAfterSeconds = 1;
+    private int streamMaxSlots = 5000;
+    private int streamPrioritySlots = 500; // of stream-max-slots, only for priority streams
+    private int streamPushThreads = 4; // schedule pushes only; the work runs on stream-send-threads
+    private long streamPushMillis = 2000;
+    private int streamSendThreads = 32; // run pushes; a stuck client holds one until the deadline
+    private long streamPushDeadlineMillis = 1000; // a push still running after this ends its stream
+    private boolean readCoalescingEnabled = true; // concurrent reads of one cell share a Redis call
+    private long readCacheTtlMillis = 0; // also reuse the result this long; 0 disables
+    private boolean redisResilienceEnabled = true; // breakers, hedged reads, last-known fallback
+    private boolean redisHedgeEnabled = true;
+    private long redisHedgeMinDelayMillis = 5; // floor for the p95-based hedge delay
+    private int redisHedgeThreads = 0; // 0 = 2 x (admission-max-total + stream-send-threads + 1)
+    private long redisReadDeadlineMillis = 80; // below the Lettuce command timeout
+    private int redisBreakerFailureThreshold = 5; // consecutive failures that open an operation's circuit
+    private long redisBreakerOpenMillis = 2000;
+    private long redisLastKnownMaxAgeSeconds = 120;
+    private boolean surgeHistoryEnabled = true; // per-cell ring of past cycles
+    private int surgeHistorySlots = 1440; // ring length; 6h at 15s slots, 17 KB per cell
+    private long surgeHistorySlotSeconds = 15;
+    private int heatmapTileLevels = 2; // tile = cell this many resolutions coarser than the heatmap's
+    private int heatmapMaxCells = 20000; // per bounding-box request
+    private int heatmapMaxTileCells = 60000; // children of every tile a box touches, i.e. cells read
+    private int heatmapCacheTiles = 4096;
+    private boolean jfrEnabled = true; // continuous flight recording, dumped via /actuator/jfr
+    private long jfrMaxAgeSeconds = 900;
+    private long jfrMaxSizeMb = 200;
+    private String jfrDumpDirectory = System.getProperty("java.io.tmpdir") + "/surge-jfr";
+    private Map<String, String> zones = new LinkedHashMap<>(); // id -> "lat,lng;lat,lng;...", first wins
+    private int zoneIndexResolution = 9; // cell size of the zone cover; boundary cells get an exact test
 
     // Getters and Setters
     public int getH3Resolution() { return h3Resolution; }
@@ -82,4 +170,313 @@ public class SurgePricingProperties {
     public void setSurgeDropThreshold(double surgeDropThreshold) {
         this.surgeDropThreshold = surgeDropThreshold;
     }
+
+    public String getSupplyStore() { return supplyStore; }
+    public void setSupplyStore(String supplyStore) { this.supplyStore = supplyStore; }
+
+    public int getHllBucketSeconds() { return hllBucketSeconds; }
+    public void setHllBucketSeconds(int hllBucketSeconds) { this.hllBucketSeconds = hllBucketSeconds; }
+
+    public boolean isHierarchicalRollup() { return hierarchicalRollup; }
+    public void setHierarchicalRollup(boolean hierarchicalRollup) { this.hierarchicalRollup = hierarchicalRollup; }
+
+    public long getRollupRefreshMillis() { return rollupRefreshMillis; }
+    public void setRollupRefreshMillis(long rollupRefreshMillis) { this.rollupRefreshMillis = rollupRefreshMillis; }
+
+    public boolean isStripingEnabled() { return stripingEnabled; }
+    public void setStripingEnabled(boolean stripingEnabled) { this.stripingEnabled = stripingEnabled; }
+
+    public int getStripeCount() { return stripeCount; }
+    public void setStripeCount(int stripeCount) { this.stripeCount = stripeCount; }
+
+    public List<String> getHotCells() { return hotCells; }
+    public void setHotCells(List<String> hotCells) { this.hotCells = hotCells; }
+
+    public long getHotCellWritesPerSecond() { return hotCellWritesPerSecond; }
+    public void setHotCellWritesPerSecond(long hotCellWritesPerSecond) {
+        this.hotCellWritesPerSecond = hotCellWritesPerSecond;
+    }
+
+    public int getHotCellHoldSeconds() { return hotCellHoldSeconds; }
+    public void setHotCellHoldSeconds(int hotCellHoldSeconds) { this.hotCellHoldSeconds = hotCellHoldSeconds; }
+
+    public String getRedisKeySchema() { return redisKeySchema; }
+    public void setRedisKeySchema(String redisKeySchema) { this.redisKeySchema = redisKeySchema; }
+
+    public String getRedisDualWriteSchema() { return redisDualWriteSchema; }
+    public void setRedisDualWriteSchema(String redisDualWriteSchema) {
+        this.redisDualWriteSchema = redisDualWriteSchema;
+    }
+
+    public String getStore() { return store; }
+    public void setStore(String store) { this.store = store; }
+
+    public long getInMemoryLatencyMicros() { return inMemoryLatencyMicros; }
+    public void setInMemoryLatencyMicros(long inMemoryLatencyMicros) {
+        this.inMemoryLatencyMicros = inMemoryLatencyMicros;
+    }
+
+    public long getInMemoryJitterMicros() { return inMemoryJitterMicros; }
+    public void setInMemoryJitterMicros(long inMemoryJitterMicros) {
+        this.inMemoryJitterMicros = inMemoryJitterMicros;
+    }
+
+    public boolean isDecisionLogEnabled() { return decisionLogEnabled; }
+    public void setDecisionLogEnabled(boolean decisionLogEnabled) { this.decisionLogEnabled = decisionLogEnabled; }
+
+    public String getDecisionLogDir() { return decisionLogDir; }
+    public void setDecisionLogDir(String decisionLogDir) { this.decisionLogDir = decisionLogDir; }
+
+    public long getDecisionLogSegmentBytes() { return decisionLogSegmentBytes; }
+    public void setDecisionLogSegmentBytes(long decisionLogSegmentBytes) {
+        this.decisionLogSegmentBytes = decisionLogSegmentBytes;
+    }
+
+    public int getDecisionLogMaxSegments() { return decisionLogMaxSegments; }
+    public void setDecisionLogMaxSegments(int decisionLogMaxSegments) {
+        this.decisionLogMaxSegments = decisionLogMaxSegments;
+    }
+
+    public int getDecisionLogMaxAgeHours() { return decisionLogMaxAgeHours; }
+    public void setDecisionLogMaxAgeHours(int decisionLogMaxAgeHours) {
+        this.decisionLogMaxAgeHours = decisionLogMaxAgeHours;
+    }
+
+    public int getDecisionLogQueueCapacity() { return decisionLogQueueCapacity; }
+    public void setDecisionLogQueueCapacity(int decisionLogQueueCapacity) {
+        this.decisionLogQueueCapacity = decisionLogQueueCapacity;
+    }
+
+    public int getQuoteTtlSeconds() { return quoteTtlSeconds; }
+    public void setQuoteTtlSeconds(int quoteTtlSeconds) { this.quoteTtlSeconds = quoteTtlSeconds; }
+
+    public int getQuoteCacheSize() { return quoteCacheSize; }
+    public void setQuoteCacheSize(int quoteCacheSize) { this.quoteCacheSize = quoteCacheSize; }
+
+    public int getBatchQuoteMaxPairs() { return batchQuoteMaxPairs; }
+    public void setBatchQuoteMaxPairs(int batchQuoteMaxPairs) { this.batchQuoteMaxPairs = batchQuoteMaxPairs; }
+
+    public int getConsumerPollRecords() { return consumerPollRecords; }
+    public void setConsumerPollRecords(int consumerPollRecords) { this.consumerPollRecords = consumerPollRecords; }
+
+    public boolean isConsumerAdaptiveEnabled() { return consumerAdaptiveEnabled; }
+    public void setConsumerAdaptiveEnabled(boolean consumerAdaptiveEnabled) {
+        this.consumerAdaptiveEnabled = consumerAdaptiveEnabled;
+    }
+
+    public long getConsumerCatchUpLagRecords() { return consumerCatchUpLagRecords; }
+    public void setConsumerCatchUpLagRecords(long consumerCatchUpLagRecords) {
+        this.consumerCatchUpLagRecords = consumerCatchUpLagRecords;
+    }
+
+    public int getConsumerMinPollRecords() { return consumerMinPollRecords; }
+    public void setConsumerMinPollRecords(int consumerMinPollRecords) {
+        this.consumerMinPollRecords = consumerMinPollRecords;
+    }
+
+    public int getConsumerMaxPollRecords() { return consumerMaxPollRecords; }
+    public void setConsumerMaxPollRecords(int consumerMaxPollRecords) {
+        this.consumerMaxPollRecords = consumerMaxPollRecords;
+    }
+
+    public long getConsumerTargetPollMillis() { return consumerTargetPollMillis; }
+    public void setConsumerTargetPollMillis(long consumerTargetPollMillis) {
+        this.consumerTargetPollMillis = consumerTargetPollMillis;
+    }
+
+    public long getConsumerCatchUpPollMillis() { return consumerCatchUpPollMillis; }
+    public void setConsumerCatchUpPollMillis(long consumerCatchUpPollMillis) {
+        this.consumerCatchUpPollMillis = consumerCatchUpPollMillis;
+    }
+
+    public int getConsumerMinRestartSeconds() { return consumerMinRestartSeconds; }
+    public void setConsumerMinRestartSeconds(int consumerMinRestartSeconds) {
+        this.consumerMinRestartSeconds = consumerMinRestartSeconds;
+    }
+
+    public long getConsumerTuneMillis() { return consumerTuneMillis; }
+    public void setConsumerTuneMillis(long consumerTuneMillis) { this.consumerTuneMillis = consumerTuneMillis; }
+
+    public boolean isCellAffinePartitioning() { return cellAffinePartitioning; }
+    public void setCellAffinePartitioning(boolean cellAffinePartitioning) {
+        this.cellAffinePartitioning = cellAffinePartitioning;
+    }
+
+    public int getPartitionH3Resolution() { return partitionH3Resolution; }
+    public void setPartitionH3Resolution(int partitionH3Resolution) {
+        this.partitionH3Resolution = partitionH3Resolution;
+    }
+
+    public boolean isPresenceBootstrapEnabled() { return presenceBootstrapEnabled; }
+    public void setPresenceBootstrapEnabled(boolean presenceBootstrapEnabled) {
+        this.presenceBootstrapEnabled = presenceBootstrapEnabled;
+    }
+
+    public int getPresenceBootstrapTimeoutSeconds() { return presenceBootstrapTimeoutSeconds; }
+    public void setPresenceBootstrapTimeoutSeconds(int presenceBootstrapTimeoutSeconds) {
+        this.presenceBootstrapTimeoutSeconds = presenceBootstrapTimeoutSeconds;
+    }
+
+    public int getPresenceBootstrapBatchSize() { return presenceBootstrapBatchSize; }
+    public void setPresenceBootstrapBatchSize(int presenceBootstrapBatchSize) {
+        this.presenceBootstrapBatchSize = presenceBootstrapBatchSize;
+    }
+
+    public boolean isDriverRegistryEnabled() { return driverRegistryEnabled; }
+    public void setDriverRegistryEnabled(boolean driverRegistryEnabled) {
+        this.driverRegistryEnabled = driverRegistryEnabled;
+    }
+
+    public int getDriverRegistryCapacity() { return driverRegistryCapacity; }
+    public void setDriverRegistryCapacity(int driverRegistryCapacity) {
+        this.driverRegistryCapacity = driverRegistryCapacity;
+    }
+
+    public int getDriverRegistryH3Resolution() { return driverRegistryH3Resolution; }
+    public void setDriverRegistryH3Resolution(int driverRegistryH3Resolution) {
+        this.driverRegistryH3Resolution = driverRegistryH3Resolution;
+    }
+
+    public int getNearestDriversMaxK() { return nearestDriversMaxK; }
+    public void setNearestDriversMaxK(int nearestDriversMaxK) { this.nearestDriversMaxK = nearestDriversMaxK; }
+
+    public int getNearestDriversMaxRings() { return nearestDriversMaxRings; }
+    public void setNearestDriversMaxRings(int nearestDriversMaxRings) {
+        this.nearestDriversMaxRings = nearestDriversMaxRings;
+    }
+
+    public List<String> getServiceArea() { return serviceArea; }
+    public void setServiceArea(List<String> serviceArea) { this.serviceArea = serviceArea; }
+
+    public boolean isJitWarmupEnabled() { return jitWarmupEnabled; }
+    public void setJitWarmupEnabled(boolean jitWarmupEnabled) { this.jitWarmupEnabled = jitWarmupEnabled; }
+
+    public int getJitWarmupIterations() { return jitWarmupIterations; }
+    public void setJitWarmupIterations(int jitWarmupIterations) { this.jitWarmupIterations = jitWarmupIterations; }
+
+    public int getJitWarmupMaxSeconds() { return jitWarmupMaxSeconds; }
+    public void setJitWarmupMaxSeconds(int jitWarmupMaxSeconds) { this.jitWarmupMaxSeconds = jitWarmupMaxSeconds; }
+
+    public boolean isAdmissionEnabled() { return admissionEnabled; }
+    public void setAdmissionEnabled(boolean admissionEnabled) { this.admissionEnabled = admissionEnabled; }
+
+    public List<String> getAdmissionPaths() { return admissionPaths; }
+    public void setAdmissionPaths(List<String> admissionPaths) { this.admissionPaths = admissionPaths; }
+
+    public int getAdmissionInitialLimit() { return admissionInitialLimit; }
+    public void setAdmissionInitialLimit(int admissionInitialLimit) {
+        this.admissionInitialLimit = admissionInitialLimit;
+    }
+
+    public int getAdmissionMinLimit() { return admissionMinLimit; }
+    public void setAdmissionMinLimit(int admissionMinLimit) { this.admissionMinLimit = admissionMinLimit; }
+
+    public int getAdmissionMaxLimit() { return admissionMaxLimit; }
+    public void setAdmissionMaxLimit(int admissionMaxLimit) { this.admissionMaxLimit = admissionMaxLimit; }
+
+    public int getAdmissionMaxTotal() { return admissionMaxTotal; }
+    public void setAdmissionMaxTotal(int admissionMaxTotal) { this.admissionMaxTotal = admissionMaxTotal; }
+
+    public double getAdmissionRttTolerance() { return admissionRttTolerance; }
+    public void setAdmissionRttTolerance(double admissionRttTolerance) {
+        this.admissionRttTolerance = admissionRttTolerance;
+    }
+
+    public int getAdmissionRetryAfterSeconds() { return admissionRetryAfterSeconds; }
+    public void setAdmissionRetryAfterSeconds(int admissionRetryAfterSeconds) {
+        this.admissionRetryAfterSeconds = admissionRetryAfterSeconds;
+    }
+
+    public int getStreamMaxSlots() { return streamMaxSlots; }
+    public void setStreamMaxSlots(int streamMaxSlots) { this.streamMaxSlots = streamMaxSlots; }
+
+    public int getStreamPrioritySlots() { return streamPrioritySlots; }
+    public void setStreamPrioritySlots(int streamPrioritySlots) { this.streamPrioritySlots = streamPrioritySlots; }
+
+    public int getStreamPushThreads() { return streamPushThreads; }
+    public void setStreamPushThreads(int streamPushThreads) { this.streamPushThreads = streamPushThreads; }
+
+    public long getStreamPushMillis() { return streamPushMillis; }
+    public void setStreamPushMillis(long streamPushMillis) { this.streamPushMillis = streamPushMillis; }
+
+    public int getStreamSendThreads() { return streamSendThreads; }
+    public void setStreamSendThreads(int streamSendThreads) { this.streamSendThreads = streamSendThreads; }
+
+    public long getStreamPushDeadlineMillis() { return streamPushDeadlineMillis; }
+    public void setStreamPushDeadlineMillis(long streamPushDeadlineMillis) {
+        this.streamPushDeadlineMillis = streamPushDeadlineMillis;
+    }
+
+    public boolean isReadCoalescingEnabled() { return readCoalescingEnabled; }
+    public void setReadCoalescingEnabled(boolean readCoalescingEnabled) { this.readCoalescingEnabled = readCoalescingEnabled; }
+
+    public long getReadCacheTtlMillis() { return readCacheTtlMillis; }
+    public void setReadCacheTtlMillis(long readCacheTtlMillis) { this.readCacheTtlMillis = readCacheTtlMillis; }
+
+    public boolean isJfrEnabled() { return jfrEnabled; }
+    public void setJfrEnabled(boolean jfrEnabled) { this.jfrEnabled = jfrEnabled; }
+
+    public long getJfrMaxAgeSeconds() { return jfrMaxAgeSeconds; }
+    public void setJfrMaxAgeSeconds(long jfrMaxAgeSeconds) { this.jfrMaxAgeSeconds = jfrMaxAgeSeconds; }
+
+    public long getJfrMaxSizeMb() { return jfrMaxSizeMb; }
+    public void setJfrMaxSizeMb(long jfrMaxSizeMb) { this.jfrMaxSizeMb = jfrMaxSizeMb; }
+
+    public String getJfrDumpDirectory() { return jfrDumpDirectory; }
+    public void setJfrDumpDirectory(String jfrDumpDirectory) { this.jfrDumpDirectory = jfrDumpDirectory; }
+
+    public boolean isRedisResilienceEnabled() { return redisResilienceEnabled; }
+    public void setRedisResilienceEnabled(boolean redisResilienceEnabled) { this.redisResilienceEnabled = redisResilienceEnabled; }
+
+    public boolean isRedisHedgeEnabled() { return redisHedgeEnabled; }
+    public void setRedisHedgeEnabled(boolean redisHedgeEnabled) { this.redisHedgeEnabled = redisHedgeEnabled; }
+
+    public long getRedisHedgeMinDelayMillis() { return redisHedgeMinDelayMillis; }
+    public void setRedisHedgeMinDelayMillis(long redisHedgeMinDelayMillis) { this.redisHedgeMinDelayMillis = redisHedgeMinDelayMillis; }
+
+    public int getRedisHedgeThreads() { return redisHedgeThreads; }
+    public void setRedisHedgeThreads(int redisHedgeThreads) { this.redisHedgeThreads = redisHedgeThreads; }
+
+    public long getRedisReadDeadlineMillis() { return redisReadDeadlineMillis; }
+    public void setRedisReadDeadlineMillis(long redisReadDeadlineMillis) { this.redisReadDeadlineMillis = redisReadDeadlineMillis; }
+
+    public int getRedisBreakerFailureThreshold() { return redisBreakerFailureThreshold; }
+    public void setRedisBreakerFailureThreshold(int redisBreakerFailureThreshold) {
+        this.redisBreakerFailureThreshold = redisBreakerFailureThreshold;
+    }
+
+    public long getRedisBreakerOpenMillis() { return redisBreakerOpenMillis; }
+    public void setRedisBreakerOpenMillis(long redisBreakerOpenMillis) { this.redisBreakerOpenMillis = redisBreakerOpenMillis; }
+
+    public long getRedisLastKnownMaxAgeSeconds() { return redisLastKnownMaxAgeSeconds; }
+    public void setRedisLastKnownMaxAgeSeconds(long redisLastKnownMaxAgeSeconds) {
+        this.redisLastKnownMaxAgeSeconds = redisLastKnownMaxAgeSeconds;
+    }
+
+    public int getHeatmapTileLevels() { return heatmapTileLevels; }
+    public void setHeatmapTileLevels(int heatmapTileLevels) { this.heatmapTileLevels = heatmapTileLevels; }
+
+    public int getHeatmapMaxCells() { return heatmapMaxCells; }
+    public void setHeatmapMaxCells(int heatmapMaxCells) { this.heatmapMaxCells = heatmapMaxCells; }
+
+    public int getHeatmapMaxTileCells() { return heatmapMaxTileCells; }
+    public void setHeatmapMaxTileCells(int heatmapMaxTileCells) { this.heatmapMaxTileCells = heatmapMaxTileCells; }
+
+    public int getHeatmapCacheTiles() { return heatmapCacheTiles; }
+    public void setHeatmapCacheTiles(int heatmapCacheTiles) { this.heatmapCacheTiles = heatmapCacheTiles; }
+
+    public boolean isSurgeHistoryEnabled() { return surgeHistoryEnabled; }
+    public void setSurgeHistoryEnabled(boolean surgeHistoryEnabled) { this.surgeHistoryEnabled = surgeHistoryEnabled; }
+
+    public int getSurgeHistorySlots() { return surgeHistorySlots; }
+    public void setSurgeHistorySlots(int surgeHistorySlots) { this.surgeHistorySlots = surgeHistorySlots; }
+
+    public long getSurgeHistorySlotSeconds() { return surgeHistorySlotSeconds; }
+    public void setSurgeHistorySlotSeconds(long surgeHistorySlotSeconds) { this.surgeHistorySlotSeconds = surgeHistorySlotSeconds; }
+
+    public Map<String, String> getZones() { return zones; }
+    public void setZones(Map<String, String> zones) { this.zones = zones; }
+
+    public int getZoneIndexResolution() { return zoneIndexResolution; }
+    public void setZoneIndexResolution(int zoneIndexResolution) { this.zoneIndexResolution = zoneIndexResolution; }
 }
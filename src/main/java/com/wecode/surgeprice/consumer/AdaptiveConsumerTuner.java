@@ -0,0 +1,207 @@
+package com.wecode.surgeprice.consumer;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives the driver-location listener from observed consumer lag.
+ * <ul>
+ *   <li>{@code NORMAL}: every record is applied, polls are sized to finish in
+ *       {@code consumer-target-poll-millis}.</li>
+ *   <li>{@code CATCH_UP}: entered once lag reaches {@code consumer-catch-up-lag-records}
+ *       and left below half of it. Each poll is collapsed to the newest location
+ *       per driver, and polls are sized for {@code consumer-catch-up-poll-millis}
+ *       with larger fetches.</li>
+ * </ul>
+ * Poll size and fetch settings are consumer configs, so applying them restarts
+ * the listener container. That happens when the mode differs from the one
+ * whose settings the listener runs with, or when the target poll size moves
+ * by 2x or more, and at most once per {@code consumer-min-restart-seconds}.
+ * A switch held back by that limit is applied on a later tick.
+ */
+@Service
+public class AdaptiveConsumerTuner implements MeterBinder {
+
+    public enum Mode { NORMAL, CATCH_UP }
+
+    public static final String LISTENER_ID = "driver-locations";
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConsumerTuner.class);
+    private static final long LAG_STALE_MILLIS = 30_000;
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final KafkaListenerEndpointRegistry registry;
+    private final SurgePricingProperties properties;
+    private final Map<TopicPartition, PartitionLag> lagByPartition = new ConcurrentHashMap<>();
+    private final Map<Mode, LongAdder> received = new EnumMap<>(Mode.class);
+    private final Map<Mode, LongAdder> applied = new EnumMap<>(Mode.class);
+    private final Map<Mode, LongAdder> busyNanos = new EnumMap<>(Mode.class);
+    private volatile Mode mode = Mode.NORMAL;
+    private volatile Mode appliedMode = Mode.NORMAL; // fetch settings the listener was last started with
+    private volatile double nanosPerRecord;
+    private volatile int pollRecords;
+    private volatile long lastRestart;
+
+    public AdaptiveConsumerTuner(KafkaListenerEndpointRegistry registry, SurgePricingProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+        this.pollRecords = properties.getConsumerPollRecords();
+        for (Mode m : Mode.values()) {
+            received.put(m, new LongAdder());
+            applied.put(m, new LongAdder());
+            busyNanos.put(m, new LongAdder());
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Reads the lag of the calling listener thread's partitions from the
+     * consumer's cached fetch positions; no broker round trip.
+     */
+    public void recordLag(Consumer<?, ?> consumer) {
+        long now = System.currentTimeMillis();
+        for (TopicPartition partition : consumer.assignment()) {
+            consumer.currentLag(partition).ifPresent(lag -> lagByPartition.put(partition, new PartitionLag(lag, now)));
+        }
+    }
+
+    /**
+     * @param receivedRecords records in the poll
+     * @param appliedRecords  records left after catch-up collapsing
+     */
+    public void recordPoll(Mode pollMode, int receivedRecords, int appliedRecords, long elapsedNanos) {
+        received.get(pollMode).add(receivedRecords);
+        applied.get(pollMode).add(appliedRecords);
+        busyNanos.get(pollMode).add(elapsedNanos);
+        if (receivedRecords > 0) {
+            double sample = (double) elapsedNanos / receivedRecords;
+            nanosPerRecord = nanosPerRecord == 0 ? sample : EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * nanosPerRecord;
+        }
+    }
+
+    public long totalLag() {
+        long staleBefore = System.currentTimeMillis() - LAG_STALE_MILLIS;
+        lagByPartition.values().removeIf(lag -> lag.observedAt < staleBefore);
+        long total = 0;
+        for (PartitionLag lag : lagByPartition.values()) {
+            total += lag.records;
+        }
+        return total;
+    }
+
+    @Scheduled(fixedDelayString = "${surge.consumer-tune-millis:5000}", initialDelay = 10000)
+    public void tune() {
+        if (!properties.isConsumerAdaptiveEnabled()) {
+            return;
+        }
+        long lag = totalLag();
+        long threshold = properties.getConsumerCatchUpLagRecords();
+        Mode next = mode == Mode.NORMAL
+                ? (lag >= threshold ? Mode.CATCH_UP : Mode.NORMAL)
+                : (lag <= threshold / 2 ? Mode.NORMAL : Mode.CATCH_UP);
+        if (next != mode) {
+            logger.info("Driver location consumer switching to {} (lag {} records)", next, lag);
+            mode = next;
+        }
+
+        int target = targetPollRecords(next);
+        boolean resize = target >= pollRecords * 2 || target * 2 <= pollRecords;
+        long now = System.currentTimeMillis();
+        if ((next != appliedMode || resize) && now - lastRestart >= properties.getConsumerMinRestartSeconds() * 1000L) {
+            applyPollSettings(next, target, now);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        Gauge.builder("surge.ingest.consumer.lag", this, AdaptiveConsumerTuner::totalLag)
+                .description("Records behind the log end over assigned driver-location partitions")
+                .baseUnit("records")
+                .register(meterRegistry);
+        Gauge.builder("surge.ingest.catchup", this, tuner -> tuner.mode == Mode.CATCH_UP ? 1 : 0)
+                .description("1 while the consumer collapses polls to the newest location per driver")
+                .register(meterRegistry);
+        Gauge.builder("surge.ingest.poll.records", this, tuner -> tuner.pollRecords)
+                .description("max.poll.records currently applied to the listener")
+                .register(meterRegistry);
+        for (Mode m : Mode.values()) {
+            String tag = m.name().toLowerCase();
+            FunctionCounter.builder("surge.ingest.records.received", received.get(m), LongAdder::sum)
+                    .tag("mode", tag)
+                    .register(meterRegistry);
+            FunctionCounter.builder("surge.ingest.records.applied", applied.get(m), LongAdder::sum)
+                    .tag("mode", tag)
+                    .register(meterRegistry);
+            FunctionCounter.builder("surge.ingest.busy.seconds", busyNanos.get(m), adder -> adder.sum() / 1e9)
+                    .tag("mode", tag)
+                    .register(meterRegistry);
+        }
+    }
+
+    private int targetPollRecords(Mode target) {
+        if (nanosPerRecord <= 0) {
+            return pollRecords;
+        }
+        long budgetMillis = target == Mode.CATCH_UP
+                ? properties.getConsumerCatchUpPollMillis()
+                : properties.getConsumerTargetPollMillis();
+        long records = (long) (budgetMillis * 1_000_000L / nanosPerRecord);
+        return (int) Math.max(properties.getConsumerMinPollRecords(),
+                Math.min(records, properties.getConsumerMaxPollRecords()));
+    }
+
+    private void applyPollSettings(Mode target, int records, long now) {
+        MessageListenerContainer container = registry.getListenerContainer(LISTENER_ID);
+        if (container == null || !container.isRunning()) {
+            return;
+        }
+        boolean catchUp = target == Mode.CATCH_UP;
+        Properties overrides = new Properties();
+        overrides.setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(records));
+        overrides.setProperty(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, catchUp ? "1048576" : "1024");
+        overrides.setProperty(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, catchUp ? "500" : "100");
+        overrides.setProperty(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG, catchUp ? "8388608" : "1048576");
+
+        logger.info("Restarting driver location listener: mode={}, max.poll.records {} -> {}",
+                target, pollRecords, records);
+        lastRestart = now;
+        pollRecords = records;
+        appliedMode = target;
+        // stop() waits for the listener threads, so it must not run on one of them
+        container.stop(() -> {
+            container.getContainerProperties().setKafkaConsumerProperties(overrides);
+            container.start();
+        });
+    }
+
+    private static class PartitionLag {
+        private final long records;
+        private final long observedAt;
+
+        private PartitionLag(long records, long observedAt) {
+            this.records = records;
+            this.observedAt = observedAt;
+        }
+    }
+}
@@ -4,75 +4,313 @@ package com.wecode.surgeprice.consumer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wecode.surgeprice.config.SurgePricingProperties;
 import com.wecode.surgeprice.dto.DriverLocationDTO;
+import com.wecode.surgeprice.jfr.IngestBatchEvent;
+import com.wecode.surgeprice.registry.DriverRegistry;
 import com.wecode.surgeprice.service.GeofenceService;
 import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.ZoneIndex;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Applies driver positions in event time. A message whose timestamp is older
+ * than the freshness window is dropped before any H3 or Redis work, and so is
+ * one older than the newest position already applied for that driver. During
+ * catch-up after an outage most of the backlog is skipped this way.
+ */
 @Service
-public class DriverLocationConsumer {
+public class DriverLocationConsumer implements MeterBinder {
 
     private static final Logger logger = LoggerFactory.getLogger(DriverLocationConsumer.class);
 
     private final ObjectMapper objectMapper;
     private final GeofenceService geofenceService;
     private final RedisService redisService;
+    private final DriverRegistry driverRegistry;
     private final SurgePricingProperties properties;
     private final AtomicLong processedCount = new AtomicLong(0);
+    private final AtomicLong staleDropped = new AtomicLong(0);
+    private final AtomicLong outOfOrderDropped = new AtomicLong(0);
+    private final AtomicLong watermark = new AtomicLong(0); // newest event time applied
+    private final Map<String, Long> lastSeen = new ConcurrentHashMap<>();
 
     public DriverLocationConsumer(ObjectMapper objectMapper,
                                   GeofenceService geofenceService,
                                   RedisService redisService,
+                                  DriverRegistry driverRegistry,
                                   SurgePricingProperties properties) {
         this.objectMapper = objectMapper;
         this.geofenceService = geofenceService;
         this.redisService = redisService;
+        this.driverRegistry = driverRegistry;
         this.properties = properties;
     }
 
-    @KafkaListener(topics = "driver-locations", containerFactory = "kafkaListenerContainerFactory")
     public void consumeLocations(List<String> messages) {
+        IngestBatchEvent event = new IngestBatchEvent();
+        event.begin();
         long startTime = System.currentTimeMillis();
+        long staleBefore = startTime - properties.getDataFreshnessSeconds() * 1000L;
+        int[] resolutions = storedResolutions();
+        String[] geofenceIds = new String[resolutions.length];
         int successCount = 0;
+        int dropped = 0;
+        int failed = 0;
+        int unwritten = 0;
+        DataAccessException lastRedisError = null;
+        long parseTime = 0;
+        long h3Time = 0;
+        long redisTime = 0;
 
         for (String message : messages) {
             try {
+                long phaseStart = System.nanoTime();
                 DriverLocationDTO location = objectMapper.readValue(message, DriverLocationDTO.class);
-
-                // Update all supported resolutions to allow dynamic pricing
-                int minRes = properties.getMinH3Resolution();
-                int maxRes = properties.getMaxH3Resolution();
-                if (minRes > maxRes) {
-                    minRes = properties.getH3Resolution();
-                    maxRes = properties.getH3Resolution();
+                long parsed = System.nanoTime();
+                parseTime += parsed - phaseStart;
+                long eventTime = eventTime(location, startTime);
+                if (eventTime < staleBefore) {
+                    staleDropped.incrementAndGet();
+                    dropped++;
+                    continue;
                 }
-                for (int res = minRes; res <= maxRes; res++) {
-                    String geofenceId = geofenceService.getGeofenceId(location.getLat(), location.getLng(), res);
-                    redisService.addDriver(res, geofenceId, location.getDriverId());
+                if (!advanceLastSeen(location.getDriverId(), eventTime)) {
+                    outOfOrderDropped.incrementAndGet();
+                    dropped++;
+                    continue;
                 }
-
+                String zoneId = locate(location.getDriverId(), location.getLat(), location.getLng(), eventTime,
+                        resolutions, geofenceIds);
+                long located = System.nanoTime();
+                h3Time += located - parsed;
+                store(location.getDriverId(), eventTime, resolutions, geofenceIds, zoneId);
+                redisTime += System.nanoTime() - located;
+                watermark.accumulateAndGet(eventTime, Math::max);
                 successCount++;
 
+            } catch (DataAccessException e) {
+                // An open circuit fails every message the same way; one line per batch is enough
+                failed++;
+                unwritten++;
+                lastRedisError = e;
             } catch (Exception e) {
+                failed++;
                 logger.error("Failed to process location message: {}", message, e);
             }
         }
+        if (unwritten > 0) {
+            logger.warn("{} of {} location messages not written to Redis: {}",
+                    unwritten, messages.size(), lastRedisError.getMessage());
+        }
 
         long elapsed = System.currentTimeMillis() - startTime;
         long total = processedCount.addAndGet(successCount);
 
         if (total % 10000 == 0) {
-            logger.info("Processed batch: {} messages in {}ms, total processed: {}",
-                    successCount, elapsed, total);
+            logger.info("Processed batch: {} messages in {}ms, total processed: {}, lag: {}ms",
+                    successCount, elapsed, total, getLagMillis());
         }
+
+        event.messages = messages.size();
+        event.applied = successCount;
+        event.dropped = dropped;
+        event.failed = failed;
+        event.parseTime = parseTime;
+        event.h3Time = h3Time;
+        event.redisTime = redisTime;
+        event.commit();
+    }
+
+    /**
+     * Writes one driver position to every supported resolution, scored with
+     * {@code timestamp}. Shared by the Kafka listener and the offline replay engine.
+     */
+    public void recordLocation(String driverId, double lat, double lng, long timestamp) {
+        int[] resolutions = storedResolutions();
+        String[] geofenceIds = new String[resolutions.length];
+        String zoneId = locate(driverId, lat, lng, timestamp, resolutions, geofenceIds);
+        store(driverId, timestamp, resolutions, geofenceIds, zoneId);
+    }
+
+    /**
+     * Bulk path for the cold-start rebuild. Applies the same event-time checks
+     * as the listener, so a live update that got in first is kept, and writes
+     * each resolution in pipelined batches of {@code presenceBootstrapBatchSize}.
+     *
+     * @return number of positions applied
+     */
+    public int recordLocations(Collection<DriverLocationDTO> locations) {
+        long now = System.currentTimeMillis();
+        long staleBefore = now - properties.getDataFreshnessSeconds() * 1000L;
+        int batchSize = Math.max(1, properties.getPresenceBootstrapBatchSize());
+        String[] driverIds = new String[batchSize];
+        double[] lats = new double[batchSize];
+        double[] lngs = new double[batchSize];
+        long[] timestamps = new long[batchSize];
+        int count = 0;
+        int applied = 0;
+
+        for (DriverLocationDTO location : locations) {
+            long eventTime = eventTime(location, now);
+            if (eventTime < staleBefore) {
+                staleDropped.incrementAndGet();
+                continue;
+            }
+            if (!advanceLastSeen(location.getDriverId(), eventTime)) {
+                outOfOrderDropped.incrementAndGet();
+                continue;
+            }
+            driverRegistry.update(location.getDriverId(), location.getLat(), location.getLng(), eventTime);
+            driverIds[count] = location.getDriverId();
+            lats[count] = location.getLat();
+            lngs[count] = location.getLng();
+            timestamps[count] = eventTime;
+            watermark.accumulateAndGet(eventTime, Math::max);
+            applied++;
+            if (++count == batchSize) {
+                writeBatch(driverIds, lats, lngs, timestamps, count);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            writeBatch(driverIds, lats, lngs, timestamps, count);
+        }
+        processedCount.addAndGet(applied);
+        return applied;
+    }
+
+    /**
+     * Entries past the freshness window can go: any message they would reject is stale anyway.
+     */
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void evictIdleDrivers() {
+        long staleBefore = System.currentTimeMillis() - properties.getDataFreshnessSeconds() * 1000L;
+        lastSeen.values().removeIf(seen -> seen < staleBefore);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("surge.ingest.watermark", watermark, AtomicLong::get)
+                .description("Newest driver location event time applied, epoch millis")
+                .register(registry);
+        Gauge.builder("surge.ingest.lag", this, DriverLocationConsumer::getLagMillis)
+                .description("Wall clock minus the ingest watermark")
+                .baseUnit("milliseconds")
+                .register(registry);
+        FunctionCounter.builder("surge.ingest.dropped", staleDropped, AtomicLong::get)
+                .description("Driver locations skipped before any H3 or Redis work")
+                .tag("reason", "stale")
+                .register(registry);
+        FunctionCounter.builder("surge.ingest.dropped", outOfOrderDropped, AtomicLong::get)
+                .description("Driver locations skipped before any H3 or Redis work")
+                .tag("reason", "out_of_order")
+                .register(registry);
     }
 
     public long getProcessedCount() {
         return processedCount.get();
     }
+
+    public long getWatermark() {
+        return watermark.get();
+    }
+
+    public long getLagMillis() {
+        long applied = watermark.get();
+        return applied > 0 ? System.currentTimeMillis() - applied : 0;
+    }
+
+    // H3 side of a position: the registry slot, the cell per stored resolution and the zone, if any
+    private String locate(String driverId, double lat, double lng, long timestamp,
+                          int[] resolutions, String[] geofenceIds) {
+        driverRegistry.update(driverId, lat, lng, timestamp);
+        for (int i = 0; i < resolutions.length; i++) {
+            geofenceIds[i] = geofenceService.getGeofenceId(lat, lng, resolutions[i]);
+        }
+        return geofenceService.getZoneId(lat, lng);
+    }
+
+    // A driver in a zone counts towards both the zone and its cells
+    private void store(String driverId, long timestamp, int[] resolutions, String[] geofenceIds, String zoneId) {
+        for (int i = 0; i < resolutions.length; i++) {
+            redisService.addDriver(resolutions[i], geofenceIds[i], driverId, timestamp);
+        }
+        if (zoneId != null) {
+            redisService.addDriver(ZoneIndex.ZONE_RESOLUTION, zoneId, driverId, timestamp);
+        }
+    }
+
+    private void writeBatch(String[] driverIds, double[] lats, double[] lngs, long[] timestamps, int count) {
+        String[] geofenceIds = new String[count];
+        for (int res : storedResolutions()) {
+            for (int i = 0; i < count; i++) {
+                geofenceIds[i] = geofenceService.getGeofenceId(lats[i], lngs[i], res);
+            }
+            redisService.addDrivers(res, geofenceIds, driverIds, timestamps, count);
+        }
+        // Drivers inside a zone, packed to the front
+        String[] zoneDriverIds = new String[count];
+        long[] zoneTimestamps = new long[count];
+        int inZones = 0;
+        for (int i = 0; i < count; i++) {
+            String zoneId = geofenceService.getZoneId(lats[i], lngs[i]);
+            if (zoneId != null) {
+                geofenceIds[inZones] = zoneId;
+                zoneDriverIds[inZones] = driverIds[i];
+                zoneTimestamps[inZones] = timestamps[i];
+                inZones++;
+            }
+        }
+        if (inZones > 0) {
+            redisService.addDrivers(ZoneIndex.ZONE_RESOLUTION, geofenceIds, zoneDriverIds, zoneTimestamps, inZones);
+        }
+    }
+
+    private int[] storedResolutions() {
+        int minRes = properties.getMinH3Resolution();
+        int maxRes = properties.getMaxH3Resolution();
+        if (minRes > maxRes) {
+            minRes = properties.getH3Resolution();
+            maxRes = properties.getH3Resolution();
+        }
+        // Coarser resolutions are rolled up from the finest cell
+        minRes = Math.max(minRes, geofenceService.getStorageResolution(minRes));
+        int[] resolutions = new int[maxRes - minRes + 1];
+        for (int i = 0; i < resolutions.length; i++) {
+            resolutions[i] = minRes + i;
+        }
+        return resolutions;
+    }
+
+    // Client clocks can run ahead; never score a position into the future
+    private static long eventTime(DriverLocationDTO location, long now) {
+        return location.getTimestamp() != null ? Math.min(location.getTimestamp(), now) : now;
+    }
+
+    // Partitions are chosen by cell (CellAffinePartitioner), so a driver crossing a cell edge can have
+    // updates on two listener threads at once, next to the bootstrap; check and update are one atomic step
+    private boolean advanceLastSeen(String driverId, long eventTime) {
+        boolean[] advanced = new boolean[1];
+        lastSeen.compute(driverId, (id, previous) -> {
+            if (previous != null && eventTime <= previous) {
+                return previous;
+            }
+            advanced[0] = true;
+            return eventTime;
+        });
+        return advanced[0];
+    }
 }
\ No newline at end of file
@@ -0,0 +1,72 @@
+package com.wecode.surgeprice.consumer;
+
+import com.wecode.surgeprice.consumer.AdaptiveConsumerTuner.Mode;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kafka entry point for driver locations. Reports lag to the
+ * {@link AdaptiveConsumerTuner} and, in catch-up mode, keeps only the newest
+ * record per driver and partition of each poll before handing it to
+ * {@link DriverLocationConsumer}.
+ */
+@Service
+public class DriverLocationListener {
+
+    private final DriverLocationConsumer locationConsumer;
+    private final AdaptiveConsumerTuner tuner;
+
+    public DriverLocationListener(DriverLocationConsumer locationConsumer, AdaptiveConsumerTuner tuner) {
+        this.locationConsumer = locationConsumer;
+        this.tuner = tuner;
+    }
+
+    @KafkaListener(id = AdaptiveConsumerTuner.LISTENER_ID, idIsGroup = false,
+            topics = "driver-locations", containerFactory = "kafkaListenerContainerFactory")
+    public void onLocations(List<ConsumerRecord<String, String>> records, Consumer<?, ?> kafkaConsumer) {
+        long start = System.nanoTime();
+        tuner.recordLag(kafkaConsumer);
+        Mode mode = tuner.mode();
+        List<String> messages = mode == Mode.CATCH_UP ? newestPerDriver(records) : values(records);
+        locationConsumer.consumeLocations(messages);
+        tuner.recordPoll(mode, records.size(), messages.size(), System.nanoTime() - start);
+    }
+
+    /**
+     * Records are keyed by driver id and ordered within a partition, so the
+     * last record per partition and key is that partition's newest position
+     * for the driver. With {@code CellAffinePartitioner} one driver's records
+     * span several partitions and a poll is grouped by partition, not time,
+     * so one survivor per partition is kept and {@link DriverLocationConsumer}
+     * picks the newest by event time. No JSON is parsed for the records that
+     * are dropped.
+     */
+    static List<String> newestPerDriver(List<ConsumerRecord<String, String>> records) {
+        Map<String, String> newest = new HashMap<>(records.size() * 2);
+        List<String> messages = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : records) {
+            if (record.key() == null) {
+                messages.add(record.value());
+            } else {
+                newest.put(record.partition() + ":" + record.key(), record.value());
+            }
+        }
+        messages.addAll(newest.values());
+        return messages;
+    }
+
+    private static List<String> values(List<ConsumerRecord<String, String>> records) {
+        List<String> messages = new ArrayList<>(records.size());
+        for (ConsumerRecord<String, String> record : records) {
+            messages.add(record.value());
+        }
+        return messages;
+    }
+}
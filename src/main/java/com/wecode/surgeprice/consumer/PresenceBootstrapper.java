@@ -0,0 +1,180 @@
+package com.wecode.surgeprice.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.DriverLocationDTO;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Rebuilds driver presence from the last freshness window of
+ * {@code driver-locations} on startup. The live listener starts at the latest
+ * offset, so without this an empty Redis reads as zero supply until every
+ * driver pings again.
+ *
+ * Each partition is sought to {@code now - dataFreshnessSeconds} with
+ * {@code offsetsForTimes} and read up to the end offset taken at start; only
+ * the newest position per driver is kept and written through the pipelined
+ * bulk path. Runs as an {@link ApplicationRunner}, so readiness stays
+ * {@code REFUSING_TRAFFIC} until it returns.
+ */
+@Component
+public class PresenceBootstrapper implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceBootstrapper.class);
+    private static final String TOPIC_NAME = "driver-locations";
+    private static final String GROUP_ID = "surge-pricing-bootstrap";
+
+    private final ConsumerFactory<String, String> consumerFactory;
+    private final DriverLocationConsumer locationConsumer;
+    private final ObjectMapper objectMapper;
+    private final SurgePricingProperties properties;
+
+    public PresenceBootstrapper(ConsumerFactory<String, String> consumerFactory,
+                                DriverLocationConsumer locationConsumer,
+                                ObjectMapper objectMapper,
+                                SurgePricingProperties properties) {
+        this.consumerFactory = consumerFactory;
+        this.locationConsumer = locationConsumer;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isPresenceBootstrapEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Map<String, DriverLocationDTO> newest = readWindow(start);
+            int applied = locationConsumer.recordLocations(newest.values());
+            logger.info("Presence bootstrap: {} drivers applied in {}ms",
+                    applied, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            // Serve anyway; presence fills in from the live listener
+            logger.error("Presence bootstrap failed after {}ms", System.currentTimeMillis() - start, e);
+        }
+    }
+
+    private Map<String, DriverLocationDTO> readWindow(long start) {
+        long since = start - properties.getDataFreshnessSeconds() * 1000L;
+        long deadline = start + properties.getPresenceBootstrapTimeoutSeconds() * 1000L;
+        Map<String, DriverLocationDTO> newest = new HashMap<>();
+        long records = 0;
+
+        try (Consumer<String, String> consumer = consumerFactory.createConsumer(
+                GROUP_ID, null, null, overrides())) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo info : consumer.partitionsFor(TOPIC_NAME, untilDeadline(deadline))) {
+                partitions.add(new TopicPartition(info.topic(), info.partition()));
+            }
+            consumer.assign(partitions);
+
+            Map<TopicPartition, Long> query = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                query.put(partition, since);
+            }
+            Map<TopicPartition, OffsetAndTimestamp> startOffsets = consumer.offsetsForTimes(query, untilDeadline(deadline));
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions, untilDeadline(deadline));
+            Set<TopicPartition> remaining = new HashSet<>();
+            for (TopicPartition partition : partitions) {
+                OffsetAndTimestamp offset = startOffsets.get(partition);
+                long end = endOffsets.getOrDefault(partition, 0L);
+                // No record at or after the window start: nothing to replay here
+                long from = offset != null ? offset.offset() : end;
+                consumer.seek(partition, from);
+                if (from < end) {
+                    remaining.add(partition);
+                }
+            }
+
+            while (!remaining.isEmpty()) {
+                if (System.currentTimeMillis() >= deadline) {
+                    logger.warn("Presence bootstrap timed out with {} partitions unread", remaining.size());
+                    break;
+                }
+                ConsumerRecords<String, String> batch = consumer.poll(
+                        Duration.ofMillis(Math.min(500, untilDeadline(deadline).toMillis())));
+                records += batch.count();
+                collapse(batch, newest);
+                remaining.removeIf(partition ->
+                        consumer.position(partition, untilDeadline(deadline)) >= endOffsets.get(partition));
+            }
+        }
+        logger.info("Presence bootstrap: read {} records, {} drivers", records, newest.size());
+        return newest;
+    }
+
+    // Metadata and offset lookups otherwise wait up to default.api.timeout.ms (60s) each
+    private static Duration untilDeadline(long deadline) {
+        return Duration.ofMillis(Math.max(0, deadline - System.currentTimeMillis()));
+    }
+
+    /**
+     * Keeps the newest position per driver. Records of one driver are ordered
+     * within a partition, so only the last record per partition and key of a
+     * poll is parsed; across partitions and polls the event time decides. A
+     * position without a timestamp takes the record's Kafka timestamp, not the
+     * bootstrap time, so an old ping cannot pass for a fresh one.
+     */
+    private void collapse(ConsumerRecords<String, String> batch, Map<String, DriverLocationDTO> newest) {
+        Map<String, ConsumerRecord<String, String>> lastPerKey = new HashMap<>(batch.count() * 2);
+        List<ConsumerRecord<String, String>> unkeyed = new ArrayList<>();
+        for (ConsumerRecord<String, String> record : batch) {
+            if (record.key() == null) {
+                unkeyed.add(record);
+            } else {
+                lastPerKey.put(record.partition() + ":" + record.key(), record);
+            }
+        }
+        unkeyed.addAll(lastPerKey.values());
+        for (ConsumerRecord<String, String> record : unkeyed) {
+            try {
+                DriverLocationDTO location = new DriverLocationDTO();
+                location.setTimestamp(null); // the constructor stamps the parse time
+                objectMapper.readerForUpdating(location).readValue(record.value());
+                if (location.getTimestamp() == null) {
+                    location.setTimestamp(record.timestamp());
+                }
+                newest.merge(location.getDriverId(), location, (current, candidate) ->
+                        timestampOf(candidate) >= timestampOf(current) ? candidate : current);
+            } catch (Exception e) {
+                logger.debug("Skipping unreadable location during bootstrap: {}", record.value());
+            }
+        }
+    }
+
+    private Properties overrides() {
+        Properties overrides = new Properties();
+        // Positions are assigned and sought by hand; never commit for this group
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(properties.getConsumerMaxPollRecords()));
+        overrides.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, "1");
+        return overrides;
+    }
+
+    private static long timestampOf(DriverLocationDTO location) {
+        return location.getTimestamp() != null ? location.getTimestamp() : 0;
+    }
+}
@@ -3,7 +3,9 @@ package com.wecode.surgeprice.controller;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wecode.surgeprice.config.SurgePricingProperties;
 import com.wecode.surgeprice.dto.DriverAvailabilityResponseDTO;
+import com.wecode.surgeprice.dto.NearbyDriverDTO;
 import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+import com.wecode.surgeprice.registry.DriverRegistry;
 import com.wecode.surgeprice.service.GeofenceService;
 import com.wecode.surgeprice.service.RedisService;
 import org.slf4j.Logger;
@@ -25,15 +27,18 @@ public class DriverAvailabilityController {
 
     private final GeofenceService geofenceService;
     private final RedisService redisService;
+    private final DriverRegistry driverRegistry;
     private final ObjectMapper objectMapper;
     private final SurgePricingProperties properties;
 
     public DriverAvailabilityController(GeofenceService geofenceService,
                                         RedisService redisService,
+                                        DriverRegistry driverRegistry,
                                         ObjectMapper objectMapper,
                                         SurgePricingProperties properties) {
         this.geofenceService = geofenceService;
         this.redisService = redisService;
+        this.driverRegistry = driverRegistry;
         this.objectMapper = objectMapper;
         this.properties = properties;
     }
@@ -53,6 +58,10 @@ public class DriverAvailabilityController {
             minRes = defaultRes;
             maxRes = defaultRes;
         }
+        if (geofenceService.getStorageResolution(minRes) != minRes) {
+            // Roll-up: the coarsest cell already covers every stored request, read it once
+            maxRes = minRes;
+        }
         for (int res = minRes; res <= maxRes; res++) {
             String resGeofence = geofenceService.getGeofenceId(lat, lng, res);
             List<String> rawRequests = redisService.getActiveRideRequests(res, resGeofence);
@@ -72,4 +81,16 @@ public class DriverAvailabilityController {
         );
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * Closest live drivers to a pickup point, from the in-process registry.
+     */
+    @GetMapping("/nearest")
+    public ResponseEntity<List<NearbyDriverDTO>> nearest(
+            @RequestParam("lat") double lat,
+            @RequestParam("lng") double lng,
+            @RequestParam(value = "k", defaultValue = "10") int k) {
+        int limit = Math.min(Math.max(k, 1), properties.getNearestDriversMaxK());
+        return ResponseEntity.ok(driverRegistry.nearest(lat, lng, limit));
+    }
 }
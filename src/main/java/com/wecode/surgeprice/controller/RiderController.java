@@ -1,27 +1,46 @@
 package com.wecode.surgeprice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.wecode.surgeprice.admission.StreamSlots;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.decisionlog.PricingDecisionLog;
 import com.wecode.surgeprice.dto.RidePricingResponseDTO;
+import com.wecode.surgeprice.dto.RideQuoteDTO;
 import com.wecode.surgeprice.dto.RideRequestDTO;
 import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+import com.wecode.surgeprice.jfr.PricingRequestEvent;
 import com.wecode.surgeprice.service.GeofenceService;
 import com.wecode.surgeprice.service.PricingService;
+import com.wecode.surgeprice.service.QuoteService;
 import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.ZoneIndex;
+import com.wecode.surgeprice.service.impl.RedisResilience;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.concurrent.Executor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/rider")
@@ -33,41 +52,283 @@ public class RiderController {
     private final GeofenceService geofenceService;
     private final RedisService redisService;
     private final ObjectMapper objectMapper;
-    private final Executor asyncExecutor;
+    private final StreamSlots streamSlots;
+    private final PricingDecisionLog decisionLog;
+    private final QuoteService quoteService;
+    private final RedisResilience redisResilience;
+    private final SurgePricingProperties properties;
 
     public RiderController(PricingService pricingService,
                            GeofenceService geofenceService,
                            RedisService redisService,
                            ObjectMapper objectMapper,
-                           @Qualifier("asyncExecutor") Executor asyncExecutor) {
+                           StreamSlots streamSlots,
+                           PricingDecisionLog decisionLog,
+                           QuoteService quoteService,
+                           RedisResilience redisResilience,
+                           SurgePricingProperties properties) {
         this.pricingService = pricingService;
         this.geofenceService = geofenceService;
         this.redisService = redisService;
         this.objectMapper = objectMapper;
-        this.asyncExecutor = asyncExecutor;
+        this.streamSlots = streamSlots;
+        this.decisionLog = decisionLog;
+        this.quoteService = quoteService;
+        this.redisResilience = redisResilience;
+        this.properties = properties;
     }
 
     @PostMapping("/book")
     public ResponseEntity<RidePricingResponseDTO> bookRide(@Valid @RequestBody RideRequestDTO request) {
+        PricingRequestEvent event = new PricingRequestEvent("book");
+        event.begin();
+        RideQuoteDTO quote = price(request, event);
+        decisionLog.record(quote.getRequest(), quote.getNearbyDrivers(), quote.getRequestCount());
+        long demandStart = System.nanoTime();
+        recordDemand(quote.getRequest());
+        event.redisTime += System.nanoTime() - demandStart;
+        event.commit();
+        return ResponseEntity.ok(priced(quote));
+    }
+
+    /**
+     * Prices a ride without counting it as demand. The returned quote id locks
+     * the price until {@code quoteExpiresAt}; call this as often as the rider
+     * adjusts pickup and drop, then confirm once.
+     */
+    @PostMapping("/quote")
+    public ResponseEntity<RidePricingResponseDTO> quoteRide(@Valid @RequestBody RideRequestDTO request) {
+        PricingRequestEvent event = new PricingRequestEvent("quote");
+        event.begin();
+        RideQuoteDTO quote = quoteService.save(price(request, event));
+        decisionLog.record(quote.getRequest(), quote.getNearbyDrivers(), quote.getRequestCount());
+        event.commit();
+        return ResponseEntity.ok(priced(quote));
+    }
+
+    @PostMapping("/quote/{quoteId}/confirm")
+    public ResponseEntity<RidePricingResponseDTO> confirmQuote(@PathVariable("quoteId") String quoteId) {
+        Optional<RideQuoteDTO> quote = quoteService.claim(quoteId);
+        if (quote.isEmpty()) {
+            // Expired, unknown or already confirmed
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        recordDemand(quote.get().getRequest());
+        return ResponseEntity.ok(toResponse(quote.get()));
+    }
+
+    /**
+     * Prices many rides at once, without quote ids and without counting them as
+     * demand. Counts are read once per distinct (resolution, pickup cell), so the
+     * Redis cost follows the number of cells rather than the number of pairs.
+     * Results stream back as NDJSON in request order.
+     */
+    @PostMapping(value = "/quote/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> quoteBatch(@Valid @RequestBody List<RideRequestDTO> requests) {
+        if (requests.size() > properties.getBatchQuoteMaxPairs()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        List<RideQuoteDTO> quotes = priceBatch(requests);
+        for (RideQuoteDTO quote : quotes) {
+            decisionLog.record(quote.getRequest(), quote.getNearbyDrivers(), quote.getRequestCount());
+        }
+        StreamingResponseBody body = out -> {
+            try (SequenceWriter writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(out)) {
+                for (RideQuoteDTO quote : quotes) {
+                    writer.write(priced(quote));
+                }
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Live price for a ride, pushed every {@code streamPushMillis}. Open streams
+     * are capped; {@code priority=true} (a rider in the booking flow) may take
+     * the slot of the oldest normal stream. Refused streams get 503 with Retry-After.
+     * Only streams with a {@code riderId} count as demand.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPrice(
+            @RequestParam("pickupLat") double pickupLat,
+            @RequestParam("pickupLng") double pickupLng,
+            @RequestParam("dropLat") double dropLat,
+            @RequestParam("dropLng") double dropLng,
+            @RequestParam(value = "riderId", required = false) String riderId,
+            @RequestParam(value = "pickupName", required = false) String pickupName,
+            @RequestParam(value = "dropName", required = false) String dropName,
+            @RequestParam(value = "priority", defaultValue = "false") boolean priority) {
+        double distanceKm = pricingService.calculateDistanceKm(pickupLat, pickupLng, dropLat, dropLng);
+        String zoneId = geofenceService.getZoneId(pickupLat, pickupLng);
+        int resolution = zoneId != null ? ZoneIndex.ZONE_RESOLUTION : pricingService.selectResolution(distanceKm);
+        String geofenceId = zoneId != null ? zoneId : geofenceService.getGeofenceId(pickupLat, pickupLng, resolution);
+        double basePrice = pricingService.calculateBasePrice(distanceKm);
+
+        RideRequestRecordDTO record = new RideRequestRecordDTO(
+                riderId,
+                pickupLat,
+                pickupLng,
+                dropLat,
+                dropLng,
+                distanceKm,
+                basePrice,
+                1.0,
+                basePrice,
+                geofenceId,
+                resolution,
+                pickupName,
+                dropName,
+                System.currentTimeMillis()
+        );
+
+        SseEmitter emitter = streamSlots.open(priority, stream -> {
+            long nearbyDrivers = redisService.getDriverCount(resolution, geofenceId);
+            long requestCount = redisService.getRideRequestCount(resolution, geofenceId);
+            double surgeMultiplier = pricingService.calculateSurge(requestCount, nearbyDrivers);
+            double ratio = nearbyDrivers > 0 ? (double) requestCount / (double) nearbyDrivers : requestCount;
+            double finalPrice = basePrice * surgeMultiplier;
+
+            RidePricingResponseDTO response = new RidePricingResponseDTO(
+                    riderId,
+                    distanceKm,
+                    basePrice,
+                    surgeMultiplier,
+                    finalPrice,
+                    geofenceId,
+                    resolution,
+                    nearbyDrivers,
+                    requestCount,
+                    ratio,
+                    pickupName,
+                    dropName
+            );
+
+            stream.send(SseEmitter.event().name("price").data(response));
+        });
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(properties.getAdmissionRetryAfterSeconds()))
+                    .build();
+        }
+
+        // Only a stream that got a slot counts as demand, and anonymous ones cannot be told apart
+        if (riderId == null || riderId.isBlank()) {
+            return ResponseEntity.ok(emitter);
+        }
+        try {
+            String payload = objectMapper.writeValueAsString(record);
+            storeRideRequest(pickupLat, pickupLng, resolution, geofenceId, riderId, payload);
+        } catch (Exception e) {
+            logger.error("Failed to store ride request for stream", e);
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    private RideQuoteDTO price(RideRequestDTO request, PricingRequestEvent event) {
         double distanceKm = pricingService.calculateDistanceKm(
                 request.getPickupLat(),
                 request.getPickupLng(),
                 request.getDropLat(),
                 request.getDropLng()
         );
-        int resolution = pricingService.selectResolution(distanceKm);
-        String geofenceId = geofenceService.getGeofenceId(
+        // A custom zone overrides the pickup's hexagon
+        String zoneId = geofenceService.getZoneId(request.getPickupLat(), request.getPickupLng());
+        int resolution = zoneId != null ? ZoneIndex.ZONE_RESOLUTION : pricingService.selectResolution(distanceKm);
+        String geofenceId = zoneId != null ? zoneId : geofenceService.getGeofenceId(
                 request.getPickupLat(),
                 request.getPickupLng(),
                 resolution
         );
-        double basePrice = pricingService.calculateBasePrice(distanceKm);
 
+        long redisStart = System.nanoTime();
         long nearbyDrivers = redisService.getDriverCount(resolution, geofenceId);
-        long requestCount = redisService.getRideRequestCount(resolution, geofenceId) + 1;
+        long requestCount = redisService.getRideRequestCountsWith(resolution, List.of(geofenceId),
+                List.of(request.getRiderId()))[0];
+        event.redisTime += System.nanoTime() - redisStart;
+        event.geofenceId = geofenceId;
+        event.resolution = resolution;
+        return quote(request, distanceKm, resolution, geofenceId, nearbyDrivers, requestCount,
+                System.currentTimeMillis());
+    }
+
+    private List<RideQuoteDTO> priceBatch(List<RideRequestDTO> requests) {
+        int count = requests.size();
+        double[] pickupLat = new double[count];
+        double[] pickupLng = new double[count];
+        double[] dropLat = new double[count];
+        double[] dropLng = new double[count];
+        for (int i = 0; i < count; i++) {
+            RideRequestDTO request = requests.get(i);
+            pickupLat[i] = request.getPickupLat();
+            pickupLng[i] = request.getPickupLng();
+            dropLat[i] = request.getDropLat();
+            dropLng[i] = request.getDropLng();
+        }
+        double[] distancesKm = new double[count];
+        pricingService.calculateDistancesKm(pickupLat, pickupLng, dropLat, dropLng, distancesKm, count);
 
+        // Distinct pickup cells per resolution; cellIndex[i] is pair i's position in its resolution's list
+        int[] resolutions = new int[count];
+        String[] geofenceIds = new String[count];
+        int[] cellIndex = new int[count];
+        Map<Integer, Map<String, Integer>> cellsByResolution = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            String zoneId = geofenceService.getZoneId(pickupLat[i], pickupLng[i]);
+            resolutions[i] = zoneId != null
+                    ? ZoneIndex.ZONE_RESOLUTION
+                    : pricingService.selectResolution(distancesKm[i]);
+            geofenceIds[i] = zoneId != null
+                    ? zoneId
+                    : geofenceService.getGeofenceId(pickupLat[i], pickupLng[i], resolutions[i]);
+            Map<String, Integer> cells = cellsByResolution.computeIfAbsent(resolutions[i], res -> new LinkedHashMap<>());
+            Integer index = cells.get(geofenceIds[i]);
+            if (index == null) {
+                index = cells.size();
+                cells.put(geofenceIds[i], index);
+            }
+            cellIndex[i] = index;
+        }
+
+        // Request counts are per pair, each with its own rider; pairIndex[i] is pair i's position in its resolution's list
+        Map<Integer, List<Integer>> pairsByResolution = new HashMap<>();
+        int[] pairIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            List<Integer> pairs = pairsByResolution.computeIfAbsent(resolutions[i], res -> new ArrayList<>());
+            pairIndex[i] = pairs.size();
+            pairs.add(i);
+        }
+
+        long[][] driverCounts = new long[ZoneIndex.ZONE_RESOLUTION + 1][];
+        long[][] requestCounts = new long[ZoneIndex.ZONE_RESOLUTION + 1][];
+        for (Map.Entry<Integer, Map<String, Integer>> entry : cellsByResolution.entrySet()) {
+            int resolution = entry.getKey();
+            List<String> cells = new ArrayList<>(entry.getValue().keySet());
+            driverCounts[resolution] = redisService.getDriverCounts(resolution, cells);
+
+            List<Integer> pairs = pairsByResolution.get(resolution);
+            List<String> pairCells = new ArrayList<>(pairs.size());
+            List<String> pairRiders = new ArrayList<>(pairs.size());
+            for (int pair : pairs) {
+                pairCells.add(geofenceIds[pair]);
+                pairRiders.add(requests.get(pair).getRiderId());
+            }
+            requestCounts[resolution] = redisService.getRideRequestCountsWith(resolution, pairCells, pairRiders);
+        }
+
+        long now = System.currentTimeMillis();
+        List<RideQuoteDTO> quotes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int resolution = resolutions[i];
+            quotes.add(quote(requests.get(i), distancesKm[i], resolution, geofenceIds[i],
+                    driverCounts[resolution][cellIndex[i]], requestCounts[resolution][pairIndex[i]], now));
+        }
+        return quotes;
+    }
+
+    private RideQuoteDTO quote(RideRequestDTO request, double distanceKm, int resolution, String geofenceId,
+                               long nearbyDrivers, long requestCount, long timestamp) {
+        double basePrice = pricingService.calculateBasePrice(distanceKm);
         double surgeMultiplier = pricingService.calculateSurge(requestCount, nearbyDrivers);
-        double ratio = nearbyDrivers > 0 ? (double) requestCount / (double) nearbyDrivers : requestCount;
         double finalPrice = basePrice * surgeMultiplier;
 
         RideRequestRecordDTO record = new RideRequestRecordDTO(
@@ -84,104 +345,74 @@ public class RiderController {
                 resolution,
                 request.getPickupName(),
                 request.getDropName(),
-                System.currentTimeMillis()
+                timestamp
         );
+        return new RideQuoteDTO(record, nearbyDrivers, requestCount);
+    }
 
+    private void recordDemand(RideRequestRecordDTO record) {
         try {
             String payload = objectMapper.writeValueAsString(record);
-            redisService.addRideRequest(resolution, geofenceId, payload);
+            storeRideRequest(record.getPickupLat(), record.getPickupLng(), record.getResolution(),
+                    record.getGeofenceId(), record.getRiderId(), payload);
         } catch (Exception e) {
             logger.error("Failed to store ride request", e);
         }
+    }
+
+    /**
+     * Redis errors that no last known value could cover: tell the client to
+     * retry instead of answering 500.
+     */
+    @ExceptionHandler(DataAccessException.class)
+    public ResponseEntity<Void> redisUnavailable(DataAccessException e) {
+        logger.warn("Pricing unavailable: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(properties.getAdmissionRetryAfterSeconds()))
+                .build();
+    }
+
+    // Freshly priced response, flagged when the cell's counts came from the last known values
+    private RidePricingResponseDTO priced(RideQuoteDTO quote) {
+        RidePricingResponseDTO response = toResponse(quote);
+        if (redisResilience.isStale(quote.getRequest().getResolution(), quote.getRequest().getGeofenceId())) {
+            response.setStale(true);
+        }
+        return response;
+    }
 
+    private RidePricingResponseDTO toResponse(RideQuoteDTO quote) {
+        RideRequestRecordDTO record = quote.getRequest();
+        long nearbyDrivers = quote.getNearbyDrivers();
+        long requestCount = quote.getRequestCount();
+        double ratio = nearbyDrivers > 0 ? (double) requestCount / (double) nearbyDrivers : requestCount;
         RidePricingResponseDTO response = new RidePricingResponseDTO(
-                request.getRiderId(),
-                distanceKm,
-                basePrice,
-                surgeMultiplier,
-                finalPrice,
-                geofenceId,
-                resolution,
+                record.getRiderId(),
+                record.getDistanceKm(),
+                record.getBasePrice(),
+                record.getSurgeMultiplier(),
+                record.getFinalPrice(),
+                record.getGeofenceId(),
+                record.getResolution(),
                 nearbyDrivers,
                 requestCount,
                 ratio,
-                request.getPickupName(),
-                request.getDropName()
+                record.getPickupName(),
+                record.getDropName()
         );
-
-        return ResponseEntity.ok(response);
-    }
-
-    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter streamPrice(@RequestParam("pickupLat") double pickupLat,
-                                  @RequestParam("pickupLng") double pickupLng,
-                                  @RequestParam("dropLat") double dropLat,
-                                  @RequestParam("dropLng") double dropLng,
-                                  @RequestParam(value = "riderId", defaultValue = "rider_live") String riderId,
-                                  @RequestParam(value = "pickupName", required = false) String pickupName,
-                                  @RequestParam(value = "dropName", required = false) String dropName) {
-        double distanceKm = pricingService.calculateDistanceKm(pickupLat, pickupLng, dropLat, dropLng);
-        int resolution = pricingService.selectResolution(distanceKm);
-        String geofenceId = geofenceService.getGeofenceId(pickupLat, pickupLng, resolution);
-        double basePrice = pricingService.calculateBasePrice(distanceKm);
-
-        RideRequestRecordDTO record = new RideRequestRecordDTO(
-                riderId,
-                pickupLat,
-                pickupLng,
-                dropLat,
-                dropLng,
-                distanceKm,
-                basePrice,
-                1.0,
-                basePrice,
-                geofenceId,
-                resolution,
-                pickupName,
-                dropName,
-                System.currentTimeMillis()
-        );
-
-        try {
-            String payload = objectMapper.writeValueAsString(record);
-            redisService.addRideRequest(resolution, geofenceId, payload);
-        } catch (Exception e) {
-            logger.error("Failed to store ride request for stream", e);
+        if (quote.getQuoteId() != null) {
+            response.setQuoteId(quote.getQuoteId());
+            response.setQuoteExpiresAt(quote.getExpiresAt());
         }
+        return response;
+    }
 
-        SseEmitter emitter = new SseEmitter(0L);
-        asyncExecutor.execute(() -> {
-            try {
-                while (true) {
-                    long nearbyDrivers = redisService.getDriverCount(resolution, geofenceId);
-                    long requestCount = redisService.getRideRequestCount(resolution, geofenceId);
-                    double surgeMultiplier = pricingService.calculateSurge(requestCount, nearbyDrivers);
-                    double ratio = nearbyDrivers > 0 ? (double) requestCount / (double) nearbyDrivers : requestCount;
-                    double finalPrice = basePrice * surgeMultiplier;
-
-                    RidePricingResponseDTO response = new RidePricingResponseDTO(
-                            riderId,
-                            distanceKm,
-                            basePrice,
-                            surgeMultiplier,
-                            finalPrice,
-                            geofenceId,
-                            resolution,
-                            nearbyDrivers,
-                            requestCount,
-                            ratio,
-                            pickupName,
-                            dropName
-                    );
-
-                    emitter.send(SseEmitter.event().name("price").data(response));
-                    Thread.sleep(2000);
-                }
-            } catch (Exception e) {
-                emitter.completeWithError(e);
-            }
-        });
-
-        return emitter;
+    private void storeRideRequest(double pickupLat, double pickupLng, int resolution,
+                                  String geofenceId, String riderId, String payload) {
+        int storageRes = geofenceService.getStorageResolution(resolution);
+        String storageGeofenceId = storageRes == resolution
+                ? geofenceId
+                : geofenceService.getGeofenceId(pickupLat, pickupLng, storageRes);
+        redisService.addRideRequest(storageRes, storageGeofenceId, riderId, payload);
     }
 }
@@ -1,15 +1,114 @@
 package com.wecode.surgeprice.controller;
 
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.HeatmapDTO;
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.service.HeatmapService;
+import com.wecode.surgeprice.service.HeatmapTile;
+import com.wecode.surgeprice.service.RedisService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 @RestController
 @RequestMapping("/surge")
 public class SurgePriceController {
 
+    private static final long DEFAULT_HISTORY_MILLIS = 3_600_000L;
+
+    private final HeatmapService heatmapService;
+    private final RedisService redisService;
+    private final SurgePricingProperties properties;
+
+    public SurgePriceController(HeatmapService heatmapService,
+                                RedisService redisService,
+                                SurgePricingProperties properties) {
+        this.heatmapService = heatmapService;
+        this.redisService = redisService;
+        this.properties = properties;
+    }
+
     @GetMapping("/health")
     public String health() {
         return "Surge Price Service is running";
     }
+
+    /**
+     * Tiles covering a bounding box with their current ETags; 304 while none changed.
+     */
+    @GetMapping("/heatmap")
+    public ResponseEntity<HeatmapDTO> heatmap(
+            @RequestParam("minLat") double minLat,
+            @RequestParam("minLng") double minLng,
+            @RequestParam("maxLat") double maxLat,
+            @RequestParam("maxLng") double maxLng,
+            @RequestParam("resolution") int resolution,
+            WebRequest webRequest) {
+        HeatmapDTO heatmap = heatmapService.heatmap(minLat, minLng, maxLat, maxLng, resolution);
+        String etag = "\"" + DigestUtils.md5DigestAsHex(
+                String.join(",", heatmap.getTiles().values()).getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(etag).cacheControl(CacheControl.noCache()).body(heatmap);
+    }
+
+    /**
+     * Surge, drivers and requests for every cell of one tile; 304 for an unchanged tile.
+     */
+    @GetMapping("/heatmap/tiles/{tileId}")
+    public ResponseEntity<byte[]> tile(
+            @PathVariable("tileId") String tileId,
+            @RequestParam("resolution") int resolution,
+            WebRequest webRequest) {
+        HeatmapTile tile = heatmapService.tile(tileId, resolution);
+        if (tile == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (webRequest.checkNotModified(tile.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(tile.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .body(tile.getBody());
+    }
+
+    /**
+     * Recorded cycles of one cell between {@code from} and {@code to} (epoch millis),
+     * oldest first; defaults to the last hour.
+     */
+    @GetMapping("/history")
+    public ResponseEntity<List<SurgeSampleDTO>> history(
+            @RequestParam("geofenceId") String geofenceId,
+            @RequestParam("resolution") int resolution,
+            @RequestParam(value = "from", required = false) Long from,
+            @RequestParam(value = "to", required = false) Long to) {
+        if (!properties.isSurgeHistoryEnabled()) {
+            return ResponseEntity.notFound().build();
+        }
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - DEFAULT_HISTORY_MILLIS;
+        if (start > end) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        return ResponseEntity.ok(redisService.getSurgeHistory(resolution, geofenceId.toLowerCase(), start, end));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> badRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
 }
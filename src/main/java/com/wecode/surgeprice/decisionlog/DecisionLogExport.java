@@ -0,0 +1,96 @@
+package com.wecode.surgeprice.decisionlog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Exports decision log entries as CSV, e.g. to answer a price dispute:
+ *
+ * <pre>
+ * ./mvnw -q compile exec:java -Dexec.mainClass=com.wecode.surgeprice.decisionlog.DecisionLogExport \
+ *     -Dexec.args="--dir=decision-log --rider=rider_42 --from=2024-05-01T08:00:00Z --to=2024-05-01T09:00:00Z"
+ * </pre>
+ *
+ * Filters ({@code --rider}, {@code --cell}, {@code --from}, {@code --to}) are
+ * optional; times are ISO-8601 instants or epoch millis. Output goes to
+ * {@code --out} or stdout.
+ */
+public final class DecisionLogExport {
+
+    private DecisionLogExport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+
+        Predicate<PricingDecision> filter = decision -> true;
+        if (options.containsKey("rider")) {
+            String rider = options.get("rider");
+            filter = filter.and(decision -> rider.equals(decision.getRiderId()));
+        }
+        if (options.containsKey("cell")) {
+            String cell = options.get("cell");
+            filter = filter.and(decision -> cell.equalsIgnoreCase(decision.getGeofenceId()));
+        }
+        if (options.containsKey("from")) {
+            long from = parseTime(options.get("from"));
+            filter = filter.and(decision -> decision.getTimestamp() >= from);
+        }
+        if (options.containsKey("to")) {
+            long to = parseTime(options.get("to"));
+            filter = filter.and(decision -> decision.getTimestamp() < to);
+        }
+
+        PricingDecisionLogReader reader = new PricingDecisionLogReader(Path.of(options.getOrDefault("dir", "decision-log")));
+        Writer out = options.containsKey("out")
+                ? Files.newBufferedWriter(Path.of(options.get("out")), StandardCharsets.UTF_8)
+                : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        try (out) {
+            out.write("timestamp,time,rider_id,resolution,cell,nearby_drivers,request_count,"
+                    + "surge,base_price,final_price,distance_km,pickup_lat,pickup_lng,drop_lat,drop_lng\n");
+            long matched = reader.forEach(filter, decision -> write(out, decision));
+            out.flush();
+            System.err.println(matched + " decisions exported");
+        }
+    }
+
+    private static void write(Writer out, PricingDecision d) {
+        try {
+            out.write(d.getTimestamp() + "," + Instant.ofEpochMilli(d.getTimestamp()) + "," + csv(d.getRiderId()) + ","
+                    + d.getResolution() + "," + csv(d.getGeofenceId()) + "," + d.getNearbyDrivers() + ","
+                    + d.getRequestCount() + "," + d.getSurgeMultiplier() + "," + d.getBasePrice() + ","
+                    + d.getFinalPrice() + "," + d.getDistanceKm() + "," + d.getPickupLat() + ","
+                    + d.getPickupLng() + "," + d.getDropLat() + "," + d.getDropLng() + "\n");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // RFC 4180: quote a field holding a comma, quote or line break, doubling its quotes
+    private static String csv(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    private static long parseTime(String value) {
+        return value.chars().allMatch(Character::isDigit)
+                ? Long.parseLong(value)
+                : Instant.parse(value).toEpochMilli();
+    }
+}
@@ -0,0 +1,85 @@
+package com.wecode.surgeprice.decisionlog;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * On-disk layout of decision log segments.
+ *
+ * <pre>
+ * segment := header entry* (zero fill)
+ * header  := magic:int version:int createdAt:long
+ * entry   := length:int timestamp:long cell:long resolution:byte
+ *            nearbyDrivers:long requestCount:long surge:double basePrice:double
+ *            finalPrice:double distanceKm:double pickupLat:double pickupLng:double
+ *            dropLat:double dropLng:double riderIdLength:short riderId:utf8
+ *            geofenceIdLength:byte geofenceId:utf8
+ * </pre>
+ *
+ * The length is written after the rest of the entry, so a reader stops at the
+ * first zero length and never sees a half-written entry. The geofence id is
+ * only written when it is not an H3 cell (a zone), in which case the cell is 0.
+ * Version 1 entries have no geofence id field.
+ */
+final class DecisionLogFormat {
+
+    static final int MAGIC = 0x53444C31; // "SDL1"
+    static final int VERSION = 2;
+    static final int VERSION_WITHOUT_GEOFENCE_ID = 1;
+    static final int HEADER_BYTES = 16;
+    static final int FIXED_ENTRY_BYTES = 4 + 8 + 8 + 1 + 8 + 8 + 8 * 8 + 2 + 1;
+    static final int MAX_RIDER_ID_BYTES = 256;
+    static final int MAX_GEOFENCE_ID_BYTES = 255;
+    static final String SEGMENT_PREFIX = "decisions-";
+    static final String SEGMENT_SUFFIX = ".seg";
+
+    private DecisionLogFormat() {
+    }
+
+    static String segmentName(long createdAtMillis, int index) {
+        return String.format("%s%013d-%04d%s", SEGMENT_PREFIX, createdAtMillis, index, SEGMENT_SUFFIX);
+    }
+
+    static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    static long cellOf(String geofenceId) {
+        try {
+            return Long.parseUnsignedLong(geofenceId, 16);
+        } catch (RuntimeException e) {
+            return 0L;
+        }
+    }
+
+    static String geofenceIdOf(long cell) {
+        return cell == 0L ? "default" : Long.toHexString(cell);
+    }
+
+    /**
+     * UTF-8 bytes of {@code value}, cut to at most {@code maxBytes} without
+     * splitting a character; empty for null.
+     */
+    static byte[] utf8(String value, int maxBytes) {
+        if (value == null) {
+            return new byte[0];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= maxBytes) {
+            return bytes;
+        }
+        int end = maxBytes;
+        // Back up over continuation bytes (10xxxxxx) to the start of the cut character
+        while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+            end--;
+        }
+        return Arrays.copyOf(bytes, end);
+    }
+
+    // Entry bytes before the variable-length fields, per segment version
+    static int fixedEntryBytes(int version) {
+        return version == VERSION_WITHOUT_GEOFENCE_ID ? FIXED_ENTRY_BYTES - 1 : FIXED_ENTRY_BYTES;
+    }
+}
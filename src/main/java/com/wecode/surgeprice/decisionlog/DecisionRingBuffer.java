@@ -0,0 +1,74 @@
+package com.wecode.surgeprice.decisionlog;
+
+import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded multi-producer, single-consumer ring of preallocated slots.
+ * Producers claim a sequence with one CAS, fill the slot and publish it with
+ * a volatile write; the single writer thread consumes slots strictly in
+ * sequence order. Nothing is allocated and no lock is taken on offer.
+ */
+final class DecisionRingBuffer {
+
+    static final class Slot {
+        private volatile long published;
+        RideRequestRecordDTO decision;
+        long nearbyDrivers;
+        long requestCount;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    DecisionRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, requestedCapacity) - 1) << 1;
+        this.slots = new Slot[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+    }
+
+    boolean offer(RideRequestRecordDTO decision, long nearbyDrivers, long requestCount) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.decision = decision;
+        slot.nearbyDrivers = nearbyDrivers;
+        slot.requestCount = requestCount;
+        slot.published = sequence + 1;
+        return true;
+    }
+
+    /**
+     * Next published slot, or null if the producer holding it has not
+     * finished writing yet. Consumer thread only.
+     */
+    Slot peek() {
+        long sequence = consumed;
+        Slot slot = slots[(int) sequence & mask];
+        return slot.published == sequence + 1 ? slot : null;
+    }
+
+    /**
+     * Hands the slot returned by {@link #peek()} back to producers.
+     */
+    void release(Slot slot) {
+        slot.decision = null;
+        consumed = consumed + 1;
+    }
+
+    boolean isEmpty() {
+        return consumed == claimed.get();
+    }
+}
@@ -0,0 +1,258 @@
+package com.wecode.surgeprice.decisionlog;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appends pricing decisions to memory-mapped segment files. Request threads
+ * only publish into a {@link DecisionRingBuffer}; a single background thread
+ * encodes entries into the current segment and rolls to a new one when it is
+ * full. A full queue drops the decision rather than slowing the quote, and so
+ * does an entry the writer fails on. Old segments are deleted past
+ * {@code decision-log-max-segments} or {@code decision-log-max-age-hours}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "surge", name = "decision-log-enabled", havingValue = "true")
+public class MappedPricingDecisionLog implements PricingDecisionLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedPricingDecisionLog.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DROP_LOG_INTERVAL_MILLIS = 10_000;
+    private static final long RETENTION_CHECK_INTERVAL_MILLIS = 60_000;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final long maxAgeMillis;
+    private final DecisionRingBuffer ring;
+    private final Thread writer;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong lastDropLog = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile long written;
+    private int segmentIndex;
+    private Path segmentPath;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long lastRetentionCheck;
+    private long droppedAtLastLog; // guarded by lastDropLog's CAS
+
+    public MappedPricingDecisionLog(SurgePricingProperties properties) throws IOException {
+        this.directory = Path.of(properties.getDecisionLogDir());
+        if (!directory.isAbsolute()) {
+            // A relative directory lands wherever the process was started from
+            throw new IllegalStateException("surge.decision-log-dir must be an absolute path, got '"
+                    + properties.getDecisionLogDir() + "'");
+        }
+        this.segmentBytes = Math.max(properties.getDecisionLogSegmentBytes(),
+                DecisionLogFormat.HEADER_BYTES + DecisionLogFormat.FIXED_ENTRY_BYTES
+                        + DecisionLogFormat.MAX_RIDER_ID_BYTES + DecisionLogFormat.MAX_GEOFENCE_ID_BYTES);
+        this.maxSegments = Math.max(1, properties.getDecisionLogMaxSegments());
+        this.maxAgeMillis = TimeUnit.HOURS.toMillis(properties.getDecisionLogMaxAgeHours());
+        this.ring = new DecisionRingBuffer(properties.getDecisionLogQueueCapacity());
+        Files.createDirectories(directory);
+        openSegment();
+        this.writer = new Thread(this::drain, "decision-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public boolean record(RideRequestRecordDTO decision, long nearbyDrivers, long requestCount) {
+        if (ring.offer(decision, nearbyDrivers, requestCount)) {
+            return true;
+        }
+        dropped.incrementAndGet();
+        logDrops();
+        return false;
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    // Never exits on a bad entry: a dead writer would leave record() dropping everything in silence
+    private void drain() {
+        try {
+            while (true) {
+                DecisionRingBuffer.Slot slot = ring.peek();
+                if (slot == null) {
+                    if (!running && ring.isEmpty()) {
+                        break;
+                    }
+                    enforceRetentionPeriodically();
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                try {
+                    append(slot.decision, slot.nearbyDrivers, slot.requestCount);
+                    written++;
+                } catch (Throwable e) {
+                    failed.incrementAndGet();
+                    dropped.incrementAndGet();
+                    logger.error("Decision log entry dropped, starting a new segment", e);
+                    // The entry's length was never published, so readers stop before it; start clean
+                    abandonSegment();
+                } finally {
+                    ring.release(slot);
+                }
+            }
+        } finally {
+            abandonSegment();
+        }
+    }
+
+    private void append(RideRequestRecordDTO decision, long nearbyDrivers, long requestCount) throws IOException {
+        byte[] riderId = DecisionLogFormat.utf8(decision.getRiderId(), DecisionLogFormat.MAX_RIDER_ID_BYTES);
+        long cell = DecisionLogFormat.cellOf(decision.getGeofenceId());
+        byte[] geofenceId = cell == 0L
+                ? DecisionLogFormat.utf8(decision.getGeofenceId(), DecisionLogFormat.MAX_GEOFENCE_ID_BYTES)
+                : new byte[0];
+        int length = DecisionLogFormat.FIXED_ENTRY_BYTES + riderId.length + geofenceId.length;
+        if (channel == null) {
+            openSegment();
+        } else if (segment.remaining() < length + 4) {
+            closeSegment();
+            openSegment();
+        }
+
+        int start = segment.position();
+        segment.position(start + 4);
+        segment.putLong(decision.getCreatedAt());
+        segment.putLong(cell);
+        segment.put((byte) decision.getResolution());
+        segment.putLong(nearbyDrivers);
+        segment.putLong(requestCount);
+        segment.putDouble(decision.getSurgeMultiplier());
+        segment.putDouble(decision.getBasePrice());
+        segment.putDouble(decision.getFinalPrice());
+        segment.putDouble(decision.getDistanceKm());
+        segment.putDouble(decision.getPickupLat());
+        segment.putDouble(decision.getPickupLng());
+        segment.putDouble(decision.getDropLat());
+        segment.putDouble(decision.getDropLng());
+        segment.putShort((short) riderId.length);
+        segment.put(riderId);
+        segment.put((byte) geofenceId.length);
+        segment.put(geofenceId);
+        // Publish the entry to readers last
+        segment.putInt(start, length);
+    }
+
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(DecisionLogFormat.segmentName(System.currentTimeMillis(), segmentIndex++));
+        FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            segment = opened.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        channel = opened;
+        segmentPath = path;
+        segment.putInt(DecisionLogFormat.MAGIC);
+        segment.putInt(DecisionLogFormat.VERSION);
+        segment.putLong(System.currentTimeMillis());
+        logger.info("Decision log segment opened: {}", path);
+        enforceRetention();
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        FileChannel closing = channel;
+        channel = null;
+        try (closing) {
+            segment.force();
+            // Give back the unused tail of the preallocated segment
+            closing.truncate(segment.position() + 4L);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Closes the segment if it can; otherwise just lets go of it so the next entry opens a fresh one
+    private void abandonSegment() {
+        try {
+            closeSegment();
+        } catch (RuntimeException e) {
+            logger.warn("Decision log segment not closed cleanly: {}", segmentPath, e);
+        }
+    }
+
+    private void enforceRetentionPeriodically() {
+        long now = System.currentTimeMillis();
+        if (now - lastRetentionCheck >= RETENTION_CHECK_INTERVAL_MILLIS) {
+            lastRetentionCheck = now;
+            enforceRetention();
+        }
+    }
+
+    // Oldest first by name; the open segment is always kept
+    private void enforceRetention() {
+        try {
+            List<Path> segments = new PricingDecisionLogReader(directory).segments();
+            segments.remove(segmentPath);
+            long cutoff = System.currentTimeMillis() - maxAgeMillis;
+            int excess = segments.size() + 1 - maxSegments;
+            for (Path old : segments) {
+                if (excess > 0 || (maxAgeMillis > 0 && Files.getLastModifiedTime(old).toMillis() < cutoff)) {
+                    Files.deleteIfExists(old);
+                    excess--;
+                    logger.info("Decision log segment deleted: {}", old);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Decision log retention failed in {}", directory, e);
+        }
+    }
+
+    // Called by request threads when the queue is full, at most once per interval across all of them
+    private void logDrops() {
+        long now = System.currentTimeMillis();
+        long last = lastDropLog.get();
+        if (now - last < DROP_LOG_INTERVAL_MILLIS || !lastDropLog.compareAndSet(last, now)) {
+            return;
+        }
+        long total = dropped.get();
+        long since = total - droppedAtLastLog;
+        droppedAtLastLog = total;
+        logger.warn("Decision log dropped {} decisions (queue full{}), {} total",
+                since, writer.isAlive() ? "" : ", writer stopped", total);
+    }
+}
@@ -0,0 +1,15 @@
+package com.wecode.surgeprice.decisionlog;
+
+import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(prefix = "surge", name = "decision-log-enabled", havingValue = "false", matchIfMissing = true)
+public class NoOpPricingDecisionLog implements PricingDecisionLog {
+
+    @Override
+    public boolean record(RideRequestRecordDTO decision, long nearbyDrivers, long requestCount) {
+        return true;
+    }
+}
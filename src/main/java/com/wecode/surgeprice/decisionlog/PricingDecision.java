@@ -0,0 +1,98 @@
+package com.wecode.surgeprice.decisionlog;
+
+/**
+ * One decoded decision log entry.
+ */
+public class PricingDecision {
+
+    private final long timestamp;
+    private final String riderId;
+    private final String geofenceId;
+    private final int resolution;
+    private final long nearbyDrivers;
+    private final long requestCount;
+    private final double surgeMultiplier;
+    private final double basePrice;
+    private final double finalPrice;
+    private final double distanceKm;
+    private final double pickupLat;
+    private final double pickupLng;
+    private final double dropLat;
+    private final double dropLng;
+
+    PricingDecision(long timestamp, String riderId, String geofenceId, int resolution,
+                    long nearbyDrivers, long requestCount, double surgeMultiplier,
+                    double basePrice, double finalPrice, double distanceKm,
+                    double pickupLat, double pickupLng, double dropLat, double dropLng) {
+        this.timestamp = timestamp;
+        this.riderId = riderId;
+        this.geofenceId = geofenceId;
+        this.resolution = resolution;
+        this.nearbyDrivers = nearbyDrivers;
+        this.requestCount = requestCount;
+        this.surgeMultiplier = surgeMultiplier;
+        this.basePrice = basePrice;
+        this.finalPrice = finalPrice;
+        this.distanceKm = distanceKm;
+        this.pickupLat = pickupLat;
+        this.pickupLng = pickupLng;
+        this.dropLat = dropLat;
+        this.dropLng = dropLng;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getRiderId() {
+        return riderId;
+    }
+
+    public String getGeofenceId() {
+        return geofenceId;
+    }
+
+    public int getResolution() {
+        return resolution;
+    }
+
+    public long getNearbyDrivers() {
+        return nearbyDrivers;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public double getSurgeMultiplier() {
+        return surgeMultiplier;
+    }
+
+    public double getBasePrice() {
+        return basePrice;
+    }
+
+    public double getFinalPrice() {
+        return finalPrice;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public double getPickupLat() {
+        return pickupLat;
+    }
+
+    public double getPickupLng() {
+        return pickupLng;
+    }
+
+    public double getDropLat() {
+        return dropLat;
+    }
+
+    public double getDropLng() {
+        return dropLng;
+    }
+}
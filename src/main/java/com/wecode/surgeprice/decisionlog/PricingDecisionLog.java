@@ -0,0 +1,15 @@
+package com.wecode.surgeprice.decisionlog;
+
+import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+
+/**
+ * Durable record of every price quoted to a rider.
+ */
+public interface PricingDecisionLog {
+
+    /**
+     * Queues a decision for writing. Never blocks the caller; returns false
+     * when the decision had to be dropped because the writer is behind.
+     */
+    boolean record(RideRequestRecordDTO decision, long nearbyDrivers, long requestCount);
+}
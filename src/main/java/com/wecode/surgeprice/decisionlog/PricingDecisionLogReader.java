@@ -0,0 +1,108 @@
+package com.wecode.surgeprice.decisionlog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads decision log segments in write order. Safe to run against the
+ * directory of a live instance: it stops at the last fully written entry.
+ */
+public class PricingDecisionLogReader {
+
+    private final Path directory;
+
+    public PricingDecisionLogReader(Path directory) {
+        this.directory = directory;
+    }
+
+    public List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(DecisionLogFormat::isSegment).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Visits every decision matching {@code filter}; returns how many matched.
+     */
+    public long forEach(Predicate<PricingDecision> filter, Consumer<PricingDecision> visitor) throws IOException {
+        long matched = 0;
+        for (Path segment : segments()) {
+            matched += readSegment(segment, filter, visitor);
+        }
+        return matched;
+    }
+
+    private long readSegment(Path path, Predicate<PricingDecision> filter,
+                             Consumer<PricingDecision> visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < DecisionLogFormat.HEADER_BYTES) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != DecisionLogFormat.MAGIC) {
+                throw new IOException("Not a decision log segment: " + path);
+            }
+            int version = buffer.getInt();
+            if (version != DecisionLogFormat.VERSION && version != DecisionLogFormat.VERSION_WITHOUT_GEOFENCE_ID) {
+                throw new IOException("Unsupported decision log version " + version + ": " + path);
+            }
+            buffer.getLong(); // segment creation time
+
+            long matched = 0;
+            while (buffer.remaining() >= 4) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length < DecisionLogFormat.fixedEntryBytes(version) || length > buffer.remaining() + 4) {
+                    break;
+                }
+                PricingDecision decision = decode(buffer, version);
+                buffer.position(start + length);
+                if (filter.test(decision)) {
+                    visitor.accept(decision);
+                    matched++;
+                }
+            }
+            return matched;
+        }
+    }
+
+    private static PricingDecision decode(ByteBuffer buffer, int version) {
+        long timestamp = buffer.getLong();
+        long cell = buffer.getLong();
+        int resolution = buffer.get();
+        long nearbyDrivers = buffer.getLong();
+        long requestCount = buffer.getLong();
+        double surge = buffer.getDouble();
+        double basePrice = buffer.getDouble();
+        double finalPrice = buffer.getDouble();
+        double distanceKm = buffer.getDouble();
+        double pickupLat = buffer.getDouble();
+        double pickupLng = buffer.getDouble();
+        double dropLat = buffer.getDouble();
+        double dropLng = buffer.getDouble();
+        byte[] riderId = new byte[buffer.getShort()];
+        buffer.get(riderId);
+        String geofenceId = DecisionLogFormat.geofenceIdOf(cell);
+        if (version != DecisionLogFormat.VERSION_WITHOUT_GEOFENCE_ID) {
+            byte[] stored = new byte[buffer.get() & 0xFF];
+            buffer.get(stored);
+            if (stored.length > 0) {
+                geofenceId = new String(stored, StandardCharsets.UTF_8);
+            }
+        }
+        return new PricingDecision(timestamp, new String(riderId, StandardCharsets.UTF_8),
+                geofenceId, resolution, nearbyDrivers, requestCount, surge,
+                basePrice, finalPrice, distanceKm, pickupLat, pickupLng, dropLat, dropLng);
+    }
+}
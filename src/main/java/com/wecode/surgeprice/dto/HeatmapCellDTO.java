@@ -0,0 +1,30 @@
+package com.wecode.surgeprice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class HeatmapCellDTO {
+
+    @JsonProperty("geofenceId")
+    private String geofenceId;
+
+    @JsonProperty("surge")
+    private double surge;
+
+    @JsonProperty("drivers")
+    private long drivers;
+
+    @JsonProperty("requests")
+    private long requests;
+
+    public HeatmapCellDTO(String geofenceId, double surge, long drivers, long requests) {
+        this.geofenceId = geofenceId;
+        this.surge = surge;
+        this.drivers = drivers;
+        this.requests = requests;
+    }
+
+    public String getGeofenceId() { return geofenceId; }
+    public double getSurge() { return surge; }
+    public long getDrivers() { return drivers; }
+    public long getRequests() { return requests; }
+}
@@ -0,0 +1,31 @@
+package com.wecode.surgeprice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Tiles covering a bounding box, with the ETag each currently has. Clients
+ * fetch only the tiles whose ETag changed since their last refresh.
+ */
+public class HeatmapDTO {
+
+    @JsonProperty("resolution")
+    private int resolution;
+
+    @JsonProperty("version")
+    private long version;
+
+    @JsonProperty("tiles")
+    private Map<String, String> tiles; // tile id -> ETag
+
+    public HeatmapDTO(int resolution, long version, Map<String, String> tiles) {
+        this.resolution = resolution;
+        this.version = version;
+        this.tiles = tiles;
+    }
+
+    public int getResolution() { return resolution; }
+    public long getVersion() { return version; }
+    public Map<String, String> getTiles() { return tiles; }
+}
@@ -0,0 +1,30 @@
+package com.wecode.surgeprice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Every cell at {@code resolution} under one tile.
+ */
+public class HeatmapTileDTO {
+
+    @JsonProperty("tileId")
+    private String tileId;
+
+    @JsonProperty("resolution")
+    private int resolution;
+
+    @JsonProperty("cells")
+    private List<HeatmapCellDTO> cells;
+
+    public HeatmapTileDTO(String tileId, int resolution, List<HeatmapCellDTO> cells) {
+        this.tileId = tileId;
+        this.resolution = resolution;
+        this.cells = cells;
+    }
+
+    public String getTileId() { return tileId; }
+    public int getResolution() { return resolution; }
+    public List<HeatmapCellDTO> getCells() { return cells; }
+}
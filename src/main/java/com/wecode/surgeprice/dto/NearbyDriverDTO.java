@@ -0,0 +1,35 @@
+package com.wecode.surgeprice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class NearbyDriverDTO {
+
+    @JsonProperty("driverId")
+    private String driverId;
+
+    @JsonProperty("lat")
+    private double lat;
+
+    @JsonProperty("lng")
+    private double lng;
+
+    @JsonProperty("distanceKm")
+    private double distanceKm;
+
+    @JsonProperty("timestamp")
+    private long timestamp;
+
+    public NearbyDriverDTO(String driverId, double lat, double lng, double distanceKm, long timestamp) {
+        this.driverId = driverId;
+        this.lat = lat;
+        this.lng = lng;
+        this.distanceKm = distanceKm;
+        this.timestamp = timestamp;
+    }
+
+    public String getDriverId() { return driverId; }
+    public double getLat() { return lat; }
+    public double getLng() { return lng; }
+    public double getDistanceKm() { return distanceKm; }
+    public long getTimestamp() { return timestamp; }
+}
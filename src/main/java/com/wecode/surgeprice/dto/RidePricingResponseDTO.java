@@ -1,5 +1,6 @@
 package com.wecode.surgeprice.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class RidePricingResponseDTO {
@@ -40,6 +41,18 @@ public class RidePricingResponseDTO {
     @JsonProperty("dropName")
     private String dropName;
 
+    @JsonProperty("quoteId")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String quoteId;
+
+    @JsonProperty("quoteExpiresAt")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long quoteExpiresAt;
+
+    @JsonProperty("stale")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean stale; // counts served from the last known values while Redis was unavailable
+
     public RidePricingResponseDTO(String riderId,
                                   double distanceKm,
                                   double basePrice,
@@ -78,4 +91,13 @@ public class RidePricingResponseDTO {
     public double getRatio() { return ratio; }
     public String getPickupName() { return pickupName; }
     public String getDropName() { return dropName; }
+
+    public String getQuoteId() { return quoteId; }
+    public void setQuoteId(String quoteId) { this.quoteId = quoteId; }
+
+    public Long getQuoteExpiresAt() { return quoteExpiresAt; }
+    public void setQuoteExpiresAt(Long quoteExpiresAt) { this.quoteExpiresAt = quoteExpiresAt; }
+
+    public Boolean getStale() { return stale; }
+    public void setStale(Boolean stale) { this.stale = stale; }
 }
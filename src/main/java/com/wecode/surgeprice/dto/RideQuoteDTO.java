@@ -0,0 +1,48 @@
+package com.wecode.surgeprice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A priced ride that the rider can confirm at the locked price until it expires.
+ */
+public class RideQuoteDTO {
+
+    @JsonProperty("quoteId")
+    private String quoteId;
+
+    @JsonProperty("expiresAt")
+    private long expiresAt;
+
+    @JsonProperty("nearbyDrivers")
+    private long nearbyDrivers;
+
+    @JsonProperty("requestCount")
+    private long requestCount;
+
+    @JsonProperty("request")
+    private RideRequestRecordDTO request;
+
+    public RideQuoteDTO() {
+    }
+
+    public RideQuoteDTO(RideRequestRecordDTO request, long nearbyDrivers, long requestCount) {
+        this.request = request;
+        this.nearbyDrivers = nearbyDrivers;
+        this.requestCount = requestCount;
+    }
+
+    public String getQuoteId() { return quoteId; }
+    public void setQuoteId(String quoteId) { this.quoteId = quoteId; }
+
+    public long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
+
+    public long getNearbyDrivers() { return nearbyDrivers; }
+    public void setNearbyDrivers(long nearbyDrivers) { this.nearbyDrivers = nearbyDrivers; }
+
+    public long getRequestCount() { return requestCount; }
+    public void setRequestCount(long requestCount) { this.requestCount = requestCount; }
+
+    public RideRequestRecordDTO getRequest() { return request; }
+    public void setRequest(RideRequestRecordDTO request) { this.request = request; }
+}
@@ -0,0 +1,50 @@
+package com.wecode.surgeprice.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One surge cycle's result for a cell. Values read back from history are
+ * quantized: surge to 0.001, baseline to 0.1, counts capped at 65535.
+ */
+public class SurgeSampleDTO {
+
+    @JsonProperty("geofenceId")
+    private String geofenceId;
+
+    @JsonProperty("resolution")
+    private int resolution;
+
+    @JsonProperty("timestamp")
+    private long timestamp;
+
+    @JsonProperty("surge")
+    private double surge;
+
+    @JsonProperty("drivers")
+    private long drivers;
+
+    @JsonProperty("demand")
+    private long demand;
+
+    @JsonProperty("baseline")
+    private double baseline;
+
+    public SurgeSampleDTO(String geofenceId, int resolution, long timestamp,
+                          double surge, long drivers, long demand, double baseline) {
+        this.geofenceId = geofenceId;
+        this.resolution = resolution;
+        this.timestamp = timestamp;
+        this.surge = surge;
+        this.drivers = drivers;
+        this.demand = demand;
+        this.baseline = baseline;
+    }
+
+    public String getGeofenceId() { return geofenceId; }
+    public int getResolution() { return resolution; }
+    public long getTimestamp() { return timestamp; }
+    public double getSurge() { return surge; }
+    public long getDrivers() { return drivers; }
+    public long getDemand() { return demand; }
+    public double getBaseline() { return baseline; }
+}
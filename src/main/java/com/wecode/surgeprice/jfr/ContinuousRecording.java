@@ -0,0 +1,132 @@
+package com.wecode.surgeprice.jfr;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Always-on flight recording: the JDK's {@code default} settings (about 1%
+ * overhead) plus {@code jfr/surge.jfc} for this service's events, kept on disk
+ * for {@code jfr-max-age-seconds} / {@code jfr-max-size-mb}. {@link #openDump()}
+ * copies the current window to a file for JDK Mission Control; the file is
+ * deleted once it has been read. Events that capture environment variables,
+ * system properties and command lines are switched off in {@code surge.jfc},
+ * since they can carry credentials.
+ */
+@Component
+public class ContinuousRecording implements InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContinuousRecording.class);
+    private static final String PROFILE = "jfr/surge.jfc";
+    private static final String DUMP_PREFIX = "surge-";
+
+    private final SurgePricingProperties properties;
+    private final AtomicBoolean dumping = new AtomicBoolean();
+    private volatile Recording recording;
+
+    public ContinuousRecording(SurgePricingProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!properties.isJfrEnabled()) {
+            return;
+        }
+        deleteLeftoverDumps();
+        try {
+            Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            try (Reader reader = new InputStreamReader(
+                    new ClassPathResource(PROFILE).getInputStream(), StandardCharsets.UTF_8)) {
+                settings.putAll(Configuration.create(reader).getSettings());
+            }
+            Recording started = new Recording(settings);
+            started.setName("surge-pricing");
+            started.setToDisk(true);
+            started.setMaxAge(Duration.ofSeconds(properties.getJfrMaxAgeSeconds()));
+            started.setMaxSize(properties.getJfrMaxSizeMb() * 1024L * 1024L);
+            started.start();
+            recording = started;
+        } catch (Exception e) {
+            // Profiling is optional; never block startup on it
+            logger.warn("Continuous JFR recording not started", e);
+        }
+    }
+
+    /**
+     * Writes the recorded window to {@code jfr-dump-directory} and opens it.
+     * Closing the stream deletes the file. One dump runs at a time.
+     *
+     * @return the dump, or null when no recording is running
+     * @throws IllegalStateException while another dump is being written
+     */
+    public InputStream openDump() throws IOException {
+        Recording current = recording;
+        if (current == null) {
+            return null;
+        }
+        if (!dumping.compareAndSet(false, true)) {
+            throw new IllegalStateException("A JFR dump is already being written");
+        }
+        Path file = null;
+        try {
+            Path directory = Paths.get(properties.getJfrDumpDirectory());
+            Files.createDirectories(directory);
+            file = directory.resolve(DUMP_PREFIX + System.currentTimeMillis() + ".jfr");
+            current.dump(file);
+            logger.info("JFR recording dumped to {} ({} bytes)", file, Files.size(file));
+            return Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException | RuntimeException e) {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+            throw e;
+        } finally {
+            dumping.set(false);
+        }
+    }
+
+    // Dumps whose reader died before closing them, from this or an earlier process
+    private void deleteLeftoverDumps() {
+        Path directory = Paths.get(properties.getJfrDumpDirectory());
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> dumps = Files.newDirectoryStream(directory, DUMP_PREFIX + "*.jfr")) {
+            for (Path dump : dumps) {
+                Files.deleteIfExists(dump);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clear old JFR dumps in {}", directory, e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        Recording current = recording;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
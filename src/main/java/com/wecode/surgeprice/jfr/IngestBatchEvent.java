@@ -0,0 +1,46 @@
+package com.wecode.surgeprice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One {@code driver-locations} batch applied by the listener, with the time
+ * spent per phase summed over its messages.
+ */
+@Name("com.wecode.surgeprice.IngestBatch")
+@Label("Ingest Batch")
+@Category({"Surge Pricing", "Ingest"})
+@Description("Driver location batch: size, outcome and time per phase")
+@StackTrace(false)
+public class IngestBatchEvent extends Event {
+
+    @Label("Messages")
+    public int messages;
+
+    @Label("Applied")
+    public int applied;
+
+    @Label("Dropped")
+    @Description("Stale or out of order, skipped before H3 and Redis")
+    public int dropped;
+
+    @Label("Failed")
+    public int failed;
+
+    @Label("Parse Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+
+    @Label("H3 Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long h3Time;
+
+    @Label("Redis Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long redisTime;
+}
@@ -0,0 +1,46 @@
+package com.wecode.surgeprice.jfr;
+
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@code POST /actuator/jfr} dumps the continuous recording and streams it as
+ * a {@code .jfr} file; 503 when recording is disabled, 429 while another dump
+ * is being written. Not exposed by default: the recording shows thread names,
+ * stack traces and allocation sites, so expose it only on an internal
+ * {@code management.server.port}.
+ */
+@Component
+@WebEndpoint(id = "jfr")
+public class JfrEndpoint {
+
+    private static final int STATUS_TOO_MANY_REQUESTS = 429;
+
+    private final ContinuousRecording recording;
+
+    public JfrEndpoint(ContinuousRecording recording) {
+        this.recording = recording;
+    }
+
+    @WriteOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump() throws IOException {
+        InputStream dump;
+        try {
+            dump = recording.openDump();
+        } catch (IllegalStateException e) {
+            return new WebEndpointResponse<>(STATUS_TOO_MANY_REQUESTS);
+        }
+        if (dump == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_SERVICE_UNAVAILABLE);
+        }
+        // Streamed and closed by the response writer, which deletes the file
+        return new WebEndpointResponse<>(new InputStreamResource(dump));
+    }
+}
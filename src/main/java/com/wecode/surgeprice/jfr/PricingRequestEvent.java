@@ -0,0 +1,37 @@
+package com.wecode.surgeprice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One priced ride request; the event duration is the handler time.
+ */
+@Name("com.wecode.surgeprice.PricingRequest")
+@Label("Pricing Request")
+@Category({"Surge Pricing", "Rider"})
+@Description("Book or quote request: pickup cell and time spent in Redis")
+@StackTrace(false)
+public class PricingRequestEvent extends Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Cell")
+    public String geofenceId;
+
+    @Label("Resolution")
+    public int resolution;
+
+    @Label("Redis Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long redisTime;
+
+    public PricingRequestEvent(String operation) {
+        this.operation = operation;
+    }
+}
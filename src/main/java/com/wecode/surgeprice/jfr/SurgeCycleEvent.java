@@ -0,0 +1,30 @@
+package com.wecode.surgeprice.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One pass of the surge worker over the active cells; the event duration is
+ * the cycle time.
+ */
+@Name("com.wecode.surgeprice.SurgeCycle")
+@Label("Surge Cycle")
+@Category({"Surge Pricing", "Worker"})
+@Description("Surge recomputation over all active cells")
+@StackTrace(false)
+public class SurgeCycleEvent extends Event {
+
+    @Label("Cells")
+    public int cells;
+
+    @Label("Degraded Cells")
+    @Description("Cells without a recent location update, kept at their last surge")
+    public int degradedCells;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,88 @@
+package com.wecode.surgeprice.partitioning;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uber.h3core.H3Core;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Routes a driver location to the partition of its coarse H3 parent cell
+ * (resolution {@code surge.partition.h3.resolution}), so every update for a
+ * region reaches the same consumer. The record key stays the driver id;
+ * values without a readable position fall back to hashing the key.
+ *
+ * The region is the {@code cellToParent} of the location's cell at
+ * {@code surge.partition.h3.leaf-resolution}, not the coarse cell the point
+ * falls in: H3 children do not nest exactly inside their parent's hexagon,
+ * and {@link RegionSupplyState} finds a stored cell's region by its parent.
+ */
+public class CellAffinePartitioner implements Partitioner {
+
+    public static final String RESOLUTION_CONFIG = "surge.partition.h3.resolution";
+    public static final String LEAF_RESOLUTION_CONFIG = "surge.partition.h3.leaf-resolution";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private H3Core h3;
+    private int resolution = 5;
+    private int leafResolution = 9;
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object configured = configs.get(RESOLUTION_CONFIG);
+        if (configured != null) {
+            resolution = Integer.parseInt(configured.toString());
+        }
+        Object leaf = configs.get(LEAF_RESOLUTION_CONFIG);
+        if (leaf != null) {
+            leafResolution = Integer.parseInt(leaf.toString());
+        }
+        try {
+            h3 = H3Core.newInstance();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load H3", e);
+        }
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                         Cluster cluster) {
+        int partitions = cluster.partitionsForTopic(topic).size();
+        try {
+            JsonNode location = objectMapper.readTree(value.toString());
+            JsonNode lat = location.has("lat") ? location.get("lat") : location.get("latitude");
+            JsonNode lng = location.has("lng") ? location.get("lng") : location.get("longitude");
+            if (lat != null && lng != null && lat.isNumber() && lng.isNumber()) {
+                return partitionFor(regionCell(lat.asDouble(), lng.asDouble()), partitions);
+            }
+        } catch (Exception e) {
+            // Fall through to key hashing
+        }
+        return keyBytes != null ? Utils.toPositive(Utils.murmur2(keyBytes)) % partitions : 0;
+    }
+
+    // Region of the point's leaf cell, the same hierarchy the consumer stores and rolls up
+    long regionCell(double lat, double lng) {
+        long leaf = h3.latLngToCell(lat, lng, Math.max(resolution, leafResolution));
+        return leafResolution > resolution ? h3.cellToParent(leaf, resolution) : leaf;
+    }
+
+    /**
+     * Partition owning a region. Shared with the consumer side so both agree on ownership.
+     */
+    public static int partitionFor(long regionCell, int partitions) {
+        // H3 indexes of one resolution share their high bits; mix before reducing
+        long mixed = regionCell * 0x9E3779B97F4A7C15L;
+        return Utils.toPositive((int) (mixed ^ (mixed >>> 32))) % partitions;
+    }
+
+    @Override
+    public void close() {
+    }
+}
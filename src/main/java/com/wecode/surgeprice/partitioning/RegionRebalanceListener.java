@@ -0,0 +1,77 @@
+package com.wecode.surgeprice.partitioning;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Moves {@link RegionSupplyState} with its partitions. Revocation runs before
+ * offsets are committed, so the snapshot covers everything the next owner
+ * will not replay.
+ */
+@Component
+public class RegionRebalanceListener implements ConsumerAwareRebalanceListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionRebalanceListener.class);
+    private static final String TOPIC_NAME = "driver-locations";
+
+    private final RegionSupplyState regionSupply;
+    private final SurgePricingProperties properties;
+
+    public RegionRebalanceListener(RegionSupplyState regionSupply, SurgePricingProperties properties) {
+        this.regionSupply = regionSupply;
+        this.properties = properties;
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!properties.isCellAffinePartitioning()) {
+            return;
+        }
+        for (TopicPartition partition : partitions) {
+            if (TOPIC_NAME.equals(partition.topic())) {
+                try {
+                    regionSupply.revoke(partition.partition());
+                } catch (Exception e) {
+                    // The next owner falls back to warming up for one freshness window
+                    logger.error("Failed to hand over region partition {}", partition.partition(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!properties.isCellAffinePartitioning()) {
+            return;
+        }
+        for (TopicPartition partition : partitions) {
+            if (TOPIC_NAME.equals(partition.topic())) {
+                regionSupply.lose(partition.partition());
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (!properties.isCellAffinePartitioning()) {
+            return;
+        }
+        int total = consumer.partitionsFor(TOPIC_NAME).size();
+        for (TopicPartition partition : partitions) {
+            if (TOPIC_NAME.equals(partition.topic())) {
+                try {
+                    regionSupply.assign(partition.partition(), total);
+                } catch (Exception e) {
+                    logger.error("Failed to load region partition {}", partition.partition(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.wecode.surgeprice.partitioning;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.ZoneIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact driver supply for the regions whose partitions this instance
+ * consumes under cell-affine partitioning. One entry per driver per
+ * resolution, so a driver that moves leaves its old cell immediately.
+ *
+ * State moves with its partition: the revoking owner writes a snapshot to
+ * {@code region:<partition>} and the new owner loads it on assignment. A
+ * partition without a snapshot (lost, or first start) is only served
+ * locally after one freshness window, once it has seen every live driver.
+ */
+@Service
+public class RegionSupplyState {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionSupplyState.class);
+    private static final String SNAPSHOT_KEY_PREFIX = "region:";
+
+    private final GeofenceService geofenceService;
+    private final RedisTemplate<String, String> redisTemplate;
+    private final SurgePricingProperties properties;
+    private final Map<Integer, PartitionState> partitions = new ConcurrentHashMap<>();
+    private volatile int partitionCount;
+
+    public RegionSupplyState(GeofenceService geofenceService,
+                             RedisTemplate<String, String> redisTemplate,
+                             SurgePricingProperties properties) {
+        this.geofenceService = geofenceService;
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+
+    public void assign(int partition, int totalPartitions) {
+        partitionCount = totalPartitions;
+        long now = System.currentTimeMillis();
+        Map<Object, Object> snapshot = redisTemplate.opsForHash().entries(snapshotKey(partition));
+        long warmAt = snapshot.isEmpty() ? now + properties.getDataFreshnessSeconds() * 1000L : now;
+        PartitionState state = new PartitionState(warmAt);
+        long staleBefore = now - properties.getDataFreshnessSeconds() * 1000L;
+        for (Map.Entry<Object, Object> entry : snapshot.entrySet()) {
+            // field: <resolution>:<driverId>, value: <geofenceId>:<timestamp>
+            String field = entry.getKey().toString();
+            String value = entry.getValue().toString();
+            int fieldSplit = field.indexOf(':');
+            int valueSplit = value.lastIndexOf(':');
+            if (fieldSplit < 0 || valueSplit < 0) {
+                continue;
+            }
+            long timestamp = Long.parseLong(value.substring(valueSplit + 1));
+            if (timestamp >= staleBefore) {
+                state.apply(Integer.parseInt(field.substring(0, fieldSplit)), value.substring(0, valueSplit),
+                        field.substring(fieldSplit + 1), timestamp);
+            }
+        }
+        partitions.put(partition, state);
+        redisTemplate.delete(snapshotKey(partition));
+        logger.info("Region partition {} assigned: {} entries from snapshot", partition, state.drivers.size());
+    }
+
+    /**
+     * Hands the partition's state to its next owner through Redis.
+     */
+    public void revoke(int partition) {
+        PartitionState state = partitions.remove(partition);
+        if (state == null || state.drivers.isEmpty()) {
+            return;
+        }
+        Map<String, String> snapshot = new HashMap<>(state.drivers.size() * 2);
+        for (Map.Entry<String, DriverEntry> entry : state.drivers.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().geofenceId + ":" + entry.getValue().timestamp);
+        }
+        String key = snapshotKey(partition);
+        redisTemplate.opsForHash().putAll(key, snapshot);
+        redisTemplate.expire(key, Duration.ofSeconds(properties.getDataFreshnessSeconds()));
+        logger.info("Region partition {} revoked: handed over {} entries", partition, snapshot.size());
+    }
+
+    /**
+     * Drops a partition without a handover (the consumer lost it).
+     */
+    public void lose(int partition) {
+        partitions.remove(partition);
+    }
+
+    /**
+     * Records a ping if its cell belongs to a partition held here.
+     */
+    public void record(int resolution, String geofenceId, String driverId, long timestamp) {
+        PartitionState state = stateFor(resolution, geofenceId);
+        if (state != null) {
+            state.apply(resolution, geofenceId, driverId, timestamp);
+        }
+    }
+
+    /**
+     * True when this instance can answer for the cell exactly.
+     */
+    public boolean serves(int resolution, String geofenceId, long now) {
+        PartitionState state = stateFor(resolution, geofenceId);
+        return state != null && now >= state.warmAt;
+    }
+
+    public long getDriverCount(int resolution, String geofenceId, long now) {
+        PartitionState state = stateFor(resolution, geofenceId);
+        return state != null ? state.count(resolution, geofenceId, staleBefore(now)) : 0;
+    }
+
+    public Set<String> getDrivers(int resolution, String geofenceId, long now) {
+        PartitionState state = stateFor(resolution, geofenceId);
+        return state != null ? state.drivers(resolution, geofenceId, staleBefore(now)) : Set.of();
+    }
+
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void evictStale() {
+        long staleBefore = staleBefore(System.currentTimeMillis());
+        for (PartitionState state : partitions.values()) {
+            state.evict(staleBefore);
+        }
+    }
+
+    private PartitionState stateFor(int resolution, String geofenceId) {
+        int regionRes = properties.getPartitionH3Resolution();
+        int total = partitionCount;
+        // Zones are not partitioned by cell; they are always read from Redis
+        if (resolution < regionRes || resolution == ZoneIndex.ZONE_RESOLUTION
+                || total == 0 || partitions.isEmpty()) {
+            return null;
+        }
+        // The partitioner routes by the parent of the finest cell. A cell located directly at a
+        // coarser resolution (no roll-up) can hold drivers routed to another region's partition.
+        if (geofenceService.getStorageResolution(resolution) != properties.getMaxH3Resolution()) {
+            return null;
+        }
+        String region = resolution == regionRes
+                ? geofenceId
+                : geofenceService.getParentGeofenceId(geofenceId, regionRes);
+        try {
+            return partitions.get(CellAffinePartitioner.partitionFor(Long.parseUnsignedLong(region, 16), total));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private long staleBefore(long now) {
+        return now - properties.getDataFreshnessSeconds() * 1000L;
+    }
+
+    private static String snapshotKey(int partition) {
+        return SNAPSHOT_KEY_PREFIX + partition;
+    }
+
+    private static class PartitionState {
+        private final long warmAt;
+        // <resolution>:<driverId> -> the driver's current cell at that resolution
+        private final Map<String, DriverEntry> drivers = new ConcurrentHashMap<>();
+        // <resolution>:<geofenceId> -> driverId -> last ping
+        private final Map<String, Map<String, Long>> cells = new ConcurrentHashMap<>();
+
+        private PartitionState(long warmAt) {
+            this.warmAt = warmAt;
+        }
+
+        private void apply(int resolution, String geofenceId, String driverId, long timestamp) {
+            DriverEntry previous = drivers.get(resolution + ":" + driverId);
+            if (previous != null && previous.timestamp > timestamp) {
+                return;
+            }
+            drivers.put(resolution + ":" + driverId, new DriverEntry(geofenceId, timestamp));
+            if (previous != null && !previous.geofenceId.equals(geofenceId)) {
+                Map<String, Long> oldCell = cells.get(resolution + ":" + previous.geofenceId);
+                if (oldCell != null) {
+                    oldCell.remove(driverId);
+                }
+            }
+            // compute() so eviction cannot drop the cell between lookup and put
+            cells.compute(resolution + ":" + geofenceId, (key, cell) -> {
+                Map<String, Long> updated = cell != null ? cell : new ConcurrentHashMap<>();
+                updated.put(driverId, timestamp);
+                return updated;
+            });
+        }
+
+        private long count(int resolution, String geofenceId, long staleBefore) {
+            Map<String, Long> cell = cells.get(resolution + ":" + geofenceId);
+            if (cell == null) {
+                return 0;
+            }
+            long count = 0;
+            for (long seen : cell.values()) {
+                if (seen >= staleBefore) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private Set<String> drivers(int resolution, String geofenceId, long staleBefore) {
+            Map<String, Long> cell = cells.get(resolution + ":" + geofenceId);
+            if (cell == null) {
+                return Set.of();
+            }
+            Set<String> drivers = new HashSet<>();
+            for (Map.Entry<String, Long> entry : cell.entrySet()) {
+                if (entry.getValue() >= staleBefore) {
+                    drivers.add(entry.getKey());
+                }
+            }
+            return drivers;
+        }
+
+        private void evict(long staleBefore) {
+            drivers.values().removeIf(entry -> entry.timestamp < staleBefore);
+            for (String key : cells.keySet()) {
+                cells.computeIfPresent(key, (k, cell) -> {
+                    cell.values().removeIf(seen -> seen < staleBefore);
+                    return cell.isEmpty() ? null : cell;
+                });
+            }
+        }
+    }
+
+    private static class DriverEntry {
+        private final String geofenceId;
+        private final long timestamp;
+
+        private DriverEntry(String geofenceId, long timestamp) {
+            this.geofenceId = geofenceId;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.wecode.surgeprice.registry;
+
+import com.uber.h3core.H3Core;
+import com.uber.h3core.LengthUnit;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.NearbyDriverDTO;
+import com.wecode.surgeprice.service.CellTable;
+import com.wecode.surgeprice.service.GeoDistance;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Driver positions in fixed-capacity parallel arrays, one slot per driver.
+ * Each slot is linked into an intrusive list for its H3 cell at
+ * {@code driver-registry-h3-resolution}; list heads live in a
+ * {@link CellTable} keyed by the cell index. Updating a known driver, including a move to
+ * another cell, allocates nothing.
+ *
+ * A nearest-drivers query walks H3 rings outward from the pickup cell and
+ * stops once the k-th best distance is inside the radius already covered.
+ */
+@Component
+@ConditionalOnProperty(prefix = "surge", name = "driver-registry-enabled", havingValue = "true", matchIfMissing = true)
+public class ArrayDriverRegistry implements DriverRegistry, MeterBinder {
+
+    private static final int NONE = -1;
+
+    private final H3Core h3;
+    private final SurgePricingProperties properties;
+    private final int resolution;
+    private final double edgeKm;
+    private final StampedLock lock = new StampedLock();
+    private final AtomicLong rejected = new AtomicLong(0);
+
+    // Slot layout
+    private final String[] driverIds;
+    private final double[] lats;
+    private final double[] lngs;
+    private final long[] timestamps;
+    private final long[] cells;
+    private final int[] next;
+    private final int[] prev;
+    private final Map<String, Integer> slotByDriver;
+    private final int[] freeSlots;
+    private int freeCount;
+
+    private final CellTable cellHeads; // cell -> first slot
+
+    public ArrayDriverRegistry(H3Core h3, SurgePricingProperties properties) {
+        this.h3 = h3;
+        this.properties = properties;
+        this.resolution = properties.getDriverRegistryH3Resolution();
+        this.edgeKm = h3.getHexagonEdgeLengthAvg(resolution, LengthUnit.km);
+
+        int capacity = properties.getDriverRegistryCapacity();
+        driverIds = new String[capacity];
+        lats = new double[capacity];
+        lngs = new double[capacity];
+        timestamps = new long[capacity];
+        cells = new long[capacity];
+        next = new int[capacity];
+        prev = new int[capacity];
+        slotByDriver = new HashMap<>(capacity * 2);
+        freeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            freeSlots[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+
+        cellHeads = new CellTable(capacity); // at most one occupied cell per driver
+    }
+
+    @Override
+    public void update(String driverId, double lat, double lng, long timestamp) {
+        long cell = h3.latLngToCell(lat, lng, resolution);
+        long stamp = lock.writeLock();
+        try {
+            Integer existing = slotByDriver.get(driverId);
+            int slot;
+            if (existing == null) {
+                if (freeCount == 0) {
+                    rejected.incrementAndGet();
+                    return;
+                }
+                slot = freeSlots[--freeCount];
+                driverIds[slot] = driverId;
+                slotByDriver.put(driverId, slot);
+                link(slot, cell);
+            } else {
+                slot = existing;
+                if (timestamp < timestamps[slot]) {
+                    return;
+                }
+                if (cells[slot] != cell) {
+                    unlink(slot);
+                    link(slot, cell);
+                }
+            }
+            lats[slot] = lat;
+            lngs[slot] = lng;
+            timestamps[slot] = timestamp;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<NearbyDriverDTO> nearest(double lat, double lng, int k) {
+        if (k <= 0) {
+            return List.of();
+        }
+        long origin = h3.latLngToCell(lat, lng, resolution);
+        long staleBefore = System.currentTimeMillis() - properties.getDataFreshnessSeconds() * 1000L;
+        int[] bestSlots = new int[k];
+        double[] bestDistances = new double[k];
+        int found = 0;
+
+        long stamp = lock.readLock();
+        try {
+            for (int ring = 0; ring <= properties.getNearestDriversMaxRings(); ring++) {
+                for (long cell : ringCells(origin, ring)) {
+                    for (int slot = head(cell); slot != NONE; slot = next[slot]) {
+                        if (timestamps[slot] < staleBefore) {
+                            continue;
+                        }
+                        double distance = GeoDistance.haversineKm(lat, lng, lats[slot], lngs[slot]);
+                        if (found < k) {
+                            found++;
+                        } else if (distance >= bestDistances[k - 1]) {
+                            continue;
+                        }
+                        // Insertion into the sorted top-k
+                        int i = found - 1;
+                        while (i > 0 && bestDistances[i - 1] > distance) {
+                            bestDistances[i] = bestDistances[i - 1];
+                            bestSlots[i] = bestSlots[i - 1];
+                            i--;
+                        }
+                        bestDistances[i] = distance;
+                        bestSlots[i] = slot;
+                    }
+                }
+                // Anything unseen lies beyond this ring, at least ~ring edge lengths away
+                if (found == k && bestDistances[k - 1] <= ring * edgeKm) {
+                    break;
+                }
+            }
+            List<NearbyDriverDTO> drivers = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                int slot = bestSlots[i];
+                drivers.add(new NearbyDriverDTO(driverIds[slot], lats[slot], lngs[slot],
+                        bestDistances[i], timestamps[slot]));
+            }
+            return drivers;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return driverIds.length - freeCount;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Frees the slots of drivers not seen within the freshness window.
+     */
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void evictStale() {
+        long staleBefore = System.currentTimeMillis() - properties.getDataFreshnessSeconds() * 1000L;
+        long stamp = lock.writeLock();
+        try {
+            for (int slot = 0; slot < driverIds.length; slot++) {
+                if (driverIds[slot] != null && timestamps[slot] < staleBefore) {
+                    unlink(slot);
+                    slotByDriver.remove(driverIds[slot]);
+                    driverIds[slot] = null;
+                    freeSlots[freeCount++] = slot;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("surge.registry.drivers", this, DriverRegistry::size)
+                .description("Drivers held in the position registry")
+                .register(registry);
+        FunctionCounter.builder("surge.registry.rejected", rejected, AtomicLong::get)
+                .description("Position updates dropped because the registry was full")
+                .register(registry);
+    }
+
+    private List<Long> ringCells(long origin, int ring) {
+        if (ring == 0) {
+            return List.of(origin);
+        }
+        try {
+            return h3.gridRingUnsafe(origin, ring);
+        } catch (Exception e) {
+            // Pentagon in range; the safe variant is slower but always works
+            return h3.gridDiskDistances(origin, ring).get(ring);
+        }
+    }
+
+    private void link(int slot, long cell) {
+        int index = cellHeads.indexOf(cell);
+        int first = cellHeads.keyAt(index) == cell ? cellHeads.valueAt(index) : NONE;
+        cellHeads.put(index, cell, slot);
+        next[slot] = first;
+        prev[slot] = NONE;
+        if (first != NONE) {
+            prev[first] = slot;
+        }
+        cells[slot] = cell;
+    }
+
+    private void unlink(int slot) {
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        }
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            int index = cellHeads.indexOf(cells[slot]);
+            if (next[slot] != NONE) {
+                cellHeads.setValue(index, next[slot]);
+            } else {
+                cellHeads.remove(index);
+            }
+        }
+        next[slot] = NONE;
+        prev[slot] = NONE;
+    }
+
+    private int head(long cell) {
+        return cellHeads.get(cell, NONE);
+    }
+}
@@ -0,0 +1,24 @@
+package com.wecode.surgeprice.registry;
+
+import com.wecode.surgeprice.dto.NearbyDriverDTO;
+
+import java.util.List;
+
+/**
+ * Latest known position of every live driver, held in process for matching
+ * riders to nearby drivers.
+ */
+public interface DriverRegistry {
+
+    /**
+     * Stores a driver's position. A timestamp older than the one held is ignored.
+     */
+    void update(String driverId, double lat, double lng, long timestamp);
+
+    /**
+     * Up to {@code k} drivers seen within the freshness window, closest first.
+     */
+    List<NearbyDriverDTO> nearest(double lat, double lng, int k);
+
+    int size();
+}
@@ -0,0 +1,26 @@
+package com.wecode.surgeprice.registry;
+
+import com.wecode.surgeprice.dto.NearbyDriverDTO;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+@ConditionalOnProperty(prefix = "surge", name = "driver-registry-enabled", havingValue = "false")
+public class NoOpDriverRegistry implements DriverRegistry {
+
+    @Override
+    public void update(String driverId, double lat, double lng, long timestamp) {
+    }
+
+    @Override
+    public List<NearbyDriverDTO> nearest(double lat, double lng, int k) {
+        return List.of();
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+}
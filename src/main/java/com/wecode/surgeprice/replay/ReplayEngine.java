@@ -0,0 +1,286 @@
+package com.wecode.surgeprice.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellIndex;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.ZoneIndex;
+import com.wecode.surgeprice.service.impl.GeofenceServiceImpl;
+import com.wecode.surgeprice.service.impl.PolyfillCellIndex;
+import com.wecode.surgeprice.service.impl.PolygonZoneIndex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streams a recorded event log through the real geofencing, storage and
+ * pricing code on a simulated clock. The log is consumed one worker interval
+ * at a time: events are routed to shards by cell in parallel, each shard
+ * applies its events and then runs a worker cycle at the interval boundary.
+ * Nothing sleeps unless a target {@code speed} is given, so replay runs as
+ * fast as the cores allow.
+ *
+ * <p>Outputs {@code surge_timeseries.csv} (one row per active cell per cycle,
+ * in time order), {@code cell_summary.csv} and {@code summary.txt}.
+ */
+public class ReplayEngine {
+
+    private static final int WINDOW_EVENTS = 1 << 20;
+
+    private final SurgePricingProperties properties;
+    private final H3Core h3;
+    private final GeofenceService geofenceService;
+    private final CellIndex cellIndex;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int threads;
+    private final int shardCount;
+    private final long tickMillis;
+    private final double speed;
+    private final Map<String, Integer> zoneShards = new HashMap<>();
+    private final Map<Long, Integer> zoneCellShards = new HashMap<>();
+
+    public ReplayEngine(SurgePricingProperties properties, H3Core h3,
+                        int threads, int shardCount, long tickMillis, double speed) {
+        this.properties = properties;
+        this.h3 = h3;
+        ZoneIndex zoneIndex = new PolygonZoneIndex(h3, properties);
+        this.geofenceService = new GeofenceServiceImpl(h3, zoneIndex, properties);
+        this.cellIndex = new PolyfillCellIndex(h3, properties);
+        this.threads = threads;
+        this.shardCount = shardCount;
+        this.tickMillis = tickMillis;
+        this.speed = speed;
+        assignZoneShards(zoneIndex);
+    }
+
+    public ReplayReport run(Path events, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ReplayEventBuffer buffer = new ReplayEventBuffer(WINDOW_EVENTS);
+        long wallStart = System.currentTimeMillis();
+
+        try (ReplayEventReader reader = new ReplayEventReader(events);
+             Writer timeseries = Files.newBufferedWriter(outputDir.resolve("surge_timeseries.csv"),
+                     StandardCharsets.UTF_8)) {
+            timeseries.write("sim_millis,resolution,cell,drivers,requests,baseline,surge\n");
+
+            long start = reader.peekTime(buffer);
+            if (start < 0) {
+                throw new IOException("No events in " + events);
+            }
+            List<ReplayShard> shards = new ArrayList<>(shardCount);
+            for (int i = 0; i < shardCount; i++) {
+                shards.add(new ReplayShard(i, properties, geofenceService, cellIndex, objectMapper, start));
+            }
+
+            long eventCount = 0;
+            long ticks = 0;
+            long nextTick = start + tickMillis;
+            boolean more = true;
+            while (more) {
+                buffer.clear();
+                boolean windowComplete = reader.readUntil(nextTick, buffer, WINDOW_EVENTS);
+                more = reader.hasMore();
+                eventCount += buffer.size;
+
+                route(pool, buffer);
+                List<Callable<Void>> processing = new ArrayList<>(shardCount);
+                for (ReplayShard shard : shards) {
+                    processing.add(() -> {
+                        shard.process(buffer);
+                        return null;
+                    });
+                }
+                invokeAll(pool, processing);
+
+                if (windowComplete || !more) {
+                    tick(pool, shards, nextTick, timeseries);
+                    ticks++;
+                    nextTick += tickMillis;
+                    throttle(wallStart, nextTick - start);
+                }
+            }
+
+            ReplayStats stats = new ReplayStats(properties.getBaseSurgeMultiplier(), properties.getMaxSurgeMultiplier());
+            for (ReplayShard shard : shards) {
+                stats.merge(shard.stats());
+            }
+            writeCellSummary(outputDir.resolve("cell_summary.csv"), stats);
+            ReplayReport report = new ReplayReport(eventCount, reader.malformedLines(), start, nextTick - tickMillis,
+                    System.currentTimeMillis() - wallStart, ticks, shardCount, stats);
+            Files.writeString(outputDir.resolve("summary.txt"), report.format());
+            return report;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Assigns each event to the shard owning its coarsest cell. With roll-up
+     * the coarse cell is the H3 parent of the stored fine cell, so a fine cell
+     * and all its parents always share a shard. Without roll-up each
+     * resolution is computed independently and fine cells on a coarse-cell
+     * boundary can be split across shards.
+     *
+     * <p>An event inside a zone goes to the shard owning the zone instead, so
+     * every driver and request of a zone is counted in one place. A driver in
+     * a zone also counts towards its cells, so the coarse cells a zone touches
+     * are owned by that same shard (see {@link #assignZoneShards}).
+     */
+    private void route(ExecutorService pool, ReplayEventBuffer buffer) throws InterruptedException {
+        boolean rollup = properties.getMinH3Resolution() <= properties.getMaxH3Resolution()
+                && properties.isHierarchicalRollup();
+        int maxRes = properties.getMaxH3Resolution();
+        int routeRes = routeResolution();
+
+        int slice = Math.max(1, (buffer.size + threads - 1) / threads);
+        List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int from = 0; from < buffer.size; from += slice) {
+            int begin = from;
+            int end = Math.min(buffer.size, from + slice);
+            tasks.add(() -> {
+                for (int i = begin; i < end; i++) {
+                    String zoneId = geofenceService.getZoneId(buffer.lat[i], buffer.lng[i]);
+                    if (zoneId != null) {
+                        buffer.shards[i] = zoneShards.get(zoneId);
+                        continue;
+                    }
+                    long cell = rollup
+                            ? h3.cellToParent(h3.latLngToCell(buffer.lat[i], buffer.lng[i], maxRes), routeRes)
+                            : h3.latLngToCell(buffer.lat[i], buffer.lng[i], routeRes);
+                    Integer shard = zoneCellShards.get(cell);
+                    buffer.shards[i] = shard != null ? shard : shardOf(Long.hashCode(cell * 0x9E3779B97F4A7C15L));
+                }
+                return null;
+            });
+        }
+        invokeAll(pool, tasks);
+    }
+
+    /**
+     * Gives each zone a shard, together with every coarse cell its cover
+     * touches. Zones that share a coarse cell are grouped and share the shard
+     * of the group's first configured zone, so no coarse cell is written from
+     * two shards.
+     */
+    private void assignZoneShards(ZoneIndex zoneIndex) {
+        List<String> zoneIds = new ArrayList<>();
+        List<Set<Long>> zoneCells = new ArrayList<>();
+        for (Map.Entry<String, Set<Long>> zone : zoneIndex.coverCells(routeResolution()).entrySet()) {
+            // A point's fine cell can sit under the neighbour of the coarse cell containing it
+            Set<Long> cells = new HashSet<>();
+            for (long cell : zone.getValue()) {
+                cells.addAll(h3.gridDisk(cell, 1));
+            }
+            zoneIds.add(zone.getKey());
+            zoneCells.add(cells);
+        }
+
+        int[] group = new int[zoneIds.size()];
+        Map<Long, Integer> firstZone = new HashMap<>();
+        for (int zone = 0; zone < group.length; zone++) {
+            group[zone] = zone;
+            for (long cell : zoneCells.get(zone)) {
+                Integer other = firstZone.putIfAbsent(cell, zone);
+                if (other != null) {
+                    int a = root(group, other);
+                    int b = root(group, zone);
+                    group[Math.max(a, b)] = Math.min(a, b);
+                }
+            }
+        }
+        for (int zone = 0; zone < group.length; zone++) {
+            int shard = shardOf(zoneIds.get(root(group, zone)).hashCode() * 0x9E3779B9);
+            zoneShards.put(zoneIds.get(zone), shard);
+            for (long cell : zoneCells.get(zone)) {
+                zoneCellShards.put(cell, shard);
+            }
+        }
+    }
+
+    private int routeResolution() {
+        int minRes = properties.getMinH3Resolution();
+        return minRes <= properties.getMaxH3Resolution() ? minRes : properties.getH3Resolution();
+    }
+
+    private int shardOf(int hash) {
+        return Math.floorMod(hash, shardCount);
+    }
+
+    private static int root(int[] group, int zone) {
+        while (group[zone] != zone) {
+            group[zone] = group[group[zone]];
+            zone = group[zone];
+        }
+        return zone;
+    }
+
+    private void tick(ExecutorService pool, List<ReplayShard> shards, long tickAt, Writer timeseries)
+            throws InterruptedException, IOException {
+        List<Callable<Void>> tasks = new ArrayList<>(shards.size());
+        for (ReplayShard shard : shards) {
+            tasks.add(() -> {
+                shard.tick(tickAt);
+                return null;
+            });
+        }
+        invokeAll(pool, tasks);
+        for (ReplayShard shard : shards) {
+            timeseries.append(shard.rows());
+        }
+    }
+
+    private void throttle(long wallStart, long simulatedElapsedMillis) throws InterruptedException {
+        if (speed <= 0) {
+            return;
+        }
+        long ahead = wallStart + (long) (simulatedElapsedMillis / speed) - System.currentTimeMillis();
+        if (ahead > 0) {
+            Thread.sleep(ahead);
+        }
+    }
+
+    private void writeCellSummary(Path path, ReplayStats stats) throws IOException {
+        List<Map.Entry<String, ReplayStats.CellStats>> cells = new ArrayList<>(stats.cells.entrySet());
+        cells.sort(Comparator.comparingLong((Map.Entry<String, ReplayStats.CellStats> e) -> e.getValue().surgingTicks)
+                .reversed());
+        try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            out.write("resolution,cell,cycles,surging_cycles,mean_surge,max_surge,max_surge_at\n");
+            for (Map.Entry<String, ReplayStats.CellStats> entry : cells) {
+                // geofence:<resolution>:<geofenceId>:drivers
+                String[] parts = entry.getKey().split(":");
+                ReplayStats.CellStats cell = entry.getValue();
+                out.write(parts[1] + ',' + parts[2] + ',' + cell.ticks + ',' + cell.surgingTicks + ','
+                        + String.format("%.3f", cell.surgeSum / cell.ticks) + ','
+                        + String.format("%.2f", cell.maxSurge) + ',' + cell.maxSurgeAt + '\n');
+            }
+        }
+    }
+
+    private static void invokeAll(ExecutorService pool, List<Callable<Void>> tasks) throws InterruptedException {
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Replay shard failed", e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.wecode.surgeprice.replay;
+
+import java.util.Arrays;
+
+/**
+ * Column-oriented window of parsed events. Reused across windows, so steady
+ * state replay allocates nothing per event; ids point at interned strings.
+ */
+final class ReplayEventBuffer {
+
+    static final byte LOCATION = 'L';
+    static final byte BOOKING = 'B';
+
+    int size;
+    long[] times;
+    byte[] types;
+    String[] ids;
+    double[] lat;
+    double[] lng;
+    double[] dropLat;
+    double[] dropLng;
+    int[] shards;
+
+    ReplayEventBuffer(int initialCapacity) {
+        times = new long[initialCapacity];
+        types = new byte[initialCapacity];
+        ids = new String[initialCapacity];
+        lat = new double[initialCapacity];
+        lng = new double[initialCapacity];
+        dropLat = new double[initialCapacity];
+        dropLng = new double[initialCapacity];
+        shards = new int[initialCapacity];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Makes sure the slot at {@link #size} is writable. The reader fills the
+     * slot and only then bumps {@code size}, so a rejected line is discarded
+     * by simply not committing it.
+     */
+    void ensureSlot() {
+        if (size < times.length) {
+            return;
+        }
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        types = Arrays.copyOf(types, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        lat = Arrays.copyOf(lat, capacity);
+        lng = Arrays.copyOf(lng, capacity);
+        dropLat = Arrays.copyOf(dropLat, capacity);
+        dropLng = Arrays.copyOf(dropLng, capacity);
+        shards = Arrays.copyOf(shards, capacity);
+    }
+}
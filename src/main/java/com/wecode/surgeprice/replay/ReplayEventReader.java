@@ -0,0 +1,359 @@
+package com.wecode.surgeprice.replay;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Memory-mapped reader for the replay event log. Lines are parsed straight
+ * from the mapped bytes into a {@link ReplayEventBuffer}: numbers are decoded
+ * in place and driver/rider ids are interned, so a string is only created the
+ * first time an id is seen.
+ *
+ * <pre>
+ * L,&lt;epochMillis&gt;,&lt;driverId&gt;,&lt;lat&gt;,&lt;lng&gt;
+ * B,&lt;epochMillis&gt;,&lt;riderId&gt;,&lt;pickupLat&gt;,&lt;pickupLng&gt;,&lt;dropLat&gt;,&lt;dropLng&gt;
+ * </pre>
+ *
+ * Events must be in time order. Blank lines and lines starting with {@code #}
+ * are ignored; malformed lines are counted and skipped.
+ */
+final class ReplayEventReader implements Closeable {
+
+    private static final long MAP_BYTES = 256L * 1024 * 1024;
+    private static final double[] POW10 = new double[19];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final IdTable ids = new IdTable();
+    private MappedByteBuffer map;
+    private long mapStart;
+    private int pos;
+    private int cursor;
+    private int lineEnd;
+    private boolean malformed;
+    private long malformedLines;
+
+    ReplayEventReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        remap(0);
+    }
+
+    /**
+     * Time of the next event without consuming it, or -1 at end of file.
+     */
+    long peekTime(ReplayEventBuffer scratch) throws IOException {
+        int size = scratch.size;
+        int savedPos = pos;
+        long savedMapStart = mapStart;
+        long time = parseNext(scratch) ? scratch.times[size] : -1;
+        if (mapStart != savedMapStart) {
+            remap(savedMapStart);
+        }
+        pos = savedPos;
+        return time;
+    }
+
+    /**
+     * Appends events with a time before {@code endMillis} until either such an
+     * event is reached, the end of the file, or {@code maxEvents} are buffered.
+     *
+     * @return true when the window up to {@code endMillis} is complete
+     */
+    boolean readUntil(long endMillis, ReplayEventBuffer buffer, int maxEvents) throws IOException {
+        while (buffer.size < maxEvents) {
+            int lineStart = pos;
+            long lineMapStart = mapStart;
+            if (!parseNext(buffer)) {
+                return true;
+            }
+            if (buffer.times[buffer.size] >= endMillis) {
+                if (mapStart != lineMapStart) {
+                    remap(lineMapStart);
+                }
+                pos = lineStart;
+                return true;
+            }
+            buffer.size++;
+        }
+        return false;
+    }
+
+    boolean hasMore() {
+        return mapStart + pos < fileSize;
+    }
+
+    long malformedLines() {
+        return malformedLines;
+    }
+
+    long position() {
+        return mapStart + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parses the next event into the uncommitted slot at {@code buffer.size}.
+     */
+    private boolean parseNext(ReplayEventBuffer buffer) throws IOException {
+        while (findLine()) {
+            int start = pos;
+            pos = lineEnd < map.limit() ? lineEnd + 1 : lineEnd;
+            int end = lineEnd;
+            if (end > start && map.get(end - 1) == '\r') {
+                end--;
+            }
+            if (end == start || map.get(start) == '#') {
+                continue;
+            }
+            buffer.ensureSlot();
+            if (parseLine(buffer, start, end)) {
+                return true;
+            }
+            malformedLines++;
+        }
+        return false;
+    }
+
+    private boolean parseLine(ReplayEventBuffer buffer, int start, int end) {
+        int slot = buffer.size;
+        byte type = map.get(start);
+        if ((type != ReplayEventBuffer.LOCATION && type != ReplayEventBuffer.BOOKING)
+                || start + 1 >= end || map.get(start + 1) != ',') {
+            return false;
+        }
+        lineEnd = end;
+        cursor = start + 2;
+        malformed = false;
+        buffer.types[slot] = type;
+        buffer.times[slot] = parseLong();
+        buffer.ids[slot] = parseId();
+        buffer.lat[slot] = parseDouble();
+        buffer.lng[slot] = parseDouble();
+        if (type == ReplayEventBuffer.BOOKING) {
+            buffer.dropLat[slot] = parseDouble();
+            buffer.dropLng[slot] = parseDouble();
+        }
+        return !malformed;
+    }
+
+    private long parseLong() {
+        int fieldEnd = fieldEnd();
+        long value = 0;
+        if (cursor == fieldEnd) {
+            malformed = true;
+        }
+        for (; cursor < fieldEnd; cursor++) {
+            int digit = map.get(cursor) - '0';
+            if (digit < 0 || digit > 9) {
+                malformed = true;
+                break;
+            }
+            value = value * 10 + digit;
+        }
+        cursor = fieldEnd + 1;
+        return value;
+    }
+
+    private String parseId() {
+        int fieldEnd = fieldEnd();
+        if (cursor == fieldEnd) {
+            malformed = true;
+            return null;
+        }
+        String id = ids.intern(map, cursor, fieldEnd - cursor);
+        cursor = fieldEnd + 1;
+        return id;
+    }
+
+    private double parseDouble() {
+        int fieldEnd = fieldEnd();
+        int start = cursor;
+        if (cursor >= fieldEnd) {
+            malformed = true;
+            return 0;
+        }
+        boolean negative = false;
+        byte first = map.get(cursor);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            cursor++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; cursor < fieldEnd; cursor++) {
+            byte b = map.get(cursor);
+            if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (fraction) {
+                        scale++;
+                    }
+                } else if (!fraction) {
+                    scale--;
+                }
+            } else if (b == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        double value;
+        if (cursor < fieldEnd || digits == 0) {
+            // Exponents and other rare forms take the slow path
+            value = parseDoubleSlow(start, fieldEnd);
+        } else {
+            value = scale >= 0 ? mantissa / POW10[scale] : mantissa * POW10[-scale];
+            value = negative ? -value : value;
+        }
+        cursor = fieldEnd + 1;
+        return value;
+    }
+
+    private double parseDoubleSlow(int start, int fieldEnd) {
+        byte[] bytes = new byte[fieldEnd - start];
+        map.get(start, bytes);
+        try {
+            return Double.parseDouble(new String(bytes, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            malformed = true;
+            return 0;
+        }
+    }
+
+    private int fieldEnd() {
+        int i = cursor;
+        while (i < lineEnd && map.get(i) != ',') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Positions {@code lineEnd} at the newline ending the line at {@code pos},
+     * remapping when the line straddles the end of the current mapping.
+     */
+    private boolean findLine() throws IOException {
+        while (true) {
+            int limit = map.limit();
+            if (pos >= limit && mapStart + limit >= fileSize) {
+                return false;
+            }
+            int i = pos;
+            while (i < limit && map.get(i) != '\n') {
+                i++;
+            }
+            if (i < limit || mapStart + limit >= fileSize) {
+                lineEnd = i;
+                return true;
+            }
+            if (pos == 0) {
+                throw new IOException("Line longer than " + MAP_BYTES + " bytes at offset " + mapStart);
+            }
+            remap(mapStart + pos);
+        }
+    }
+
+    private void remap(long start) throws IOException {
+        mapStart = start;
+        long length = Math.min(MAP_BYTES, fileSize - start);
+        map = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        pos = 0;
+    }
+
+    /**
+     * Open-addressing intern table keyed directly on the id bytes.
+     */
+    private static final class IdTable {
+
+        private int[] hashes = new int[1 << 16];
+        private String[] values = new String[1 << 16];
+        private int count;
+        private byte[] scratch = new byte[64];
+
+        String intern(MappedByteBuffer map, int offset, int length) {
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + map.get(offset + i);
+            }
+            int mask = values.length - 1;
+            for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+                String value = values[slot];
+                if (value == null) {
+                    return insert(slot, hash, map, offset, length);
+                }
+                if (hashes[slot] == hash && matches(value, map, offset, length)) {
+                    return value;
+                }
+            }
+        }
+
+        private String insert(int slot, int hash, MappedByteBuffer map, int offset, int length) {
+            if (scratch.length < length) {
+                scratch = new byte[length * 2];
+            }
+            map.get(offset, scratch, 0, length);
+            String value = new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+            hashes[slot] = hash;
+            values[slot] = value;
+            if (++count * 2 > values.length) {
+                grow();
+            }
+            return value;
+        }
+
+        private void grow() {
+            int[] oldHashes = hashes;
+            String[] oldValues = values;
+            hashes = new int[oldValues.length * 2];
+            values = new String[oldValues.length * 2];
+            int mask = values.length - 1;
+            for (int i = 0; i < oldValues.length; i++) {
+                if (oldValues[i] == null) {
+                    continue;
+                }
+                int slot = mix(oldHashes[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static boolean matches(String value, MappedByteBuffer map, int offset, int length) {
+            if (value.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) != (char) (map.get(offset + i) & 0xff)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16) * 0x45d9f3b;
+        }
+    }
+}
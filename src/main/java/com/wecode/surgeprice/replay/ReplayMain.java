@@ -0,0 +1,69 @@
+package com.wecode.surgeprice.replay;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.BeanWrapperImpl;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command-line entry point for offline replay.
+ *
+ * <pre>
+ * ./mvnw -q compile exec:java -Dexec.mainClass=com.wecode.surgeprice.replay.ReplayMain \
+ *     -Dexec.args="--events=day.csv --out=replay-out --surge.maxSurgeJump=0.3"
+ * </pre>
+ *
+ * Options: {@code --events} (required), {@code --out} [replay-out],
+ * {@code --threads} [cores], {@code --shards} [4 x threads],
+ * {@code --tick-seconds} [15, the worker interval], {@code --speed} [0 = unthrottled].
+ * Any {@code --surge.<property>=value} overrides that field of
+ * {@link SurgePricingProperties}, e.g. to backtest a different threshold.
+ */
+public final class ReplayMain {
+
+    private ReplayMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        if (!options.containsKey("events")) {
+            System.err.println("Usage: ReplayMain --events=<file> [--out=dir] [--threads=n] [--shards=n]"
+                    + " [--tick-seconds=15] [--speed=0] [--surge.<property>=value ...]");
+            System.exit(2);
+        }
+
+        // Per-cycle and degraded-mode logging would dominate the replay
+        ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.ERROR);
+
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setWarmupSeconds(0);
+        BeanWrapper overrides = new BeanWrapperImpl(properties);
+        options.forEach((name, value) -> {
+            if (name.startsWith("surge.")) {
+                overrides.setPropertyValue(name.substring("surge.".length()), value);
+            }
+        });
+
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int shards = Integer.parseInt(options.getOrDefault("shards", String.valueOf(threads * 4)));
+        long tickMillis = Long.parseLong(options.getOrDefault("tick-seconds", "15")) * 1000L;
+        double speed = Double.parseDouble(options.getOrDefault("speed", "0"));
+
+        ReplayEngine engine = new ReplayEngine(properties, H3Core.newInstance(), threads, shards, tickMillis, speed);
+        ReplayReport report = engine.run(Path.of(options.get("events")),
+                Path.of(options.getOrDefault("out", "replay-out")));
+        System.out.print(report.format());
+    }
+}
@@ -0,0 +1,74 @@
+package com.wecode.surgeprice.replay;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Summary of one replay run.
+ */
+public class ReplayReport {
+
+    private final long events;
+    private final long malformedLines;
+    private final long simulatedStartMillis;
+    private final long simulatedEndMillis;
+    private final long wallMillis;
+    private final long ticks;
+    private final int shards;
+    private final ReplayStats stats;
+
+    ReplayReport(long events, long malformedLines, long simulatedStartMillis, long simulatedEndMillis,
+                 long wallMillis, long ticks, int shards, ReplayStats stats) {
+        this.events = events;
+        this.malformedLines = malformedLines;
+        this.simulatedStartMillis = simulatedStartMillis;
+        this.simulatedEndMillis = simulatedEndMillis;
+        this.wallMillis = wallMillis;
+        this.ticks = ticks;
+        this.shards = shards;
+        this.stats = stats;
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    public double getSpeedup() {
+        return wallMillis > 0 ? (double) (simulatedEndMillis - simulatedStartMillis) / wallMillis : 0;
+    }
+
+    public double getSurgingShare() {
+        return stats.cellTicks > 0 ? (double) stats.surgingCellTicks / stats.cellTicks : 0;
+    }
+
+    public String format() {
+        long cellTicks = stats.cellTicks;
+        StringBuilder out = new StringBuilder();
+        out.append("Simulated window : ").append(Instant.ofEpochMilli(simulatedStartMillis))
+                .append(" .. ").append(Instant.ofEpochMilli(simulatedEndMillis))
+                .append(" (").append(Duration.ofMillis(simulatedEndMillis - simulatedStartMillis)).append(")\n");
+        out.append(String.format("Wall time        : %d ms (%.0fx real time, %.0f events/s)%n",
+                wallMillis, getSpeedup(), wallMillis > 0 ? events * 1000.0 / wallMillis : 0));
+        out.append(String.format("Events           : %d (%d locations, %d bookings, %d malformed lines)%n",
+                events, stats.locations, stats.bookings, malformedLines));
+        out.append(String.format("Worker cycles    : %d across %d shards, %d distinct cells%n",
+                ticks, shards, stats.cells.size()));
+        out.append(String.format("Cell surge       : mean %.3f, p50 %.2f, p90 %.2f, p99 %.2f, max %.2f, surging %.1f%% of cell-cycles%n",
+                cellTicks > 0 ? stats.cellSurgeSum / cellTicks : 0,
+                ReplayStats.percentile(stats.cellSurgeBuckets, cellTicks, 50),
+                ReplayStats.percentile(stats.cellSurgeBuckets, cellTicks, 90),
+                ReplayStats.percentile(stats.cellSurgeBuckets, cellTicks, 99),
+                stats.maxCellSurge, getSurgingShare() * 100));
+        out.append(String.format("Quoted surge     : mean %.3f, p50 %.2f, p99 %.2f, max %.2f, surged %.1f%% of bookings%n",
+                stats.bookings > 0 ? stats.quotedSurgeSum / stats.bookings : 0,
+                ReplayStats.percentile(stats.quotedSurgeBuckets, stats.bookings, 50),
+                ReplayStats.percentile(stats.quotedSurgeBuckets, stats.bookings, 99),
+                stats.maxQuotedSurge,
+                stats.bookings > 0 ? stats.surgedQuotes * 100.0 / stats.bookings : 0));
+        return out.toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.wecode.surgeprice.replay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.consumer.DriverLocationConsumer;
+import com.wecode.surgeprice.registry.NoOpDriverRegistry;
+import com.wecode.surgeprice.service.CellIndex;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.PricingService;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.ZoneIndex;
+import com.wecode.surgeprice.service.impl.CellRollupServiceImpl;
+import com.wecode.surgeprice.service.impl.InMemoryRedisService;
+import com.wecode.surgeprice.service.impl.PricingServiceImpl;
+import com.wecode.surgeprice.service.impl.RollupRedisService;
+import com.wecode.surgeprice.worker.SurgePricingWorker;
+
+import java.util.List;
+
+/**
+ * One independent slice of the city: its own simulated clock, in-memory
+ * store and worker, wired the same way as the application context. Events
+ * are routed so that every cell (and its roll-up parents) lives in exactly
+ * one shard, and each zone in the shard owning the coarse cells it touches,
+ * which lets shards run on separate threads without sharing state. Without
+ * roll-up, fine cells on a coarse-cell boundary are the exception.
+ */
+final class ReplayShard {
+
+    private final int index;
+    private final GeofenceService geofenceService;
+    private final SimulatedClock clock;
+    private final InMemoryRedisService storage;
+    private final RedisService redisService;
+    private final CellRollupServiceImpl rollupService;
+    private final DriverLocationConsumer consumer;
+    private final PricingService pricingService;
+    private final SurgePricingWorker worker;
+    private final ReplayStats stats;
+    private final StringBuilder rows = new StringBuilder(1 << 16);
+
+    ReplayShard(int index, SurgePricingProperties properties, GeofenceService geofenceService,
+                CellIndex cellIndex, ObjectMapper objectMapper, long startMillis) {
+        this.index = index;
+        this.geofenceService = geofenceService;
+        this.clock = new SimulatedClock(startMillis);
+        this.storage = new InMemoryRedisService(properties, clock, 0, 0);
+        if (properties.isHierarchicalRollup()) {
+            this.rollupService = new CellRollupServiceImpl(storage, geofenceService, properties, clock);
+            this.redisService = new RollupRedisService(storage, rollupService, properties);
+        } else {
+            this.rollupService = null;
+            this.redisService = storage;
+        }
+        this.consumer = new DriverLocationConsumer(objectMapper, geofenceService, redisService,
+                new NoOpDriverRegistry(), properties);
+        this.pricingService = new PricingServiceImpl(geofenceService, redisService, properties);
+        this.worker = new SurgePricingWorker(redisService, properties, cellIndex, clock);
+        this.stats = new ReplayStats(properties.getBaseSurgeMultiplier(), properties.getMaxSurgeMultiplier());
+    }
+
+    /**
+     * Applies this shard's events from the window, in file order.
+     */
+    void process(ReplayEventBuffer buffer) {
+        int[] shards = buffer.shards;
+        for (int i = 0; i < buffer.size; i++) {
+            if (shards[i] != index) {
+                continue;
+            }
+            clock.advanceTo(buffer.times[i]);
+            if (buffer.types[i] == ReplayEventBuffer.LOCATION) {
+                consumer.recordLocation(buffer.ids[i], buffer.lat[i], buffer.lng[i], buffer.times[i]);
+                stats.locations++;
+            } else {
+                book(buffer.ids[i], buffer.times[i], buffer.lat[i], buffer.lng[i],
+                        buffer.dropLat[i], buffer.dropLng[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs one worker cycle at {@code tickMillis} and appends a time-series
+     * row per active cell to {@link #rows()}.
+     */
+    void tick(long tickMillis) {
+        rows.setLength(0);
+        clock.advanceTo(tickMillis);
+        storage.evictExpired(); // nothing schedules it outside Spring
+        if (rollupService != null) {
+            rollupService.refresh();
+        }
+        worker.calculateSurge();
+
+        for (String key : redisService.getActiveGeofences()) {
+            // geofence:<resolution>:<geofenceId>:drivers
+            int first = key.indexOf(':');
+            int second = key.indexOf(':', first + 1);
+            int third = key.indexOf(':', second + 1);
+            if (first < 0 || second < 0 || third < 0) {
+                continue;
+            }
+            int resolution = Integer.parseInt(key, first + 1, second, 10);
+            String geofenceId = key.substring(second + 1, third);
+            long drivers = redisService.getDriverCount(resolution, geofenceId);
+            long requests = redisService.getRideRequestCount(resolution, geofenceId);
+            double baseline = redisService.getBaseline(resolution, geofenceId);
+            double surge = redisService.getSurge(resolution, geofenceId);
+
+            stats.recordCell(key, tickMillis, surge);
+            rows.append(tickMillis).append(',')
+                    .append(resolution).append(',')
+                    .append(geofenceId).append(',')
+                    .append(drivers).append(',')
+                    .append(requests).append(',')
+                    .append(round(baseline)).append(',')
+                    .append(round(surge)).append('\n');
+        }
+    }
+
+    StringBuilder rows() {
+        return rows;
+    }
+
+    ReplayStats stats() {
+        return stats;
+    }
+
+    // Mirrors RiderController.bookRide without the HTTP and JSON layers
+    private void book(String riderId, long time, double pickupLat, double pickupLng,
+                      double dropLat, double dropLng) {
+        double distanceKm = pricingService.calculateDistanceKm(pickupLat, pickupLng, dropLat, dropLng);
+        String zoneId = geofenceService.getZoneId(pickupLat, pickupLng);
+        int resolution = zoneId != null ? ZoneIndex.ZONE_RESOLUTION : pricingService.selectResolution(distanceKm);
+        String geofenceId = zoneId != null ? zoneId : geofenceService.getGeofenceId(pickupLat, pickupLng, resolution);
+        long nearbyDrivers = redisService.getDriverCount(resolution, geofenceId);
+        long requestCount = redisService.getRideRequestCountsWith(resolution, List.of(geofenceId),
+                List.of(riderId))[0];
+        double surgeMultiplier = pricingService.calculateSurge(requestCount, nearbyDrivers);
+        stats.recordQuote(surgeMultiplier);
+
+        int storageRes = geofenceService.getStorageResolution(resolution);
+        String storageGeofenceId = storageRes == resolution
+                ? geofenceId
+                : geofenceService.getGeofenceId(pickupLat, pickupLng, storageRes);
+        redisService.addRideRequest(storageRes, storageGeofenceId, riderId, riderId + ':' + time);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000.0) / 1000.0;
+    }
+}
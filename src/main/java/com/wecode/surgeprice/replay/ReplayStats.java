@@ -0,0 +1,135 @@
+package com.wecode.surgeprice.replay;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-shard surge statistics. Surge values go into fixed-width buckets so
+ * shards can be merged and percentiles read without keeping every sample.
+ */
+final class ReplayStats {
+
+    static final double BUCKET_WIDTH = 0.05;
+
+    final double baseSurge;
+    final int[] cellSurgeBuckets;
+    final int[] quotedSurgeBuckets;
+    final Map<String, CellStats> cells = new HashMap<>();
+    long locations;
+    long bookings;
+    long cellTicks;
+    long surgingCellTicks;
+    double cellSurgeSum;
+    double maxCellSurge;
+    long surgedQuotes;
+    double quotedSurgeSum;
+    double maxQuotedSurge;
+
+    ReplayStats(double baseSurge, double maxSurge) {
+        this.baseSurge = baseSurge;
+        int buckets = (int) Math.ceil(maxSurge / BUCKET_WIDTH) + 2;
+        this.cellSurgeBuckets = new int[buckets];
+        this.quotedSurgeBuckets = new int[buckets];
+    }
+
+    void recordCell(String cellKey, long tickMillis, double surge) {
+        cellTicks++;
+        cellSurgeSum += surge;
+        maxCellSurge = Math.max(maxCellSurge, surge);
+        cellSurgeBuckets[bucket(surge)]++;
+        boolean surging = surge > baseSurge;
+        if (surging) {
+            surgingCellTicks++;
+        }
+        CellStats cell = cells.get(cellKey);
+        if (cell == null) {
+            cell = new CellStats();
+            cells.put(cellKey, cell);
+        }
+        cell.record(tickMillis, surge, surging);
+    }
+
+    void recordQuote(double surge) {
+        bookings++;
+        quotedSurgeSum += surge;
+        maxQuotedSurge = Math.max(maxQuotedSurge, surge);
+        quotedSurgeBuckets[bucket(surge)]++;
+        if (surge > baseSurge) {
+            surgedQuotes++;
+        }
+    }
+
+    void merge(ReplayStats other) {
+        locations += other.locations;
+        bookings += other.bookings;
+        cellTicks += other.cellTicks;
+        surgingCellTicks += other.surgingCellTicks;
+        cellSurgeSum += other.cellSurgeSum;
+        maxCellSurge = Math.max(maxCellSurge, other.maxCellSurge);
+        surgedQuotes += other.surgedQuotes;
+        quotedSurgeSum += other.quotedSurgeSum;
+        maxQuotedSurge = Math.max(maxQuotedSurge, other.maxQuotedSurge);
+        for (int i = 0; i < cellSurgeBuckets.length; i++) {
+            cellSurgeBuckets[i] += other.cellSurgeBuckets[i];
+            quotedSurgeBuckets[i] += other.quotedSurgeBuckets[i];
+        }
+        // Without roll-up a fine cell on a coarse-cell boundary is seen by two shards
+        for (Map.Entry<String, CellStats> cell : other.cells.entrySet()) {
+            cells.merge(cell.getKey(), cell.getValue(), CellStats::merge);
+        }
+    }
+
+    /**
+     * Lower edge of the bucket holding the given percentile.
+     */
+    static double percentile(int[] buckets, long total, double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return i * BUCKET_WIDTH;
+            }
+        }
+        return (buckets.length - 1) * BUCKET_WIDTH;
+    }
+
+    private int bucket(double surge) {
+        int index = (int) (surge / BUCKET_WIDTH + 1e-9);
+        return Math.max(0, Math.min(index, cellSurgeBuckets.length - 1));
+    }
+
+    static final class CellStats {
+        long ticks;
+        long surgingTicks;
+        double surgeSum;
+        double maxSurge;
+        long maxSurgeAt;
+
+        private void record(long tickMillis, double surge, boolean surging) {
+            ticks++;
+            surgeSum += surge;
+            if (surging) {
+                surgingTicks++;
+            }
+            if (surge > maxSurge) {
+                maxSurge = surge;
+                maxSurgeAt = tickMillis;
+            }
+        }
+
+        private CellStats merge(CellStats other) {
+            ticks += other.ticks;
+            surgingTicks += other.surgingTicks;
+            surgeSum += other.surgeSum;
+            if (other.maxSurge > maxSurge) {
+                maxSurge = other.maxSurge;
+                maxSurgeAt = other.maxSurgeAt;
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.wecode.surgeprice.replay;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * Clock driven by replayed event time. It only moves forward, so a slightly
+ * out-of-order event never makes fresher data look like it is from the future.
+ */
+public class SimulatedClock extends Clock {
+
+    private volatile long millis;
+
+    public SimulatedClock(long startMillis) {
+        this.millis = startMillis;
+    }
+
+    public void advanceTo(long eventMillis) {
+        if (eventMillis > millis) {
+            millis = eventMillis;
+        }
+    }
+
+    @Override
+    public long millis() {
+        return millis;
+    }
+
+    @Override
+    public Instant instant() {
+        return Instant.ofEpochMilli(millis);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        throw new UnsupportedOperationException("Simulated clock is UTC only");
+    }
+}
@@ -0,0 +1,23 @@
+package com.wecode.surgeprice.service;
+
+/**
+ * Dense ordinals for the cells of the configured service area, every
+ * resolution from {@code minH3Resolution} to {@code maxH3Resolution}. Lets
+ * per-cell state live in flat arrays instead of string-keyed maps.
+ */
+public interface CellIndex {
+
+    /**
+     * Ordinal of the cell, or -1 when it lies outside the service area.
+     */
+    int ordinal(String geofenceId);
+
+    int ordinal(long cell);
+
+    long cellAt(int ordinal);
+
+    /**
+     * Number of cells indexed; ordinals run from 0 to {@code size() - 1}.
+     */
+    int size();
+}
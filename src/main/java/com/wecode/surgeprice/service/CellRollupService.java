@@ -0,0 +1,32 @@
+package com.wecode.surgeprice.service;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * In-memory roll-up of finest-resolution supply and demand into coarser parent cells.
+ */
+public interface CellRollupService {
+
+    void markActive(String fineGeofenceId);
+
+    /**
+     * Records the fine cell a driver was seen in at {@code timestamp}. Returns
+     * the fine cell they were in before, or null when it is the same cell, the
+     * driver is new here or the position is older than the one recorded.
+     */
+    String moveDriver(String driverId, String fineGeofenceId, long timestamp);
+
+    long getDriverCount(int resolution, String geofenceId);
+
+    long getRideRequestCount(int resolution, String geofenceId);
+
+    long getLastUpdate(int resolution, String geofenceId);
+
+    List<String> getChildren(int resolution, String geofenceId);
+
+    /**
+     * Parent cells with live supply, as {@code geofence:<resolution>:<geofenceId>:drivers} keys.
+     */
+    Set<String> getActiveParents();
+}
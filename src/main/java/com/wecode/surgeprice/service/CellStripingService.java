@@ -0,0 +1,19 @@
+package com.wecode.surgeprice.service;
+
+/**
+ * Spreads writes for hot geofences over several stripes. Callers ask which
+ * stripe to write a member to and how many stripes to merge on read, and
+ * build the keys themselves.
+ */
+public interface CellStripingService {
+
+    /**
+     * Stripe to write {@code member} to, or -1 to write the unstriped key.
+     */
+    int writeStripe(int resolution, String geofenceId, String member);
+
+    /**
+     * Number of stripes to merge with the unstriped key on read (0 when the cell is not striped).
+     */
+    int readStripes(int resolution, String geofenceId);
+}
@@ -0,0 +1,97 @@
+package com.wecode.surgeprice.service;
+
+/**
+ * Open-addressing map from H3 cell index to an int, with linear probing and
+ * backward-shift deletion. Sized once for the most cells it will hold and
+ * kept under half full, so probe chains stay short and nothing is allocated
+ * after construction.
+ *
+ * Lookups hand back the slot, which callers then read or write, so a find and
+ * an insert cost one probe. Not thread-safe.
+ */
+public final class CellTable {
+
+    public static final long EMPTY_CELL = 0L; // never a valid H3 index
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+
+    public CellTable(int maxCells) {
+        int size = Integer.highestOneBit(Math.max(2, maxCells) * 4 - 1);
+        keys = new long[size];
+        values = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Slot holding the cell, or the empty slot where it would go.
+     */
+    public int indexOf(long cell) {
+        int index = home(cell);
+        while (keys[index] != EMPTY_CELL && keys[index] != cell) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    public int get(long cell, int missing) {
+        int index = indexOf(cell);
+        return keys[index] == cell ? values[index] : missing;
+    }
+
+    public void put(int index, long cell, int value) {
+        keys[index] = cell;
+        values[index] = value;
+    }
+
+    public void setValue(int index, int value) {
+        values[index] = value;
+    }
+
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    public int valueAt(int index) {
+        return values[index];
+    }
+
+    /**
+     * Number of slots, for walking the table with {@link #keyAt}.
+     */
+    public int slots() {
+        return keys.length;
+    }
+
+    /**
+     * Empties the slot; backward-shift deletion keeps probe chains intact
+     * without tombstones.
+     */
+    public void remove(int index) {
+        int hole = index;
+        int probe = index;
+        keys[hole] = EMPTY_CELL;
+        while (true) {
+            probe = (probe + 1) & mask;
+            if (keys[probe] == EMPTY_CELL) {
+                return;
+            }
+            int home = home(keys[probe]);
+            boolean movable = hole <= probe
+                    ? home <= hole || home > probe
+                    : home <= hole && home > probe;
+            if (movable) {
+                keys[hole] = keys[probe];
+                values[hole] = values[probe];
+                keys[probe] = EMPTY_CELL;
+                hole = probe;
+            }
+        }
+    }
+
+    private int home(long cell) {
+        long mixed = cell * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & mask;
+    }
+}
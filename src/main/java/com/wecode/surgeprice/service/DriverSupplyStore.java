@@ -0,0 +1,40 @@
+package com.wecode.surgeprice.service;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Storage strategy for driver presence per geofence. Selected per deployment
+ * with {@code surge.supply-store} ({@code zset} for exact counts, {@code hll}
+ * for approximate counts with bounded memory).
+ */
+public interface DriverSupplyStore {
+
+    void addDriver(int resolution, String geofenceId, String driverId, long now);
+
+    /**
+     * Bulk write for the first {@code count} entries, in one pipelined round
+     * trip. Goes to the unstriped keys (always read) and is not counted
+     * towards hot-cell detection.
+     */
+    void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count);
+
+    /**
+     * Drops the driver from the cell's key and every stripe it may sit in.
+     */
+    void removeDriver(int resolution, String geofenceId, String driverId);
+
+    long getDriverCount(int resolution, String geofenceId, long now);
+
+    /**
+     * Counts for several cells of one resolution, in the order given, read in one round trip.
+     */
+    long[] getDriverCounts(int resolution, List<String> geofenceIds, long now);
+
+    Set<String> getDrivers(int resolution, String geofenceId, long now);
+
+    /**
+     * Active driver keys, normalized to {@code geofence:<resolution>:<geofenceId>:drivers}.
+     */
+    Set<String> getActiveGeofences();
+}
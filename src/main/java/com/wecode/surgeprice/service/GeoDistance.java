@@ -0,0 +1,22 @@
+package com.wecode.surgeprice.service;
+
+/**
+ * Great-circle distance on a spherical Earth, shared by pricing, the driver
+ * registry and the zone index so they all agree on what "nearby" means.
+ */
+public final class GeoDistance {
+
+    public static final double EARTH_RADIUS_KM = 6371.0;
+
+    private GeoDistance() {
+    }
+
+    public static double haversineKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -5,4 +5,14 @@ public interface GeofenceService {
     String getGeofenceId(double lat, double lng);
 
     String getGeofenceId(double lat, double lng, int resolution);
+
+    /**
+     * Geofence id of the custom zone containing the point, or null. A zone
+     * overrides the point's cell and is stored at {@link ZoneIndex#ZONE_RESOLUTION}.
+     */
+    String getZoneId(double lat, double lng);
+
+    String getParentGeofenceId(String geofenceId, int parentResolution);
+
+    int getStorageResolution(int resolution);
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package com.wecode.surgeprice.service;
+
+import com.wecode.surgeprice.dto.HeatmapDTO;
+
+public interface HeatmapService {
+
+    /**
+     * Tiles covering the bounding box at {@code resolution}, each brought up
+     * to the current surge cycle.
+     *
+     * @throws IllegalArgumentException for an unsupported resolution or a box with too many cells
+     */
+    HeatmapDTO heatmap(double minLat, double minLng, double maxLat, double maxLng, int resolution);
+
+    /**
+     * One tile at the current surge cycle, or null if {@code tileId} is not a
+     * tile for {@code resolution}.
+     */
+    HeatmapTile tile(String tileId, int resolution);
+}
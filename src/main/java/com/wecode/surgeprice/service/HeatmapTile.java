@@ -0,0 +1,21 @@
+package com.wecode.surgeprice.service;
+
+/**
+ * A serialized heatmap tile and its ETag, as built for one surge cycle.
+ */
+public final class HeatmapTile {
+
+    private final byte[] body;
+    private final String etag;
+    private final long version;
+
+    public HeatmapTile(byte[] body, String etag, long version) {
+        this.body = body;
+        this.etag = etag;
+        this.version = version;
+    }
+
+    public byte[] getBody() { return body; }
+    public String getEtag() { return etag; }
+    public long getVersion() { return version; }
+}
@@ -9,6 +9,12 @@ public interface PricingService {
 
     double calculateDistanceKm(double lat1, double lng1, double lat2, double lng2);
 
+    /**
+     * {@link #calculateDistanceKm} for {@code count} pairs held in parallel arrays.
+     */
+    void calculateDistancesKm(double[] lat1, double[] lng1, double[] lat2, double[] lng2,
+                              double[] distancesKm, int count);
+
     double calculateSurge(long requestCount, long driverCount);
 
     double calculateBasePrice(double distanceKm);
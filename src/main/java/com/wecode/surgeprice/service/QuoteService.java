@@ -0,0 +1,19 @@
+package com.wecode.surgeprice.service;
+
+import com.wecode.surgeprice.dto.RideQuoteDTO;
+
+import java.util.Optional;
+
+public interface QuoteService {
+
+    /**
+     * Assigns an id and expiry to the quote and stores it.
+     */
+    RideQuoteDTO save(RideQuoteDTO quote);
+
+    /**
+     * Removes and returns the quote if it exists and has not expired. A quote
+     * can be claimed once across all instances.
+     */
+    Optional<RideQuoteDTO> claim(String quoteId);
+}
@@ -1,20 +1,70 @@
 package com.wecode.surgeprice.service;
 
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+
 import java.util.List;
 import java.util.Set;
 
 public interface RedisService {
 
-    void addDriver(int resolution, String geofenceId, String driverId);
+    /**
+     * Records a driver position observed at {@code timestamp} (event time, epoch millis).
+     */
+    void addDriver(int resolution, String geofenceId, String driverId, long timestamp);
+
+    /**
+     * Records the first {@code count} positions of one resolution in a few
+     * pipelined round trips. Used to rebuild presence on cold start.
+     */
+    void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count);
+
+    /**
+     * Takes a driver out of a cell they have moved away from, before their
+     * entry there ages out of the freshness window.
+     */
+    void removeDriver(int resolution, String geofenceId, String driverId);
 
     long getDriverCount(int resolution, String geofenceId);
 
+    /**
+     * Driver counts for several cells of one resolution, in the order given,
+     * read in one round trip.
+     */
+    long[] getDriverCounts(int resolution, List<String> geofenceIds);
+
     Set<String> getDrivers(int resolution, String geofenceId);
 
-    void addRideRequest(int resolution, String geofenceId, String requestJson);
+    /**
+     * Records a rider's request in a cell. Each rider has at most one entry per
+     * cell: a repeat within the freshness window replaces the payload and
+     * refreshes the entry's time instead of adding a second one.
+     */
+    void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson);
 
+    /**
+     * Number of distinct riders with a request in the cell within the freshness window.
+     */
     long getRideRequestCount(int resolution, String geofenceId);
 
+    /**
+     * Ride request counts for several cells of one resolution, in the order
+     * given, read in one round trip.
+     */
+    long[] getRideRequestCounts(int resolution, List<String> geofenceIds);
+
+    /**
+     * Request counts as they stand once {@code riderIds.get(i)} has asked in
+     * {@code geofenceIds.get(i)}: one more than the cell's count, unless that
+     * rider already has an entry there. Cells may repeat; read in one round trip.
+     */
+    long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds);
+
+    /**
+     * Whether {@code riderIds.get(i)} has a request in {@code geofenceIds.get(i)}
+     * within the freshness window, read in one round trip.
+     */
+    boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds);
+
     List<String> getActiveRideRequests(int resolution, String geofenceId);
 
     void incrementDemand(int resolution, String geofenceId);
@@ -29,7 +79,42 @@ public interface RedisService {
 
     double getSurge(int resolution, String geofenceId);
 
+    /**
+     * Surge multipliers for several cells of one resolution, in the order
+     * given, read in one round trip; the base multiplier where none is stored.
+     */
+    double[] getSurges(int resolution, List<String> geofenceIds);
+
     long getLastUpdate(int resolution, String geofenceId);
 
+    /**
+     * Last update times for several cells of one resolution, in the order
+     * given, read in one round trip; 0 where none is stored.
+     */
+    long[] getLastUpdates(int resolution, List<String> geofenceIds);
+
+    /**
+     * Writes each sample into its cell's fixed-size history ring, overwriting
+     * the slot's previous lap, in one pipelined round trip.
+     */
+    void appendSurgeHistory(List<SurgeSampleDTO> samples);
+
+    /**
+     * A cell's history samples with timestamps in {@code [from, to]} (epoch millis), oldest first.
+     */
+    List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to);
+
     Set<String> getActiveGeofences();
+
+    void saveQuote(String quoteId, String quoteJson, long ttlSeconds);
+
+    /**
+     * Atomically reads and deletes a quote; null if it expired or was taken.
+     */
+    String takeQuote(String quoteId);
+
+    /**
+     * Deletes a quote; true only for the caller that removed it.
+     */
+    boolean deleteQuote(String quoteId);
 }
\ No newline at end of file
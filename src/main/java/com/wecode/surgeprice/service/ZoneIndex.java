@@ -0,0 +1,36 @@
+package com.wecode.surgeprice.service;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Custom polygon zones (airports, stadiums) from {@code surge.zones}. A point
+ * inside a zone is priced by the zone instead of its H3 cell; supply, demand
+ * and surge of a zone are stored like a cell's, at {@link #ZONE_RESOLUTION}.
+ */
+public interface ZoneIndex {
+
+    /**
+     * Resolution that zone keys are stored under; one past H3's finest, so it
+     * never collides with a cell.
+     */
+    int ZONE_RESOLUTION = 16;
+
+    /**
+     * Geofence id of the zone containing the point, or null when there is none.
+     * Where zones overlap the one configured first wins.
+     */
+    String zoneAt(double lat, double lng);
+
+    /**
+     * Number of zones configured.
+     */
+    int size();
+
+    /**
+     * For each zone, in configuration order, the H3 cells at {@code resolution}
+     * that hold part of its cover. The cover reaches a little past the polygon,
+     * so this is a superset of the cells the zone overlaps.
+     */
+    Map<String, Set<Long>> coverCells(int resolution);
+}
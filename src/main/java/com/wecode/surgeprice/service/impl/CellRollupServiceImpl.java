@@ -0,0 +1,265 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellRollupService;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.RedisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps per-parent totals for every resolution below {@code maxH3Resolution}.
+ * Each refresh re-counts the active fine cells and applies only the change
+ * since the previous refresh to their parents, so the cost of a refresh is
+ * proportional to the number of active fine cells, not to the number of
+ * (resolution, cell) pairs served. Parent totals are sums, so a driver must
+ * sit in only one fine cell at a time: the driver's previous fine cell is
+ * tracked here and {@link RollupRedisService} removes them from it on a move.
+ */
+@Service
+public class CellRollupServiceImpl implements CellRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CellRollupServiceImpl.class);
+    private static final int DISCOVERY_EVERY_REFRESHES = 5;
+
+    private final RedisService storage;
+    private final GeofenceService geofenceService;
+    private final SurgePricingProperties properties;
+    private final Clock clock;
+    private final Map<String, FineCell> fineCells = new ConcurrentHashMap<>();
+    private final Map<String, ParentCell> parentCells = new ConcurrentHashMap<>();
+    private final Map<String, DriverCell> driverCells = new ConcurrentHashMap<>();
+    private int refreshes;
+
+    public CellRollupServiceImpl(@Qualifier("redisStorage") RedisService storage,
+                                 GeofenceService geofenceService,
+                                 SurgePricingProperties properties,
+                                 Clock clock) {
+        this.storage = storage;
+        this.geofenceService = geofenceService;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public void markActive(String fineGeofenceId) {
+        fineCells.computeIfAbsent(fineGeofenceId, this::newFineCell);
+    }
+
+    @Override
+    public String moveDriver(String driverId, String fineGeofenceId, long timestamp) {
+        String[] previous = new String[1];
+        driverCells.compute(driverId, (id, current) -> {
+            if (current == null) {
+                return new DriverCell(fineGeofenceId, timestamp);
+            }
+            if (timestamp < current.timestamp) {
+                return current;
+            }
+            if (!current.geofenceId.equals(fineGeofenceId)) {
+                previous[0] = current.geofenceId;
+            }
+            return new DriverCell(fineGeofenceId, timestamp);
+        });
+        return previous[0];
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId) {
+        ParentCell parent = parentCells.get(cacheKey(resolution, geofenceId));
+        return parent != null ? parent.drivers : 0;
+    }
+
+    @Override
+    public long getRideRequestCount(int resolution, String geofenceId) {
+        ParentCell parent = parentCells.get(cacheKey(resolution, geofenceId));
+        return parent != null ? parent.requests : 0;
+    }
+
+    @Override
+    public long getLastUpdate(int resolution, String geofenceId) {
+        ParentCell parent = parentCells.get(cacheKey(resolution, geofenceId));
+        if (parent == null) {
+            return 0;
+        }
+        long lastUpdate = 0;
+        for (String child : parent.children) {
+            FineCell fine = fineCells.get(child);
+            if (fine != null) {
+                lastUpdate = Math.max(lastUpdate, fine.lastUpdate);
+            }
+        }
+        return lastUpdate;
+    }
+
+    @Override
+    public List<String> getChildren(int resolution, String geofenceId) {
+        ParentCell parent = parentCells.get(cacheKey(resolution, geofenceId));
+        return parent != null ? List.copyOf(parent.children) : List.of();
+    }
+
+    @Override
+    public Set<String> getActiveParents() {
+        Set<String> keys = new HashSet<>();
+        for (ParentCell parent : parentCells.values()) {
+            if (parent.drivers > 0) {
+                keys.add("geofence:" + parent.resolution + ":" + parent.geofenceId + ":drivers");
+            }
+        }
+        return keys;
+    }
+
+    @Scheduled(fixedDelayString = "${surge.rollup-refresh-millis:2000}", initialDelay = 2000)
+    public void refresh() {
+        if (!properties.isHierarchicalRollup()) {
+            return;
+        }
+        long start = clock.millis();
+        try {
+            if (refreshes++ % DISCOVERY_EVERY_REFRESHES == 0) {
+                discoverFineCells();
+            }
+
+            int maxRes = properties.getMaxH3Resolution();
+            long staleBefore = start - properties.getDataFreshnessSeconds() * 1000L;
+            List<String> expired = new ArrayList<>();
+            // Their entry in the old cell has aged out as well, nothing left to remove
+            driverCells.values().removeIf(cell -> cell.timestamp < staleBefore);
+
+            // Three pipelined batch reads per refresh instead of three round trips per fine cell
+            List<FineCell> cells = new ArrayList<>(fineCells.values());
+            List<String> ids = new ArrayList<>(cells.size());
+            for (FineCell fine : cells) {
+                ids.add(fine.geofenceId);
+            }
+            long[] driverCounts = storage.getDriverCounts(maxRes, ids);
+            long[] requestCounts = storage.getRideRequestCounts(maxRes, ids);
+            long[] lastUpdates = storage.getLastUpdates(maxRes, ids);
+
+            for (int i = 0; i < cells.size(); i++) {
+                FineCell fine = cells.get(i);
+                long drivers = driverCounts[i];
+                long requests = requestCounts[i];
+                fine.lastUpdate = lastUpdates[i];
+
+                long driverDelta = drivers - fine.drivers;
+                long requestDelta = requests - fine.requests;
+                fine.drivers = drivers;
+                fine.requests = requests;
+                if (driverDelta != 0 || requestDelta != 0) {
+                    for (ParentCell parent : fine.parents) {
+                        parent.apply(driverDelta, requestDelta);
+                    }
+                }
+
+                if (drivers == 0 && requests == 0 && fine.lastUpdate < staleBefore) {
+                    expired.add(fine.geofenceId);
+                }
+            }
+
+            for (String geofenceId : expired) {
+                // One step under the cell's lock, so markActive cannot re-create it between the two
+                fineCells.computeIfPresent(geofenceId, (id, fine) -> {
+                    for (ParentCell parent : fine.parents) {
+                        String parentKey = cacheKey(parent.resolution, parent.geofenceId);
+                        parentCells.computeIfPresent(parentKey, (key, current) -> {
+                            current.children.remove(id);
+                            return current.children.isEmpty() ? null : current;
+                        });
+                    }
+                    return null;
+                });
+            }
+
+            logger.debug("Roll-up refreshed: {} fine cells, {} parents in {}ms",
+                    fineCells.size(), parentCells.size(), clock.millis() - start);
+        } catch (Exception e) {
+            logger.error("Error during roll-up refresh", e);
+        }
+    }
+
+    private void discoverFineCells() {
+        String prefix = "geofence:" + properties.getMaxH3Resolution() + ":";
+        for (String key : storage.getActiveGeofences()) {
+            if (key.startsWith(prefix)) {
+                String[] parts = key.split(":");
+                if (parts.length >= 4) {
+                    markActive(parts[2]);
+                }
+            }
+        }
+    }
+
+    private FineCell newFineCell(String geofenceId) {
+        int maxRes = properties.getMaxH3Resolution();
+        int minRes = Math.min(properties.getMinH3Resolution(), maxRes);
+        List<ParentCell> parents = new ArrayList<>(maxRes - minRes);
+        for (int res = minRes; res < maxRes; res++) {
+            String parentId = geofenceService.getParentGeofenceId(geofenceId, res);
+            final int parentRes = res;
+            parents.add(parentCells.compute(cacheKey(res, parentId), (key, current) -> {
+                ParentCell parent = current != null ? current : new ParentCell(parentRes, parentId);
+                parent.children.add(geofenceId);
+                return parent;
+            }));
+        }
+        return new FineCell(geofenceId, parents);
+    }
+
+    private String cacheKey(int resolution, String geofenceId) {
+        return resolution + ":" + geofenceId;
+    }
+
+    private static class FineCell {
+        private final String geofenceId;
+        private final List<ParentCell> parents;
+        private long drivers;
+        private long requests;
+        private volatile long lastUpdate;
+
+        private FineCell(String geofenceId, List<ParentCell> parents) {
+            this.geofenceId = geofenceId;
+            this.parents = parents;
+        }
+    }
+
+    private static final class DriverCell {
+        private final String geofenceId;
+        private final long timestamp;
+
+        private DriverCell(String geofenceId, long timestamp) {
+            this.geofenceId = geofenceId;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class ParentCell {
+        private final int resolution;
+        private final String geofenceId;
+        private final Set<String> children = ConcurrentHashMap.newKeySet();
+        private volatile long drivers;
+        private volatile long requests;
+
+        private ParentCell(int resolution, String geofenceId) {
+            this.resolution = resolution;
+            this.geofenceId = geofenceId;
+        }
+
+        // Only the refresh thread writes the totals
+        private void apply(long driverDelta, long requestDelta) {
+            drivers += driverDelta;
+            requests += requestDelta;
+        }
+    }
+}
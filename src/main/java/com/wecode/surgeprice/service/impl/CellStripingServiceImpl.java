@@ -0,0 +1,130 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellStripingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cells are hot either because they are listed in {@code surge.hot-cells}
+ * ({@code <resolution>:<geofenceId>}) or because this instance saw more than
+ * {@code surge.hot-cell-writes-per-second} writes for them. Detected cells are
+ * shared with other instances through the {@code geofence:striped} ZSET so
+ * that every reader merges the same sub-keys.
+ *
+ * A cell keeps writing to stripes for {@code hot-cell-hold-seconds} after it
+ * was last hot, and readers keep merging stripes for a further freshness
+ * window so entries written while striped are not lost on cool-down.
+ */
+@Service
+public class CellStripingServiceImpl implements CellStripingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CellStripingServiceImpl.class);
+    private static final String STRIPED_CELLS_KEY = "geofence:striped";
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final SurgePricingProperties properties;
+    private final Map<String, Long> hotCells = new ConcurrentHashMap<>();
+    private final Map<String, WriteRate> writeRates = new ConcurrentHashMap<>();
+
+    public CellStripingServiceImpl(RedisTemplate<String, String> redisTemplate,
+                                   SurgePricingProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+    }
+
+    @Override
+    public int writeStripe(int resolution, String geofenceId, String member) {
+        if (!properties.isStripingEnabled()) {
+            return GeofenceKeyspace.NO_STRIPE;
+        }
+        String cell = resolution + ":" + geofenceId;
+        long now = System.currentTimeMillis();
+        recordWrite(cell, now);
+        if (!isStriped(cell, now, properties.getHotCellHoldSeconds())) {
+            return GeofenceKeyspace.NO_STRIPE;
+        }
+        return (member.hashCode() & Integer.MAX_VALUE) % properties.getStripeCount();
+    }
+
+    @Override
+    public int readStripes(int resolution, String geofenceId) {
+        if (!properties.isStripingEnabled()) {
+            return 0;
+        }
+        String cell = resolution + ":" + geofenceId;
+        int holdSeconds = properties.getHotCellHoldSeconds() + properties.getDataFreshnessSeconds();
+        return isStriped(cell, System.currentTimeMillis(), holdSeconds) ? properties.getStripeCount() : 0;
+    }
+
+    @Scheduled(fixedDelay = 2000, initialDelay = 2000)
+    public void refreshHotCells() {
+        if (!properties.isStripingEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        writeRates.values().removeIf(rate -> rate.second < now / 1000 - 1);
+        try {
+            long holdMillis = (properties.getHotCellHoldSeconds() + properties.getDataFreshnessSeconds()) * 1000L;
+            redisTemplate.opsForZSet().removeRangeByScore(STRIPED_CELLS_KEY, 0, now - holdMillis);
+            Set<ZSetOperations.TypedTuple<String>> shared = redisTemplate.opsForZSet()
+                    .rangeWithScores(STRIPED_CELLS_KEY, 0, -1);
+            if (shared != null) {
+                for (ZSetOperations.TypedTuple<String> tuple : shared) {
+                    if (tuple.getValue() != null && tuple.getScore() != null) {
+                        hotCells.merge(tuple.getValue(), tuple.getScore().longValue(), Math::max);
+                    }
+                }
+            }
+            hotCells.values().removeIf(lastHot -> lastHot < now - holdMillis);
+        } catch (Exception e) {
+            logger.warn("Failed to refresh striped cells", e);
+        }
+    }
+
+    private boolean isStriped(String cell, long now, int holdSeconds) {
+        if (properties.getHotCells().contains(cell)) {
+            return true;
+        }
+        Long lastHot = hotCells.get(cell);
+        return lastHot != null && lastHot >= now - holdSeconds * 1000L;
+    }
+
+    private void recordWrite(String cell, long now) {
+        long second = now / 1000;
+        WriteRate rate = writeRates.computeIfAbsent(cell, key -> new WriteRate(second));
+        if (rate.second != second) {
+            rate.reset(second);
+        }
+        if (rate.count.incrementAndGet() == properties.getHotCellWritesPerSecond()) {
+            logger.info("Striping hot geofence {}: {} writes/s", cell, properties.getHotCellWritesPerSecond());
+            hotCells.put(cell, now);
+            redisTemplate.opsForZSet().add(STRIPED_CELLS_KEY, cell, now);
+        }
+    }
+
+    private static class WriteRate {
+        private volatile long second;
+        private final AtomicLong count = new AtomicLong();
+
+        private WriteRate(long second) {
+            this.second = second;
+        }
+
+        private synchronized void reset(long newSecond) {
+            if (second != newSecond) {
+                second = newSecond;
+                count.set(0);
+            }
+        }
+    }
+}
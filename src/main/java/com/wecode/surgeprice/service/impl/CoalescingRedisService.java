@@ -0,0 +1,178 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.service.RedisService;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Routes the single-cell reads through a {@link ReadCoalescer}, so concurrent
+ * callers asking for the same cell share one delegate call and Redis load
+ * follows the number of hot cells rather than the request rate. A single
+ * cell's request count with a rider is served from the shared count plus a
+ * per-call membership lookup. Writes and batch reads go straight to the
+ * delegate.
+ *
+ * Shared collections are returned unmodifiable since several callers hold them.
+ */
+public class CoalescingRedisService implements RedisService {
+
+    private final RedisService delegate;
+    private final ReadCoalescer coalescer;
+
+    public CoalescingRedisService(RedisService delegate, ReadCoalescer coalescer) {
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long timestamp) {
+        delegate.addDriver(resolution, geofenceId, driverId, timestamp);
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        delegate.addDrivers(resolution, geofenceIds, driverIds, timestamps, count);
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        delegate.removeDriver(resolution, geofenceId, driverId);
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId) {
+        return coalescer.get("driverCount", resolution, geofenceId,
+                () -> delegate.getDriverCount(resolution, geofenceId));
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds) {
+        return delegate.getDriverCounts(resolution, geofenceIds);
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId) {
+        return coalescer.get("drivers", resolution, geofenceId,
+                () -> Collections.unmodifiableSet(delegate.getDrivers(resolution, geofenceId)));
+    }
+
+    @Override
+    public void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson) {
+        delegate.addRideRequest(resolution, geofenceId, riderId, requestJson);
+    }
+
+    @Override
+    public long getRideRequestCount(int resolution, String geofenceId) {
+        return coalescer.get("rideRequestCount", resolution, geofenceId,
+                () -> delegate.getRideRequestCount(resolution, geofenceId));
+    }
+
+    @Override
+    public long[] getRideRequestCounts(int resolution, List<String> geofenceIds) {
+        return delegate.getRideRequestCounts(resolution, geofenceIds);
+    }
+
+    @Override
+    public long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        if (geofenceIds.size() != 1) {
+            // A batch is already one pipelined round trip; splitting it per cell would cost more
+            return delegate.getRideRequestCountsWith(resolution, geofenceIds, riderIds);
+        }
+        // Bookings share the cell's count; only the rider's own entry is looked up per call
+        boolean present = delegate.hasRideRequests(resolution, geofenceIds, riderIds)[0];
+        long count = getRideRequestCount(resolution, geofenceIds.get(0));
+        return new long[] {present ? count : count + 1};
+    }
+
+    @Override
+    public boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        return delegate.hasRideRequests(resolution, geofenceIds, riderIds);
+    }
+
+    @Override
+    public List<String> getActiveRideRequests(int resolution, String geofenceId) {
+        return coalescer.get("activeRideRequests", resolution, geofenceId,
+                () -> Collections.unmodifiableList(delegate.getActiveRideRequests(resolution, geofenceId)));
+    }
+
+    @Override
+    public void incrementDemand(int resolution, String geofenceId) {
+        delegate.incrementDemand(resolution, geofenceId);
+    }
+
+    @Override
+    public long getDemandCount(int resolution, String geofenceId) {
+        return coalescer.get("demandCount", resolution, geofenceId,
+                () -> delegate.getDemandCount(resolution, geofenceId));
+    }
+
+    @Override
+    public void updateBaseline(int resolution, String geofenceId, double baseline) {
+        delegate.updateBaseline(resolution, geofenceId, baseline);
+    }
+
+    @Override
+    public double getBaseline(int resolution, String geofenceId) {
+        return delegate.getBaseline(resolution, geofenceId);
+    }
+
+    @Override
+    public void updateSurge(int resolution, String geofenceId, double surge) {
+        delegate.updateSurge(resolution, geofenceId, surge);
+    }
+
+    @Override
+    public double getSurge(int resolution, String geofenceId) {
+        return coalescer.get("surge", resolution, geofenceId,
+                () -> delegate.getSurge(resolution, geofenceId));
+    }
+
+    @Override
+    public double[] getSurges(int resolution, List<String> geofenceIds) {
+        return delegate.getSurges(resolution, geofenceIds);
+    }
+
+    @Override
+    public long getLastUpdate(int resolution, String geofenceId) {
+        return coalescer.get("lastUpdate", resolution, geofenceId,
+                () -> delegate.getLastUpdate(resolution, geofenceId));
+    }
+
+    @Override
+    public long[] getLastUpdates(int resolution, List<String> geofenceIds) {
+        return delegate.getLastUpdates(resolution, geofenceIds);
+    }
+
+    @Override
+    public void appendSurgeHistory(List<SurgeSampleDTO> samples) {
+        delegate.appendSurgeHistory(samples);
+    }
+
+    @Override
+    public List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to) {
+        return delegate.getSurgeHistory(resolution, geofenceId, from, to);
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        return delegate.getActiveGeofences();
+    }
+
+    @Override
+    public void saveQuote(String quoteId, String quoteJson, long ttlSeconds) {
+        delegate.saveQuote(quoteId, quoteJson, ttlSeconds);
+    }
+
+    @Override
+    public String takeQuote(String quoteId) {
+        return delegate.takeQuote(quoteId);
+    }
+
+    @Override
+    public boolean deleteQuote(String quoteId) {
+        return delegate.deleteQuote(quoteId);
+    }
+}
@@ -0,0 +1,187 @@
+package com.wecode.surgeprice.service.impl;
+
+import java.util.Base64;
+
+/**
+ * Builds and parses the Redis keys for a geofence under one schema:
+ * <ul>
+ *   <li>{@code LEGACY}: {@code geofence:<res>:<hex>:drivers}; keys of a cell land in arbitrary slots.</li>
+ *   <li>{@code TAGGED}: {@code geofence:{<res>:<hex>}:drivers}; every key of a cell shares one cluster slot,
+ *       so multi-key commands and pipelines over a cell stay legal.</li>
+ *   <li>{@code BINARY}: {@code g{<base64url of res byte, 8-byte H3 index>}d}; tagged like {@code TAGGED}
+ *       with a compact, fixed-width cell encoding (12 chars, 14 with a stripe byte) and one-letter suffixes.
+ *       The base64url alphabet has no braces, so the tag always ends at its own closing brace, and
+ *       keys stay ASCII under any string serializer.</li>
+ * </ul>
+ * Stripes of a hot cell get their own hash tag so they spread over shards.
+ * Geofence ids that are not H3 hex strings fall back to the {@code TAGGED} form.
+ */
+public final class GeofenceKeyspace {
+
+    public enum Schema { LEGACY, TAGGED, BINARY }
+
+    public enum KeyType {
+        DRIVERS("drivers", 'd'),
+        REQUESTS("requests", 'q'),
+        REQUEST_PAYLOADS("payloads", 'p'),
+        DEMAND("demand", 'm'),
+        BASELINE("baseline", 'b'),
+        SURGE("surge", 's'),
+        LAST_UPDATE("last_update", 'u'),
+        SURGE_HISTORY("surge_history", 'h');
+
+        private final String suffix;
+        private final char code;
+
+        KeyType(String suffix, char code) {
+            this.suffix = suffix;
+            this.code = code;
+        }
+    }
+
+    public static final int NO_STRIPE = -1;
+
+    private static final String PREFIX = "geofence:";
+    private static final String BINARY_PREFIX = "g{";
+    private static final Base64.Encoder TAG_ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder TAG_DECODER = Base64.getUrlDecoder();
+    private static final int CELL_BYTES = 9; // resolution, then the H3 index big-endian
+
+    private final Schema schema;
+
+    public GeofenceKeyspace(Schema schema) {
+        this.schema = schema;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public String key(KeyType type, int resolution, String geofenceId) {
+        return key(type, resolution, geofenceId, NO_STRIPE, null);
+    }
+
+    /**
+     * @param stripe    stripe index or {@link #NO_STRIPE}
+     * @param qualifier optional trailing component, e.g. an HLL time bucket
+     */
+    public String key(KeyType type, int resolution, String geofenceId, int stripe, String qualifier) {
+        StringBuilder key = new StringBuilder(48);
+        if (schema == Schema.LEGACY) {
+            key.append(PREFIX).append(resolution).append(':').append(geofenceId).append(':').append(type.suffix);
+            if (qualifier != null) {
+                key.append(':').append(qualifier);
+            }
+            if (stripe != NO_STRIPE) {
+                key.append(":s").append(stripe);
+            }
+            return key.toString();
+        }
+        if (schema == Schema.BINARY && isH3Hex(geofenceId)) {
+            long cell = Long.parseUnsignedLong(geofenceId, 16);
+            byte[] tag = new byte[stripe != NO_STRIPE ? CELL_BYTES + 1 : CELL_BYTES];
+            tag[0] = (byte) resolution;
+            for (int i = 1; i < CELL_BYTES; i++) {
+                tag[i] = (byte) (cell >>> ((CELL_BYTES - 1 - i) * 8));
+            }
+            if (stripe != NO_STRIPE) {
+                tag[CELL_BYTES] = (byte) stripe;
+            }
+            key.append(BINARY_PREFIX).append(TAG_ENCODER.encodeToString(tag)).append('}').append(type.code);
+        } else {
+            key.append(PREFIX).append('{').append(resolution).append(':').append(geofenceId);
+            if (stripe != NO_STRIPE) {
+                key.append(":s").append(stripe);
+            }
+            key.append("}:").append(type.suffix);
+        }
+        if (qualifier != null) {
+            key.append(':').append(qualifier);
+        }
+        return key.toString();
+    }
+
+    /**
+     * KEYS/SCAN patterns matching every key of {@code type}, stripes and qualifiers included.
+     */
+    public String[] patterns(KeyType type) {
+        switch (schema) {
+            case LEGACY:
+                return new String[]{PREFIX + "*:*:" + type.suffix + "*"};
+            case TAGGED:
+                return new String[]{PREFIX + "{*}:" + type.suffix + "*"};
+            default:
+                return new String[]{BINARY_PREFIX + "*}" + type.code + "*", PREFIX + "{*}:" + type.suffix + "*"};
+        }
+    }
+
+    /**
+     * Canonical {@code geofence:<res>:<geofenceId>:drivers} form of a drivers key, or null if unparseable.
+     */
+    public String canonicalDriversKey(String key) {
+        int resolution;
+        String geofenceId;
+        if (key.startsWith(BINARY_PREFIX)) {
+            int end = key.indexOf('}');
+            byte[] tag;
+            try {
+                tag = end < 0 ? null : TAG_DECODER.decode(key.substring(BINARY_PREFIX.length(), end));
+            } catch (IllegalArgumentException e) {
+                tag = null;
+            }
+            if (tag == null || tag.length < CELL_BYTES) {
+                return null;
+            }
+            resolution = tag[0];
+            long cell = 0;
+            for (int i = 1; i < CELL_BYTES; i++) {
+                cell = (cell << 8) | (tag[i] & 0xFF);
+            }
+            geofenceId = Long.toHexString(cell);
+        } else if (key.startsWith(PREFIX + "{")) {
+            int end = key.indexOf('}');
+            if (end < 0) {
+                return null;
+            }
+            String[] parts = key.substring(PREFIX.length() + 1, end).split(":");
+            if (parts.length < 2) {
+                return null;
+            }
+            resolution = parseResolution(parts[0]);
+            geofenceId = parts[1];
+        } else {
+            String[] parts = key.split(":");
+            if (parts.length < 4) {
+                return null;
+            }
+            resolution = parseResolution(parts[1]);
+            geofenceId = parts[2];
+        }
+        return resolution < 0 ? null : canonicalDriversKey(resolution, geofenceId);
+    }
+
+    public static String canonicalDriversKey(int resolution, String geofenceId) {
+        return PREFIX + resolution + ":" + geofenceId + ":" + KeyType.DRIVERS.suffix;
+    }
+
+    private static int parseResolution(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean isH3Hex(String geofenceId) {
+        int length = geofenceId.length();
+        if (length == 0 || length > 16) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.digit(geofenceId.charAt(i), 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,45 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Active key schema plus, during a schema migration, the schema that is
+ * dual-written alongside it. Reads always use {@link #primary()}.
+ */
+@Component
+public class GeofenceKeyspaces {
+
+    private final GeofenceKeyspace primary;
+    private final List<GeofenceKeyspace> writes;
+
+    public GeofenceKeyspaces(SurgePricingProperties properties) {
+        this.primary = new GeofenceKeyspace(parse(properties.getRedisKeySchema()));
+        List<GeofenceKeyspace> keyspaces = new ArrayList<>(2);
+        keyspaces.add(primary);
+        String dualWrite = properties.getRedisDualWriteSchema();
+        if (dualWrite != null && !dualWrite.isBlank()) {
+            GeofenceKeyspace.Schema schema = parse(dualWrite);
+            if (schema != primary.getSchema()) {
+                keyspaces.add(new GeofenceKeyspace(schema));
+            }
+        }
+        this.writes = List.copyOf(keyspaces);
+    }
+
+    public GeofenceKeyspace primary() {
+        return primary;
+    }
+
+    public List<GeofenceKeyspace> writes() {
+        return writes;
+    }
+
+    private static GeofenceKeyspace.Schema parse(String schema) {
+        return GeofenceKeyspace.Schema.valueOf(schema.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -3,6 +3,7 @@ package com.wecode.surgeprice.service.impl;
 import com.uber.h3core.H3Core;
 import com.wecode.surgeprice.config.SurgePricingProperties;
 import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.ZoneIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -13,10 +14,12 @@ public class GeofenceServiceImpl implements GeofenceService {
     private static final Logger logger = LoggerFactory.getLogger(GeofenceServiceImpl.class);
 
     private final H3Core h3;
+    private final ZoneIndex zoneIndex;
     private final SurgePricingProperties properties;
 
-    public GeofenceServiceImpl(H3Core h3, SurgePricingProperties properties) {
+    public GeofenceServiceImpl(H3Core h3, ZoneIndex zoneIndex, SurgePricingProperties properties) {
         this.h3 = h3;
+        this.zoneIndex = zoneIndex;
         this.properties = properties;
     }
 
@@ -41,4 +44,37 @@ public class GeofenceServiceImpl implements GeofenceService {
             return "default";
         }
     }
+
+    @Override
+    public String getZoneId(double lat, double lng) {
+        return zoneIndex.zoneAt(lat, lng);
+    }
+
+    /**
+     * Resolution that supply and demand for {@code resolution} are written at.
+     * With hierarchical roll-up everything is stored at the finest resolution;
+     * zones are never rolled up.
+     */
+    @Override
+    public int getStorageResolution(int resolution) {
+        if (resolution == ZoneIndex.ZONE_RESOLUTION) {
+            return resolution;
+        }
+        if (properties.isHierarchicalRollup()
+                && properties.getMinH3Resolution() <= properties.getMaxH3Resolution()) {
+            return properties.getMaxH3Resolution();
+        }
+        return resolution;
+    }
+
+    @Override
+    public String getParentGeofenceId(String geofenceId, int parentResolution) {
+        try {
+            long parent = h3.cellToParent(Long.parseUnsignedLong(geofenceId, 16), parentResolution);
+            return Long.toHexString(parent);
+        } catch (Exception e) {
+            logger.error("Error resolving H3 parent: geofence={}, res={}", geofenceId, parentResolution, e);
+            return "default";
+        }
+    }
 }
\ No newline at end of file
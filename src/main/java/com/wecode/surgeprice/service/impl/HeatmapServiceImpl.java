@@ -0,0 +1,265 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uber.h3core.AreaUnit;
+import com.uber.h3core.H3Core;
+import com.uber.h3core.util.LatLng;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.HeatmapCellDTO;
+import com.wecode.surgeprice.dto.HeatmapDTO;
+import com.wecode.surgeprice.dto.HeatmapTileDTO;
+import com.wecode.surgeprice.service.HeatmapService;
+import com.wecode.surgeprice.service.HeatmapTile;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.worker.SurgePricingWorker;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A tile is the H3 cell {@code heatmap-tile-levels} resolutions coarser than
+ * the requested one and holds all of its children at that resolution. Tiles
+ * are built for one {@link SurgePricingWorker} cycle and kept serialized in an
+ * LRU of {@code heatmap-cache-tiles} entries; a stale or missing tile is
+ * rebuilt, together with any others the same request needs, from one batched
+ * read of surge, driver and request counts. A request that misses a tile
+ * another request is already building waits for that build instead of
+ * reading the same cells again. The ETag is a digest of the body, which leaves
+ * the cycle out, so a tile whose numbers did not change keeps it.
+ */
+@Service
+public class HeatmapServiceImpl implements HeatmapService {
+
+    private static final double KM_PER_DEGREE = 111.32;
+
+    private final H3Core h3;
+    private final RedisService redisService;
+    private final SurgePricingWorker worker;
+    private final ObjectMapper objectMapper;
+    private final SurgePricingProperties properties;
+    private final Map<String, HeatmapTile> cache; // guarded by itself
+    private final Map<String, CompletableFuture<HeatmapTile>> building = new HashMap<>(); // guarded by cache
+
+    public HeatmapServiceImpl(H3Core h3,
+                              RedisService redisService,
+                              SurgePricingWorker worker,
+                              ObjectMapper objectMapper,
+                              SurgePricingProperties properties) {
+        this.h3 = h3;
+        this.redisService = redisService;
+        this.worker = worker;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        int capacity = properties.getHeatmapCacheTiles();
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, HeatmapTile> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public HeatmapDTO heatmap(double minLat, double minLng, double maxLat, double maxLng, int resolution) {
+        checkResolution(resolution);
+        if (minLat >= maxLat || minLng >= maxLng) {
+            throw new IllegalArgumentException("Bounding box must have min < max");
+        }
+        // Reject huge boxes before polyfilling them
+        double areaKm2 = (maxLat - minLat) * KM_PER_DEGREE * (maxLng - minLng) * KM_PER_DEGREE
+                * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+        if (areaKm2 / h3.getHexagonAreaAvg(resolution, AreaUnit.km2) > 2.0 * properties.getHeatmapMaxCells()) {
+            throw new IllegalArgumentException("Bounding box too large for resolution " + resolution);
+        }
+        List<LatLng> box = List.of(
+                new LatLng(minLat, minLng),
+                new LatLng(minLat, maxLng),
+                new LatLng(maxLat, maxLng),
+                new LatLng(maxLat, minLng));
+        List<Long> cells = h3.polygonToCells(box, List.of(), resolution);
+        if (cells.size() > properties.getHeatmapMaxCells()) {
+            throw new IllegalArgumentException("Bounding box covers " + cells.size() + " cells, limit is "
+                    + properties.getHeatmapMaxCells());
+        }
+        // A box smaller than one cell still shows the cell at its center
+        cells = new ArrayList<>(cells);
+        cells.add(h3.latLngToCell((minLat + maxLat) / 2, (minLng + maxLng) / 2, resolution));
+
+        int tileRes = tileResolution(resolution);
+        Set<Long> tiles = new LinkedHashSet<>();
+        for (long cell : cells) {
+            tiles.add(h3.cellToParent(cell, tileRes));
+        }
+        // A long, thin box touches many tiles for few cells; what gets read is every tile's children
+        long tileCells = 0;
+        for (long tile : tiles) {
+            tileCells += h3.cellToChildrenSize(tile, resolution);
+        }
+        if (tileCells > properties.getHeatmapMaxTileCells()) {
+            throw new IllegalArgumentException("Bounding box touches tiles of " + tileCells + " cells, limit is "
+                    + properties.getHeatmapMaxTileCells());
+        }
+        long version = worker.getCycle();
+        Map<String, HeatmapTile> fresh = refresh(tiles, resolution, version);
+        Map<String, String> etags = new LinkedHashMap<>();
+        for (Map.Entry<String, HeatmapTile> tile : fresh.entrySet()) {
+            etags.put(tile.getKey(), tile.getValue().getEtag());
+        }
+        return new HeatmapDTO(resolution, version, etags);
+    }
+
+    @Override
+    public HeatmapTile tile(String tileId, int resolution) {
+        checkResolution(resolution);
+        long tile;
+        try {
+            tile = Long.parseUnsignedLong(tileId, 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (!h3.isValidCell(tile) || h3.getResolution(tile) != tileResolution(resolution)) {
+            return null;
+        }
+        return refresh(Set.of(tile), resolution, worker.getCycle()).get(Long.toHexString(tile));
+    }
+
+    private Map<String, HeatmapTile> refresh(Set<Long> tiles, int resolution, long version) {
+        Map<String, HeatmapTile> result = new LinkedHashMap<>();
+        Map<String, CompletableFuture<HeatmapTile>> waiting = new LinkedHashMap<>();
+        Map<String, CompletableFuture<HeatmapTile>> claimed = new LinkedHashMap<>();
+        List<Long> stale = new ArrayList<>();
+        synchronized (cache) {
+            for (long tile : tiles) {
+                String tileId = Long.toHexString(tile);
+                HeatmapTile cached = cache.get(cacheKey(resolution, tileId));
+                if (cached != null && cached.getVersion() == version) {
+                    result.put(tileId, cached);
+                    continue;
+                }
+                result.put(tileId, null); // keeps request order
+                // One build per tile and cycle; a concurrent miss joins the one already running
+                CompletableFuture<HeatmapTile> running = building.get(buildKey(resolution, tileId, version));
+                if (running != null) {
+                    waiting.put(tileId, running);
+                } else {
+                    CompletableFuture<HeatmapTile> mine = new CompletableFuture<>();
+                    building.put(buildKey(resolution, tileId, version), mine);
+                    claimed.put(tileId, mine);
+                    stale.add(tile);
+                }
+            }
+        }
+
+        if (!stale.isEmpty()) {
+            Map<String, HeatmapTile> built;
+            try {
+                built = build(stale, resolution, version);
+            } catch (RuntimeException | Error e) {
+                synchronized (cache) {
+                    for (String tileId : claimed.keySet()) {
+                        building.remove(buildKey(resolution, tileId, version));
+                    }
+                }
+                // Waiters get the same failure; nothing is cached, so the next request retries
+                claimed.values().forEach(future -> future.completeExceptionally(e));
+                throw e;
+            }
+            synchronized (cache) {
+                for (Map.Entry<String, HeatmapTile> tile : built.entrySet()) {
+                    cache.put(cacheKey(resolution, tile.getKey()), tile.getValue());
+                    building.remove(buildKey(resolution, tile.getKey(), version));
+                }
+            }
+            for (Map.Entry<String, CompletableFuture<HeatmapTile>> build : claimed.entrySet()) {
+                build.getValue().complete(built.get(build.getKey()));
+            }
+            result.putAll(built);
+        }
+        for (Map.Entry<String, CompletableFuture<HeatmapTile>> tile : waiting.entrySet()) {
+            result.put(tile.getKey(), join(tile.getValue()));
+        }
+        return result;
+    }
+
+    private Map<String, HeatmapTile> build(List<Long> stale, int resolution, long version) {
+        List<List<Long>> childrenPerTile = new ArrayList<>(stale.size());
+        List<String> cellIds = new ArrayList<>();
+        for (long tile : stale) {
+            List<Long> children = h3.cellToChildren(tile, resolution);
+            childrenPerTile.add(children);
+            for (long child : children) {
+                cellIds.add(Long.toHexString(child));
+            }
+        }
+        double[] surges = redisService.getSurges(resolution, cellIds);
+        long[] drivers = redisService.getDriverCounts(resolution, cellIds);
+        long[] requests = redisService.getRideRequestCounts(resolution, cellIds);
+
+        int offset = 0;
+        Map<String, HeatmapTile> built = new LinkedHashMap<>();
+        for (int t = 0; t < stale.size(); t++) {
+            String tileId = Long.toHexString(stale.get(t));
+            int size = childrenPerTile.get(t).size();
+            List<HeatmapCellDTO> cells = new ArrayList<>(size);
+            for (int i = offset; i < offset + size; i++) {
+                cells.add(new HeatmapCellDTO(cellIds.get(i), surges[i], drivers[i], requests[i]));
+            }
+            offset += size;
+            byte[] body = serialize(new HeatmapTileDTO(tileId, resolution, cells));
+            built.put(tileId, new HeatmapTile(body, "\"" + DigestUtils.md5DigestAsHex(body) + "\"", version));
+        }
+        return built;
+    }
+
+    private void checkResolution(int resolution) {
+        int minRes = Math.min(properties.getMinH3Resolution(), properties.getMaxH3Resolution());
+        int maxRes = Math.max(properties.getMinH3Resolution(), properties.getMaxH3Resolution());
+        if (resolution < minRes || resolution > maxRes) {
+            throw new IllegalArgumentException("Resolution must be between " + minRes + " and " + maxRes);
+        }
+    }
+
+    private int tileResolution(int resolution) {
+        return Math.max(0, resolution - properties.getHeatmapTileLevels());
+    }
+
+    private byte[] serialize(HeatmapTileDTO tile) {
+        try {
+            return objectMapper.writeValueAsBytes(tile);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize heatmap tile " + tile.getTileId(), e);
+        }
+    }
+
+    private static HeatmapTile join(CompletableFuture<HeatmapTile> build) {
+        try {
+            return build.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static String cacheKey(int resolution, String tileId) {
+        return resolution + ":" + tileId;
+    }
+
+    private static String buildKey(int resolution, String tileId, long version) {
+        return cacheKey(resolution, tileId) + "@" + version;
+    }
+}
@@ -0,0 +1,168 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellStripingService;
+import com.wecode.surgeprice.service.DriverSupplyStore;
+import com.wecode.surgeprice.service.impl.GeofenceKeyspace.KeyType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Approximate supply store: one HyperLogLog per geofence per time bucket.
+ * PFADD into the current bucket on write, PFCOUNT over every bucket that
+ * overlaps the freshness window on read (a union, so a driver pinging in
+ * several buckets is counted once). Memory per key is capped at ~12 KB
+ * regardless of driver count; the standard error is ~0.81%. A hot cell's
+ * stripes and its base key can hold the same driver (bootstrap writes and
+ * pings from before the cell turned hot land in the base), so they are
+ * counted as one union.
+ *
+ * Cannot be combined with hierarchical roll-up: parent totals are sums of
+ * fine cells and rely on a moving driver being removed from the cell they left.
+ */
+@Service
+@ConditionalOnProperty(prefix = "surge", name = "supply-store", havingValue = "hll")
+public class HyperLogLogDriverSupplyStore implements DriverSupplyStore {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, String> readTemplate;
+    private final CellStripingService stripingService;
+    private final GeofenceKeyspaces keyspaces;
+    private final SurgePricingProperties properties;
+
+    public HyperLogLogDriverSupplyStore(RedisTemplate<String, String> redisTemplate,
+                                        @Qualifier("redisReadTemplate") RedisTemplate<String, String> readTemplate,
+                                        CellStripingService stripingService,
+                                        GeofenceKeyspaces keyspaces,
+                                        SurgePricingProperties properties) {
+        if (properties.isHierarchicalRollup()) {
+            throw new IllegalStateException("surge.supply-store=hll cannot remove a driver who changed cells, "
+                    + "so it requires surge.hierarchical-rollup=false");
+        }
+        this.redisTemplate = redisTemplate;
+        this.readTemplate = readTemplate;
+        this.stripingService = stripingService;
+        this.keyspaces = keyspaces;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long now) {
+        int stripe = stripingService.writeStripe(resolution, geofenceId, driverId);
+        String bucket = String.valueOf(bucketOf(now));
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            String key = keyspace.key(KeyType.DRIVERS, resolution, geofenceId, stripe, bucket);
+            redisTemplate.opsForHyperLogLog().add(key, driverId);
+            // Keep the bucket alive until it can no longer overlap the freshness window
+            redisTemplate.expire(key, Duration.ofSeconds(
+                    properties.getDataFreshnessSeconds() + properties.getHllBucketSeconds()));
+        }
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        Duration ttl = Duration.ofSeconds(properties.getDataFreshnessSeconds() + properties.getHllBucketSeconds());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                Set<String> written = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    String bucket = String.valueOf(bucketOf(timestamps[i]));
+                    for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+                        String key = keyspace.key(KeyType.DRIVERS, resolution, geofenceIds[i],
+                                GeofenceKeyspace.NO_STRIPE, bucket);
+                        ops.opsForHyperLogLog().add(key, driverIds[i]);
+                        written.add(key);
+                    }
+                }
+                for (String key : written) {
+                    ops.expire(key, ttl);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        // A HyperLogLog cannot forget a member; the driver ages out with the bucket
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId, long now) {
+        return PipelinedReads.pfCount(readTemplate, redisTemplate, countGroups(resolution, geofenceId, now));
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds, long now) {
+        List<List<String[]>> groupsPerCell = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            groupsPerCell.add(countGroups(resolution, geofenceId, now));
+        }
+        return PipelinedReads.pfCountEach(readTemplate, redisTemplate, groupsPerCell);
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId, long now) {
+        // Cardinality-only store: driver ids are not retained
+        return Set.of();
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        GeofenceKeyspace keyspace = keyspaces.primary();
+        Set<String> geofences = new HashSet<>();
+        for (String pattern : keyspace.patterns(KeyType.DRIVERS)) {
+            Set<String> keys = redisTemplate.keys(pattern);
+            if (keys == null) {
+                continue;
+            }
+            for (String key : keys) {
+                String canonical = keyspace.canonicalDriversKey(key);
+                if (canonical != null) {
+                    geofences.add(canonical);
+                }
+            }
+        }
+        return geofences;
+    }
+
+    private List<String[]> countGroups(int resolution, String geofenceId, long now) {
+        int stripes = stripingService.readStripes(resolution, geofenceId);
+        List<String[]> groups = new ArrayList<>(stripes + 1);
+        groups.add(windowKeys(resolution, geofenceId, GeofenceKeyspace.NO_STRIPE, now));
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            groups.add(windowKeys(resolution, geofenceId, stripe, now));
+        }
+        return groups;
+    }
+
+    // Bucket keys of one stripe share a hash tag, so PFCOUNT over them is single-slot
+    private String[] windowKeys(int resolution, String geofenceId, int stripe, long now) {
+        GeofenceKeyspace keyspace = keyspaces.primary();
+        long newest = bucketOf(now);
+        long oldest = bucketOf(now - properties.getDataFreshnessSeconds() * 1000L);
+        String[] keys = new String[(int) (newest - oldest + 1)];
+        for (long bucket = oldest; bucket <= newest; bucket++) {
+            keys[(int) (bucket - oldest)] = keyspace.key(
+                    KeyType.DRIVERS, resolution, geofenceId, stripe, String.valueOf(bucket));
+        }
+        return keys;
+    }
+
+    private long bucketOf(long timestampMillis) {
+        return timestampMillis / (properties.getHllBucketSeconds() * 1000L);
+    }
+}
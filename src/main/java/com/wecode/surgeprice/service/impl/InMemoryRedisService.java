@@ -0,0 +1,450 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.service.RedisService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process {@link RedisService} with the same time-windowed semantics as
+ * {@link RedisServiceImpl}: members are scored with the write time, pruned
+ * past the freshness window on write and filtered to the window on read.
+ * Every call can be delayed by {@code in-memory-latency-micros} plus up to
+ * {@code in-memory-jitter-micros} to stand in for a network round trip.
+ *
+ * {@link #evictExpired()} drops what Redis would have expired: members past
+ * the freshness window, and with them empty cells, demand counters and
+ * quotes. Baselines, surges, last-update times and history rings go once the
+ * cell has not been written for a full history lap, the TTL of its history
+ * key in Redis.
+ */
+@Service("redisStorage")
+@ConditionalOnProperty(prefix = "surge", name = "store", havingValue = "memory")
+public class InMemoryRedisService implements RedisService {
+
+    private final SurgePricingProperties properties;
+    private final Clock clock;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Map<String, Map<String, Long>> drivers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Long>> requests = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, String>> requestPayloads = new ConcurrentHashMap<>();
+    private final Map<String, ExpiringCounter> demand = new ConcurrentHashMap<>();
+    private final Map<String, Double> baselines = new ConcurrentHashMap<>();
+    private final Map<String, Double> surges = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastUpdates = new ConcurrentHashMap<>();
+    private final Map<String, ExpiringValue> quotes = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> surgeHistory = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>(); // cell -> clock time of its last write
+
+    @Autowired
+    public InMemoryRedisService(SurgePricingProperties properties, Clock clock) {
+        this(properties, clock, properties.getInMemoryLatencyMicros(), properties.getInMemoryJitterMicros());
+    }
+
+    public InMemoryRedisService(SurgePricingProperties properties, Clock clock,
+                                long latencyMicros, long jitterMicros) {
+        this.properties = properties;
+        this.clock = clock;
+        this.latencyNanos = latencyMicros * 1000L;
+        this.jitterNanos = jitterMicros * 1000L;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long timestamp) {
+        simulateLatency();
+        String key = cellKey(resolution, geofenceId);
+        add(drivers, key, driverId, timestamp);
+        lastUpdates.merge(key, timestamp, Math::max);
+        touch(key);
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        simulateLatency();
+        for (int i = 0; i < count; i++) {
+            String key = cellKey(resolution, geofenceIds[i]);
+            add(drivers, key, driverIds[i], timestamps[i]);
+            lastUpdates.merge(key, timestamps[i], Math::max);
+            touch(key);
+        }
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        simulateLatency();
+        drivers.computeIfPresent(cellKey(resolution, geofenceId), (key, set) -> {
+            set.remove(driverId);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId) {
+        simulateLatency();
+        return count(drivers.get(cellKey(resolution, geofenceId)), clock.millis());
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds) {
+        simulateLatency();
+        return countEach(drivers, resolution, geofenceIds, clock.millis());
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId) {
+        simulateLatency();
+        return new HashSet<>(range(drivers.get(cellKey(resolution, geofenceId)), clock.millis()));
+    }
+
+    @Override
+    public void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson) {
+        simulateLatency();
+        String key = cellKey(resolution, geofenceId);
+        add(requests, key, riderId, clock.millis());
+        requestPayloads.compute(key, (k, payloads) -> {
+            Map<String, String> updated = payloads != null ? payloads : new ConcurrentHashMap<>();
+            updated.put(riderId, requestJson);
+            Map<String, Long> members = requests.get(key);
+            if (members != null) {
+                updated.keySet().retainAll(members.keySet());
+            }
+            return updated;
+        });
+    }
+
+    @Override
+    public long getRideRequestCount(int resolution, String geofenceId) {
+        simulateLatency();
+        return count(requests.get(cellKey(resolution, geofenceId)), clock.millis());
+    }
+
+    @Override
+    public long[] getRideRequestCounts(int resolution, List<String> geofenceIds) {
+        simulateLatency();
+        return countEach(requests, resolution, geofenceIds, clock.millis());
+    }
+
+    @Override
+    public long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        simulateLatency();
+        long now = clock.millis();
+        long[] counts = countEach(requests, resolution, geofenceIds, now);
+        for (int i = 0; i < counts.length; i++) {
+            if (!contains(requests.get(cellKey(resolution, geofenceIds.get(i))), riderIds.get(i), now)) {
+                counts[i]++;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        simulateLatency();
+        long now = clock.millis();
+        boolean[] present = new boolean[geofenceIds.size()];
+        for (int i = 0; i < present.length; i++) {
+            present[i] = contains(requests.get(cellKey(resolution, geofenceIds.get(i))), riderIds.get(i), now);
+        }
+        return present;
+    }
+
+    @Override
+    public List<String> getActiveRideRequests(int resolution, String geofenceId) {
+        simulateLatency();
+        String key = cellKey(resolution, geofenceId);
+        Map<String, String> payloads = requestPayloads.getOrDefault(key, Map.of());
+        List<String> active = new ArrayList<>();
+        for (String riderId : range(requests.get(key), clock.millis())) {
+            String payload = payloads.get(riderId);
+            if (payload != null) {
+                active.add(payload);
+            }
+        }
+        return active;
+    }
+
+    @Override
+    public void incrementDemand(int resolution, String geofenceId) {
+        simulateLatency();
+        long expiresAt = clock.millis() + properties.getDataFreshnessSeconds() * 1000L;
+        demand.compute(cellKey(resolution, geofenceId), (key, counter) -> {
+            long value = counter != null && counter.expiresAt > clock.millis() ? counter.value + 1 : 1;
+            return new ExpiringCounter(value, expiresAt);
+        });
+    }
+
+    @Override
+    public long getDemandCount(int resolution, String geofenceId) {
+        simulateLatency();
+        ExpiringCounter counter = demand.get(cellKey(resolution, geofenceId));
+        return counter != null && counter.expiresAt > clock.millis() ? counter.value : 0;
+    }
+
+    @Override
+    public void updateBaseline(int resolution, String geofenceId, double baseline) {
+        simulateLatency();
+        touch(cellKey(resolution, geofenceId));
+        baselines.put(cellKey(resolution, geofenceId), baseline);
+    }
+
+    @Override
+    public double getBaseline(int resolution, String geofenceId) {
+        simulateLatency();
+        return baselines.getOrDefault(cellKey(resolution, geofenceId), 0.0);
+    }
+
+    @Override
+    public void updateSurge(int resolution, String geofenceId, double surge) {
+        simulateLatency();
+        touch(cellKey(resolution, geofenceId));
+        surges.put(cellKey(resolution, geofenceId), surge);
+    }
+
+    @Override
+    public double getSurge(int resolution, String geofenceId) {
+        simulateLatency();
+        return surges.getOrDefault(cellKey(resolution, geofenceId), properties.getBaseSurgeMultiplier());
+    }
+
+    @Override
+    public double[] getSurges(int resolution, List<String> geofenceIds) {
+        simulateLatency();
+        double[] values = new double[geofenceIds.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = surges.getOrDefault(cellKey(resolution, geofenceIds.get(i)), properties.getBaseSurgeMultiplier());
+        }
+        return values;
+    }
+
+    @Override
+    public long getLastUpdate(int resolution, String geofenceId) {
+        simulateLatency();
+        return lastUpdates.getOrDefault(cellKey(resolution, geofenceId), 0L);
+    }
+
+    @Override
+    public long[] getLastUpdates(int resolution, List<String> geofenceIds) {
+        simulateLatency();
+        long[] values = new long[geofenceIds.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = lastUpdates.getOrDefault(cellKey(resolution, geofenceIds.get(i)), 0L);
+        }
+        return values;
+    }
+
+    @Override
+    public void appendSurgeHistory(List<SurgeSampleDTO> samples) {
+        simulateLatency();
+        int slots = properties.getSurgeHistorySlots();
+        long slotSeconds = properties.getSurgeHistorySlotSeconds();
+        for (SurgeSampleDTO sample : samples) {
+            String cell = cellKey(sample.getResolution(), sample.getGeofenceId());
+            touch(cell);
+            int offset = SurgeHistoryCodec.slotOffset(sample.getTimestamp(), slotSeconds, slots);
+            // Written inside compute so eviction cannot drop the ring between lookup and write
+            surgeHistory.compute(cell, (key, current) -> {
+                byte[] ring = current != null ? current : new byte[slots * SurgeHistoryCodec.RECORD_BYTES];
+                synchronized (ring) {
+                    System.arraycopy(SurgeHistoryCodec.encode(sample), 0, ring, offset,
+                            SurgeHistoryCodec.RECORD_BYTES);
+                }
+                return ring;
+            });
+        }
+    }
+
+    @Override
+    public List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to) {
+        simulateLatency();
+        byte[] ring = surgeHistory.get(cellKey(resolution, geofenceId));
+        if (ring == null) {
+            return new ArrayList<>();
+        }
+        synchronized (ring) {
+            return SurgeHistoryCodec.decode(ring.clone(), resolution, geofenceId, from, to);
+        }
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        simulateLatency();
+        long now = clock.millis();
+        Set<String> keys = new HashSet<>();
+        for (Map.Entry<String, Map<String, Long>> entry : drivers.entrySet()) {
+            if (count(entry.getValue(), now) > 0) {
+                keys.add("geofence:" + entry.getKey() + ":drivers");
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public void saveQuote(String quoteId, String quoteJson, long ttlSeconds) {
+        simulateLatency();
+        long now = clock.millis();
+        if (quotes.size() >= properties.getQuoteCacheSize()) {
+            quotes.values().removeIf(quote -> quote.expiresAt <= now);
+        }
+        quotes.put(quoteId, new ExpiringValue(quoteJson, now + ttlSeconds * 1000L));
+    }
+
+    @Override
+    public String takeQuote(String quoteId) {
+        simulateLatency();
+        ExpiringValue quote = quotes.remove(quoteId);
+        return quote != null && quote.expiresAt > clock.millis() ? quote.value : null;
+    }
+
+    @Override
+    public boolean deleteQuote(String quoteId) {
+        simulateLatency();
+        ExpiringValue quote = quotes.remove(quoteId);
+        return quote != null && quote.expiresAt > clock.millis();
+    }
+
+    /**
+     * Drops expired members, empty cells, demand counters and quotes, and the
+     * per-cell values of cells not written for a history lap.
+     */
+    @Scheduled(fixedDelay = 10000, initialDelay = 10000)
+    public void evictExpired() {
+        long now = clock.millis();
+        long cutoff = now - properties.getDataFreshnessSeconds() * 1000L;
+        for (String key : drivers.keySet()) {
+            drivers.computeIfPresent(key, (k, set) -> prune(set, cutoff));
+        }
+        for (String key : requests.keySet()) {
+            requests.computeIfPresent(key, (k, set) -> prune(set, cutoff));
+        }
+        for (String key : requestPayloads.keySet()) {
+            requestPayloads.computeIfPresent(key, (k, payloads) -> {
+                Map<String, Long> members = requests.get(k);
+                if (members == null) {
+                    return null;
+                }
+                payloads.keySet().retainAll(members.keySet());
+                return payloads.isEmpty() ? null : payloads;
+            });
+        }
+        demand.values().removeIf(counter -> counter.expiresAt <= now);
+        quotes.values().removeIf(quote -> quote.expiresAt <= now);
+
+        long idleBefore = now - properties.getSurgeHistorySlots() * properties.getSurgeHistorySlotSeconds() * 1000L;
+        for (Map.Entry<String, Long> entry : lastWrites.entrySet()) {
+            if (entry.getValue() < idleBefore && lastWrites.remove(entry.getKey(), entry.getValue())) {
+                baselines.remove(entry.getKey());
+                surges.remove(entry.getKey());
+                lastUpdates.remove(entry.getKey());
+                surgeHistory.remove(entry.getKey());
+            }
+        }
+    }
+
+    private void touch(String key) {
+        lastWrites.put(key, clock.millis());
+    }
+
+    // In compute, so eviction cannot drop the set between lookup and write
+    private void add(Map<String, Map<String, Long>> sets, String key, String member, long now) {
+        long cutoff = now - properties.getDataFreshnessSeconds() * 1000L;
+        sets.compute(key, (k, set) -> {
+            Map<String, Long> updated = set != null ? set : new ConcurrentHashMap<>();
+            updated.put(member, now);
+            updated.values().removeIf(score -> score <= cutoff);
+            return updated;
+        });
+    }
+
+    private static Map<String, Long> prune(Map<String, Long> set, long cutoff) {
+        set.values().removeIf(score -> score <= cutoff);
+        return set.isEmpty() ? null : set;
+    }
+
+    private long count(Map<String, Long> set, long now) {
+        if (set == null) {
+            return 0;
+        }
+        long cutoff = now - properties.getDataFreshnessSeconds() * 1000L;
+        long count = 0;
+        for (long score : set.values()) {
+            if (score >= cutoff && score <= now) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean contains(Map<String, Long> set, String member, long now) {
+        Long score = set != null ? set.get(member) : null;
+        return score != null && score >= now - properties.getDataFreshnessSeconds() * 1000L && score <= now;
+    }
+
+    private long[] countEach(Map<String, Map<String, Long>> sets, int resolution,
+                             List<String> geofenceIds, long now) {
+        long[] counts = new long[geofenceIds.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = count(sets.get(cellKey(resolution, geofenceIds.get(i))), now);
+        }
+        return counts;
+    }
+
+    private List<String> range(Map<String, Long> set, long now) {
+        if (set == null) {
+            return List.of();
+        }
+        long cutoff = now - properties.getDataFreshnessSeconds() * 1000L;
+        List<String> members = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : set.entrySet()) {
+            if (entry.getValue() >= cutoff && entry.getValue() <= now) {
+                members.add(entry.getKey());
+            }
+        }
+        return members;
+    }
+
+    private void simulateLatency() {
+        if (latencyNanos <= 0 && jitterNanos <= 0) {
+            return;
+        }
+        long jitter = jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0;
+        LockSupport.parkNanos(latencyNanos + jitter);
+    }
+
+    private static String cellKey(int resolution, String geofenceId) {
+        return resolution + ":" + geofenceId;
+    }
+
+    private static class ExpiringCounter {
+        private final long value;
+        private final long expiresAt;
+
+        private ExpiringCounter(long value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class ExpiringValue {
+        private final String value;
+        private final long expiresAt;
+
+        private ExpiringValue(String value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
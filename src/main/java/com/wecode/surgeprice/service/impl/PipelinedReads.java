@@ -0,0 +1,353 @@
+package com.wecode.surgeprice.service.impl;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Merged reads over a geofence key and its stripes. A single key is read
+ * directly; several keys are read in one pipelined round trip. A member can
+ * sit under more than one of the keys, so merged reads dedupe and counts are
+ * unions, never sums.
+ */
+final class PipelinedReads {
+
+    // Lifetime of a stripe's HyperLogLog copied next to the base key; outlives a union read that dies halfway
+    private static final long UNION_COPY_TTL_MILLIS = 5_000;
+
+    private PipelinedReads() {
+    }
+
+    /**
+     * Members of the keys scored within [min, max], each counted once. A member
+     * written to the base key before its cell turned hot, or to a stripe before
+     * it cooled down, also sits under a second key, so the per-key counts are
+     * not summed: several keys are read in full and merged instead. The keys
+     * live in different slots, which rules out a server-side ZUNIONSTORE.
+     */
+    static long count(RedisTemplate<String, String> redisTemplate, List<String> keys, double min, double max) {
+        if (keys.size() == 1) {
+            Long count = redisTemplate.opsForZSet().count(keys.get(0), min, max);
+            return count != null ? count : 0;
+        }
+        return rangeByScore(redisTemplate, keys, min, max).size();
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> rangeByScore(RedisTemplate<String, String> redisTemplate, List<String> keys,
+                                    double min, double max) {
+        if (keys.size() == 1) {
+            Set<String> members = redisTemplate.opsForZSet().rangeByScore(keys.get(0), min, max);
+            return members != null ? members : Set.of();
+        }
+        RedisSerializer<String> keySerializer = keySerializer(redisTemplate);
+        List<Object> ranges = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String key : keys) {
+                connection.zSetCommands().zRangeByScore(keySerializer.serialize(key), min, max);
+            }
+            return null;
+        });
+        Set<String> members = new LinkedHashSet<>();
+        for (Object range : ranges) {
+            if (range instanceof Set) {
+                members.addAll((Set<String>) range);
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Values from {@code payloadKeys.get(i)} for the members of {@code keys.get(i)}
+     * scored within [min, max]. Each ZSET and its payload hash are read in the
+     * same pipelined round trip; a member found under several keys is returned once.
+     */
+    @SuppressWarnings("unchecked")
+    static List<String> rangeByScorePayloads(RedisTemplate<String, String> redisTemplate, List<String> keys,
+                                             List<String> payloadKeys, double min, double max) {
+        RedisSerializer<String> keySerializer = keySerializer(redisTemplate);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keys.size(); i++) {
+                connection.zSetCommands().zRangeByScore(keySerializer.serialize(keys.get(i)), min, max);
+                connection.hashCommands().hGetAll(keySerializer.serialize(payloadKeys.get(i)));
+            }
+            return null;
+        });
+        Map<String, String> payloads = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < replies.size(); i += 2) {
+            if (!(replies.get(i) instanceof Set) || !(replies.get(i + 1) instanceof Map)) {
+                continue;
+            }
+            Map<String, String> hash = (Map<String, String>) replies.get(i + 1);
+            for (String member : (Set<String>) replies.get(i)) {
+                String payload = hash.get(member);
+                if (payload != null) {
+                    payloads.putIfAbsent(member, payload);
+                }
+            }
+        }
+        return new ArrayList<>(payloads.values());
+    }
+
+    /**
+     * PFCOUNT of the union of every key group; see {@link #pfCountEach}.
+     */
+    static long pfCount(RedisTemplate<String, String> readTemplate, RedisTemplate<String, String> writeTemplate,
+                        List<String[]> groups) {
+        if (groups.size() == 1) {
+            Long count = readTemplate.opsForHyperLogLog().size(groups.get(0));
+            return count != null ? count : 0;
+        }
+        return pfCountEach(readTemplate, writeTemplate, List.of(groups))[0];
+    }
+
+    /**
+     * Per-cell {@link #count} for many cells in one pipelined round trip.
+     * {@code keysPerCell} holds each cell's key and stripes; the result is in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    static long[] countEach(RedisTemplate<String, String> redisTemplate, List<List<String>> keysPerCell,
+                            double min, double max) {
+        if (keysPerCell.isEmpty()) {
+            return new long[0];
+        }
+        RedisSerializer<String> keySerializer = keySerializer(redisTemplate);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            countCommands(connection, keySerializer, keysPerCell, min, max);
+            return null;
+        });
+        long[] counts = new long[keysPerCell.size()];
+        readCounts(replies, keysPerCell, counts, new Set[keysPerCell.size()]);
+        return counts;
+    }
+
+    /**
+     * {@link #countEach} for the cells of (cell, member) pairs, each pair's
+     * count taken as if its member were added: one more unless the member is
+     * already scored within [min, max]. {@code cellOf[i]} is pair i's position
+     * in {@code keysPerCell}. Membership comes from the same pipeline: a
+     * ZSCORE for an unstriped cell, the merged ranges of a striped one.
+     */
+    @SuppressWarnings("unchecked")
+    static long[] countEachWith(RedisTemplate<String, String> redisTemplate, List<List<String>> keysPerCell,
+                                int[] cellOf, List<String> members, double min, double max) {
+        if (cellOf.length == 0) {
+            return new long[0];
+        }
+        RedisSerializer<String> keySerializer = keySerializer(redisTemplate);
+        RedisSerializer<String> valueSerializer = valueSerializer(redisTemplate);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            countCommands(connection, keySerializer, keysPerCell, min, max);
+            for (int i = 0; i < cellOf.length; i++) {
+                List<String> keys = keysPerCell.get(cellOf[i]);
+                if (keys.size() == 1) {
+                    connection.zSetCommands().zScore(keySerializer.serialize(keys.get(0)),
+                            valueSerializer.serialize(members.get(i)));
+                }
+            }
+            return null;
+        });
+        long[] cellCounts = new long[keysPerCell.size()];
+        Set<String>[] cellMembers = new Set[keysPerCell.size()];
+        int next = readCounts(replies, keysPerCell, cellCounts, cellMembers);
+
+        long[] counts = new long[cellOf.length];
+        for (int i = 0; i < counts.length; i++) {
+            int cell = cellOf[i];
+            boolean present = cellMembers[cell] != null
+                    ? cellMembers[cell].contains(members.get(i))
+                    : inRange(replies.get(next++), min, max);
+            counts[i] = cellCounts[cell] + (present ? 0 : 1);
+        }
+        return counts;
+    }
+
+    /**
+     * Whether {@code members.get(i)} is scored within [min, max] under any of
+     * {@code keysPerPair.get(i)}, one ZSCORE per key in a single pipeline.
+     */
+    static boolean[] containsEach(RedisTemplate<String, String> redisTemplate, List<List<String>> keysPerPair,
+                                  List<String> members, double min, double max) {
+        if (keysPerPair.isEmpty()) {
+            return new boolean[0];
+        }
+        RedisSerializer<String> keySerializer = keySerializer(redisTemplate);
+        RedisSerializer<String> valueSerializer = valueSerializer(redisTemplate);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int i = 0; i < keysPerPair.size(); i++) {
+                byte[] member = valueSerializer.serialize(members.get(i));
+                for (String key : keysPerPair.get(i)) {
+                    connection.zSetCommands().zScore(keySerializer.serialize(key), member);
+                }
+            }
+            return null;
+        });
+        boolean[] present = new boolean[keysPerPair.size()];
+        int next = 0;
+        for (int i = 0; i < present.length; i++) {
+            for (int k = 0; k < keysPerPair.get(i).size(); k++) {
+                present[i] |= inRange(replies.get(next++), min, max);
+            }
+        }
+        return present;
+    }
+
+    // One ZCOUNT for an unstriped cell, one range per key of a striped cell
+    private static void countCommands(RedisConnection connection, RedisSerializer<String> keySerializer,
+                                      List<List<String>> keysPerCell, double min, double max) {
+        for (List<String> keys : keysPerCell) {
+            if (keys.size() == 1) {
+                connection.zSetCommands().zCount(keySerializer.serialize(keys.get(0)), min, max);
+                continue;
+            }
+            for (String key : keys) {
+                connection.zSetCommands().zRangeByScore(keySerializer.serialize(key), min, max);
+            }
+        }
+    }
+
+    // Replies to countCommands arrive in command order; striped cells also keep their merged members
+    @SuppressWarnings("unchecked")
+    private static int readCounts(List<Object> replies, List<List<String>> keysPerCell, long[] counts,
+                                  Set<String>[] members) {
+        int next = 0;
+        for (int i = 0; i < counts.length; i++) {
+            int size = keysPerCell.get(i).size();
+            if (size == 1) {
+                Object count = replies.get(next++);
+                counts[i] = count instanceof Long ? (Long) count : 0;
+                continue;
+            }
+            Set<String> merged = new HashSet<>();
+            for (int j = 0; j < size; j++) {
+                Object range = replies.get(next++);
+                if (range instanceof Set) {
+                    merged.addAll((Set<String>) range);
+                }
+            }
+            counts[i] = merged.size();
+            members[i] = merged;
+        }
+        return next;
+    }
+
+    private static boolean inRange(Object score, double min, double max) {
+        return score instanceof Double && (Double) score >= min && (Double) score <= max;
+    }
+
+    /**
+     * Per-cell PFCOUNT of the union of the cell's key groups. Keys within a
+     * group share a slot; groups (the base key and each stripe) do not, and a
+     * driver can sit in more than one of them, so they cannot be summed.
+     * Cells with a single group are counted on {@code readTemplate} in one
+     * pipeline. For striped cells, the stripe groups' raw HyperLogLogs are
+     * copied from that same pipeline into short-lived keys under the base
+     * group's hash tag, and one multi-key PFCOUNT on the primary unions them
+     * with the base group.
+     */
+    static long[] pfCountEach(RedisTemplate<String, String> readTemplate, RedisTemplate<String, String> writeTemplate,
+                              List<List<String[]>> groupsPerCell) {
+        if (groupsPerCell.isEmpty()) {
+            return new long[0];
+        }
+        RedisSerializer<String> keySerializer = keySerializer(readTemplate);
+        // No result serializer: HyperLogLog values are binary and must come back untouched
+        List<Object> replies = readTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (List<String[]> groups : groupsPerCell) {
+                if (groups.size() == 1) {
+                    connection.hyperLogLogCommands().pfCount(rawKeys(keySerializer, groups.get(0)));
+                    continue;
+                }
+                for (int g = 1; g < groups.size(); g++) {
+                    for (String key : groups.get(g)) {
+                        connection.stringCommands().get(keySerializer.serialize(key));
+                    }
+                }
+            }
+            return null;
+        }, null);
+
+        long[] counts = new long[groupsPerCell.size()];
+        List<Integer> striped = new ArrayList<>();
+        List<List<byte[]>> copies = new ArrayList<>();
+        int next = 0;
+        for (int i = 0; i < counts.length; i++) {
+            List<String[]> groups = groupsPerCell.get(i);
+            if (groups.size() == 1) {
+                Object count = replies.get(next++);
+                counts[i] = count instanceof Long ? (Long) count : 0;
+                continue;
+            }
+            List<byte[]> values = new ArrayList<>();
+            for (int g = 1; g < groups.size(); g++) {
+                for (int k = 0; k < groups.get(g).length; k++) {
+                    Object value = replies.get(next++);
+                    if (value instanceof byte[]) {
+                        values.add((byte[]) value);
+                    }
+                }
+            }
+            striped.add(i);
+            copies.add(values);
+        }
+        if (striped.isEmpty()) {
+            return counts;
+        }
+
+        String nonce = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        List<Object> unions = writeTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (int c = 0; c < striped.size(); c++) {
+                String[] base = groupsPerCell.get(striped.get(c)).get(0);
+                List<byte[]> values = copies.get(c);
+                byte[][] keys = Arrays.copyOf(rawKeys(keySerializer, base), base.length + values.size());
+                for (int v = 0; v < values.size(); v++) {
+                    // Appended after the base key, so the first {...} hash tag and the slot stay the same
+                    keys[base.length + v] = keySerializer.serialize(base[0] + ":union:" + nonce + ":" + v);
+                    connection.stringCommands().pSetEx(keys[base.length + v], UNION_COPY_TTL_MILLIS, values.get(v));
+                }
+                connection.hyperLogLogCommands().pfCount(keys);
+                if (!values.isEmpty()) {
+                    connection.keyCommands().del(Arrays.copyOfRange(keys, base.length, keys.length));
+                }
+            }
+            return null;
+        });
+        next = 0;
+        for (int c = 0; c < striped.size(); c++) {
+            int copied = copies.get(c).size();
+            next += copied; // SET replies
+            Object count = unions.get(next++);
+            counts[striped.get(c)] = count instanceof Long ? (Long) count : 0;
+            next += copied > 0 ? 1 : 0; // DEL reply
+        }
+        return counts;
+    }
+
+    private static byte[][] rawKeys(RedisSerializer<String> keySerializer, String[] keys) {
+        byte[][] rawKeys = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            rawKeys[i] = keySerializer.serialize(keys[i]);
+        }
+        return rawKeys;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisSerializer<String> keySerializer(RedisTemplate<String, String> redisTemplate) {
+        return (RedisSerializer<String>) redisTemplate.getKeySerializer();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisSerializer<String> valueSerializer(RedisTemplate<String, String> redisTemplate) {
+        return (RedisSerializer<String>) redisTemplate.getValueSerializer();
+    }
+}
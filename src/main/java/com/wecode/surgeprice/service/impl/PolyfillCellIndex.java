@@ -0,0 +1,83 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.uber.h3core.H3Core;
+import com.uber.h3core.util.LatLng;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Polyfills {@code surge.service-area} once at startup into a sorted
+ * {@code long[]}. The resolution is part of an H3 index, so one array holds
+ * every resolution and an ordinal is the binary-search position.
+ */
+@Service
+public class PolyfillCellIndex implements CellIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolyfillCellIndex.class);
+
+    private final long[] cells;
+
+    public PolyfillCellIndex(H3Core h3, SurgePricingProperties properties) {
+        int minRes = Math.min(properties.getMinH3Resolution(), properties.getMaxH3Resolution());
+        int maxRes = Math.max(properties.getMinH3Resolution(), properties.getMaxH3Resolution());
+        List<Long> filled = new ArrayList<>();
+        for (String polygon : properties.getServiceArea()) {
+            List<LatLng> boundary = parsePolygon(polygon);
+            for (int res = minRes; res <= maxRes; res++) {
+                filled.addAll(h3.polygonToCells(boundary, List.of(), res));
+            }
+        }
+        this.cells = filled.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        if (cells.length > 0) {
+            logger.info("Service area indexed: {} cells, resolutions {}..{}", cells.length, minRes, maxRes);
+        }
+    }
+
+    @Override
+    public int ordinal(String geofenceId) {
+        if (cells.length == 0) {
+            return -1;
+        }
+        try {
+            return ordinal(Long.parseUnsignedLong(geofenceId, 16));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public int ordinal(long cell) {
+        int ordinal = Arrays.binarySearch(cells, cell);
+        return ordinal >= 0 ? ordinal : -1;
+    }
+
+    @Override
+    public long cellAt(int ordinal) {
+        return cells[ordinal];
+    }
+
+    @Override
+    public int size() {
+        return cells.length;
+    }
+
+    // "lat,lng;lat,lng;..."
+    static List<LatLng> parsePolygon(String polygon) {
+        List<LatLng> boundary = new ArrayList<>();
+        for (String point : polygon.split(";")) {
+            String[] latLng = point.trim().split(",");
+            if (latLng.length != 2) {
+                throw new IllegalArgumentException("Invalid polygon point: " + point);
+            }
+            boundary.add(new LatLng(Double.parseDouble(latLng[0].trim()), Double.parseDouble(latLng[1].trim())));
+        }
+        return boundary;
+    }
+}
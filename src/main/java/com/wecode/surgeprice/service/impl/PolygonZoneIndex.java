@@ -0,0 +1,243 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.uber.h3core.H3Core;
+import com.uber.h3core.LengthUnit;
+import com.uber.h3core.util.LatLng;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellTable;
+import com.wecode.surgeprice.service.GeoDistance;
+import com.wecode.surgeprice.service.ZoneIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Covers each zone with H3 cells at {@code zone-index-resolution}. Cells a
+ * zone's edge runs through, or that more than one zone claims, keep the list
+ * of zones to test with an exact point-in-polygon check; the rest are
+ * compacted per zone and resolve without any geometry. Cover cells of every
+ * resolution share one {@link CellTable}, probed with the point's cell and
+ * its parents at the resolutions the cover uses.
+ *
+ * A bounding box around all zones turns most points away before any H3 work.
+ * Read-only after construction, so lookups take no lock.
+ */
+@Service
+public class PolygonZoneIndex implements ZoneIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PolygonZoneIndex.class);
+
+    private static final String ID_PREFIX = "zone-"; // never H3 hex, so keys cannot pass for a cell
+    private static final Pattern VALID_ID = Pattern.compile("[a-z0-9_-]+");
+    private static final int RES_OFFSET = 52;
+    private static final long RES_MASK = 0xFL << RES_OFFSET;
+
+    private final H3Core h3;
+    private final int resolution;
+    private final String[] zoneIds;
+    private final double[][] zoneLats;
+    private final double[][] zoneLngs;
+    private final int[][] candidates; // boundary entry -> zones to test, first configured first
+    private final int[] probeResolutions; // every resolution present in the cover, coarsest first
+    private final CellTable cover; // cover cell -> zone ordinal, or -(candidate list + 1)
+    private final double minLat;
+    private final double maxLat;
+    private final double minLng;
+    private final double maxLng;
+
+    public PolygonZoneIndex(H3Core h3, SurgePricingProperties properties) {
+        this.h3 = h3;
+        this.resolution = properties.getZoneIndexResolution();
+        Map<String, String> zones = properties.getZones();
+        zoneIds = new String[zones.size()];
+        zoneLats = new double[zones.size()][];
+        zoneLngs = new double[zones.size()][];
+
+        double south = 90;
+        double north = -90;
+        double west = 180;
+        double east = -180;
+        Set<String> seen = new HashSet<>();
+        Map<Long, List<Integer>> claims = new LinkedHashMap<>(); // owners in configuration order
+        Set<Long> edges = new HashSet<>();
+        int zone = 0;
+        for (Map.Entry<String, String> entry : zones.entrySet()) {
+            String id = entry.getKey().toLowerCase(Locale.ROOT);
+            if (!VALID_ID.matcher(id).matches() || !seen.add(id)) {
+                throw new IllegalArgumentException("Invalid or duplicate zone id: " + entry.getKey());
+            }
+            List<LatLng> boundary = PolyfillCellIndex.parsePolygon(entry.getValue());
+            if (boundary.size() < 3) {
+                throw new IllegalArgumentException("Zone " + id + " needs at least 3 points");
+            }
+            zoneIds[zone] = ID_PREFIX + id;
+            zoneLats[zone] = new double[boundary.size()];
+            zoneLngs[zone] = new double[boundary.size()];
+            for (int i = 0; i < boundary.size(); i++) {
+                zoneLats[zone][i] = boundary.get(i).lat;
+                zoneLngs[zone][i] = boundary.get(i).lng;
+                south = Math.min(south, boundary.get(i).lat);
+                north = Math.max(north, boundary.get(i).lat);
+                west = Math.min(west, boundary.get(i).lng);
+                east = Math.max(east, boundary.get(i).lng);
+            }
+
+            Set<Long> edge = edgeCells(zoneLats[zone], zoneLngs[zone]);
+            Set<Long> cover = new LinkedHashSet<>(h3.polygonToCells(boundary, List.of(), resolution));
+            cover.addAll(edge);
+            edges.addAll(edge);
+            for (long cell : cover) {
+                claims.computeIfAbsent(cell, key -> new ArrayList<>(1)).add(zone);
+            }
+            zone++;
+        }
+        minLat = south;
+        maxLat = north;
+        minLng = west;
+        maxLng = east;
+
+        Map<Integer, List<Long>> interior = new HashMap<>();
+        List<int[]> boundaryLists = new ArrayList<>();
+        Map<Long, Integer> entries = new HashMap<>();
+        for (Map.Entry<Long, List<Integer>> claim : claims.entrySet()) {
+            List<Integer> owners = claim.getValue();
+            if (owners.size() == 1 && !edges.contains(claim.getKey())) {
+                interior.computeIfAbsent(owners.get(0), key -> new ArrayList<>()).add(claim.getKey());
+            } else {
+                entries.put(claim.getKey(), -(boundaryLists.size() + 1));
+                boundaryLists.add(owners.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        for (Map.Entry<Integer, List<Long>> cells : interior.entrySet()) {
+            for (long cell : h3.compactCells(cells.getValue())) {
+                entries.put(cell, cells.getKey());
+            }
+        }
+        candidates = boundaryLists.toArray(new int[0][]);
+
+        cover = new CellTable(entries.size());
+        boolean[] used = new boolean[resolution + 1];
+        for (Map.Entry<Long, Integer> entry : entries.entrySet()) {
+            cover.put(cover.indexOf(entry.getKey()), entry.getKey(), entry.getValue());
+            used[h3.getResolution(entry.getKey())] = true;
+        }
+        int probes = 0;
+        int[] present = new int[used.length];
+        for (int res = 0; res < used.length; res++) {
+            if (used[res]) {
+                present[probes++] = res;
+            }
+        }
+        probeResolutions = Arrays.copyOf(present, probes);
+
+        if (zoneIds.length > 0) {
+            logger.info("Zones indexed: {} zones, {} cover cells ({} tested exactly), resolutions {}",
+                    zoneIds.length, entries.size(), candidates.length, Arrays.toString(probeResolutions));
+        }
+    }
+
+    @Override
+    public String zoneAt(double lat, double lng) {
+        if (zoneIds.length == 0 || lat < minLat || lat > maxLat || lng < minLng || lng > maxLng) {
+            return null;
+        }
+        long cell = h3.latLngToCell(lat, lng, resolution);
+        for (int res : probeResolutions) {
+            long probe = res == resolution ? cell : parent(cell, res);
+            int index = cover.indexOf(probe);
+            if (cover.keyAt(index) != probe) {
+                continue;
+            }
+            // Cover cells never overlap, so the first hit decides
+            int value = cover.valueAt(index);
+            if (value >= 0) {
+                return zoneIds[value];
+            }
+            for (int zone : candidates[-value - 1]) {
+                if (contains(zoneLats[zone], zoneLngs[zone], lat, lng)) {
+                    return zoneIds[zone];
+                }
+            }
+            return null;
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return zoneIds.length;
+    }
+
+    @Override
+    public Map<String, Set<Long>> coverCells(int res) {
+        Map<String, Set<Long>> cells = new LinkedHashMap<>();
+        for (String zoneId : zoneIds) {
+            cells.put(zoneId, new HashSet<>());
+        }
+        for (int index = 0; index < cover.slots(); index++) {
+            long cell = cover.keyAt(index);
+            if (cell == CellTable.EMPTY_CELL) {
+                continue;
+            }
+            int value = cover.valueAt(index);
+            int[] zones = value >= 0 ? new int[] {value} : candidates[-value - 1];
+            // A compacted cell coarser than res spans several cells at res
+            List<Long> atRes = h3.getResolution(cell) <= res ? h3.cellToChildren(cell, res) : List.of(parent(cell, res));
+            for (int zone : zones) {
+                cells.get(zoneIds[zone]).addAll(atRes);
+            }
+        }
+        return cells;
+    }
+
+    // Cells along every edge, sampled at a quarter edge length, plus their neighbours
+    private Set<Long> edgeCells(double[] lats, double[] lngs) {
+        double stepKm = h3.getHexagonEdgeLengthAvg(resolution, LengthUnit.km) / 4;
+        Set<Long> sampled = new HashSet<>();
+        for (int i = 0; i < lats.length; i++) {
+            int j = (i + 1) % lats.length;
+            int steps = Math.max(1, (int) Math.ceil(GeoDistance.haversineKm(lats[i], lngs[i], lats[j], lngs[j]) / stepKm));
+            for (int step = 0; step <= steps; step++) {
+                double t = (double) step / steps;
+                sampled.add(h3.latLngToCell(lats[i] + t * (lats[j] - lats[i]),
+                        lngs[i] + t * (lngs[j] - lngs[i]), resolution));
+            }
+        }
+        // A cell the edge only clips at a corner can fall between samples; a neighbour of it cannot
+        Set<Long> edge = new HashSet<>();
+        for (long cell : sampled) {
+            edge.addAll(h3.gridDisk(cell, 1));
+        }
+        return edge;
+    }
+
+    // cellToParent without the native call: set the resolution, mark finer digits unused (7)
+    private static long parent(long cell, int res) {
+        long unusedDigits = (1L << ((15 - res) * 3)) - 1;
+        return (cell & ~RES_MASK) | ((long) res << RES_OFFSET) | unusedDigits;
+    }
+
+    // Even-odd ray casting in lat/lng; zones are small enough for straight edges
+    private static boolean contains(double[] lats, double[] lngs, double lat, double lng) {
+        boolean inside = false;
+        for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+            if ((lats[i] > lat) != (lats[j] > lat)
+                    && lng < (lngs[j] - lngs[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lngs[i]) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+}
@@ -2,9 +2,11 @@ package com.wecode.surgeprice.service.impl;
 
 import com.wecode.surgeprice.config.SurgePricingProperties;
 import com.wecode.surgeprice.dto.PriceResponseDTO;
+import com.wecode.surgeprice.service.GeoDistance;
 import com.wecode.surgeprice.service.GeofenceService;
 import com.wecode.surgeprice.service.PricingService;
 import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.ZoneIndex;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -23,12 +25,14 @@ public class PricingServiceImpl implements PricingService {
     }
 
     /**
-     * O(1) price lookup - just Redis get operations
+     * O(1) price lookup - just Redis get operations. A custom zone overrides the hexagon.
      */
     @Override
     public PriceResponseDTO getPrice(double lat, double lng) {
-        String geofenceId = geofenceService.getGeofenceId(lat, lng, properties.getH3Resolution());
-        double surgeMultiplier = redisService.getSurge(properties.getH3Resolution(), geofenceId);
+        String zoneId = geofenceService.getZoneId(lat, lng);
+        int resolution = zoneId != null ? ZoneIndex.ZONE_RESOLUTION : properties.getH3Resolution();
+        String geofenceId = zoneId != null ? zoneId : geofenceService.getGeofenceId(lat, lng, resolution);
+        double surgeMultiplier = redisService.getSurge(resolution, geofenceId);
         return new PriceResponseDTO(
                 properties.getBaseFare(),
                 surgeMultiplier,
@@ -38,14 +42,19 @@ public class PricingServiceImpl implements PricingService {
 
     @Override
     public double calculateDistanceKm(double lat1, double lng1, double lat2, double lng2) {
-        double earthRadiusKm = 6371.0;
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLng = Math.toRadians(lng2 - lng1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return earthRadiusKm * c;
+        return GeoDistance.haversineKm(lat1, lng1, lat2, lng2);
+    }
+
+    /**
+     * Same haversine as {@link #calculateDistanceKm}, over primitive arrays with
+     * no boxing or per-pair interface calls, so the JIT can keep the loop tight.
+     */
+    @Override
+    public void calculateDistancesKm(double[] lat1, double[] lng1, double[] lat2, double[] lng2,
+                                     double[] distancesKm, int count) {
+        for (int i = 0; i < count; i++) {
+            distancesKm[i] = GeoDistance.haversineKm(lat1[i], lng1[i], lat2[i], lng2[i]);
+        }
     }
 
     @Override
@@ -0,0 +1,93 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.RideQuoteDTO;
+import com.wecode.surgeprice.service.QuoteService;
+import com.wecode.surgeprice.service.RedisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Quotes are kept in a bounded in-process map and in Redis with the same TTL.
+ * Confirming on the instance that issued the quote needs no deserialization;
+ * only the Redis delete that makes the claim single-use. Any other instance
+ * falls back to an atomic GETDEL.
+ */
+@Service
+public class QuoteServiceImpl implements QuoteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuoteServiceImpl.class);
+
+    private final RedisService redisService;
+    private final ObjectMapper objectMapper;
+    private final SurgePricingProperties properties;
+    private final Clock clock;
+    private final Map<String, RideQuoteDTO> localQuotes;
+
+    public QuoteServiceImpl(RedisService redisService,
+                            ObjectMapper objectMapper,
+                            SurgePricingProperties properties,
+                            Clock clock) {
+        this.redisService = redisService;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.clock = clock;
+        int capacity = properties.getQuoteCacheSize();
+        // Every quote has the same TTL, so insertion order is also expiry order
+        this.localQuotes = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RideQuoteDTO> eldest) {
+                return size() > capacity;
+            }
+        });
+    }
+
+    @Override
+    public RideQuoteDTO save(RideQuoteDTO quote) {
+        quote.setQuoteId(UUID.randomUUID().toString());
+        quote.setExpiresAt(clock.millis() + properties.getQuoteTtlSeconds() * 1000L);
+        try {
+            redisService.saveQuote(quote.getQuoteId(), objectMapper.writeValueAsString(quote),
+                    properties.getQuoteTtlSeconds());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize quote", e);
+        }
+        localQuotes.put(quote.getQuoteId(), quote);
+        return quote;
+    }
+
+    @Override
+    public Optional<RideQuoteDTO> claim(String quoteId) {
+        RideQuoteDTO local = localQuotes.remove(quoteId);
+        if (local != null) {
+            boolean claimed = redisService.deleteQuote(quoteId);
+            return claimed && !isExpired(local) ? Optional.of(local) : Optional.empty();
+        }
+
+        String json = redisService.takeQuote(quoteId);
+        if (json == null) {
+            return Optional.empty();
+        }
+        try {
+            RideQuoteDTO quote = objectMapper.readValue(json, RideQuoteDTO.class);
+            return isExpired(quote) ? Optional.empty() : Optional.of(quote);
+        } catch (JsonProcessingException e) {
+            logger.error("Unreadable quote {}", quoteId, e);
+            return Optional.empty();
+        }
+    }
+
+    private boolean isExpired(RideQuoteDTO quote) {
+        return quote.getExpiresAt() <= clock.millis();
+    }
+}
@@ -0,0 +1,150 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight per (op, resolution, cell): while one caller reads, the others
+ * wait on its future instead of issuing the same Redis call. With
+ * {@code read-cache-ttl-millis} above 0 the result is also served for that long
+ * after it arrives. Used by {@link CoalescingRedisService}.
+ */
+@Component
+public class ReadCoalescer implements MeterBinder {
+
+    private final SurgePricingProperties properties;
+    private final Map<Key, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cached = new AtomicLong();
+
+    public ReadCoalescer(SurgePricingProperties properties) {
+        this.properties = properties;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String op, int resolution, String geofenceId, Supplier<T> loader) {
+        Key key = new Key(op, resolution, geofenceId);
+        long ttlNanos = properties.getReadCacheTtlMillis() * 1_000_000L;
+        while (true) {
+            Flight existing = flights.get(key);
+            if (existing != null) {
+                if (!existing.future.isDone()) {
+                    coalesced.incrementAndGet();
+                    return (T) join(existing);
+                }
+                if (System.nanoTime() - existing.completedAt < ttlNanos) {
+                    cached.incrementAndGet();
+                    return (T) join(existing);
+                }
+            }
+            Flight mine = new Flight();
+            boolean won = existing == null
+                    ? flights.putIfAbsent(key, mine) == null
+                    : flights.replace(key, existing, mine);
+            if (!won) {
+                continue;
+            }
+            loaded.incrementAndGet();
+            try {
+                T value = loader.get();
+                mine.completedAt = System.nanoTime();
+                mine.future.complete(value);
+                if (ttlNanos == 0) {
+                    flights.remove(key, mine);
+                }
+                return value;
+            } catch (Throwable e) {
+                // Waiters get the same failure, errors included, so none of them hangs; nothing is cached
+                flights.remove(key, mine);
+                mine.future.completeExceptionally(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drops cached results past the TTL.
+     */
+    @Scheduled(fixedDelay = 1000, initialDelay = 1000)
+    public void evictExpired() {
+        long ttlNanos = properties.getReadCacheTtlMillis() * 1_000_000L;
+        long now = System.nanoTime();
+        flights.values().removeIf(flight -> flight.future.isDone() && now - flight.completedAt >= ttlNanos);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // Coalescing ratio: (coalesced + cached) / all; Redis reads follow "loaded"
+        FunctionCounter.builder("surge.read.requests", loaded, AtomicLong::get)
+                .description("Per-cell reads by how they were answered")
+                .tag("result", "loaded")
+                .register(registry);
+        FunctionCounter.builder("surge.read.requests", coalesced, AtomicLong::get)
+                .description("Per-cell reads by how they were answered")
+                .tag("result", "coalesced")
+                .register(registry);
+        FunctionCounter.builder("surge.read.requests", cached, AtomicLong::get)
+                .description("Per-cell reads by how they were answered")
+                .tag("result", "cached")
+                .register(registry);
+    }
+
+    private static Object join(Flight flight) {
+        try {
+            return flight.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private volatile long completedAt;
+    }
+
+    private static final class Key {
+        private final String op;
+        private final int resolution;
+        private final String geofenceId;
+        private final int hash;
+
+        private Key(String op, int resolution, String geofenceId) {
+            this.op = op;
+            this.resolution = resolution;
+            this.geofenceId = geofenceId;
+            this.hash = Objects.hash(op, resolution, geofenceId);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key key)) {
+                return false;
+            }
+            return resolution == key.resolution && op.equals(key.op) && geofenceId.equals(key.geofenceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.lettuce.core.RedisException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Per operation type: a circuit breaker, recent latencies and, for reads, a
+ * hedged second attempt once the first has run past that operation's p95.
+ * Reads give up at {@code redis-read-deadline-millis}, below the Lettuce
+ * command timeout. Successful per-cell reads are remembered so a failed or
+ * rejected one can be answered with the last known value; the cell is then
+ * reported stale until a read of it succeeds again. Only Redis errors and
+ * timeouts count towards a breaker; a read that finds the hedge pool full runs
+ * on the calling thread instead. Used by {@link ResilientRedisService}.
+ */
+@Component
+public class RedisResilience implements MeterBinder, DisposableBean {
+
+    static final String DRIVER_COUNT = "driverCount";
+    static final String DRIVER_COUNTS = "driverCounts";
+    static final String DRIVERS = "drivers";
+    static final String REQUEST_COUNT = "requestCount";
+    static final String REQUEST_COUNTS = "requestCounts";
+    static final String ACTIVE_REQUESTS = "activeRequests";
+    static final String DEMAND_COUNT = "demandCount";
+    static final String BASELINE = "baseline";
+    static final String SURGE = "surge";
+    static final String SURGES = "surges";
+    static final String SURGE_HISTORY = "surgeHistory";
+    static final String LAST_UPDATE = "lastUpdate";
+    static final String LAST_UPDATES = "lastUpdates";
+    static final String ACTIVE_GEOFENCES = "activeGeofences";
+    static final String DRIVER_WRITE = "driverWrite";
+    static final String REQUEST_WRITE = "requestWrite";
+    static final String DEMAND_WRITE = "demandWrite";
+    static final String SURGE_WRITE = "surgeWrite";
+    static final String QUOTE = "quote";
+
+    private static final int LATENCY_SAMPLES = 256; // power of two
+    private static final int MIN_SAMPLES = 32;
+
+    private final SurgePricingProperties properties;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, Operation> operations = new LinkedHashMap<>(); // fixed after construction
+    private final Map<String, LastKnown> lastKnown = new ConcurrentHashMap<>();
+    private final Map<String, Long> staleCells = new ConcurrentHashMap<>(); // cell -> first fallback time
+
+    public RedisResilience(SurgePricingProperties properties) {
+        this.properties = properties;
+        AtomicInteger threadCount = new AtomicInteger();
+        int threads = hedgeThreads(properties);
+        // No queue: a read that finds the pool full runs on its caller, a hedge is simply not sent
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "redis-read-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        for (String name : new String[] {DRIVER_COUNT, DRIVER_COUNTS, DRIVERS, REQUEST_COUNT, REQUEST_COUNTS,
+                ACTIVE_REQUESTS, DEMAND_COUNT, BASELINE, SURGE, SURGES, SURGE_HISTORY, LAST_UPDATE, LAST_UPDATES,
+                ACTIVE_GEOFENCES, DRIVER_WRITE, REQUEST_WRITE, DEMAND_WRITE, SURGE_WRITE, QUOTE}) {
+            operations.put(name, new Operation(name));
+        }
+    }
+
+    /**
+     * Hedged, breaker-guarded read of one cell, falling back to the last value
+     * read for it when Redis fails, is too slow or the breaker is open.
+     */
+    public <T> T read(String op, int resolution, String geofenceId, Supplier<T> call) {
+        try {
+            T value = call(op, true, call);
+            remember(op, resolution, geofenceId, value);
+            return value;
+        } catch (RuntimeException e) {
+            T known = recall(op, resolution, geofenceId);
+            if (known == null) {
+                throw e;
+            }
+            return known;
+        }
+    }
+
+    /**
+     * Runs {@code call} behind the breaker of {@code op}; with {@code hedge}
+     * it is also bounded by the read deadline and retried in parallel once
+     * slow. Only hedge idempotent reads.
+     */
+    public <T> T call(String op, boolean hedge, Supplier<T> call) {
+        Operation operation = operations.get(op);
+        if (!operation.allow()) {
+            operation.rejected.incrementAndGet();
+            throw new DataAccessResourceFailureException("Redis circuit open for " + op);
+        }
+        try {
+            T value = hedge && properties.isRedisHedgeEnabled() ? hedged(operation, call) : timed(operation, call);
+            operation.success();
+            return value;
+        } catch (RuntimeException e) {
+            if (isRedisFailure(e)) {
+                operation.failure();
+            } else {
+                // Not Redis's fault; let a probe that hit it through again
+                operation.probing.set(false);
+            }
+            throw e;
+        }
+    }
+
+    public void remember(String op, int resolution, String geofenceId, Object value) {
+        lastKnown.put(op + ":" + cellKey(resolution, geofenceId), new LastKnown(value, System.currentTimeMillis()));
+        if (!staleCells.isEmpty()) {
+            staleCells.remove(cellKey(resolution, geofenceId));
+        }
+    }
+
+    /**
+     * Last value read for the cell within {@code redis-last-known-max-age-seconds},
+     * or null. A hit marks the cell stale.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T recall(String op, int resolution, String geofenceId) {
+        long now = System.currentTimeMillis();
+        LastKnown known = lastKnown.get(op + ":" + cellKey(resolution, geofenceId));
+        if (known == null || now - known.storedAt > properties.getRedisLastKnownMaxAgeSeconds() * 1000L) {
+            return null;
+        }
+        operations.get(op).fallbacks.incrementAndGet();
+        staleCells.putIfAbsent(cellKey(resolution, geofenceId), now);
+        return (T) known.value;
+    }
+
+    /**
+     * True while the cell's latest answer came from the last-known store.
+     */
+    public boolean isStale(int resolution, String geofenceId) {
+        return !staleCells.isEmpty() && staleCells.containsKey(cellKey(resolution, geofenceId));
+    }
+
+    /**
+     * Moves each hedge delay to the p95 of its operation's recent latencies.
+     */
+    @Scheduled(fixedDelay = 1000, initialDelay = 1000)
+    public void refreshHedgeDelays() {
+        long minNanos = properties.getRedisHedgeMinDelayMillis() * 1_000_000L;
+        for (Operation operation : operations.values()) {
+            long seen = operation.sampleCount.get();
+            if (seen < MIN_SAMPLES) {
+                continue;
+            }
+            long[] window = Arrays.copyOf(operation.latencies, (int) Math.min(seen, LATENCY_SAMPLES));
+            Arrays.sort(window);
+            long p95 = window[(int) (0.95 * (window.length - 1))];
+            operation.hedgeDelayNanos = Math.max(minNanos, p95);
+        }
+    }
+
+    /**
+     * Forgets values past the age they may be served at.
+     */
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void evictExpired() {
+        long before = System.currentTimeMillis() - properties.getRedisLastKnownMaxAgeSeconds() * 1000L;
+        lastKnown.values().removeIf(known -> known.storedAt < before);
+        staleCells.values().removeIf(since -> since < before);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (Operation operation : operations.values()) {
+            FunctionCounter.builder("surge.redis.hedged", operation.hedged, AtomicLong::get)
+                    .description("Redis reads that sent a second attempt")
+                    .tag("op", operation.name)
+                    .register(registry);
+            FunctionCounter.builder("surge.redis.fallback", operation.fallbacks, AtomicLong::get)
+                    .description("Redis reads answered with the last known value")
+                    .tag("op", operation.name)
+                    .register(registry);
+            FunctionCounter.builder("surge.redis.rejected", operation.rejected, AtomicLong::get)
+                    .description("Redis calls refused by an open circuit")
+                    .tag("op", operation.name)
+                    .register(registry);
+            FunctionCounter.builder("surge.redis.inline", operation.inline, AtomicLong::get)
+                    .description("Redis reads run on the caller because the hedge pool was full")
+                    .tag("op", operation.name)
+                    .register(registry);
+            Gauge.builder("surge.redis.circuit.open", operation, o -> o.open ? 1 : 0)
+                    .description("1 while the operation's circuit is open")
+                    .tag("op", operation.name)
+                    .register(registry);
+            Gauge.builder("surge.redis.hedge.delay", operation, o -> o.hedgeDelayNanos / 1_000_000.0)
+                    .description("Current hedge delay, the operation's recent p95")
+                    .tag("op", operation.name)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    private <T> T timed(Operation operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        T value = call.get();
+        operation.recordLatency(System.nanoTime() - start);
+        return value;
+    }
+
+    private <T> T hedged(Operation operation, Supplier<T> call) {
+        long deadlineNanos = properties.getRedisReadDeadlineMillis() * 1_000_000L;
+        long start = System.nanoTime();
+        Race<T> race = new Race<>(operation, call);
+        if (!race.launch()) {
+            // A busy JVM is not a Redis failure: run it here, unhedged and bounded by the Lettuce command timeout
+            operation.inline.incrementAndGet();
+            return timed(operation, call);
+        }
+        try {
+            long hedgeDelay = Math.min(operation.hedgeDelayNanos, deadlineNanos);
+            try {
+                return race.result.get(hedgeDelay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException slow) {
+                if (race.launch()) {
+                    operation.hedged.incrementAndGet();
+                }
+            }
+            long remaining = deadlineNanos - (System.nanoTime() - start);
+            return race.result.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new QueryTimeoutException("Redis " + operation.name + " exceeded "
+                    + properties.getRedisReadDeadlineMillis() + "ms");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new DataAccessResourceFailureException("Redis " + operation.name + " failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryTimeoutException("Interrupted waiting for Redis " + operation.name);
+        }
+    }
+
+    // Spring translates Lettuce errors and timeouts into DataAccessException; anything else is a local bug
+    static boolean isRedisFailure(RuntimeException e) {
+        return e instanceof DataAccessException || e instanceof RedisException;
+    }
+
+    // Each request, stream push or worker read can hold a first attempt and a hedge
+    static int hedgeThreads(SurgePricingProperties properties) {
+        if (properties.getRedisHedgeThreads() > 0) {
+            return properties.getRedisHedgeThreads();
+        }
+        return 2 * (properties.getAdmissionMaxTotal() + properties.getStreamSendThreads() + 1);
+    }
+
+    private static String cellKey(int resolution, String geofenceId) {
+        return resolution + ":" + geofenceId;
+    }
+
+    /**
+     * Attempts at one read; the first success wins, and the result fails only
+     * once every launched attempt has.
+     */
+    private final class Race<T> {
+        private final Operation operation;
+        private final Supplier<T> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private int running; // guarded by this
+
+        private Race(Operation operation, Supplier<T> call) {
+            this.operation = operation;
+            this.call = call;
+        }
+
+        private boolean launch() {
+            synchronized (this) {
+                if (result.isDone()) {
+                    return false;
+                }
+                running++;
+            }
+            try {
+                executor.execute(this::attempt);
+                return true;
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    running--;
+                }
+                return false;
+            }
+        }
+
+        private void attempt() {
+            long start = System.nanoTime();
+            try {
+                T value = call.get();
+                operation.recordLatency(System.nanoTime() - start);
+                result.complete(value);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    if (--running == 0) {
+                        result.completeExceptionally(e);
+                    }
+                }
+            }
+        }
+    }
+
+    private final class Operation {
+        private final String name;
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private final AtomicLong sampleCount = new AtomicLong();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicBoolean probing = new AtomicBoolean();
+        private final AtomicLong hedged = new AtomicLong();
+        private final AtomicLong fallbacks = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong inline = new AtomicLong();
+        private volatile long hedgeDelayNanos;
+        private volatile boolean open;
+        private volatile long retryAt; // nanoTime when an open circuit lets one probe through
+
+        private Operation(String name) {
+            this.name = name;
+            // No hedging until there are latencies to base it on
+            this.hedgeDelayNanos = properties.getRedisReadDeadlineMillis() * 1_000_000L;
+        }
+
+        private void recordLatency(long nanos) {
+            latencies[(int) (sampleCount.getAndIncrement() & (LATENCY_SAMPLES - 1))] = nanos;
+        }
+
+        // Closed: everything passes. Open: nothing until retryAt, then a single probe
+        private boolean allow() {
+            if (!open) {
+                return true;
+            }
+            return System.nanoTime() - retryAt >= 0 && probing.compareAndSet(false, true);
+        }
+
+        private void success() {
+            if (open) {
+                open = false;
+                probing.set(false);
+            }
+            if (consecutiveFailures.get() != 0) {
+                consecutiveFailures.set(0);
+            }
+        }
+
+        private void failure() {
+            if (consecutiveFailures.incrementAndGet() >= properties.getRedisBreakerFailureThreshold() || open) {
+                retryAt = System.nanoTime() + properties.getRedisBreakerOpenMillis() * 1_000_000L;
+                open = true;
+                probing.set(false);
+            }
+        }
+    }
+
+    private static final class LastKnown {
+        private final Object value;
+        private final long storedAt;
+
+        private LastKnown(Object value, long storedAt) {
+            this.value = value;
+            this.storedAt = storedAt;
+        }
+    }
+}
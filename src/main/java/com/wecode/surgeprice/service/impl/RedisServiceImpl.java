@@ -1,146 +1,359 @@
 package com.wecode.surgeprice.service.impl;
 
 import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.service.CellStripingService;
+import com.wecode.surgeprice.service.DriverSupplyStore;
 import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.impl.GeofenceKeyspace.KeyType;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
-@Service
+@Service("redisStorage")
+@ConditionalOnProperty(prefix = "surge", name = "store", havingValue = "redis", matchIfMissing = true)
 public class RedisServiceImpl implements RedisService {
 
-    private static final String DRIVER_KEY_PREFIX = "geofence:%d:%s:drivers";
-    private static final String REQUEST_KEY_PREFIX = "geofence:%d:%s:requests";
-    private static final String DEMAND_KEY_PREFIX = "geofence:%d:%s:demand";
-    private static final String BASELINE_KEY_PREFIX = "geofence:%d:%s:baseline";
-    private static final String SURGE_KEY_PREFIX = "geofence:%d:%s:surge";
-    private static final String LAST_UPDATE_KEY_PREFIX = "geofence:%d:%s:last_update";
+    private static final String QUOTE_KEY_PREFIX = "quote:";
+    // Last-update only moves forward: a late event must not make a live cell look idle to the worker
+    private static final RedisScript<Long> SET_IF_NEWER = new DefaultRedisScript<>(
+            "local current = tonumber(redis.call('GET', KEYS[1])) "
+                    + "if current == nil or tonumber(ARGV[1]) > current then "
+                    + "redis.call('SET', KEYS[1], ARGV[1]) return 1 end "
+                    + "return 0", Long.class);
 
     private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, String> readTemplate;
+    private final DriverSupplyStore supplyStore;
+    private final CellStripingService stripingService;
+    private final GeofenceKeyspaces keyspaces;
     private final SurgePricingProperties properties;
 
-    public RedisServiceImpl(RedisTemplate<String, String> redisTemplate, SurgePricingProperties properties) {
+    public RedisServiceImpl(RedisTemplate<String, String> redisTemplate,
+                            @Qualifier("redisReadTemplate") RedisTemplate<String, String> readTemplate,
+                            DriverSupplyStore supplyStore,
+                            CellStripingService stripingService,
+                            GeofenceKeyspaces keyspaces,
+                            SurgePricingProperties properties) {
         this.redisTemplate = redisTemplate;
+        this.readTemplate = readTemplate;
+        this.supplyStore = supplyStore;
+        this.stripingService = stripingService;
+        this.keyspaces = keyspaces;
         this.properties = properties;
     }
 
     @Override
-    public void addDriver(int resolution, String geofenceId, String driverId) {
-        String key = String.format(DRIVER_KEY_PREFIX, resolution, geofenceId);
-        long now = System.currentTimeMillis();
-        redisTemplate.opsForZSet().add(key, driverId, now);
-        pruneOld(key, now);
-        redisTemplate.expire(key, Duration.ofSeconds(properties.getDataFreshnessSeconds()));
-        updateLastSeen(resolution, geofenceId);
+    public void addDriver(int resolution, String geofenceId, String driverId, long timestamp) {
+        supplyStore.addDriver(resolution, geofenceId, driverId, timestamp);
+        updateLastSeen(resolution, geofenceId, timestamp);
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        supplyStore.addDrivers(resolution, geofenceIds, driverIds, timestamps, count);
+        Map<String, Long> newest = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            newest.merge(geofenceIds[i], timestamps[i], Math::max);
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (Map.Entry<String, Long> cell : newest.entrySet()) {
+                    for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+                        ops.execute(SET_IF_NEWER, List.of(keyspace.key(KeyType.LAST_UPDATE, resolution, cell.getKey())),
+                                String.valueOf(cell.getValue()));
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        supplyStore.removeDriver(resolution, geofenceId, driverId);
     }
 
     @Override
     public long getDriverCount(int resolution, String geofenceId) {
-        String key = String.format(DRIVER_KEY_PREFIX, resolution, geofenceId);
-        long now = System.currentTimeMillis();
-        Long count = redisTemplate.opsForZSet()
-                .count(key, now - properties.getDataFreshnessSeconds() * 1000L, now);
-        return count != null ? count : 0;
+        return supplyStore.getDriverCount(resolution, geofenceId, System.currentTimeMillis());
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds) {
+        return supplyStore.getDriverCounts(resolution, geofenceIds, System.currentTimeMillis());
     }
 
     @Override
     public Set<String> getDrivers(int resolution, String geofenceId) {
-        String key = String.format(DRIVER_KEY_PREFIX, resolution, geofenceId);
-        long now = System.currentTimeMillis();
-        return redisTemplate.opsForZSet()
-                .rangeByScore(key, now - properties.getDataFreshnessSeconds() * 1000L, now);
+        return supplyStore.getDrivers(resolution, geofenceId, System.currentTimeMillis());
     }
 
+    /**
+     * The REQUESTS ZSET holds one member per rider scored with their latest
+     * request time; the payload hash next to it holds that request's JSON.
+     */
     @Override
-    public void addRideRequest(int resolution, String geofenceId, String requestJson) {
-        String key = String.format(REQUEST_KEY_PREFIX, resolution, geofenceId);
+    public void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson) {
+        // Stripe by rider so a repeat lands on the same sub-key and replaces the entry
+        int stripe = stripingService.writeStripe(resolution, geofenceId, riderId);
         long now = System.currentTimeMillis();
-        redisTemplate.opsForZSet().add(key, requestJson, now);
-        pruneOld(key, now);
-        redisTemplate.expire(key, Duration.ofSeconds(properties.getDataFreshnessSeconds()));
+        Duration ttl = Duration.ofSeconds(properties.getDataFreshnessSeconds());
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            String key = keyspace.key(KeyType.REQUESTS, resolution, geofenceId, stripe, null);
+            String payloadKey = keyspace.key(KeyType.REQUEST_PAYLOADS, resolution, geofenceId, stripe, null);
+            redisTemplate.opsForZSet().add(key, riderId, now);
+            redisTemplate.opsForHash().put(payloadKey, riderId, requestJson);
+            pruneOld(key, payloadKey, now);
+            redisTemplate.expire(key, ttl);
+            redisTemplate.expire(payloadKey, ttl);
+        }
     }
 
     @Override
     public long getRideRequestCount(int resolution, String geofenceId) {
-        String key = String.format(REQUEST_KEY_PREFIX, resolution, geofenceId);
         long now = System.currentTimeMillis();
-        Long count = redisTemplate.opsForZSet()
-                .count(key, now - properties.getDataFreshnessSeconds() * 1000L, now);
-        return count != null ? count : 0;
+        return PipelinedReads.count(readTemplate, readKeys(KeyType.REQUESTS, resolution, geofenceId),
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
+    }
+
+    @Override
+    public long[] getRideRequestCounts(int resolution, List<String> geofenceIds) {
+        long now = System.currentTimeMillis();
+        List<List<String>> keysPerCell = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            keysPerCell.add(readKeys(KeyType.REQUESTS, resolution, geofenceId));
+        }
+        return PipelinedReads.countEach(readTemplate, keysPerCell,
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
+    }
+
+    @Override
+    public long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        long now = System.currentTimeMillis();
+        Map<String, Integer> cells = new HashMap<>();
+        List<List<String>> keysPerCell = new ArrayList<>();
+        int[] cellOf = new int[geofenceIds.size()];
+        for (int i = 0; i < cellOf.length; i++) {
+            String geofenceId = geofenceIds.get(i);
+            Integer cell = cells.get(geofenceId);
+            if (cell == null) {
+                cell = keysPerCell.size();
+                cells.put(geofenceId, cell);
+                keysPerCell.add(readKeys(KeyType.REQUESTS, resolution, geofenceId));
+            }
+            cellOf[i] = cell;
+        }
+        return PipelinedReads.countEachWith(readTemplate, keysPerCell, cellOf, riderIds,
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
+    }
+
+    @Override
+    public boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        long now = System.currentTimeMillis();
+        List<List<String>> keysPerPair = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            keysPerPair.add(readKeys(KeyType.REQUESTS, resolution, geofenceId));
+        }
+        return PipelinedReads.containsEach(readTemplate, keysPerPair, riderIds,
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
     }
 
     @Override
     public List<String> getActiveRideRequests(int resolution, String geofenceId) {
-        String key = String.format(REQUEST_KEY_PREFIX, resolution, geofenceId);
         long now = System.currentTimeMillis();
-        Set<String> results = redisTemplate.opsForZSet()
-                .rangeByScore(key, now - properties.getDataFreshnessSeconds() * 1000L, now);
-        return results != null ? List.copyOf(results) : List.of();
+        return PipelinedReads.rangeByScorePayloads(readTemplate,
+                readKeys(KeyType.REQUESTS, resolution, geofenceId),
+                readKeys(KeyType.REQUEST_PAYLOADS, resolution, geofenceId),
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
     }
 
     @Override
     public void incrementDemand(int resolution, String geofenceId) {
-        String key = String.format(DEMAND_KEY_PREFIX, resolution, geofenceId);
-        redisTemplate.opsForValue().increment(key);
-        redisTemplate.expire(key, Duration.ofSeconds(properties.getDataFreshnessSeconds()));
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            String key = keyspace.key(KeyType.DEMAND, resolution, geofenceId);
+            redisTemplate.opsForValue().increment(key);
+            redisTemplate.expire(key, Duration.ofSeconds(properties.getDataFreshnessSeconds()));
+        }
     }
 
     @Override
     public long getDemandCount(int resolution, String geofenceId) {
-        String key = String.format(DEMAND_KEY_PREFIX, resolution, geofenceId);
-        String value = redisTemplate.opsForValue().get(key);
+        String key = keyspaces.primary().key(KeyType.DEMAND, resolution, geofenceId);
+        String value = readTemplate.opsForValue().get(key);
         return value != null ? Long.parseLong(value) : 0;
     }
 
     @Override
     public void updateBaseline(int resolution, String geofenceId, double baseline) {
-        String key = String.format(BASELINE_KEY_PREFIX, resolution, geofenceId);
-        redisTemplate.opsForValue().set(key, String.valueOf(baseline));
+        set(KeyType.BASELINE, resolution, geofenceId, String.valueOf(baseline));
     }
 
     @Override
     public double getBaseline(int resolution, String geofenceId) {
-        String key = String.format(BASELINE_KEY_PREFIX, resolution, geofenceId);
-        String value = redisTemplate.opsForValue().get(key);
+        String key = keyspaces.primary().key(KeyType.BASELINE, resolution, geofenceId);
+        String value = readTemplate.opsForValue().get(key);
         return value != null ? Double.parseDouble(value) : 0.0;
     }
 
     @Override
     public void updateSurge(int resolution, String geofenceId, double surge) {
-        String key = String.format(SURGE_KEY_PREFIX, resolution, geofenceId);
-        redisTemplate.opsForValue().set(key, String.valueOf(surge));
+        set(KeyType.SURGE, resolution, geofenceId, String.valueOf(surge));
     }
 
     @Override
     public double getSurge(int resolution, String geofenceId) {
-        String key = String.format(SURGE_KEY_PREFIX, resolution, geofenceId);
-        String value = redisTemplate.opsForValue().get(key);
+        String key = keyspaces.primary().key(KeyType.SURGE, resolution, geofenceId);
+        String value = readTemplate.opsForValue().get(key);
         return value != null ? Double.parseDouble(value) : properties.getBaseSurgeMultiplier();
     }
 
+    @Override
+    public double[] getSurges(int resolution, List<String> geofenceIds) {
+        List<String> keys = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            keys.add(keyspaces.primary().key(KeyType.SURGE, resolution, geofenceId));
+        }
+        List<String> values = keys.isEmpty() ? List.of() : readTemplate.opsForValue().multiGet(keys);
+        double[] surges = new double[geofenceIds.size()];
+        for (int i = 0; i < surges.length; i++) {
+            String value = values != null && i < values.size() ? values.get(i) : null;
+            surges[i] = value != null ? Double.parseDouble(value) : properties.getBaseSurgeMultiplier();
+        }
+        return surges;
+    }
+
+    /**
+     * Read from the primary: replica lag here would put healthy cells into degraded mode.
+     */
     @Override
     public long getLastUpdate(int resolution, String geofenceId) {
-        String key = String.format(LAST_UPDATE_KEY_PREFIX, resolution, geofenceId);
+        String key = keyspaces.primary().key(KeyType.LAST_UPDATE, resolution, geofenceId);
         String value = redisTemplate.opsForValue().get(key);
         return value != null ? Long.parseLong(value) : 0;
     }
 
+    @Override
+    public long[] getLastUpdates(int resolution, List<String> geofenceIds) {
+        List<String> keys = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            keys.add(keyspaces.primary().key(KeyType.LAST_UPDATE, resolution, geofenceId));
+        }
+        List<String> values = keys.isEmpty() ? List.of() : redisTemplate.opsForValue().multiGet(keys);
+        long[] lastUpdates = new long[geofenceIds.size()];
+        for (int i = 0; i < lastUpdates.length; i++) {
+            String value = values != null && i < values.size() ? values.get(i) : null;
+            lastUpdates[i] = value != null ? Long.parseLong(value) : 0;
+        }
+        return lastUpdates;
+    }
+
+    /**
+     * SETRANGE into a {@link SurgeHistoryCodec} ring per cell. The key expires
+     * one lap after its last write, so cells that go quiet leave no keys behind.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void appendSurgeHistory(List<SurgeSampleDTO> samples) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        int slots = properties.getSurgeHistorySlots();
+        long slotSeconds = properties.getSurgeHistorySlotSeconds();
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getKeySerializer();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (SurgeSampleDTO sample : samples) {
+                byte[] record = SurgeHistoryCodec.encode(sample);
+                int offset = SurgeHistoryCodec.slotOffset(sample.getTimestamp(), slotSeconds, slots);
+                for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+                    byte[] key = keySerializer.serialize(keyspace.key(KeyType.SURGE_HISTORY,
+                            sample.getResolution(), sample.getGeofenceId()));
+                    connection.stringCommands().setRange(key, record, offset);
+                    connection.keyCommands().expire(key, slots * slotSeconds);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) readTemplate.getKeySerializer();
+        byte[] key = keySerializer.serialize(keyspaces.primary().key(KeyType.SURGE_HISTORY, resolution, geofenceId));
+        byte[] ring = readTemplate.execute((RedisCallback<byte[]>) connection -> connection.stringCommands().get(key));
+        return SurgeHistoryCodec.decode(ring, resolution, geofenceId, from, to);
+    }
+
     @Override
     public Set<String> getActiveGeofences() {
-        Set<String> keys = redisTemplate.keys("geofence:*:*:drivers");
-        return keys != null ? keys : Set.of();
+        return supplyStore.getActiveGeofences();
+    }
+
+    @Override
+    public void saveQuote(String quoteId, String quoteJson, long ttlSeconds) {
+        redisTemplate.opsForValue().set(QUOTE_KEY_PREFIX + quoteId, quoteJson, Duration.ofSeconds(ttlSeconds));
+    }
+
+    @Override
+    public String takeQuote(String quoteId) {
+        return redisTemplate.opsForValue().getAndDelete(QUOTE_KEY_PREFIX + quoteId);
+    }
+
+    @Override
+    public boolean deleteQuote(String quoteId) {
+        return Boolean.TRUE.equals(redisTemplate.delete(QUOTE_KEY_PREFIX + quoteId));
+    }
+
+    private void updateLastSeen(int resolution, String geofenceId, long timestamp) {
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            redisTemplate.execute(SET_IF_NEWER, List.of(keyspace.key(KeyType.LAST_UPDATE, resolution, geofenceId)),
+                    String.valueOf(timestamp));
+        }
+    }
+
+    private void set(KeyType type, int resolution, String geofenceId, String value) {
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            redisTemplate.opsForValue().set(keyspace.key(type, resolution, geofenceId), value);
+        }
     }
 
-    private void updateLastSeen(int resolution, String geofenceId) {
-        String key = String.format(LAST_UPDATE_KEY_PREFIX, resolution, geofenceId);
-        redisTemplate.opsForValue().set(key, String.valueOf(System.currentTimeMillis()));
+    private List<String> readKeys(KeyType type, int resolution, String geofenceId) {
+        GeofenceKeyspace keyspace = keyspaces.primary();
+        int stripes = stripingService.readStripes(resolution, geofenceId);
+        List<String> keys = new ArrayList<>(stripes + 1);
+        keys.add(keyspace.key(type, resolution, geofenceId));
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            keys.add(keyspace.key(type, resolution, geofenceId, stripe, null));
+        }
+        return keys;
     }
 
-    private void pruneOld(String key, long now) {
+    private void pruneOld(String key, String payloadKey, long now) {
         long cutoff = now - (properties.getDataFreshnessSeconds() * 1000L);
+        Set<String> stale = redisTemplate.opsForZSet().rangeByScore(key, 0, cutoff);
+        if (stale == null || stale.isEmpty()) {
+            return;
+        }
         redisTemplate.opsForZSet().removeRangeByScore(key, 0, cutoff);
+        // A rider who re-requested in between loses only the payload; readers skip members without one
+        redisTemplate.opsForHash().delete(payloadKey, stale.toArray());
     }
-}
\ No newline at end of file
+}
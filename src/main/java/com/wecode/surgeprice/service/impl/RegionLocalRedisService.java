@@ -0,0 +1,207 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.partitioning.RegionSupplyState;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.RedisService;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Answers driver supply for cells in regions this instance consumes from
+ * {@link RegionSupplyState}, exactly and without a Redis call. Everything
+ * else, and every write, goes to the delegate so other instances still see
+ * the full picture.
+ */
+public class RegionLocalRedisService implements RedisService {
+
+    private final RedisService delegate;
+    private final RegionSupplyState regionSupply;
+    private final GeofenceService geofenceService;
+    private final SurgePricingProperties properties;
+
+    public RegionLocalRedisService(RedisService delegate,
+                                   RegionSupplyState regionSupply,
+                                   GeofenceService geofenceService,
+                                   SurgePricingProperties properties) {
+        this.delegate = delegate;
+        this.regionSupply = regionSupply;
+        this.geofenceService = geofenceService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long timestamp) {
+        delegate.addDriver(resolution, geofenceId, driverId, timestamp);
+        recordLocally(resolution, geofenceId, driverId, timestamp);
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        delegate.addDrivers(resolution, geofenceIds, driverIds, timestamps, count);
+        for (int i = 0; i < count; i++) {
+            recordLocally(resolution, geofenceIds[i], driverIds[i], timestamps[i]);
+        }
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        delegate.removeDriver(resolution, geofenceId, driverId);
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId) {
+        long now = System.currentTimeMillis();
+        return regionSupply.serves(resolution, geofenceId, now)
+                ? regionSupply.getDriverCount(resolution, geofenceId, now)
+                : delegate.getDriverCount(resolution, geofenceId);
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds) {
+        long now = System.currentTimeMillis();
+        long[] counts = null;
+        for (int i = 0; i < geofenceIds.size(); i++) {
+            if (!regionSupply.serves(resolution, geofenceIds.get(i), now)) {
+                counts = delegate.getDriverCounts(resolution, geofenceIds);
+                break;
+            }
+        }
+        if (counts == null) {
+            counts = new long[geofenceIds.size()];
+        }
+        // Overlay the cells held here; the rest keep the delegate's counts
+        for (int i = 0; i < geofenceIds.size(); i++) {
+            if (regionSupply.serves(resolution, geofenceIds.get(i), now)) {
+                counts[i] = regionSupply.getDriverCount(resolution, geofenceIds.get(i), now);
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId) {
+        long now = System.currentTimeMillis();
+        return regionSupply.serves(resolution, geofenceId, now)
+                ? regionSupply.getDrivers(resolution, geofenceId, now)
+                : delegate.getDrivers(resolution, geofenceId);
+    }
+
+    @Override
+    public void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson) {
+        delegate.addRideRequest(resolution, geofenceId, riderId, requestJson);
+    }
+
+    @Override
+    public long getRideRequestCount(int resolution, String geofenceId) {
+        return delegate.getRideRequestCount(resolution, geofenceId);
+    }
+
+    @Override
+    public long[] getRideRequestCounts(int resolution, List<String> geofenceIds) {
+        return delegate.getRideRequestCounts(resolution, geofenceIds);
+    }
+
+    @Override
+    public long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        return delegate.getRideRequestCountsWith(resolution, geofenceIds, riderIds);
+    }
+
+    @Override
+    public boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        return delegate.hasRideRequests(resolution, geofenceIds, riderIds);
+    }
+
+    @Override
+    public List<String> getActiveRideRequests(int resolution, String geofenceId) {
+        return delegate.getActiveRideRequests(resolution, geofenceId);
+    }
+
+    @Override
+    public void incrementDemand(int resolution, String geofenceId) {
+        delegate.incrementDemand(resolution, geofenceId);
+    }
+
+    @Override
+    public long getDemandCount(int resolution, String geofenceId) {
+        return delegate.getDemandCount(resolution, geofenceId);
+    }
+
+    @Override
+    public void updateBaseline(int resolution, String geofenceId, double baseline) {
+        delegate.updateBaseline(resolution, geofenceId, baseline);
+    }
+
+    @Override
+    public double getBaseline(int resolution, String geofenceId) {
+        return delegate.getBaseline(resolution, geofenceId);
+    }
+
+    @Override
+    public void updateSurge(int resolution, String geofenceId, double surge) {
+        delegate.updateSurge(resolution, geofenceId, surge);
+    }
+
+    @Override
+    public double getSurge(int resolution, String geofenceId) {
+        return delegate.getSurge(resolution, geofenceId);
+    }
+
+    @Override
+    public double[] getSurges(int resolution, List<String> geofenceIds) {
+        return delegate.getSurges(resolution, geofenceIds);
+    }
+
+    @Override
+    public long getLastUpdate(int resolution, String geofenceId) {
+        return delegate.getLastUpdate(resolution, geofenceId);
+    }
+
+    @Override
+    public long[] getLastUpdates(int resolution, List<String> geofenceIds) {
+        return delegate.getLastUpdates(resolution, geofenceIds);
+    }
+
+    @Override
+    public void appendSurgeHistory(List<SurgeSampleDTO> samples) {
+        delegate.appendSurgeHistory(samples);
+    }
+
+    @Override
+    public List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to) {
+        return delegate.getSurgeHistory(resolution, geofenceId, from, to);
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        return delegate.getActiveGeofences();
+    }
+
+    @Override
+    public void saveQuote(String quoteId, String quoteJson, long ttlSeconds) {
+        delegate.saveQuote(quoteId, quoteJson, ttlSeconds);
+    }
+
+    @Override
+    public String takeQuote(String quoteId) {
+        return delegate.takeQuote(quoteId);
+    }
+
+    @Override
+    public boolean deleteQuote(String quoteId) {
+        return delegate.deleteQuote(quoteId);
+    }
+
+    private void recordLocally(int resolution, String geofenceId, String driverId, long timestamp) {
+        regionSupply.record(resolution, geofenceId, driverId, timestamp);
+        if (geofenceService.getStorageResolution(properties.getMinH3Resolution()) == resolution) {
+            // Roll-up: coarser cells are not written, keep them locally as well
+            int coarsest = Math.max(properties.getMinH3Resolution(), properties.getPartitionH3Resolution());
+            for (int res = coarsest; res < resolution; res++) {
+                regionSupply.record(res, geofenceService.getParentGeofenceId(geofenceId, res), driverId, timestamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.service.RedisService;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import static com.wecode.surgeprice.service.impl.RedisResilience.ACTIVE_GEOFENCES;
+import static com.wecode.surgeprice.service.impl.RedisResilience.ACTIVE_REQUESTS;
+import static com.wecode.surgeprice.service.impl.RedisResilience.BASELINE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.DEMAND_COUNT;
+import static com.wecode.surgeprice.service.impl.RedisResilience.DEMAND_WRITE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.DRIVERS;
+import static com.wecode.surgeprice.service.impl.RedisResilience.DRIVER_COUNT;
+import static com.wecode.surgeprice.service.impl.RedisResilience.DRIVER_COUNTS;
+import static com.wecode.surgeprice.service.impl.RedisResilience.DRIVER_WRITE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.LAST_UPDATE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.LAST_UPDATES;
+import static com.wecode.surgeprice.service.impl.RedisResilience.QUOTE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.REQUEST_COUNT;
+import static com.wecode.surgeprice.service.impl.RedisResilience.REQUEST_COUNTS;
+import static com.wecode.surgeprice.service.impl.RedisResilience.REQUEST_WRITE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.SURGE;
+import static com.wecode.surgeprice.service.impl.RedisResilience.SURGES;
+import static com.wecode.surgeprice.service.impl.RedisResilience.SURGE_HISTORY;
+import static com.wecode.surgeprice.service.impl.RedisResilience.SURGE_WRITE;
+
+/**
+ * Puts every delegate call behind {@link RedisResilience}. Counts, surge and
+ * baseline fall back to the last known value per cell; batch counts do when
+ * every cell has one. A request count that includes a rider is read as the
+ * raw count plus the rider's presence, so it falls back the same way with the
+ * rider counted as new. Writes and non-idempotent quote calls are never hedged,
+ * only cut off by the breaker.
+ */
+public class ResilientRedisService implements RedisService {
+
+    private final RedisService delegate;
+    private final RedisResilience resilience;
+
+    public ResilientRedisService(RedisService delegate, RedisResilience resilience) {
+        this.delegate = delegate;
+        this.resilience = resilience;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long timestamp) {
+        resilience.call(DRIVER_WRITE, false, () -> {
+            delegate.addDriver(resolution, geofenceId, driverId, timestamp);
+            return null;
+        });
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        resilience.call(DRIVER_WRITE, false, () -> {
+            delegate.addDrivers(resolution, geofenceIds, driverIds, timestamps, count);
+            return null;
+        });
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        resilience.call(DRIVER_WRITE, false, () -> {
+            delegate.removeDriver(resolution, geofenceId, driverId);
+            return null;
+        });
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId) {
+        return resilience.read(DRIVER_COUNT, resolution, geofenceId,
+                () -> delegate.getDriverCount(resolution, geofenceId));
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds) {
+        return counts(DRIVER_COUNTS, DRIVER_COUNT, resolution, geofenceIds,
+                () -> delegate.getDriverCounts(resolution, geofenceIds));
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId) {
+        return resilience.call(DRIVERS, true, () -> delegate.getDrivers(resolution, geofenceId));
+    }
+
+    @Override
+    public void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson) {
+        resilience.call(REQUEST_WRITE, false, () -> {
+            delegate.addRideRequest(resolution, geofenceId, riderId, requestJson);
+            return null;
+        });
+    }
+
+    @Override
+    public long getRideRequestCount(int resolution, String geofenceId) {
+        return resilience.read(REQUEST_COUNT, resolution, geofenceId,
+                () -> delegate.getRideRequestCount(resolution, geofenceId));
+    }
+
+    @Override
+    public long[] getRideRequestCounts(int resolution, List<String> geofenceIds) {
+        return counts(REQUEST_COUNTS, REQUEST_COUNT, resolution, geofenceIds,
+                () -> delegate.getRideRequestCounts(resolution, geofenceIds));
+    }
+
+    @Override
+    public long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        // Split so the raw counts feed, and can be answered from, the per-cell store like any other count
+        long[] counts = getRideRequestCounts(resolution, geofenceIds);
+        boolean[] present = hasRideRequests(resolution, geofenceIds, riderIds);
+        for (int i = 0; i < counts.length; i++) {
+            if (!present[i]) {
+                counts[i]++;
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        try {
+            return resilience.call(REQUEST_COUNTS, true,
+                    () -> delegate.hasRideRequests(resolution, geofenceIds, riderIds));
+        } catch (RuntimeException e) {
+            // Without Redis the rider cannot be looked up, so count them as new
+            return new boolean[geofenceIds.size()];
+        }
+    }
+
+    @Override
+    public List<String> getActiveRideRequests(int resolution, String geofenceId) {
+        return resilience.call(ACTIVE_REQUESTS, true, () -> delegate.getActiveRideRequests(resolution, geofenceId));
+    }
+
+    @Override
+    public void incrementDemand(int resolution, String geofenceId) {
+        resilience.call(DEMAND_WRITE, false, () -> {
+            delegate.incrementDemand(resolution, geofenceId);
+            return null;
+        });
+    }
+
+    @Override
+    public long getDemandCount(int resolution, String geofenceId) {
+        return resilience.read(DEMAND_COUNT, resolution, geofenceId,
+                () -> delegate.getDemandCount(resolution, geofenceId));
+    }
+
+    @Override
+    public void updateBaseline(int resolution, String geofenceId, double baseline) {
+        resilience.call(SURGE_WRITE, false, () -> {
+            delegate.updateBaseline(resolution, geofenceId, baseline);
+            return null;
+        });
+    }
+
+    @Override
+    public double getBaseline(int resolution, String geofenceId) {
+        return resilience.read(BASELINE, resolution, geofenceId,
+                () -> delegate.getBaseline(resolution, geofenceId));
+    }
+
+    @Override
+    public void updateSurge(int resolution, String geofenceId, double surge) {
+        resilience.call(SURGE_WRITE, false, () -> {
+            delegate.updateSurge(resolution, geofenceId, surge);
+            return null;
+        });
+    }
+
+    @Override
+    public double getSurge(int resolution, String geofenceId) {
+        return resilience.read(SURGE, resolution, geofenceId,
+                () -> delegate.getSurge(resolution, geofenceId));
+    }
+
+    @Override
+    public double[] getSurges(int resolution, List<String> geofenceIds) {
+        try {
+            double[] surges = resilience.call(SURGES, true, () -> delegate.getSurges(resolution, geofenceIds));
+            for (int i = 0; i < surges.length; i++) {
+                resilience.remember(SURGE, resolution, geofenceIds.get(i), surges[i]);
+            }
+            return surges;
+        } catch (RuntimeException e) {
+            double[] surges = new double[geofenceIds.size()];
+            for (int i = 0; i < surges.length; i++) {
+                Double known = resilience.recall(SURGE, resolution, geofenceIds.get(i));
+                if (known == null) {
+                    throw e;
+                }
+                surges[i] = known;
+            }
+            return surges;
+        }
+    }
+
+    @Override
+    public long getLastUpdate(int resolution, String geofenceId) {
+        // No fallback: an old last-update time is what tells the worker a cell is degraded
+        return resilience.call(LAST_UPDATE, true, () -> delegate.getLastUpdate(resolution, geofenceId));
+    }
+
+    @Override
+    public long[] getLastUpdates(int resolution, List<String> geofenceIds) {
+        return resilience.call(LAST_UPDATES, true, () -> delegate.getLastUpdates(resolution, geofenceIds));
+    }
+
+    @Override
+    public void appendSurgeHistory(List<SurgeSampleDTO> samples) {
+        resilience.call(SURGE_WRITE, false, () -> {
+            delegate.appendSurgeHistory(samples);
+            return null;
+        });
+    }
+
+    @Override
+    public List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to) {
+        return resilience.call(SURGE_HISTORY, true, () -> delegate.getSurgeHistory(resolution, geofenceId, from, to));
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        return resilience.call(ACTIVE_GEOFENCES, false, delegate::getActiveGeofences);
+    }
+
+    @Override
+    public void saveQuote(String quoteId, String quoteJson, long ttlSeconds) {
+        resilience.call(QUOTE, false, () -> {
+            delegate.saveQuote(quoteId, quoteJson, ttlSeconds);
+            return null;
+        });
+    }
+
+    @Override
+    public String takeQuote(String quoteId) {
+        return resilience.call(QUOTE, false, () -> delegate.takeQuote(quoteId));
+    }
+
+    @Override
+    public boolean deleteQuote(String quoteId) {
+        return resilience.call(QUOTE, false, () -> delegate.deleteQuote(quoteId));
+    }
+
+    // Batch read that also feeds, and can be answered from, the per-cell store of cellOp
+    private long[] counts(String op, String cellOp, int resolution, List<String> geofenceIds, Supplier<long[]> call) {
+        try {
+            long[] counts = resilience.call(op, true, call);
+            for (int i = 0; i < counts.length; i++) {
+                resilience.remember(cellOp, resolution, geofenceIds.get(i), counts[i]);
+            }
+            return counts;
+        } catch (RuntimeException e) {
+            long[] counts = new long[geofenceIds.size()];
+            for (int i = 0; i < counts.length; i++) {
+                Long known = resilience.recall(cellOp, resolution, geofenceIds.get(i));
+                if (known == null) {
+                    throw e;
+                }
+                counts[i] = known;
+            }
+            return counts;
+        }
+    }
+}
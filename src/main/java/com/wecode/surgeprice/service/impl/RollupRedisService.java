@@ -0,0 +1,274 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.service.CellRollupService;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.ZoneIndex;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Serves coarser resolutions from {@link CellRollupService} so that supply and
+ * demand are only stored at {@code maxH3Resolution}. Writes at the finest
+ * resolution are passed through and register the cell with the roll-up. A
+ * driver who moves to another fine cell is removed from the one they left,
+ * since the roll-up sums fine cells and would otherwise count them in both.
+ */
+public class RollupRedisService implements RedisService {
+
+    private final RedisService delegate;
+    private final CellRollupService rollupService;
+    private final SurgePricingProperties properties;
+
+    public RollupRedisService(RedisService delegate,
+                              CellRollupService rollupService,
+                              SurgePricingProperties properties) {
+        this.delegate = delegate;
+        this.rollupService = rollupService;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long timestamp) {
+        delegate.addDriver(resolution, geofenceId, driverId, timestamp);
+        if (isFineCell(resolution)) {
+            rollupService.markActive(geofenceId);
+            leavePreviousCell(resolution, geofenceId, driverId, timestamp);
+        }
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        delegate.addDrivers(resolution, geofenceIds, driverIds, timestamps, count);
+        if (isFineCell(resolution)) {
+            for (int i = 0; i < count; i++) {
+                rollupService.markActive(geofenceIds[i]);
+                leavePreviousCell(resolution, geofenceIds[i], driverIds[i], timestamps[i]);
+            }
+        }
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        delegate.removeDriver(resolution, geofenceId, driverId);
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId) {
+        return isFinest(resolution)
+                ? delegate.getDriverCount(resolution, geofenceId)
+                : rollupService.getDriverCount(resolution, geofenceId);
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds) {
+        if (isFinest(resolution)) {
+            return delegate.getDriverCounts(resolution, geofenceIds);
+        }
+        long[] counts = new long[geofenceIds.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = rollupService.getDriverCount(resolution, geofenceIds.get(i));
+        }
+        return counts;
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId) {
+        if (isFinest(resolution)) {
+            return delegate.getDrivers(resolution, geofenceId);
+        }
+        Set<String> drivers = new HashSet<>();
+        for (String child : rollupService.getChildren(resolution, geofenceId)) {
+            drivers.addAll(delegate.getDrivers(properties.getMaxH3Resolution(), child));
+        }
+        return drivers;
+    }
+
+    @Override
+    public void addRideRequest(int resolution, String geofenceId, String riderId, String requestJson) {
+        delegate.addRideRequest(resolution, geofenceId, riderId, requestJson);
+        if (isFineCell(resolution)) {
+            rollupService.markActive(geofenceId);
+        }
+    }
+
+    @Override
+    public long getRideRequestCount(int resolution, String geofenceId) {
+        return isFinest(resolution)
+                ? delegate.getRideRequestCount(resolution, geofenceId)
+                : rollupService.getRideRequestCount(resolution, geofenceId);
+    }
+
+    @Override
+    public long[] getRideRequestCounts(int resolution, List<String> geofenceIds) {
+        if (isFinest(resolution)) {
+            return delegate.getRideRequestCounts(resolution, geofenceIds);
+        }
+        long[] counts = new long[geofenceIds.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = rollupService.getRideRequestCount(resolution, geofenceIds.get(i));
+        }
+        return counts;
+    }
+
+    @Override
+    public long[] getRideRequestCountsWith(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        if (isFinest(resolution)) {
+            return delegate.getRideRequestCountsWith(resolution, geofenceIds, riderIds);
+        }
+        boolean[] present = hasRideRequests(resolution, geofenceIds, riderIds);
+        long[] counts = new long[geofenceIds.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = rollupService.getRideRequestCount(resolution, geofenceIds.get(i)) + (present[i] ? 0 : 1);
+        }
+        return counts;
+    }
+
+    @Override
+    public boolean[] hasRideRequests(int resolution, List<String> geofenceIds, List<String> riderIds) {
+        if (isFinest(resolution)) {
+            return delegate.hasRideRequests(resolution, geofenceIds, riderIds);
+        }
+        // Requests are stored in the fine cells only; look the rider up in every active child at once
+        List<String> children = new ArrayList<>();
+        List<String> childRiders = new ArrayList<>();
+        int[] firstChild = new int[geofenceIds.size() + 1];
+        for (int i = 0; i < geofenceIds.size(); i++) {
+            firstChild[i] = children.size();
+            for (String child : rollupService.getChildren(resolution, geofenceIds.get(i))) {
+                children.add(child);
+                childRiders.add(riderIds.get(i));
+            }
+        }
+        firstChild[geofenceIds.size()] = children.size();
+        boolean[] inChild = children.isEmpty()
+                ? new boolean[0]
+                : delegate.hasRideRequests(properties.getMaxH3Resolution(), children, childRiders);
+        boolean[] present = new boolean[geofenceIds.size()];
+        for (int i = 0; i < present.length; i++) {
+            for (int c = firstChild[i]; c < firstChild[i + 1] && !present[i]; c++) {
+                present[i] = inChild[c];
+            }
+        }
+        return present;
+    }
+
+    @Override
+    public List<String> getActiveRideRequests(int resolution, String geofenceId) {
+        if (isFinest(resolution)) {
+            return delegate.getActiveRideRequests(resolution, geofenceId);
+        }
+        List<String> requests = new ArrayList<>();
+        for (String child : rollupService.getChildren(resolution, geofenceId)) {
+            requests.addAll(delegate.getActiveRideRequests(properties.getMaxH3Resolution(), child));
+        }
+        return requests;
+    }
+
+    @Override
+    public void incrementDemand(int resolution, String geofenceId) {
+        delegate.incrementDemand(resolution, geofenceId);
+    }
+
+    @Override
+    public long getDemandCount(int resolution, String geofenceId) {
+        return delegate.getDemandCount(resolution, geofenceId);
+    }
+
+    @Override
+    public void updateBaseline(int resolution, String geofenceId, double baseline) {
+        delegate.updateBaseline(resolution, geofenceId, baseline);
+    }
+
+    @Override
+    public double getBaseline(int resolution, String geofenceId) {
+        return delegate.getBaseline(resolution, geofenceId);
+    }
+
+    @Override
+    public void updateSurge(int resolution, String geofenceId, double surge) {
+        delegate.updateSurge(resolution, geofenceId, surge);
+    }
+
+    @Override
+    public double getSurge(int resolution, String geofenceId) {
+        return delegate.getSurge(resolution, geofenceId);
+    }
+
+    @Override
+    public double[] getSurges(int resolution, List<String> geofenceIds) {
+        return delegate.getSurges(resolution, geofenceIds);
+    }
+
+    @Override
+    public long getLastUpdate(int resolution, String geofenceId) {
+        return isFinest(resolution)
+                ? delegate.getLastUpdate(resolution, geofenceId)
+                : rollupService.getLastUpdate(resolution, geofenceId);
+    }
+
+    @Override
+    public long[] getLastUpdates(int resolution, List<String> geofenceIds) {
+        if (isFinest(resolution)) {
+            return delegate.getLastUpdates(resolution, geofenceIds);
+        }
+        long[] lastUpdates = new long[geofenceIds.size()];
+        for (int i = 0; i < lastUpdates.length; i++) {
+            lastUpdates[i] = rollupService.getLastUpdate(resolution, geofenceIds.get(i));
+        }
+        return lastUpdates;
+    }
+
+    @Override
+    public void appendSurgeHistory(List<SurgeSampleDTO> samples) {
+        delegate.appendSurgeHistory(samples);
+    }
+
+    @Override
+    public List<SurgeSampleDTO> getSurgeHistory(int resolution, String geofenceId, long from, long to) {
+        return delegate.getSurgeHistory(resolution, geofenceId, from, to);
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        Set<String> geofences = new HashSet<>(delegate.getActiveGeofences());
+        geofences.addAll(rollupService.getActiveParents());
+        return geofences;
+    }
+
+    @Override
+    public void saveQuote(String quoteId, String quoteJson, long ttlSeconds) {
+        delegate.saveQuote(quoteId, quoteJson, ttlSeconds);
+    }
+
+    @Override
+    public String takeQuote(String quoteId) {
+        return delegate.takeQuote(quoteId);
+    }
+
+    @Override
+    public boolean deleteQuote(String quoteId) {
+        return delegate.deleteQuote(quoteId);
+    }
+
+    // Added to the new cell first, so a concurrent refresh sees the driver twice rather than not at all
+    private void leavePreviousCell(int resolution, String geofenceId, String driverId, long timestamp) {
+        String previous = rollupService.moveDriver(driverId, geofenceId, timestamp);
+        if (previous != null) {
+            delegate.removeDriver(resolution, previous, driverId);
+        }
+    }
+
+    private boolean isFinest(int resolution) {
+        return resolution >= properties.getMaxH3Resolution();
+    }
+
+    // Zones are stored past the finest resolution but have no parents to roll up into
+    private boolean isFineCell(int resolution) {
+        return isFinest(resolution) && resolution != ZoneIndex.ZONE_RESOLUTION;
+    }
+}
@@ -0,0 +1,70 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Fixed-size ring of quantized surge samples, one per cell, stored as a
+ * packed byte string. A sample goes to slot {@code (epochSeconds / slotSeconds) % slots},
+ * so writers need no read-modify-write and no head pointer; readers tell live
+ * slots from stale or empty ones by the timestamp each record carries.
+ *
+ * Record, big-endian, {@value #RECORD_BYTES} bytes: epoch seconds (u32),
+ * surge x1000 (u16), drivers (u16), demand (u16), baseline x10 (u16).
+ */
+final class SurgeHistoryCodec {
+
+    static final int RECORD_BYTES = 12;
+
+    private static final int MAX_U16 = 0xFFFF;
+
+    private SurgeHistoryCodec() {
+    }
+
+    static int slotOffset(long timestampMillis, long slotSeconds, int slots) {
+        long slot = (timestampMillis / 1000 / slotSeconds) % slots;
+        return (int) slot * RECORD_BYTES;
+    }
+
+    static byte[] encode(SurgeSampleDTO sample) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES);
+        buffer.putInt((int) (sample.getTimestamp() / 1000));
+        buffer.putShort(u16(Math.round(sample.getSurge() * 1000)));
+        buffer.putShort(u16(sample.getDrivers()));
+        buffer.putShort(u16(sample.getDemand()));
+        buffer.putShort(u16(Math.round(sample.getBaseline() * 10)));
+        return buffer.array();
+    }
+
+    /**
+     * Samples in {@code [from, to]} (epoch millis), oldest first.
+     */
+    static List<SurgeSampleDTO> decode(byte[] ring, int resolution, String geofenceId, long from, long to) {
+        List<SurgeSampleDTO> samples = new ArrayList<>();
+        if (ring == null) {
+            return samples;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(ring);
+        for (int offset = 0; offset + RECORD_BYTES <= ring.length; offset += RECORD_BYTES) {
+            long timestamp = Integer.toUnsignedLong(buffer.getInt(offset)) * 1000;
+            if (timestamp == 0 || timestamp < from || timestamp > to) {
+                continue;
+            }
+            samples.add(new SurgeSampleDTO(geofenceId, resolution, timestamp,
+                    Short.toUnsignedInt(buffer.getShort(offset + 4)) / 1000.0,
+                    Short.toUnsignedInt(buffer.getShort(offset + 6)),
+                    Short.toUnsignedInt(buffer.getShort(offset + 8)),
+                    Short.toUnsignedInt(buffer.getShort(offset + 10)) / 10.0));
+        }
+        samples.sort(Comparator.comparingLong(SurgeSampleDTO::getTimestamp));
+        return samples;
+    }
+
+    private static short u16(long value) {
+        return (short) Math.max(0, Math.min(MAX_U16, value));
+    }
+}
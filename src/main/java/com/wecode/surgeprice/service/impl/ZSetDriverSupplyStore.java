@@ -0,0 +1,156 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.CellStripingService;
+import com.wecode.surgeprice.service.DriverSupplyStore;
+import com.wecode.surgeprice.service.impl.GeofenceKeyspace.KeyType;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exact supply store: one ZSET per geofence, member = driverId, score = last ping time.
+ */
+@Service
+@ConditionalOnProperty(prefix = "surge", name = "supply-store", havingValue = "zset", matchIfMissing = true)
+public class ZSetDriverSupplyStore implements DriverSupplyStore {
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final RedisTemplate<String, String> readTemplate;
+    private final CellStripingService stripingService;
+    private final GeofenceKeyspaces keyspaces;
+    private final SurgePricingProperties properties;
+
+    public ZSetDriverSupplyStore(RedisTemplate<String, String> redisTemplate,
+                                 @Qualifier("redisReadTemplate") RedisTemplate<String, String> readTemplate,
+                                 CellStripingService stripingService,
+                                 GeofenceKeyspaces keyspaces,
+                                 SurgePricingProperties properties) {
+        this.redisTemplate = redisTemplate;
+        this.readTemplate = readTemplate;
+        this.stripingService = stripingService;
+        this.keyspaces = keyspaces;
+        this.properties = properties;
+    }
+
+    @Override
+    public void addDriver(int resolution, String geofenceId, String driverId, long now) {
+        int stripe = stripingService.writeStripe(resolution, geofenceId, driverId);
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            String key = keyspace.key(KeyType.DRIVERS, resolution, geofenceId, stripe, null);
+            redisTemplate.opsForZSet().add(key, driverId, now);
+            redisTemplate.opsForZSet().removeRangeByScore(key, 0, now - properties.getDataFreshnessSeconds() * 1000L);
+            redisTemplate.expire(key, Duration.ofSeconds(properties.getDataFreshnessSeconds()));
+        }
+    }
+
+    @Override
+    public void addDrivers(int resolution, String[] geofenceIds, String[] driverIds, long[] timestamps, int count) {
+        Duration ttl = Duration.ofSeconds(properties.getDataFreshnessSeconds());
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                Set<String> written = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+                        String key = keyspace.key(KeyType.DRIVERS, resolution, geofenceIds[i]);
+                        ops.opsForZSet().add(key, driverIds[i], timestamps[i]);
+                        written.add(key);
+                    }
+                }
+                for (String key : written) {
+                    ops.expire(key, ttl);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void removeDriver(int resolution, String geofenceId, String driverId) {
+        // The driver may have been written before or after the cell turned hot, so try the base key and each stripe
+        int stripes = stripingService.readStripes(resolution, geofenceId);
+        List<String> keys = new ArrayList<>();
+        for (GeofenceKeyspace keyspace : keyspaces.writes()) {
+            keys.add(keyspace.key(KeyType.DRIVERS, resolution, geofenceId));
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                keys.add(keyspace.key(KeyType.DRIVERS, resolution, geofenceId, stripe, null));
+            }
+        }
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String key : keys) {
+                    ops.opsForZSet().remove(key, driverId);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public long getDriverCount(int resolution, String geofenceId, long now) {
+        return PipelinedReads.count(readTemplate, readKeys(resolution, geofenceId),
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
+    }
+
+    @Override
+    public long[] getDriverCounts(int resolution, List<String> geofenceIds, long now) {
+        List<List<String>> keysPerCell = new ArrayList<>(geofenceIds.size());
+        for (String geofenceId : geofenceIds) {
+            keysPerCell.add(readKeys(resolution, geofenceId));
+        }
+        return PipelinedReads.countEach(readTemplate, keysPerCell,
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
+    }
+
+    @Override
+    public Set<String> getDrivers(int resolution, String geofenceId, long now) {
+        return PipelinedReads.rangeByScore(readTemplate, readKeys(resolution, geofenceId),
+                now - properties.getDataFreshnessSeconds() * 1000L, now);
+    }
+
+    @Override
+    public Set<String> getActiveGeofences() {
+        GeofenceKeyspace keyspace = keyspaces.primary();
+        Set<String> geofences = new HashSet<>();
+        for (String pattern : keyspace.patterns(KeyType.DRIVERS)) {
+            Set<String> keys = redisTemplate.keys(pattern);
+            if (keys == null) {
+                continue;
+            }
+            // Collapse stripe sub-keys onto their geofence
+            for (String key : keys) {
+                String canonical = keyspace.canonicalDriversKey(key);
+                if (canonical != null) {
+                    geofences.add(canonical);
+                }
+            }
+        }
+        return geofences;
+    }
+
+    private List<String> readKeys(int resolution, String geofenceId) {
+        GeofenceKeyspace keyspace = keyspaces.primary();
+        int stripes = stripingService.readStripes(resolution, geofenceId);
+        List<String> keys = new ArrayList<>(stripes + 1);
+        keys.add(keyspace.key(KeyType.DRIVERS, resolution, geofenceId));
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            keys.add(keyspace.key(KeyType.DRIVERS, resolution, geofenceId, stripe, null));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,129 @@
+package com.wecode.surgeprice.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.DriverLocationDTO;
+import com.wecode.surgeprice.dto.RideQuoteDTO;
+import com.wecode.surgeprice.dto.RideRequestDTO;
+import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.PricingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Runs the CPU-bound request paths (H3 lookups, distance and price math, DTO
+ * JSON) for {@code jit-warmup-iterations} before the app reports ready, so
+ * the first real requests hit compiled code. Touches neither Redis nor Kafka,
+ * and records nothing.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class JitWarmup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(JitWarmup.class);
+    private static final int BATCH = 64;
+
+    private final GeofenceService geofenceService;
+    private final PricingService pricingService;
+    private final ObjectMapper objectMapper;
+    private final SurgePricingProperties properties;
+
+    public JitWarmup(GeofenceService geofenceService,
+                     PricingService pricingService,
+                     ObjectMapper objectMapper,
+                     SurgePricingProperties properties) {
+        this.geofenceService = geofenceService;
+        this.pricingService = pricingService;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!properties.isJitWarmupEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long deadline = start + properties.getJitWarmupMaxSeconds() * 1000L;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double[] lat1 = new double[BATCH];
+        double[] lng1 = new double[BATCH];
+        double[] lat2 = new double[BATCH];
+        double[] lng2 = new double[BATCH];
+        double[] distances = new double[BATCH];
+        long checksum = 0; // consumed below so the work is not optimized away
+        int iterations = 0;
+
+        try {
+            for (; iterations < properties.getJitWarmupIterations(); iterations++) {
+                if ((iterations & 1023) == 0 && System.currentTimeMillis() >= deadline) {
+                    break;
+                }
+                double pickupLat = random.nextDouble(-60, 60);
+                double pickupLng = random.nextDouble(-180, 180);
+                double dropLat = pickupLat + random.nextDouble(-0.3, 0.3);
+                double dropLng = pickupLng + random.nextDouble(-0.3, 0.3);
+
+                double distanceKm = pricingService.calculateDistanceKm(pickupLat, pickupLng, dropLat, dropLng);
+                int resolution = pricingService.selectResolution(distanceKm);
+                String geofenceId = geofenceService.getGeofenceId(pickupLat, pickupLng, resolution);
+                String parentId = geofenceService.getParentGeofenceId(geofenceId,
+                        Math.max(0, properties.getMinH3Resolution()));
+                String zoneId = geofenceService.getZoneId(pickupLat, pickupLng);
+                double surge = pricingService.calculateSurge(random.nextLong(50), random.nextLong(50));
+                double basePrice = pricingService.calculateBasePrice(distanceKm);
+
+                int slot = iterations % BATCH;
+                lat1[slot] = pickupLat;
+                lng1[slot] = pickupLng;
+                lat2[slot] = dropLat;
+                lng2[slot] = dropLng;
+                if (slot == BATCH - 1) {
+                    pricingService.calculateDistancesKm(lat1, lng1, lat2, lng2, distances, BATCH);
+                }
+
+                checksum += exerciseJson(pickupLat, pickupLng, dropLat, dropLng, basePrice, surge, geofenceId)
+                        + parentId.length() + (zoneId != null ? 1 : 0);
+            }
+            logger.info("JIT warmup: {} iterations in {}ms (checksum {})",
+                    iterations, System.currentTimeMillis() - start, checksum);
+        } catch (Exception e) {
+            logger.warn("JIT warmup stopped after {} iterations", iterations, e);
+        }
+    }
+
+    private int exerciseJson(double pickupLat, double pickupLng, double dropLat, double dropLng,
+                             double basePrice, double surge, String geofenceId) throws Exception {
+        RideRequestDTO request = new RideRequestDTO();
+        request.setRiderId("warmup");
+        request.setPickupLat(pickupLat);
+        request.setPickupLng(pickupLng);
+        request.setDropLat(dropLat);
+        request.setDropLng(dropLng);
+        RideRequestDTO parsedRequest = objectMapper.readValue(
+                objectMapper.writeValueAsBytes(request), RideRequestDTO.class);
+
+        DriverLocationDTO location = objectMapper.readValue(
+                objectMapper.writeValueAsString(new DriverLocationDTO("warmup", pickupLat, pickupLng)),
+                DriverLocationDTO.class);
+
+        RideRequestRecordDTO record = new RideRequestRecordDTO();
+        record.setRiderId(parsedRequest.getRiderId());
+        record.setPickupLat(location.getLat());
+        record.setPickupLng(location.getLng());
+        record.setBasePrice(basePrice);
+        record.setSurgeMultiplier(surge);
+        record.setFinalPrice(basePrice * surge);
+        record.setGeofenceId(geofenceId);
+        byte[] quote = objectMapper.writeValueAsBytes(new RideQuoteDTO(record, 0, 0));
+        return objectMapper.readValue(quote, RideQuoteDTO.class).getRequest().getGeofenceId().length();
+    }
+}
@@ -2,17 +2,30 @@ package com.wecode.surgeprice.worker;
 
 
 import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import com.wecode.surgeprice.jfr.SurgeCycleEvent;
+import com.wecode.surgeprice.service.CellIndex;
 import com.wecode.surgeprice.service.RedisService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Recomputes surge for every active cell. Baseline and previous surge of cells
+ * inside the service area live in flat arrays indexed by {@link CellIndex}
+ * ordinal (NaN = none yet); cells outside it fall back to string-keyed maps.
+ */
 @Service
 public class SurgePricingWorker {
 
@@ -20,13 +33,27 @@ public class SurgePricingWorker {
 
     private final RedisService redisService;
     private final SurgePricingProperties properties;
+    private final CellIndex cellIndex;
+    private final double[] baselines;
+    private final double[] previousSurges;
     private final Map<String, Double> baselineHistory = new ConcurrentHashMap<>();
     private final Map<String, Double> previousSurge = new ConcurrentHashMap<>();
-    private final Instant startTime = Instant.now();
+    private final Clock clock;
+    private final Instant startTime;
+    private int degradedCells; // in the current cycle
+    private final AtomicLong cycle = new AtomicLong(0); // completed surge passes
 
-    public SurgePricingWorker(RedisService redisService, SurgePricingProperties properties) {
+    public SurgePricingWorker(RedisService redisService, SurgePricingProperties properties,
+                              CellIndex cellIndex, Clock clock) {
         this.redisService = redisService;
         this.properties = properties;
+        this.cellIndex = cellIndex;
+        this.baselines = new double[cellIndex.size()];
+        this.previousSurges = new double[cellIndex.size()];
+        Arrays.fill(baselines, Double.NaN);
+        Arrays.fill(previousSurges, Double.NaN);
+        this.clock = clock;
+        this.startTime = clock.instant();
     }
 
     @Scheduled(fixedDelayString = "15000", initialDelay = 5000) // Run every 15 seconds
@@ -34,15 +61,20 @@ public class SurgePricingWorker {
         long start = System.currentTimeMillis();
 
         // Check if system is warmed up
-        long uptimeSeconds = Instant.now().getEpochSecond() - startTime.getEpochSecond();
+        long uptimeSeconds = clock.instant().getEpochSecond() - startTime.getEpochSecond();
         if (uptimeSeconds < properties.getWarmupSeconds()) {
             logger.info("System warming up... {}s elapsed", uptimeSeconds);
             return;
         }
 
+        SurgeCycleEvent event = new SurgeCycleEvent();
+        event.begin();
+        degradedCells = 0;
+        int processed = 0;
         try {
             Set<String> geofences = redisService.getActiveGeofences();
-            int processed = 0;
+            long cycleTime = clock.millis();
+            List<SurgeSampleDTO> samples = new ArrayList<>(geofences.size());
 
             for (String key : geofences) {
                 ParsedGeofence parsed = parseGeofenceKey(key);
@@ -53,13 +85,15 @@ public class SurgePricingWorker {
                 long currentDrivers = redisService.getDriverCount(parsed.resolution, parsed.geofenceId);
                 long demand = redisService.getDemandCount(parsed.resolution, parsed.geofenceId);
 
-                String cacheKey = cacheKey(parsed.resolution, parsed.geofenceId);
+                int ordinal = cellIndex.ordinal(parsed.geofenceId);
+                String cacheKey = ordinal >= 0 ? null : cacheKey(parsed.resolution, parsed.geofenceId);
 
                 // Update baseline (rolling average)
-                double baseline = updateBaseline(cacheKey, currentDrivers);
+                double baseline = updateBaseline(ordinal, cacheKey, currentDrivers);
 
                 // Calculate surge
                 double surge = calculateSurgeMultiplier(
+                        ordinal,
                         cacheKey,
                         parsed.resolution,
                         parsed.geofenceId,
@@ -69,34 +103,62 @@ public class SurgePricingWorker {
                 );
 
                 // Apply smoothing to prevent oscillations
-                surge = applySurgeSmoothing(cacheKey, surge);
+                surge = applySurgeSmoothing(ordinal, cacheKey, surge);
 
                 // Store in Redis
                 redisService.updateSurge(parsed.resolution, parsed.geofenceId, surge);
                 redisService.updateBaseline(parsed.resolution, parsed.geofenceId, baseline);
 
-                previousSurge.put(cacheKey, surge);
+                setPreviousSurge(ordinal, cacheKey, surge);
+                samples.add(new SurgeSampleDTO(parsed.geofenceId, parsed.resolution, cycleTime,
+                        surge, currentDrivers, demand, baseline));
                 processed++;
             }
 
+            if (properties.isSurgeHistoryEnabled()) {
+                redisService.appendSurgeHistory(samples);
+            }
+
             long elapsed = System.currentTimeMillis() - start;
             logger.info("Surge calculation completed: {} geofences processed in {}ms", processed, elapsed);
 
         } catch (Exception e) {
+            event.failed = true;
             logger.error("Error during surge calculation", e);
         }
+        cycle.incrementAndGet();
+        event.cells = processed;
+        event.degradedCells = degradedCells;
+        event.commit();
+    }
+
+    /**
+     * Number of surge passes run so far; stored surges change only when it does.
+     */
+    public long getCycle() {
+        return cycle.get();
     }
 
-    private double updateBaseline(String cacheKey, long currentDrivers) {
+    private double updateBaseline(int ordinal, String cacheKey, long currentDrivers) {
         // Simple exponential moving average for baseline
         double alpha = 0.1; // Weight for new value
-        double currentBaseline = baselineHistory.getOrDefault(cacheKey, (double) currentDrivers);
+        double currentBaseline = ordinal >= 0
+                ? baselines[ordinal]
+                : baselineHistory.getOrDefault(cacheKey, Double.NaN);
+        if (Double.isNaN(currentBaseline)) {
+            currentBaseline = currentDrivers;
+        }
         double newBaseline = (alpha * currentDrivers) + ((1 - alpha) * currentBaseline);
-        baselineHistory.put(cacheKey, newBaseline);
+        if (ordinal >= 0) {
+            baselines[ordinal] = newBaseline;
+        } else {
+            baselineHistory.put(cacheKey, newBaseline);
+        }
         return newBaseline;
     }
 
-    private double calculateSurgeMultiplier(String cacheKey,
+    private double calculateSurgeMultiplier(int ordinal,
+                                            String cacheKey,
                                             int resolution,
                                             String geofenceId,
                                             long currentDrivers,
@@ -109,12 +171,14 @@ public class SurgePricingWorker {
 
         // Check for degraded mode (no recent updates)
         long lastUpdate = redisService.getLastUpdate(resolution, geofenceId);
-        long timeSinceUpdate = System.currentTimeMillis() - lastUpdate;
+        long timeSinceUpdate = clock.millis() - lastUpdate;
         if (timeSinceUpdate > 5000) { // 5 seconds threshold
             logger.warn("Degraded mode for geofence {}: {}ms since last update",
                     geofenceId, timeSinceUpdate);
+            degradedCells++;
             // Return last known surge or base
-            return previousSurge.getOrDefault(cacheKey, properties.getBaseSurgeMultiplier());
+            double last = previousSurge(ordinal, cacheKey);
+            return Double.isNaN(last) ? properties.getBaseSurgeMultiplier() : last;
         }
 
         // Calculate driver availability ratio
@@ -136,9 +200,9 @@ public class SurgePricingWorker {
         return properties.getBaseSurgeMultiplier();
     }
 
-    private double applySurgeSmoothing(String cacheKey, double newSurge) {
-        Double previousSurgeValue = previousSurge.get(cacheKey);
-        if (previousSurgeValue == null) {
+    private double applySurgeSmoothing(int ordinal, String cacheKey, double newSurge) {
+        double previousSurgeValue = previousSurge(ordinal, cacheKey);
+        if (Double.isNaN(previousSurgeValue)) {
             return newSurge;
         }
 
@@ -151,6 +215,18 @@ public class SurgePricingWorker {
         return newSurge;
     }
 
+    private double previousSurge(int ordinal, String cacheKey) {
+        return ordinal >= 0 ? previousSurges[ordinal] : previousSurge.getOrDefault(cacheKey, Double.NaN);
+    }
+
+    private void setPreviousSurge(int ordinal, String cacheKey, double surge) {
+        if (ordinal >= 0) {
+            previousSurges[ordinal] = surge;
+        } else {
+            previousSurge.put(cacheKey, surge);
+        }
+    }
+
     private ParsedGeofence parseGeofenceKey(String key) {
         // Expected key: geofence:<resolution>:<geofenceId>:drivers
         String[] parts = key.split(":");
@@ -0,0 +1,59 @@
+package com.wecode.surgeprice.admission;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamSlotsTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private StreamSlots slots;
+
+    @AfterEach
+    void shutDown() {
+        slots.destroy();
+    }
+
+    @Test
+    void stuckPushEndsItsOwnStreamWithoutHoldingUpTheOthers() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setStreamPushThreads(1);
+        properties.setStreamSendThreads(2);
+        properties.setStreamPushMillis(20);
+        properties.setStreamPushDeadlineMillis(1000);
+        slots = new StreamSlots(properties);
+        slots.bindTo(meters);
+
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        slots.open(false, emitter -> {
+            try {
+                stuck.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        });
+        AtomicInteger pushes = new AtomicInteger();
+        slots.open(false, emitter -> pushes.incrementAndGet());
+
+        // The healthy stream keeps its pace while the other one hangs
+        Thread.sleep(150);
+        assertThat(pushes.get()).isGreaterThanOrEqualTo(4);
+        assertThat(slots.getActive()).isEqualTo(2);
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(slots.getActive()).isEqualTo(1);
+        assertThat(meters.get("surge.stream.push.timeouts").functionCounter().count()).isEqualTo(1);
+        int before = pushes.get();
+        Thread.sleep(100);
+        assertThat(pushes.get()).isGreaterThan(before);
+    }
+}
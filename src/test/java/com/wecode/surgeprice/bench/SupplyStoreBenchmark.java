@@ -0,0 +1,86 @@
+package com.wecode.surgeprice.bench;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.DriverSupplyStore;
+import com.wecode.surgeprice.service.impl.CellStripingServiceImpl;
+import com.wecode.surgeprice.service.impl.GeofenceKeyspaces;
+import com.wecode.surgeprice.service.impl.HyperLogLogDriverSupplyStore;
+import com.wecode.surgeprice.service.impl.ZSetDriverSupplyStore;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Accuracy-versus-memory comparison of the exact (ZSET) and approximate (HLL)
+ * supply stores against a local Redis.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.wecode.surgeprice.bench.SupplyStoreBenchmark \
+ *     -Dexec.args="localhost 6379"
+ * </pre>
+ */
+public class SupplyStoreBenchmark {
+
+    private static final int[] CARDINALITIES = {10, 100, 1_000, 10_000, 50_000};
+    private static final int PINGS_PER_DRIVER = 3;
+    private static final int RESOLUTION = 7;
+
+    public static void main(String[] args) {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 6379;
+
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        factory.afterPropertiesSet();
+        RedisTemplate<String, String> template = new RedisTemplate<>();
+        template.setConnectionFactory(factory);
+        template.setKeySerializer(new StringRedisSerializer());
+        template.setValueSerializer(new StringRedisSerializer());
+        template.afterPropertiesSet();
+
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setHierarchicalRollup(false); // hll cannot back a roll-up
+        CellStripingServiceImpl striping = new CellStripingServiceImpl(template, properties);
+        GeofenceKeyspaces keyspaces = new GeofenceKeyspaces(properties);
+        DriverSupplyStore exact = new ZSetDriverSupplyStore(template, template, striping, keyspaces, properties);
+        DriverSupplyStore approximate = new HyperLogLogDriverSupplyStore(template, template, striping, keyspaces, properties);
+
+        System.out.printf("%-8s %-5s %10s %10s %8s %12s %12s%n",
+                "drivers", "store", "counted", "error%", "keys", "bytes", "writes/s");
+        for (int drivers : CARDINALITIES) {
+            run("zset", exact, template, drivers);
+            run("hll", approximate, template, drivers);
+        }
+        factory.destroy();
+    }
+
+    private static void run(String name, DriverSupplyStore store, RedisTemplate<String, String> template, int drivers) {
+        String geofenceId = "bench-" + name + "-" + drivers;
+        long now = System.currentTimeMillis();
+        long start = System.nanoTime();
+        for (int ping = 0; ping < PINGS_PER_DRIVER; ping++) {
+            for (int i = 0; i < drivers; i++) {
+                store.addDriver(RESOLUTION, geofenceId, "driver_" + i, now + ping);
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long counted = store.getDriverCount(RESOLUTION, geofenceId, now + PINGS_PER_DRIVER);
+
+        Set<String> keys = template.keys("geofence:" + RESOLUTION + ":" + geofenceId + ":*");
+        long bytes = 0;
+        for (String key : keys) {
+            Long usage = template.execute((RedisCallback<Long>) connection -> (Long) connection.execute(
+                    "MEMORY", "USAGE".getBytes(StandardCharsets.UTF_8), key.getBytes(StandardCharsets.UTF_8)));
+            bytes += usage != null ? usage : 0;
+        }
+        double error = 100.0 * (counted - drivers) / drivers;
+        System.out.printf("%-8d %-5s %10d %10.2f %8d %12d %12.0f%n",
+                drivers, name, counted, error, keys.size(), bytes, drivers * PINGS_PER_DRIVER / seconds);
+        template.delete(keys);
+    }
+}
@@ -0,0 +1,84 @@
+package com.wecode.surgeprice.bench;
+
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.ZoneIndex;
+import com.wecode.surgeprice.service.impl.PolygonZoneIndex;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Extra ingest cost of the zone lookup per driver location, next to the
+ * per-resolution cell lookup the consumer already does. Zones are an
+ * airport-sized polygon and a stadium; points are spread over the city
+ * around them, and over the zones' bounding box only.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.wecode.surgeprice.bench.ZoneIndexBenchmark \
+ *     -Dexec.args="5000000"
+ * </pre>
+ */
+public class ZoneIndexBenchmark {
+
+    private static final int ROUNDS = 5; // the first ones warm the JIT up
+    private static final double BUDGET_NANOS = 1000;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) throws IOException {
+        int points = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        H3Core h3 = H3Core.newInstance();
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.getZones().put("sfo-airport",
+                "37.6325,-122.3960;37.6290,-122.3680;37.6050,-122.3570;37.6010,-122.3750;37.6150,-122.3970");
+        properties.getZones().put("oracle-park",
+                "37.7795,-122.3905;37.7795,-122.3880;37.7770,-122.3880;37.7770,-122.3905");
+        ZoneIndex zones = new PolygonZoneIndex(h3, properties);
+
+        Random random = new Random(42);
+        double[] cityLats = new double[points];
+        double[] cityLngs = new double[points];
+        double[] boxLats = new double[points];
+        double[] boxLngs = new double[points];
+        for (int i = 0; i < points; i++) {
+            cityLats[i] = 37.55 + random.nextDouble() * 0.30;
+            cityLngs[i] = -122.52 + random.nextDouble() * 0.17;
+            boxLats[i] = 37.60 + random.nextDouble() * 0.18;
+            boxLngs[i] = -122.398 + random.nextDouble() * 0.041;
+        }
+
+        System.out.printf("%-12s %12s %12s %10s%n", "points", "zone ns/op", "cell ns/op", "in zone%");
+        for (int round = 0; round < ROUNDS; round++) {
+            boolean last = round == ROUNDS - 1;
+            run("city", zones, h3, cityLats, cityLngs, properties.getH3Resolution(), last);
+            run("zone-bbox", zones, h3, boxLats, boxLngs, properties.getH3Resolution(), last);
+        }
+    }
+
+    private static void run(String name, ZoneIndex zones, H3Core h3, double[] lats, double[] lngs,
+                            int resolution, boolean report) {
+        long inZone = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lats.length; i++) {
+            if (zones.zoneAt(lats[i], lngs[i]) != null) {
+                inZone++;
+            }
+        }
+        double zoneNanos = (double) (System.nanoTime() - start) / lats.length;
+
+        long cells = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < lats.length; i++) {
+            cells += h3.latLngToCell(lats[i], lngs[i], resolution);
+        }
+        double cellNanos = (double) (System.nanoTime() - start) / lats.length;
+        sink = cells + inZone;
+
+        if (report) {
+            System.out.printf("%-12s %12.1f %12.1f %10.2f %s%n", name, zoneNanos, cellNanos,
+                    100.0 * inZone / lats.length, zoneNanos < BUDGET_NANOS ? "ok" : "OVER 1us BUDGET");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.wecode.surgeprice.consumer;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.MessageListenerContainer;
+
+import java.util.OptionalLong;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdaptiveConsumerTunerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("driver-locations", 0);
+
+    private final SurgePricingProperties properties = new SurgePricingProperties();
+    private final ContainerProperties containerProperties = new ContainerProperties("driver-locations");
+    private final MessageListenerContainer container = mock(MessageListenerContainer.class);
+    private final Consumer<?, ?> consumer = mock(Consumer.class);
+    private AdaptiveConsumerTuner tuner;
+
+    @BeforeEach
+    void setUp() {
+        properties.setConsumerAdaptiveEnabled(true);
+        properties.setConsumerCatchUpLagRecords(1000);
+        properties.setConsumerMinRestartSeconds(3600);
+        KafkaListenerEndpointRegistry registry = mock(KafkaListenerEndpointRegistry.class);
+        when(registry.getListenerContainer(AdaptiveConsumerTuner.LISTENER_ID)).thenReturn(container);
+        when(container.isRunning()).thenReturn(true);
+        when(container.getContainerProperties()).thenReturn(containerProperties);
+        // Run the restart callback right away instead of on the container's stop thread
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(container).stop(any(Runnable.class));
+        when(consumer.assignment()).thenAnswer(invocation -> Set.of(PARTITION));
+        tuner = new AdaptiveConsumerTuner(registry, properties);
+    }
+
+    @Test
+    void switchHeldBackByTheRestartLimitIsAppliedOnALaterTick() {
+        lag(5000);
+        tuner.tune();
+        assertThat(tuner.mode()).isEqualTo(AdaptiveConsumerTuner.Mode.CATCH_UP);
+        assertThat(fetchMinBytes()).isEqualTo("1048576");
+
+        // Lag clears within the restart limit: the mode flips, the fetch settings cannot yet
+        lag(0);
+        tuner.tune();
+        assertThat(tuner.mode()).isEqualTo(AdaptiveConsumerTuner.Mode.NORMAL);
+        assertThat(fetchMinBytes()).isEqualTo("1048576");
+
+        properties.setConsumerMinRestartSeconds(0);
+        tuner.tune();
+        assertThat(fetchMinBytes()).isEqualTo("1024");
+
+        tuner.tune();
+        verify(container, times(2)).stop(any(Runnable.class));
+    }
+
+    private void lag(long records) {
+        when(consumer.currentLag(PARTITION)).thenReturn(OptionalLong.of(records));
+        tuner.recordLag(consumer);
+    }
+
+    private String fetchMinBytes() {
+        return containerProperties.getKafkaConsumerProperties().getProperty(ConsumerConfig.FETCH_MIN_BYTES_CONFIG);
+    }
+}
@@ -0,0 +1,29 @@
+package com.wecode.surgeprice.consumer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DriverLocationListenerTest {
+
+    @Test
+    void catchUpKeepsOneRecordPerDriverAndPartition() {
+        // A cell-affine poll: the driver's newest position is on partition 0, an older one last on partition 1
+        List<ConsumerRecord<String, String>> records = List.of(
+                record(0, 0, "d1", "p0-old"),
+                record(0, 1, "d1", "p0-new"),
+                record(0, 2, "d2", "d2-only"),
+                record(1, 0, "d1", "p1-old"),
+                record(1, 1, null, "unkeyed"));
+
+        assertThat(DriverLocationListener.newestPerDriver(records))
+                .containsExactlyInAnyOrder("p0-new", "p1-old", "d2-only", "unkeyed");
+    }
+
+    private static ConsumerRecord<String, String> record(int partition, long offset, String key, String value) {
+        return new ConsumerRecord<>("driver-locations", partition, offset, key, value);
+    }
+}
@@ -0,0 +1,66 @@
+package com.wecode.surgeprice.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wecode.surgeprice.admission.StreamSlots;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.decisionlog.NoOpPricingDecisionLog;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.PricingService;
+import com.wecode.surgeprice.service.QuoteService;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.impl.RedisResilience;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RiderControllerBatchValidationTest {
+
+    private final SurgePricingProperties properties = new SurgePricingProperties();
+    private final PricingService pricingService = mock(PricingService.class);
+    private final RedisService redisService = mock(RedisService.class);
+    private StreamSlots streamSlots;
+    private RedisResilience redisResilience;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        streamSlots = new StreamSlots(properties);
+        redisResilience = new RedisResilience(properties);
+        RiderController controller = new RiderController(pricingService, mock(GeofenceService.class), redisService,
+                new ObjectMapper(), streamSlots, new NoOpPricingDecisionLog(), mock(QuoteService.class),
+                redisResilience, properties);
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        streamSlots.destroy();
+        redisResilience.destroy();
+    }
+
+    @Test
+    void batchWithNullCoordinateIsRejected() throws Exception {
+        String body = "["
+                + "{\"riderId\":\"r1\",\"pickupLat\":37.77,\"pickupLng\":-122.41,\"dropLat\":37.80,\"dropLng\":-122.45},"
+                + "{\"riderId\":\"r2\",\"pickupLat\":null,\"pickupLng\":-122.41,\"dropLat\":37.80,\"dropLng\":-122.45}"
+                + "]";
+
+        mvc.perform(post("/rider/quote/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isBadRequest());
+
+        verify(pricingService, never()).calculateDistancesKm(any(), any(), any(), any(), any(), anyInt());
+        verify(redisService, never()).getDriverCounts(anyInt(), anyList());
+    }
+}
@@ -0,0 +1,144 @@
+package com.wecode.surgeprice.decisionlog;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.RideRequestRecordDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DecisionLogFormatTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void ringBufferHandsOutSlotsInOrderAndRefusesWhenFull() {
+        DecisionRingBuffer ring = new DecisionRingBuffer(3); // rounded up to 4
+        for (int i = 0; i < 4; i++) {
+            assertThat(ring.offer(decision("rider_" + i, "8828308281fffff"), i, i)).isTrue();
+        }
+        assertThat(ring.offer(decision("rider_4", "8828308281fffff"), 4, 4)).isFalse();
+
+        DecisionRingBuffer.Slot first = ring.peek();
+        assertThat(first.decision.getRiderId()).isEqualTo("rider_0");
+        ring.release(first);
+        assertThat(ring.offer(decision("rider_4", "8828308281fffff"), 4, 4)).isTrue();
+
+        List<String> drained = new ArrayList<>();
+        for (DecisionRingBuffer.Slot slot = ring.peek(); slot != null; slot = ring.peek()) {
+            drained.add(slot.decision.getRiderId());
+            ring.release(slot);
+        }
+        assertThat(drained).containsExactly("rider_1", "rider_2", "rider_3", "rider_4");
+        assertThat(ring.isEmpty()).isTrue();
+    }
+
+    @Test
+    void utf8CutNeverSplitsACharacter() {
+        assertThat(DecisionLogFormat.utf8(null, 8)).isEmpty();
+        assertThat(DecisionLogFormat.utf8("abc", 8)).isEqualTo("abc".getBytes(StandardCharsets.UTF_8));
+        // U+00E9 takes 2 bytes and U+1F695 takes 4: a cut inside either backs up to its first byte
+        assertThat(new String(DecisionLogFormat.utf8("a\u00e9", 2), StandardCharsets.UTF_8)).isEqualTo("a");
+        assertThat(new String(DecisionLogFormat.utf8("ab\uD83D\uDE95", 5), StandardCharsets.UTF_8)).isEqualTo("ab");
+        assertThat(new String(DecisionLogFormat.utf8("ab\uD83D\uDE95", 6), StandardCharsets.UTF_8))
+                .isEqualTo("ab\uD83D\uDE95");
+    }
+
+    @Test
+    void decisionsRoundTripThroughSegments() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setDecisionLogDir(directory.toString());
+        String longRiderId = "\u00e9".repeat(DecisionLogFormat.MAX_RIDER_ID_BYTES); // twice the byte limit
+
+        MappedPricingDecisionLog log = new MappedPricingDecisionLog(properties);
+        assertThat(log.record(decision("rider_42", "8828308281fffff"), 7, 12)).isTrue();
+        assertThat(log.record(decision(longRiderId, "zone-sfo-airport"), 3, 5)).isTrue();
+        log.close();
+
+        List<PricingDecision> decisions = new ArrayList<>();
+        long matched = new PricingDecisionLogReader(directory).forEach(decision -> true, decisions::add);
+
+        assertThat(matched).isEqualTo(2);
+        PricingDecision cell = decisions.get(0);
+        assertThat(cell.getRiderId()).isEqualTo("rider_42");
+        assertThat(cell.getGeofenceId()).isEqualTo("8828308281fffff");
+        assertThat(cell.getResolution()).isEqualTo(8);
+        assertThat(cell.getNearbyDrivers()).isEqualTo(7);
+        assertThat(cell.getRequestCount()).isEqualTo(12);
+        assertThat(cell.getSurgeMultiplier()).isEqualTo(1.5);
+        assertThat(cell.getFinalPrice()).isEqualTo(150.0);
+        assertThat(cell.getPickupLat()).isEqualTo(37.77);
+        assertThat(cell.getTimestamp()).isEqualTo(1_700_000_000_000L);
+
+        PricingDecision zone = decisions.get(1);
+        assertThat(zone.getGeofenceId()).isEqualTo("zone-sfo-airport");
+        assertThat(zone.getRiderId()).isEqualTo("\u00e9".repeat(DecisionLogFormat.MAX_RIDER_ID_BYTES / 2));
+    }
+
+    @Test
+    void writerKeepsGoingAfterAnEntryItCannotEncode() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setDecisionLogDir(directory.toString());
+        RideRequestRecordDTO broken = new RideRequestRecordDTO("rider_bad", 37.77, -122.41, 37.80, -122.45,
+                4.2, 100.0, 1.5, 150.0, "8828308281fffff", 8, null, null, 1_700_000_000_000L) {
+            @Override
+            public double getFinalPrice() {
+                throw new IllegalStateException("unencodable");
+            }
+        };
+
+        MappedPricingDecisionLog log = new MappedPricingDecisionLog(properties);
+        assertThat(log.record(decision("rider_1", "8828308281fffff"), 1, 1)).isTrue();
+        assertThat(log.record(broken, 2, 2)).isTrue();
+        assertThat(log.record(decision("rider_3", "8828308281fffff"), 3, 3)).isTrue();
+        log.close();
+
+        List<PricingDecision> decisions = new ArrayList<>();
+        new PricingDecisionLogReader(directory).forEach(decision -> true, decisions::add);
+        assertThat(decisions).extracting(PricingDecision::getRiderId).containsExactly("rider_1", "rider_3");
+        assertThat(log.getFailedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void oldestSegmentsAreDeletedPastTheLimit() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setDecisionLogDir(directory.toString());
+        properties.setDecisionLogSegmentBytes(1); // raised to the minimum, which fits one long rider id
+        properties.setDecisionLogMaxSegments(3);
+        String padding = "r".repeat(250);
+
+        MappedPricingDecisionLog log = new MappedPricingDecisionLog(properties);
+        for (int i = 0; i < 10; i++) {
+            assertThat(log.record(decision(padding + i, "8828308281fffff"), i, i)).isTrue();
+        }
+        log.close();
+
+        PricingDecisionLogReader reader = new PricingDecisionLogReader(directory);
+        assertThat(reader.segments()).hasSize(3);
+        List<PricingDecision> decisions = new ArrayList<>();
+        reader.forEach(decision -> true, decisions::add);
+        assertThat(decisions).extracting(PricingDecision::getRiderId)
+                .containsExactly(padding + 7, padding + 8, padding + 9);
+    }
+
+    @Test
+    void relativeDirectoryIsRejected() {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setDecisionLogDir("decision-log");
+        assertThatThrownBy(() -> new MappedPricingDecisionLog(properties))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("absolute");
+    }
+
+    private static RideRequestRecordDTO decision(String riderId, String geofenceId) {
+        return new RideRequestRecordDTO(riderId, 37.77, -122.41, 37.80, -122.45, 4.2, 100.0, 1.5, 150.0,
+                geofenceId, 8, null, null, 1_700_000_000_000L);
+    }
+}
@@ -0,0 +1,57 @@
+package com.wecode.surgeprice.jfr;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ContinuousRecordingTest {
+
+    @TempDir
+    Path dumps;
+
+    @Test
+    void dumpIsDeletedOnceReadAndLeavesOutEnvironmentAndProperties() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setJfrDumpDirectory(dumps.toString());
+        Files.writeString(dumps.resolve("surge-1.jfr"), "left by a dead reader");
+        ContinuousRecording recording = new ContinuousRecording(properties);
+        recording.afterPropertiesSet();
+        try {
+            assertThat(dumps).isEmptyDirectory();
+
+            Path copy = dumps.resolveSibling(dumps.getFileName() + "-copy.jfr");
+            try (InputStream dump = recording.openDump()) {
+                Files.copy(dump, copy);
+            }
+            assertThat(dumps).isEmptyDirectory();
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(copy);
+            assertThat(events).isNotEmpty();
+            assertThat(events).extracting(event -> event.getEventType().getName())
+                    .doesNotContain("jdk.InitialEnvironmentVariable", "jdk.InitialSystemProperty",
+                            "jdk.JVMInformation");
+            Files.delete(copy);
+        } finally {
+            recording.destroy();
+        }
+    }
+
+    @Test
+    void noDumpWhenRecordingIsDisabled() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setJfrEnabled(false);
+        properties.setJfrDumpDirectory(dumps.toString());
+        ContinuousRecording recording = new ContinuousRecording(properties);
+        recording.afterPropertiesSet();
+        assertThat(recording.openDump()).isNull();
+    }
+}
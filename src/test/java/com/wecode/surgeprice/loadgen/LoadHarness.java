@@ -0,0 +1,252 @@
+package com.wecode.surgeprice.loadgen;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wecode.surgeprice.admission.StreamSlots;
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.consumer.DriverLocationConsumer;
+import com.wecode.surgeprice.decisionlog.MappedPricingDecisionLog;
+import com.wecode.surgeprice.decisionlog.NoOpPricingDecisionLog;
+import com.wecode.surgeprice.decisionlog.PricingDecisionLog;
+import com.wecode.surgeprice.controller.RiderController;
+import com.wecode.surgeprice.dto.DriverLocationDTO;
+import com.wecode.surgeprice.dto.RideRequestDTO;
+import com.wecode.surgeprice.registry.ArrayDriverRegistry;
+import com.wecode.surgeprice.service.GeofenceService;
+import com.wecode.surgeprice.service.PricingService;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.service.impl.CellRollupServiceImpl;
+import com.wecode.surgeprice.service.impl.GeofenceServiceImpl;
+import com.wecode.surgeprice.service.impl.InMemoryRedisService;
+import com.wecode.surgeprice.service.impl.PolyfillCellIndex;
+import com.wecode.surgeprice.service.impl.PolygonZoneIndex;
+import com.wecode.surgeprice.service.impl.PricingServiceImpl;
+import com.wecode.surgeprice.service.impl.QuoteServiceImpl;
+import com.wecode.surgeprice.service.impl.RedisResilience;
+import com.wecode.surgeprice.service.impl.RollupRedisService;
+import com.wecode.surgeprice.worker.SurgePricingWorker;
+import org.HdrHistogram.Recorder;
+import org.HdrHistogram.Histogram;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-box load generator: wires the consumer, rider controller and worker
+ * to {@link InMemoryRedisService} (no Kafka, Redis or HTTP) and drives them
+ * open-loop at fixed rates. Latency is measured from each operation's
+ * intended start, so queueing delay is not hidden (no coordinated omission).
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.wecode.surgeprice.loadgen.LoadHarness \
+ *     -Dexec.args="--duration=60 --location-batches-per-sec=200 --bookings-per-sec=2000 --latency-micros=150"
+ * </pre>
+ *
+ * Options (defaults in brackets): duration seconds [30], warmup seconds [10],
+ * drivers [20000], location-batches-per-sec [100], batch-size [500],
+ * bookings-per-sec [1000], streams-per-sec [20], worker-interval-ms [15000],
+ * threads [16], latency-micros [0], jitter-micros [0], lat [37.7749], lng [-122.4194],
+ * spread-km [8], decision-log-dir [unset, decision log disabled].
+ */
+public class LoadHarness {
+
+    private final Map<String, String> options;
+    private final Map<String, Recorder> recorders = new HashMap<>();
+    private final Map<String, AtomicLong> errors = new HashMap<>();
+    private final ConcurrentLinkedQueue<SseEmitter> emitters = new ConcurrentLinkedQueue<>();
+
+    private LoadHarness(Map<String, String> options) {
+        this.options = options;
+        for (String op : List.of("ingest-batch", "book", "stream-open", "surge-cycle")) {
+            recorders.put(op, new Recorder(3));
+            errors.put(op, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+        }
+        new LoadHarness(options).run();
+    }
+
+    private void run() throws Exception {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setWarmupSeconds(0);
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        H3Core h3 = H3Core.newInstance();
+        GeofenceService geofenceService = new GeofenceServiceImpl(h3, new PolygonZoneIndex(h3, properties), properties);
+        InMemoryRedisService storage = new InMemoryRedisService(properties, Clock.systemUTC(),
+                longOption("latency-micros", 0), longOption("jitter-micros", 0));
+        CellRollupServiceImpl rollupService = new CellRollupServiceImpl(storage, geofenceService, properties,
+                Clock.systemUTC());
+        RedisService redisService = properties.isHierarchicalRollup()
+                ? new RollupRedisService(storage, rollupService, properties)
+                : storage;
+        PricingService pricingService = new PricingServiceImpl(geofenceService, redisService, properties);
+
+        StreamSlots streamSlots = new StreamSlots(properties);
+
+        DriverLocationConsumer consumer = new DriverLocationConsumer(objectMapper, geofenceService, redisService,
+                new ArrayDriverRegistry(h3, properties), properties);
+        PricingDecisionLog decisionLog = new NoOpPricingDecisionLog();
+        if (options.containsKey("decision-log-dir")) {
+            properties.setDecisionLogDir(Path.of(options.get("decision-log-dir")).toAbsolutePath().toString());
+            decisionLog = new MappedPricingDecisionLog(properties);
+        }
+        RiderController riderController = new RiderController(
+                pricingService, geofenceService, redisService, objectMapper, streamSlots, decisionLog,
+                new QuoteServiceImpl(redisService, objectMapper, properties, Clock.systemUTC()),
+                new RedisResilience(properties), properties);
+        SurgePricingWorker worker = new SurgePricingWorker(redisService, properties,
+                new PolyfillCellIndex(h3, properties), Clock.systemUTC());
+
+        int drivers = intOption("drivers", 20_000);
+        int batchSize = intOption("batch-size", 500);
+        double centerLat = doubleOption("lat", 37.7749);
+        double centerLng = doubleOption("lng", -122.4194);
+        double spreadDegrees = doubleOption("spread-km", 8) / 111.0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(intOption("threads", 16));
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(4);
+
+        schedule(scheduler, pool, "ingest-batch", doubleOption("location-batches-per-sec", 100), () -> {
+            List<String> batch = new ArrayList<>(batchSize);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < batchSize; i++) {
+                DriverLocationDTO location = new DriverLocationDTO(
+                        "driver_" + random.nextInt(drivers),
+                        centerLat + random.nextGaussian() * spreadDegrees,
+                        centerLng + random.nextGaussian() * spreadDegrees);
+                batch.add(objectMapper.writeValueAsString(location));
+            }
+            consumer.consumeLocations(batch);
+        });
+        schedule(scheduler, pool, "book", doubleOption("bookings-per-sec", 1000), () -> {
+            RideRequestDTO request = randomRide(centerLat, centerLng, spreadDegrees);
+            riderController.bookRide(request);
+        });
+        schedule(scheduler, pool, "stream-open", doubleOption("streams-per-sec", 20), () -> {
+            RideRequestDTO ride = randomRide(centerLat, centerLng, spreadDegrees);
+            SseEmitter emitter = riderController.streamPrice(ride.getPickupLat(), ride.getPickupLng(),
+                    ride.getDropLat(), ride.getDropLng(), ride.getRiderId(), null, null, false).getBody();
+            if (emitter != null) {
+                emitters.add(emitter);
+            }
+        });
+        long workerInterval = longOption("worker-interval-ms", 15_000);
+        scheduler.scheduleWithFixedDelay(() -> time("surge-cycle", System.nanoTime(), worker::calculateSurge),
+                workerInterval, workerInterval, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(rollupService::refresh,
+                properties.getRollupRefreshMillis(), properties.getRollupRefreshMillis(), TimeUnit.MILLISECONDS);
+
+        int warmup = intOption("warmup", 10);
+        System.out.printf("Warming up for %ds...%n", warmup);
+        Thread.sleep(warmup * 1000L);
+        for (Recorder recorder : recorders.values()) {
+            recorder.reset();
+        }
+
+        int duration = intOption("duration", 30);
+        System.out.printf("Measuring for %ds...%n", duration);
+        Thread.sleep(duration * 1000L);
+
+        scheduler.shutdownNow();
+        pool.shutdownNow();
+        for (SseEmitter emitter : emitters) {
+            emitter.complete();
+        }
+        streamSlots.destroy();
+        if (decisionLog instanceof MappedPricingDecisionLog mapped) {
+            mapped.close();
+            System.out.printf("Decision log: %d written, %d dropped%n", mapped.getWrittenCount(), mapped.getDroppedCount());
+        }
+        report(duration);
+    }
+
+    private void schedule(ScheduledExecutorService scheduler, ExecutorService pool, String op,
+                          double perSecond, Task task) {
+        if (perSecond <= 0) {
+            return;
+        }
+        long intervalNanos = (long) (1_000_000_000L / perSecond);
+        long start = System.nanoTime();
+        AtomicLong sequence = new AtomicLong();
+        // Dispatch every operation due since the last tick; each is timed from its own intended start
+        scheduler.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long due = (now - start) / intervalNanos;
+            for (long n = sequence.get(); n < due; n = sequence.incrementAndGet()) {
+                long intendedStart = start + n * intervalNanos;
+                pool.execute(() -> time(op, intendedStart, task));
+            }
+        }, 0, 1, TimeUnit.MILLISECONDS);
+    }
+
+    private void time(String op, long intendedStartNanos, Task task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            errors.get(op).incrementAndGet();
+        }
+        recorders.get(op).recordValue(Math.max(0, (System.nanoTime() - intendedStartNanos) / 1000));
+    }
+
+    private void report(int durationSeconds) {
+        System.out.printf("%n%-13s %10s %9s %9s %9s %9s %9s %9s %9s %7s%n", "operation", "ops/s",
+                "p50(us)", "p90(us)", "p99(us)", "p99.9(us)", "p99.99", "max(us)", "mean(us)", "errors");
+        for (String op : List.of("ingest-batch", "book", "stream-open", "surge-cycle")) {
+            Histogram histogram = recorders.get(op).getIntervalHistogram();
+            System.out.printf("%-13s %10.1f %9d %9d %9d %9d %9d %9d %9.0f %7d%n", op,
+                    (double) histogram.getTotalCount() / durationSeconds,
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                    histogram.getValueAtPercentile(99.99), histogram.getMaxValue(),
+                    histogram.getMean(), errors.get(op).get());
+        }
+    }
+
+    private static RideRequestDTO randomRide(double centerLat, double centerLng, double spreadDegrees) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        RideRequestDTO request = new RideRequestDTO();
+        request.setRiderId("rider_" + random.nextInt(1_000_000));
+        request.setPickupLat(centerLat + random.nextGaussian() * spreadDegrees);
+        request.setPickupLng(centerLng + random.nextGaussian() * spreadDegrees);
+        request.setDropLat(centerLat + random.nextGaussian() * spreadDegrees * 2);
+        request.setDropLng(centerLng + random.nextGaussian() * spreadDegrees * 2);
+        return request;
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private long longOption(String name, long defaultValue) {
+        return options.containsKey(name) ? Long.parseLong(options.get(name)) : defaultValue;
+    }
+
+    private double doubleOption(String name, double defaultValue) {
+        return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run() throws Exception;
+    }
+}
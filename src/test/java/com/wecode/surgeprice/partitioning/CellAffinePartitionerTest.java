@@ -0,0 +1,93 @@
+package com.wecode.surgeprice.partitioning;
+
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.impl.GeofenceServiceImpl;
+import com.wecode.surgeprice.service.impl.PolygonZoneIndex;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.PartitionInfo;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CellAffinePartitionerTest {
+
+    private static final String TOPIC = "driver-locations";
+    private static final int PARTITIONS = 64;
+
+    private static H3Core h3;
+
+    @BeforeAll
+    static void loadH3() throws IOException {
+        h3 = H3Core.newInstance();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void locationNearARegionEdgeLandsOnThePartitionThatServesItsFineCell() {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        int regionRes = properties.getPartitionH3Resolution();
+        int fineRes = properties.getMaxH3Resolution();
+
+        // A point whose fine cell's parent is not the coarse cell it falls in, on another partition
+        double lat = 0;
+        double lng = 0;
+        long parent = 0;
+        boolean found = false;
+        for (int step = 0; step < 200_000 && !found; step++) {
+            lat = 37.70 + (step % 500) * 0.0004;
+            lng = -122.50 + (step / 500) * 0.0004;
+            parent = h3.cellToParent(h3.latLngToCell(lat, lng, fineRes), regionRes);
+            long direct = h3.latLngToCell(lat, lng, regionRes);
+            found = parent != direct && CellAffinePartitioner.partitionFor(parent, PARTITIONS)
+                    != CellAffinePartitioner.partitionFor(direct, PARTITIONS);
+        }
+        assertThat(found).isTrue();
+
+        CellAffinePartitioner partitioner = new CellAffinePartitioner();
+        partitioner.configure(Map.of(CellAffinePartitioner.RESOLUTION_CONFIG, regionRes,
+                CellAffinePartitioner.LEAF_RESOLUTION_CONFIG, fineRes));
+        String location = String.format(Locale.ROOT, "{\"driverId\":\"d1\",\"lat\":%f,\"lng\":%f}", lat, lng);
+        int partition = partitioner.partition(TOPIC, "d1", "d1".getBytes(), location, location.getBytes(),
+                cluster());
+        assertThat(partition).isEqualTo(CellAffinePartitioner.partitionFor(parent, PARTITIONS));
+
+        // The instance owning that partition answers for the driver's fine cell
+        RedisTemplate<String, String> redisTemplate = mock(RedisTemplate.class);
+        HashOperations<String, Object, Object> hashes = mock(HashOperations.class);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hashes);
+        when(hashes.entries(anyString())).thenReturn(Map.of("0:warm", "0:0")); // non-empty: warm at once
+        RegionSupplyState state = new RegionSupplyState(
+                new GeofenceServiceImpl(h3, new PolygonZoneIndex(h3, properties), properties),
+                redisTemplate, properties);
+        state.assign(partition, PARTITIONS);
+
+        String fineCell = Long.toHexString(h3.latLngToCell(lat, lng, fineRes));
+        long now = System.currentTimeMillis();
+        state.record(fineRes, fineCell, "d1", now);
+        assertThat(state.serves(fineRes, fineCell, now)).isTrue();
+        assertThat(state.getDriverCount(fineRes, fineCell, now)).isEqualTo(1);
+    }
+
+    private static Cluster cluster() {
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            partitions.add(new PartitionInfo(TOPIC, i, null, null, null));
+        }
+        Cluster cluster = mock(Cluster.class);
+        when(cluster.partitionsForTopic(TOPIC)).thenReturn(partitions);
+        return cluster;
+    }
+}
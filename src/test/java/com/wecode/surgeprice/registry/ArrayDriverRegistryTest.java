@@ -0,0 +1,96 @@
+package com.wecode.surgeprice.registry;
+
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.dto.NearbyDriverDTO;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ArrayDriverRegistryTest {
+
+    private static final int CAPACITY = 8; // 16-entry cell table, so probe chains collide and wrap
+
+    private static H3Core h3;
+
+    @BeforeAll
+    static void loadH3() throws IOException {
+        h3 = H3Core.newInstance();
+    }
+
+    @Test
+    void everyDriverStaysReachableWhileCellsEmptyAndRefill() {
+        ArrayDriverRegistry registry = new ArrayDriverRegistry(h3, properties());
+        Random random = new Random(7);
+        double[] lats = new double[CAPACITY];
+        double[] lngs = new double[CAPACITY];
+        long now = System.currentTimeMillis();
+
+        // Each move can empty a cell, which backward-shifts the entries behind it in the table
+        for (int step = 0; step < 5_000; step++) {
+            int driver = random.nextInt(CAPACITY);
+            lats[driver] = 37.76 + random.nextDouble() * 0.03;
+            lngs[driver] = -122.43 + random.nextDouble() * 0.03;
+            registry.update("driver_" + driver, lats[driver], lngs[driver], now + step);
+
+            for (int i = 0; i < CAPACITY; i++) {
+                if (lats[i] != 0) {
+                    List<NearbyDriverDTO> nearest = registry.nearest(lats[i], lngs[i], 1);
+                    assertThat(nearest).extracting(NearbyDriverDTO::getDriverId).containsExactly("driver_" + i);
+                }
+            }
+        }
+        assertThat(registry.size()).isEqualTo(CAPACITY);
+    }
+
+    @Test
+    void evictionFreesSlotsAndKeepsTheRestReachable() {
+        ArrayDriverRegistry registry = new ArrayDriverRegistry(h3, properties());
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < CAPACITY; i++) {
+            registry.update("driver_" + i, 37.76 + i * 0.002, -122.42, i % 2 == 0 ? now : 0);
+        }
+        registry.update("late", 37.70, -122.42, now);
+        assertThat(registry.size()).isEqualTo(CAPACITY);
+
+        registry.evictStale();
+        assertThat(registry.size()).isEqualTo(CAPACITY / 2);
+        for (int i = 0; i < CAPACITY; i += 2) {
+            assertThat(registry.nearest(37.76 + i * 0.002, -122.42, 1))
+                    .extracting(NearbyDriverDTO::getDriverId).containsExactly("driver_" + i);
+        }
+
+        registry.update("late", 37.70, -122.42, now);
+        assertThat(registry.nearest(37.70, -122.42, 1)).extracting(NearbyDriverDTO::getDriverId)
+                .containsExactly("late");
+    }
+
+    @Test
+    void ringWalkStopsAtTheRingLimit() {
+        ArrayDriverRegistry registry = new ArrayDriverRegistry(h3, properties());
+        long now = System.currentTimeMillis();
+        registry.update("near", 37.7750, -122.4190, now);
+        registry.update("nearer", 37.7749, -122.4194, now);
+        registry.update("far", 37.7900, -122.4000, now);
+
+        // Asking for more drivers than exist returns all of them, nearest first
+        assertThat(registry.nearest(37.7749, -122.4194, 10)).extracting(NearbyDriverDTO::getDriverId)
+                .containsExactly("nearer", "near", "far");
+        // Nothing within the ring limit: the walk ends empty instead of searching on
+        assertThat(registry.nearest(40.7128, -74.0060, 3)).isEmpty();
+        assertThat(registry.nearest(37.7749, -122.4194, 0)).isEmpty();
+    }
+
+    private static SurgePricingProperties properties() {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setDriverRegistryCapacity(CAPACITY);
+        properties.setDriverRegistryH3Resolution(9);
+        properties.setNearestDriversMaxRings(20);
+        return properties;
+    }
+}
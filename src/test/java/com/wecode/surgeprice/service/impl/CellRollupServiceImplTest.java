@@ -0,0 +1,103 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CellRollupServiceImplTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static H3Core h3;
+
+    private InMemoryRedisService storage;
+    private CellRollupServiceImpl rollup;
+    private RollupRedisService redis;
+    private String cellA;
+    private String cellB;
+    private String parent8;
+    private String parent7;
+
+    @BeforeAll
+    static void loadH3() throws IOException {
+        h3 = H3Core.newInstance();
+    }
+
+    @BeforeEach
+    void setUp() {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC);
+        GeofenceServiceImpl geofences = new GeofenceServiceImpl(h3, new PolygonZoneIndex(h3, properties), properties);
+        storage = new InMemoryRedisService(properties, clock);
+        rollup = new CellRollupServiceImpl(storage, geofences, properties, clock);
+        redis = new RollupRedisService(storage, rollup, properties);
+
+        // Two res-9 siblings under one res-8 (and so one res-7) parent
+        long a = h3.latLngToCell(37.7749, -122.4194, 9);
+        long parent = h3.cellToParent(a, 8);
+        List<Long> children = h3.cellToChildren(parent, 9);
+        long b = children.get(0) == a ? children.get(1) : children.get(0);
+        cellA = Long.toHexString(a);
+        cellB = Long.toHexString(b);
+        parent8 = Long.toHexString(parent);
+        parent7 = Long.toHexString(h3.cellToParent(a, 7));
+    }
+
+    @Test
+    void driverCrossingSiblingCellsCountsOnceInTheirParents() {
+        redis.addDriver(9, cellA, "moving", NOW - 20_000);
+        redis.addDriver(9, cellA, "parked", NOW - 15_000);
+        redis.addDriver(9, cellB, "moving", NOW - 10_000);
+        redis.addDriver(9, cellA, "moving", NOW - 5_000);
+        redis.addDriver(9, cellB, "moving", NOW - 1_000);
+        rollup.refresh();
+
+        assertThat(redis.getDriverCount(9, cellA)).isEqualTo(1);
+        assertThat(redis.getDriverCount(9, cellB)).isEqualTo(1);
+        assertThat(redis.getDriverCount(8, parent8)).isEqualTo(2);
+        assertThat(redis.getDriverCount(7, parent7)).isEqualTo(2);
+        assertThat(redis.getDrivers(8, parent8)).containsExactlyInAnyOrder("moving", "parked");
+    }
+
+    @Test
+    void bulkWritesAlsoLeaveThePreviousCell() {
+        redis.addDriver(9, cellA, "moving", NOW - 20_000);
+        redis.addDrivers(9, new String[] {cellB}, new String[] {"moving"}, new long[] {NOW - 2_000}, 1);
+        rollup.refresh();
+
+        assertThat(redis.getDriverCount(9, cellA)).isZero();
+        assertThat(redis.getDriverCount(8, parent8)).isEqualTo(1);
+    }
+
+    @Test
+    void olderPositionDoesNotPullTheDriverOutOfTheirCurrentCell() {
+        redis.addDriver(9, cellB, "moving", NOW - 2_000);
+        assertThat(rollup.moveDriver("moving", cellA, NOW - 10_000)).isNull();
+        assertThat(rollup.moveDriver("moving", cellB, NOW - 1_000)).isNull();
+        assertThat(rollup.moveDriver("moving", cellA, NOW)).isEqualTo(cellB);
+    }
+
+    @Test
+    void riderWithAnEntryIsNotCountedAgainInTheCellOrItsParents() {
+        redis.addRideRequest(9, cellA, "repeat", "{}");
+        redis.addRideRequest(9, cellB, "other", "{}");
+        rollup.refresh();
+
+        assertThat(redis.getRideRequestCountsWith(9, List.of(cellA, cellA, cellB), List.of("repeat", "new", "repeat")))
+                .containsExactly(1, 2, 2);
+        assertThat(redis.getRideRequestCountsWith(8, List.of(parent8, parent8), List.of("repeat", "new")))
+                .containsExactly(2, 3);
+        assertThat(redis.hasRideRequests(7, List.of(parent7, parent7), List.of("other", "new")))
+                .containsExactly(true, false);
+    }
+}
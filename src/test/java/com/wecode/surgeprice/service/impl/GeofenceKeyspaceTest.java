@@ -0,0 +1,51 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.service.impl.GeofenceKeyspace.KeyType;
+import com.wecode.surgeprice.service.impl.GeofenceKeyspace.Schema;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GeofenceKeyspaceTest {
+
+    private final GeofenceKeyspace binary = new GeofenceKeyspace(Schema.BINARY);
+
+    @Test
+    void binaryHashTagIsFixedWidthAsciiWhateverTheCellBytes() {
+        Random random = new Random(3);
+        Set<String> tags = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            // Random low bytes hit 0x7B/0x7D and values over 0x7F in most cells
+            long cell = 0x0890000000000000L | (random.nextLong() & 0x000FFFFFFFFFFFFFL);
+            String hex = Long.toHexString(cell);
+
+            String key = binary.key(KeyType.DRIVERS, 9, hex);
+            assertThat(key.getBytes(StandardCharsets.UTF_8)).hasSize(key.length());
+            assertThat(hashTag(key)).hasSize(12);
+            assertThat(binary.canonicalDriversKey(key)).isEqualTo(GeofenceKeyspace.canonicalDriversKey(9, hex));
+
+            String stripe = binary.key(KeyType.DRIVERS, 9, hex, 200, null);
+            assertThat(hashTag(stripe)).hasSize(14).isNotEqualTo(hashTag(key));
+            assertThat(binary.canonicalDriversKey(stripe)).isEqualTo(GeofenceKeyspace.canonicalDriversKey(9, hex));
+            assertThat(hashTag(binary.key(KeyType.REQUESTS, 9, hex))).isEqualTo(hashTag(key));
+            tags.add(hashTag(key));
+        }
+        assertThat(tags).hasSize(10_000);
+    }
+
+    @Test
+    void zoneIdsKeepTheTaggedForm() {
+        assertThat(binary.key(KeyType.SURGE, 16, "zone-sfo")).isEqualTo("geofence:{16:zone-sfo}:surge");
+    }
+
+    // What Redis Cluster hashes: the text between the first '{' and the next '}'
+    private static String hashTag(String key) {
+        int open = key.indexOf('{');
+        return key.substring(open + 1, key.indexOf('}', open + 1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.HeatmapTile;
+import com.wecode.surgeprice.service.RedisService;
+import com.wecode.surgeprice.worker.SurgePricingWorker;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class HeatmapServiceImplTest {
+
+    private static final int RES = 9;
+
+    private static H3Core h3;
+
+    private final SurgePricingProperties properties = new SurgePricingProperties();
+    private final RedisService redis = mock(RedisService.class);
+    private final AtomicInteger surgeReads = new AtomicInteger();
+    private final CountDownLatch reading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HeatmapServiceImpl heatmap;
+
+    @BeforeAll
+    static void loadH3() throws IOException {
+        h3 = H3Core.newInstance();
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(redis.getSurges(anyInt(), anyList())).thenAnswer(invocation -> {
+            surgeReads.incrementAndGet();
+            reading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new double[invocation.<List<String>>getArgument(1).size()];
+        });
+        when(redis.getDriverCounts(anyInt(), anyList()))
+                .thenAnswer(invocation -> new long[invocation.<List<String>>getArgument(1).size()]);
+        when(redis.getRideRequestCounts(anyInt(), anyList()))
+                .thenAnswer(invocation -> new long[invocation.<List<String>>getArgument(1).size()]);
+        SurgePricingWorker worker = mock(SurgePricingWorker.class);
+        when(worker.getCycle()).thenReturn(1L);
+        heatmap = new HeatmapServiceImpl(h3, redis, worker, new ObjectMapper(), properties);
+    }
+
+    @Test
+    void concurrentMissesOnOneTileShareOneRebuild() throws Exception {
+        String tileId = Long.toHexString(h3.cellToParent(h3.latLngToCell(37.7749, -122.4194, RES), RES - 2));
+        CompletableFuture<HeatmapTile> first = CompletableFuture.supplyAsync(() -> heatmap.tile(tileId, RES));
+        assertThat(reading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<HeatmapTile> second = CompletableFuture.supplyAsync(() -> heatmap.tile(tileId, RES));
+        Thread.sleep(100); // second request finds the build running
+        release.countDown();
+
+        HeatmapTile built = first.get(5, TimeUnit.SECONDS);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isSameAs(built);
+        assertThat(surgeReads).hasValue(1);
+    }
+
+    @Test
+    void thinBoxIsLimitedByTheCellsOfTheTilesItTouches() {
+        release.countDown();
+        properties.setHeatmapMaxTileCells(200);
+        // About 20 km long and one cell wide: well under the cell limit, but a tile of 49 for every few cells
+        assertThatThrownBy(() -> heatmap.heatmap(37.70, -122.4230, 37.88, -122.4200, RES))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("touches tiles");
+        assertThat(surgeReads).hasValue(0);
+    }
+}
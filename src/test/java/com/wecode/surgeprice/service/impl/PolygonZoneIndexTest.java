@@ -0,0 +1,121 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.uber.h3core.H3Core;
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PolygonZoneIndexTest {
+
+    // Axis-aligned rectangles, so the expected answer needs no geometry
+    private static final double SOUTH = 37.600;
+    private static final double NORTH = 37.630;
+    private static final double WEST = -122.400;
+    private static final double EAST = -122.360;
+    private static final double EPSILON = 1e-6; // ~0.1 m
+
+    private static H3Core h3;
+
+    @BeforeAll
+    static void loadH3() throws IOException {
+        h3 = H3Core.newInstance();
+    }
+
+    @Test
+    void pointsResolveExactlyAcrossCompactedInteriorAndBoundaryCells() {
+        PolygonZoneIndex index = index("airport", rectangle(SOUTH, NORTH, WEST, EAST));
+        Random random = new Random(11);
+
+        // A box a little larger than the zone: interior points hit compacted parents, the rest edge cells
+        for (int i = 0; i < 20_000; i++) {
+            double lat = SOUTH - 0.005 + random.nextDouble() * (NORTH - SOUTH + 0.01);
+            double lng = WEST - 0.005 + random.nextDouble() * (EAST - WEST + 0.01);
+            boolean inside = lat > SOUTH && lat < NORTH && lng > WEST && lng < EAST;
+            assertThat(index.zoneAt(lat, lng)).as("%f,%f", lat, lng).isEqualTo(inside ? "zone-airport" : null);
+        }
+    }
+
+    @Test
+    void pointsJustEitherSideOfAnEdgeAreTestedExactly() {
+        PolygonZoneIndex index = index("airport", rectangle(SOUTH, NORTH, WEST, EAST));
+        for (int step = 1; step < 100; step++) {
+            double lat = SOUTH + (NORTH - SOUTH) * step / 100;
+            double lng = WEST + (EAST - WEST) * step / 100;
+            assertThat(index.zoneAt(lat, WEST + EPSILON)).isEqualTo("zone-airport");
+            assertThat(index.zoneAt(lat, WEST - EPSILON)).isNull();
+            assertThat(index.zoneAt(lat, EAST - EPSILON)).isEqualTo("zone-airport");
+            assertThat(index.zoneAt(lat, EAST + EPSILON)).isNull();
+            assertThat(index.zoneAt(SOUTH + EPSILON, lng)).isEqualTo("zone-airport");
+            assertThat(index.zoneAt(SOUTH - EPSILON, lng)).isNull();
+            assertThat(index.zoneAt(NORTH - EPSILON, lng)).isEqualTo("zone-airport");
+            assertThat(index.zoneAt(NORTH + EPSILON, lng)).isNull();
+        }
+    }
+
+    @Test
+    void theFirstConfiguredZoneWinsWhereZonesOverlap() {
+        String terminal = rectangle(37.610, 37.620, -122.390, -122.370);
+        String apron = rectangle(37.615, 37.625, -122.380, -122.360);
+        double overlapLat = 37.6175;
+        double overlapLng = -122.375;
+
+        PolygonZoneIndex terminalFirst = index("terminal", terminal, "apron", apron);
+        assertThat(terminalFirst.zoneAt(overlapLat, overlapLng)).isEqualTo("zone-terminal");
+        assertThat(terminalFirst.zoneAt(37.6225, -122.365)).isEqualTo("zone-apron");
+        assertThat(terminalFirst.zoneAt(37.6125, -122.385)).isEqualTo("zone-terminal");
+
+        PolygonZoneIndex apronFirst = index("apron", apron, "terminal", terminal);
+        assertThat(apronFirst.zoneAt(overlapLat, overlapLng)).isEqualTo("zone-apron");
+        assertThat(apronFirst.zoneAt(37.6125, -122.385)).isEqualTo("zone-terminal");
+    }
+
+    @Test
+    void coverCellsHoldEveryPointOfTheZoneAtACoarserResolution() {
+        PolygonZoneIndex index = index("airport", rectangle(SOUTH, NORTH, WEST, EAST));
+        Set<Long> cells = index.coverCells(7).get("zone-airport");
+        int resolution = new SurgePricingProperties().getZoneIndexResolution();
+        Random random = new Random(5);
+
+        for (int i = 0; i < 2_000; i++) {
+            double lat = SOUTH + random.nextDouble() * (NORTH - SOUTH);
+            double lng = WEST + random.nextDouble() * (EAST - WEST);
+            assertThat(cells).contains(h3.cellToParent(h3.latLngToCell(lat, lng, resolution), 7));
+        }
+    }
+
+    @Test
+    void noZonesMeansNoLookups() {
+        PolygonZoneIndex index = index();
+        assertThat(index.size()).isZero();
+        assertThat(index.zoneAt(37.61, -122.38)).isNull();
+    }
+
+    @Test
+    void invalidZonesAreRejectedAtStartup() {
+        assertThatThrownBy(() -> index("Not Valid!", rectangle(SOUTH, NORTH, WEST, EAST)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> index("sfo", rectangle(SOUTH, NORTH, WEST, EAST), "SFO", rectangle(
+                37.70, 37.71, -122.40, -122.39))).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> index("line", "37.60,-122.40;37.63,-122.36"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static PolygonZoneIndex index(String... idsAndPolygons) {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        for (int i = 0; i < idsAndPolygons.length; i += 2) {
+            properties.getZones().put(idsAndPolygons[i], idsAndPolygons[i + 1]);
+        }
+        return new PolygonZoneIndex(h3, properties);
+    }
+
+    private static String rectangle(double south, double north, double west, double east) {
+        return south + "," + west + ";" + north + "," + west + ";" + north + "," + east + ";" + south + "," + east;
+    }
+}
@@ -0,0 +1,123 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.RedisService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReadCoalescerTest {
+
+    private static final int RES = 8;
+    private static final String CELL = "8828308281fffff";
+
+    private final SurgePricingProperties properties = new SurgePricingProperties();
+    private final ReadCoalescer coalescer = new ReadCoalescer(properties);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void bindMeters() {
+        coalescer.bindTo(meters);
+    }
+
+    @Test
+    void concurrentReadsOfOneCellShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> coalescer.get("op", RES, CELL, () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            await(release);
+            return 7L;
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Long> second = CompletableFuture.supplyAsync(() -> coalescer.get("op", RES, CELL, () -> {
+            loads.incrementAndGet();
+            return -1L;
+        }));
+        awaitCoalesced(); // the second caller has joined the flight
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(7L);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(7L);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void finishedReadIsReusedOnlyWithinTheTtl() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        assertThat(coalescer.get("op", RES, CELL, loads::incrementAndGet)).isEqualTo(1);
+        assertThat(coalescer.get("op", RES, CELL, loads::incrementAndGet)).isEqualTo(2); // TTL 0: no reuse
+
+        properties.setReadCacheTtlMillis(200);
+        assertThat(coalescer.get("op", RES, CELL, loads::incrementAndGet)).isEqualTo(3);
+        assertThat(coalescer.get("op", RES, CELL, loads::incrementAndGet)).isEqualTo(3);
+        Thread.sleep(250);
+        assertThat(coalescer.get("op", RES, CELL, loads::incrementAndGet)).isEqualTo(4);
+    }
+
+    @Test
+    void waitersGetTheLoadersFailureAndNothingIsCached() throws Exception {
+        properties.setReadCacheTtlMillis(10_000);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Long> first = CompletableFuture.supplyAsync(() -> coalescer.get("op", RES, CELL, () -> {
+            loading.countDown();
+            await(release);
+            throw new QueryTimeoutException("down");
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> coalescer.get("op", RES, CELL, () -> 0L));
+        awaitCoalesced();
+        release.countDown();
+
+        assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(QueryTimeoutException.class);
+        assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(QueryTimeoutException.class);
+        assertThat(coalescer.get("op", RES, CELL, () -> 9L)).isEqualTo(9L);
+    }
+
+    @Test
+    void bookingsShareTheCellCountAndLookUpOnlyTheirRider() {
+        properties.setReadCacheTtlMillis(10_000);
+        RedisService delegate = mock(RedisService.class);
+        when(delegate.getRideRequestCount(RES, CELL)).thenReturn(4L);
+        when(delegate.hasRideRequests(RES, List.of(CELL), List.of("repeat"))).thenReturn(new boolean[] {true});
+        when(delegate.hasRideRequests(RES, List.of(CELL), List.of("new"))).thenReturn(new boolean[] {false});
+        CoalescingRedisService redis = new CoalescingRedisService(delegate, coalescer);
+
+        assertThat(redis.getRideRequestCountsWith(RES, List.of(CELL), List.of("repeat"))).containsExactly(4);
+        assertThat(redis.getRideRequestCountsWith(RES, List.of(CELL), List.of("new"))).containsExactly(5);
+        verify(delegate, times(1)).getRideRequestCount(RES, CELL);
+    }
+
+    private void awaitCoalesced() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meters.get("surge.read.requests").tag("result", "coalesced").functionCounter().count() < 1
+                && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RedisResilienceTest {
+
+    private static final String OP = RedisResilience.DRIVER_COUNT;
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private RedisResilience resilience;
+
+    @AfterEach
+    void shutDown() {
+        if (resilience != null) {
+            resilience.destroy();
+        }
+    }
+
+    @Test
+    void slowFirstAttemptIsAnsweredByTheHedge() {
+        resilience = resilience(properties());
+        for (int i = 0; i < 64; i++) {
+            resilience.call(OP, true, () -> 0L);
+        }
+        resilience.refreshHedgeDelays(); // hedge delay drops to the 5ms floor
+
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        long value = resilience.call(OP, true, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                await(release);
+                return -1L;
+            }
+            return 42L;
+        });
+        release.countDown();
+
+        assertThat(value).isEqualTo(42L);
+        assertThat(counter("surge.redis.hedged")).isEqualTo(1);
+    }
+
+    @Test
+    void readPastTheDeadlineTimesOut() {
+        resilience = resilience(properties());
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            assertThatThrownBy(() -> resilience.call(OP, true, () -> {
+                await(release);
+                return 0L;
+            })).isInstanceOf(QueryTimeoutException.class);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void circuitOpensAfterConsecutiveFailuresAndClosesOnASuccessfulProbe() throws InterruptedException {
+        SurgePricingProperties properties = properties();
+        properties.setRedisBreakerFailureThreshold(3);
+        properties.setRedisBreakerOpenMillis(50);
+        resilience = resilience(properties);
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> resilience.call(OP, false, () -> {
+                throw new QueryTimeoutException("down");
+            })).isInstanceOf(QueryTimeoutException.class);
+        }
+        AtomicInteger calls = new AtomicInteger();
+        assertThatThrownBy(() -> resilience.call(OP, false, calls::incrementAndGet))
+                .isInstanceOf(DataAccessResourceFailureException.class)
+                .hasMessageContaining("circuit open");
+        assertThat(calls).hasValue(0);
+        assertThat(gauge("surge.redis.circuit.open")).isEqualTo(1);
+
+        // A failed probe keeps it open for another window
+        Thread.sleep(60);
+        assertThatThrownBy(() -> resilience.call(OP, false, () -> {
+            throw new QueryTimeoutException("still down");
+        })).isInstanceOf(QueryTimeoutException.class);
+        assertThatThrownBy(() -> resilience.call(OP, false, calls::incrementAndGet))
+                .hasMessageContaining("circuit open");
+
+        Thread.sleep(60);
+        assertThat(resilience.call(OP, false, calls::incrementAndGet)).isEqualTo(1);
+        assertThat(resilience.call(OP, false, calls::incrementAndGet)).isEqualTo(2);
+        assertThat(gauge("surge.redis.circuit.open")).isEqualTo(0);
+        assertThat(counter("surge.redis.rejected")).isEqualTo(2);
+    }
+
+    @Test
+    void errorsThatAreNotRedisFailuresLeaveTheCircuitClosed() {
+        SurgePricingProperties properties = properties();
+        properties.setRedisBreakerFailureThreshold(2);
+        resilience = resilience(properties);
+
+        for (int i = 0; i < 5; i++) {
+            assertThatThrownBy(() -> resilience.call(OP, false, () -> {
+                throw new IllegalStateException("bad input");
+            })).isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(resilience.call(OP, false, () -> 7L)).isEqualTo(7L);
+        assertThat(gauge("surge.redis.circuit.open")).isEqualTo(0);
+    }
+
+    @Test
+    void saturatedHedgePoolRunsReadsInlineWithoutOpeningTheCircuit() throws Exception {
+        SurgePricingProperties properties = properties();
+        properties.setRedisHedgeThreads(1);
+        properties.setRedisBreakerFailureThreshold(2);
+        properties.setRedisReadDeadlineMillis(2000);
+        resilience = resilience(properties);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Long> blocked = CompletableFuture.supplyAsync(() -> resilience.call(OP, true, () -> {
+            started.countDown();
+            await(release);
+            return 1L;
+        }));
+        assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+
+        try {
+            for (int i = 0; i < 10; i++) {
+                assertThat(resilience.call(OP, true, () -> 9L)).isEqualTo(9L);
+            }
+        } finally {
+            release.countDown();
+        }
+        assertThat(blocked.get(2, TimeUnit.SECONDS)).isEqualTo(1L);
+        assertThat(counter("surge.redis.inline")).isEqualTo(10);
+        assertThat(gauge("surge.redis.circuit.open")).isEqualTo(0);
+    }
+
+    @Test
+    void poolIsSizedFromAdmissionWhenNotSet() {
+        SurgePricingProperties properties = properties();
+        properties.setRedisHedgeThreads(0);
+        properties.setAdmissionMaxTotal(150);
+        properties.setStreamSendThreads(4);
+        assertThat(RedisResilience.hedgeThreads(properties)).isEqualTo(310);
+    }
+
+    private RedisResilience resilience(SurgePricingProperties properties) {
+        RedisResilience created = new RedisResilience(properties);
+        created.bindTo(meters);
+        return created;
+    }
+
+    private double counter(String name) {
+        return meters.get(name).tag("op", OP).functionCounter().count();
+    }
+
+    private double gauge(String name) {
+        return meters.get(name).tag("op", OP).gauge().value();
+    }
+
+    private static SurgePricingProperties properties() {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setRedisHedgeThreads(4);
+        properties.setRedisHedgeMinDelayMillis(5);
+        properties.setRedisReadDeadlineMillis(200);
+        return properties;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
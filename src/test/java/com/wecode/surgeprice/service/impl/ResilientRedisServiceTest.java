@@ -0,0 +1,93 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.config.SurgePricingProperties;
+import com.wecode.surgeprice.service.RedisService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ResilientRedisServiceTest {
+
+    private static final int RES = 8;
+    private static final String CELL = "8828308281fffff";
+    private static final String OTHER_CELL = "882830828dfffff";
+
+    private final RedisService delegate = mock(RedisService.class);
+    private RedisResilience resilience;
+    private ResilientRedisService redis;
+
+    @BeforeEach
+    void setUp() {
+        SurgePricingProperties properties = new SurgePricingProperties();
+        properties.setRedisHedgeThreads(4);
+        properties.setRedisReadDeadlineMillis(1000);
+        resilience = new RedisResilience(properties);
+        redis = new ResilientRedisService(delegate, resilience);
+    }
+
+    @AfterEach
+    void shutDown() {
+        resilience.destroy();
+    }
+
+    @Test
+    void bookingCountSurvivesAnOutageOnceTheCellHasBeenRead() {
+        when(delegate.getRideRequestCounts(RES, List.of(CELL))).thenReturn(new long[] {3});
+        when(delegate.hasRideRequests(RES, List.of(CELL), List.of("repeat"))).thenReturn(new boolean[] {true});
+        assertThat(redis.getRideRequestCountsWith(RES, List.of(CELL), List.of("repeat"))).containsExactly(3);
+        assertThat(resilience.isStale(RES, CELL)).isFalse();
+
+        redisDown();
+        // The rider cannot be looked up, so they count as new on top of the last raw count
+        assertThat(redis.getRideRequestCountsWith(RES, List.of(CELL), List.of("repeat"))).containsExactly(4);
+        assertThat(resilience.isStale(RES, CELL)).isTrue();
+        assertThatThrownBy(() -> redis.getRideRequestCountsWith(RES, List.of(OTHER_CELL), List.of("repeat")))
+                .isInstanceOf(QueryTimeoutException.class);
+    }
+
+    @Test
+    void perCellFallbackIsStaleUntilAReadSucceedsAgain() {
+        when(delegate.getSurge(RES, CELL)).thenReturn(1.5);
+        assertThat(redis.getSurge(RES, CELL)).isEqualTo(1.5);
+
+        when(delegate.getSurge(RES, CELL)).thenThrow(new QueryTimeoutException("down"));
+        assertThat(redis.getSurge(RES, CELL)).isEqualTo(1.5);
+        assertThat(resilience.isStale(RES, CELL)).isTrue();
+
+        doReturn(2.0).when(delegate).getSurge(RES, CELL);
+        assertThat(redis.getSurge(RES, CELL)).isEqualTo(2.0);
+        assertThat(resilience.isStale(RES, CELL)).isFalse();
+    }
+
+    @Test
+    void batchCountFallsBackOnlyWhenEveryCellIsKnown() {
+        when(delegate.getDriverCounts(RES, List.of(CELL))).thenReturn(new long[] {5});
+        assertThat(redis.getDriverCounts(RES, List.of(CELL))).containsExactly(5);
+
+        redisDown();
+        assertThat(redis.getDriverCount(RES, CELL)).isEqualTo(5);
+        assertThatThrownBy(() -> redis.getDriverCounts(RES, List.of(CELL, OTHER_CELL)))
+                .isInstanceOf(QueryTimeoutException.class);
+    }
+
+    private void redisDown() {
+        QueryTimeoutException down = new QueryTimeoutException("down");
+        when(delegate.getRideRequestCounts(anyInt(), anyList())).thenThrow(down);
+        when(delegate.hasRideRequests(anyInt(), anyList(), anyList())).thenThrow(down);
+        when(delegate.getDriverCount(anyInt(), anyString())).thenThrow(down);
+        when(delegate.getDriverCounts(anyInt(), any())).thenThrow(down);
+    }
+}
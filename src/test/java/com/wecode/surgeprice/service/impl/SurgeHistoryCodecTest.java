@@ -0,0 +1,79 @@
+package com.wecode.surgeprice.service.impl;
+
+import com.wecode.surgeprice.dto.SurgeSampleDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SurgeHistoryCodecTest {
+
+    private static final int SLOTS = 4;
+    private static final long SLOT_SECONDS = 60;
+    private static final long LAP_MILLIS = SLOTS * SLOT_SECONDS * 1000;
+    private static final long T0 = 1_700_000_160_000L; // slot 0 of a lap
+
+    @Test
+    void slotsFollowTheClockAndWrapEveryLap() {
+        assertThat(SurgeHistoryCodec.slotOffset(T0, SLOT_SECONDS, SLOTS)).isZero();
+        assertThat(SurgeHistoryCodec.slotOffset(T0 + 59_999, SLOT_SECONDS, SLOTS)).isZero();
+        assertThat(SurgeHistoryCodec.slotOffset(T0 + 60_000, SLOT_SECONDS, SLOTS))
+                .isEqualTo(SurgeHistoryCodec.RECORD_BYTES);
+        assertThat(SurgeHistoryCodec.slotOffset(T0 + 3 * 60_000, SLOT_SECONDS, SLOTS))
+                .isEqualTo(3 * SurgeHistoryCodec.RECORD_BYTES);
+        assertThat(SurgeHistoryCodec.slotOffset(T0 + LAP_MILLIS, SLOT_SECONDS, SLOTS)).isZero();
+    }
+
+    @Test
+    void recordsRoundTripQuantizedAndClamped() {
+        byte[] ring = new byte[SLOTS * SurgeHistoryCodec.RECORD_BYTES];
+        write(ring, new SurgeSampleDTO("8828308281fffff", 8, T0 + 734, 1.8764, 42, 70_000, 12.34));
+
+        List<SurgeSampleDTO> samples = SurgeHistoryCodec.decode(ring, 8, "8828308281fffff", 0, Long.MAX_VALUE);
+
+        assertThat(samples).hasSize(1);
+        SurgeSampleDTO sample = samples.get(0);
+        assertThat(sample.getTimestamp()).isEqualTo(T0); // truncated to the second
+        assertThat(sample.getSurge()).isEqualTo(1.876);
+        assertThat(sample.getDrivers()).isEqualTo(42);
+        assertThat(sample.getDemand()).isEqualTo(0xFFFF); // saturates instead of wrapping
+        assertThat(sample.getBaseline()).isEqualTo(12.3);
+        assertThat(sample.getGeofenceId()).isEqualTo("8828308281fffff");
+        assertThat(sample.getResolution()).isEqualTo(8);
+    }
+
+    @Test
+    void aNewLapOverwritesItsSlotAndReadsComeBackOldestFirst() {
+        byte[] ring = new byte[SLOTS * SurgeHistoryCodec.RECORD_BYTES];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            write(ring, sample(T0 + slot * 60_000L, 1.0 + slot));
+        }
+        // Next lap: slots 0 and 1 are overwritten, 2 and 3 still hold the previous lap
+        write(ring, sample(T0 + LAP_MILLIS, 5.0));
+        write(ring, sample(T0 + LAP_MILLIS + 60_000, 6.0));
+
+        List<SurgeSampleDTO> all = SurgeHistoryCodec.decode(ring, 8, "cell", 0, Long.MAX_VALUE);
+        assertThat(all).extracting(SurgeSampleDTO::getSurge).containsExactly(3.0, 4.0, 5.0, 6.0);
+
+        // The range drops the previous lap's slots by their own timestamps
+        List<SurgeSampleDTO> recent = SurgeHistoryCodec.decode(ring, 8, "cell", T0 + LAP_MILLIS, Long.MAX_VALUE);
+        assertThat(recent).extracting(SurgeSampleDTO::getSurge).containsExactly(5.0, 6.0);
+    }
+
+    @Test
+    void emptySlotsAndMissingRingsDecodeToNothing() {
+        assertThat(SurgeHistoryCodec.decode(null, 8, "cell", 0, Long.MAX_VALUE)).isEmpty();
+        assertThat(SurgeHistoryCodec.decode(new byte[SLOTS * SurgeHistoryCodec.RECORD_BYTES], 8, "cell",
+                0, Long.MAX_VALUE)).isEmpty();
+    }
+
+    private static SurgeSampleDTO sample(long timestamp, double surge) {
+        return new SurgeSampleDTO("cell", 8, timestamp, surge, 10, 20, 2.0);
+    }
+
+    private static void write(byte[] ring, SurgeSampleDTO sample) {
+        int offset = SurgeHistoryCodec.slotOffset(sample.getTimestamp(), SLOT_SECONDS, SLOTS);
+        System.arraycopy(SurgeHistoryCodec.encode(sample), 0, ring, offset, SurgeHistoryCodec.RECORD_BYTES);
+    }
+}